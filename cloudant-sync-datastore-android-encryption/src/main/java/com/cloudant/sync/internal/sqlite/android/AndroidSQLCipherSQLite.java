@@ -58,6 +58,20 @@ public class AndroidSQLCipherSQLite extends SQLDatabase {
         return new AndroidSQLCipherSQLite(db);
     }
 
+    /**
+     * Open a read-only connection to an existing SQLCipher-based SQLite database.
+     * @param path full file path of the db file
+     * @param provider Provider object that contains the key to decrypt the SQLCipher database
+     * @return a read-only database connection; writes to it fail
+     */
+    public static AndroidSQLCipherSQLite openReadOnly(File path, KeyProvider provider) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(path.getAbsolutePath(),
+                KeyUtils.sqlCipherKeyForKeyProvider(provider), null,
+                SQLiteDatabase.OPEN_READONLY);
+
+        return new AndroidSQLCipherSQLite(db);
+    }
+
     public AndroidSQLCipherSQLite(final SQLiteDatabase database) {
         this.database = database;
     }
@@ -39,6 +39,16 @@ public class AndroidSQLite extends SQLDatabase {
         return new AndroidSQLite(db);
     }
 
+    /**
+     * Open a read-only connection to an existing SQLite database.
+     * @param path full file path of the db file, which must exist
+     * @return a read-only database connection; writes to it fail
+     */
+    public static AndroidSQLite openReadOnly(File path) {
+        return new AndroidSQLite(SQLiteDatabase.openDatabase(path.getAbsolutePath(), null,
+                SQLiteDatabase.OPEN_READONLY));
+    }
+
     public AndroidSQLite(final android.database.sqlite.SQLiteDatabase database) {
         this.database = database;
 
@@ -72,6 +82,13 @@ public class AndroidSQLite extends SQLDatabase {
         return this.database.isOpen();
     }
 
+    @Override
+    public boolean enableWriteAheadLogging() {
+        // use the framework method so that Android's own connection handling is aware of the
+        // journal mode
+        return this.database.enableWriteAheadLogging();
+    }
+
     @Override
     public void beginTransaction() {
         this.database.beginTransaction();
@@ -16,6 +16,8 @@
 
 package com.cloudant.sync.documentstore;
 
+import com.cloudant.sync.internal.util.Misc;
+
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -78,6 +80,34 @@ public abstract class Attachment {
      */     
     public abstract InputStream getInputStream() throws IOException;
 
+    /**
+     * <p>
+     *   Get part of the contents of the attachment as a stream, starting {@code offset} bytes
+     *   into the contents and ending after at most {@code length} bytes, or sooner if the end of
+     *   the attachment is reached.
+     * </p>
+     * <p>
+     *   NB: If the {@link #encoding} encoding is GZIP the offset and length apply to the
+     *   decompressed contents
+     * </p>
+     * <p>
+     *   This implementation reads and discards the bytes before the offset from
+     *   {@link #getInputStream()}. Attachments stored in the database seek straight to the
+     *   offset unless they are GZIP encoded.
+     * </p>
+     * <p>
+     *   Caller must call close() when done.
+     * </p>
+     * @param offset number of bytes into the contents to start reading from
+     * @param length maximum number of bytes to read
+     * @return the requested range of the contents of the attachment as a stream
+     * @throws IOException if there was an error obtaining the stream, eg from disk or network
+     * @throws IllegalArgumentException if the offset or length is negative
+     */
+    public InputStream getInputStream(long offset, long length) throws IOException {
+        return Misc.slice(getInputStream(), offset, length);
+    }
+
     public enum Encoding {
         /**
          * Plain encoding: the contents are not compressed.
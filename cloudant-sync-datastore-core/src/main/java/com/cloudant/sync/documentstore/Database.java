@@ -364,6 +364,75 @@ public interface Database {
      */
     List<DocumentRevision> delete(String id) throws DocumentNotFoundException, DocumentStoreException;
 
+    /**
+     * <p>Adds a batch of new documents, as if by calling {@link #create(DocumentRevision)} for
+     * each revision in {@code revs}, but in a single database transaction.</p>
+     *
+     * <p>Every revision is validated, and any new attachments prepared, before anything is
+     * written. If a document can't be created because a document with the same ID already
+     * exists, it is skipped and a {@link ConflictException} is returned in its result; the other
+     * documents in the batch are still created. Any other error means none of the documents are
+     * created.</p>
+     *
+     * <p>A {@link com.cloudant.sync.event.notifications.DocumentCreated DocumentCreated} event is
+     * posted on the event bus for each document created, after the transaction has
+     * committed.</p>
+     *
+     * @param revs the <code>DocumentRevision</code>s to be created
+     * @return a {@link DocumentWriteResult} for each revision, in the same order as {@code revs}
+     * @throws AttachmentException if there was an error saving any new attachments
+     * @throws InvalidDocumentException if any of the document bodies were invalid
+     * @throws DocumentStoreException if there was an error reading from or writing to the database
+     * @see Database#create(DocumentRevision)
+     */
+    List<DocumentWriteResult> createAll(List<DocumentRevision> revs) throws AttachmentException,
+            InvalidDocumentException, DocumentStoreException;
+
+    /**
+     * <p>Updates a batch of documents, as if by calling {@link #update(DocumentRevision)} for
+     * each revision in {@code revs}, but in a single database transaction.</p>
+     *
+     * <p>Every revision is validated, and any new attachments prepared, before anything is
+     * written. If a revision is not current, or does not exist, it is skipped and a
+     * {@link ConflictException} or {@link DocumentNotFoundException} is returned in its result;
+     * the other documents in the batch are still updated. Any other error means none of the
+     * documents are updated.</p>
+     *
+     * <p>A {@link com.cloudant.sync.event.notifications.DocumentUpdated DocumentUpdated} event is
+     * posted on the event bus for each document updated, after the transaction has
+     * committed.</p>
+     *
+     * @param revs the <code>DocumentRevision</code>s to be updated
+     * @return a {@link DocumentWriteResult} for each revision, in the same order as {@code revs}
+     * @throws AttachmentException if there was an error saving any new attachments
+     * @throws InvalidDocumentException if any of the document bodies were invalid
+     * @throws DocumentStoreException if there was an error reading from or writing to the database
+     * @see Database#update(DocumentRevision)
+     */
+    List<DocumentWriteResult> updateAll(List<DocumentRevision> revs) throws AttachmentException,
+            InvalidDocumentException, DocumentStoreException;
+
+    /**
+     * <p>Deletes a batch of documents, as if by calling {@link #delete(DocumentRevision)} for
+     * each revision in {@code revs}, but in a single database transaction.</p>
+     *
+     * <p>If a revision is not a leaf, or is already deleted, it is skipped and a
+     * {@link ConflictException} or {@link DocumentNotFoundException} is returned in its result;
+     * the other documents in the batch are still deleted. Any other error means none of the
+     * documents are deleted.</p>
+     *
+     * <p>A {@link com.cloudant.sync.event.notifications.DocumentDeleted DocumentDeleted} event is
+     * posted on the event bus for each document deleted, after the transaction has
+     * committed.</p>
+     *
+     * @param revs the <code>DocumentRevision</code>s to be deleted
+     * @return a {@link DocumentWriteResult} for each revision, in the same order as {@code revs}
+     * @throws DocumentStoreException if there was an error reading from or writing to the database
+     * @see Database#delete(DocumentRevision)
+     */
+    List<DocumentWriteResult> deleteAll(List<DocumentRevision> revs) throws
+            DocumentStoreException;
+
     /**
      * Compacts the SQL database and disk storage by removing the bodies and attachments of obsolete revisions.
      * @throws DocumentStoreException if there was an error reading from or writing to the database
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.documentstore;
+
+/**
+ * <p>
+ * The outcome of writing one document as part of a batch, see
+ * {@link Database#createAll(java.util.List)}, {@link Database#updateAll(java.util.List)} and
+ * {@link Database#deleteAll(java.util.List)}.
+ * </p>
+ * <p>
+ * A result is either successful, in which case {@link #getRevision()} returns the revision
+ * written to the database, or failed, in which case {@link #getError()} returns the
+ * {@link ConflictException} or {@link DocumentNotFoundException} that prevented the write.
+ * </p>
+ */
+public class DocumentWriteResult {
+
+    private final DocumentRevision input;
+    private final DocumentRevision revision;
+    private final DocumentException error;
+
+    /**
+     * Creates a result for a document which was written successfully
+     * @param input the revision passed to the batch operation
+     * @param revision the revision written to the database, which is {@code null} for deleted
+     *                 local documents
+     */
+    public DocumentWriteResult(DocumentRevision input, DocumentRevision revision) {
+        this(input, revision, null);
+    }
+
+    /**
+     * Creates a result for a document which could not be written
+     * @param input the revision passed to the batch operation
+     * @param error the reason the document could not be written
+     */
+    public DocumentWriteResult(DocumentRevision input, DocumentException error) {
+        this(input, null, error);
+    }
+
+    private DocumentWriteResult(DocumentRevision input, DocumentRevision revision,
+                                DocumentException error) {
+        this.input = input;
+        this.revision = revision;
+        this.error = error;
+    }
+
+    /**
+     * @return the revision passed to the batch operation
+     */
+    public DocumentRevision getInput() {
+        return input;
+    }
+
+    /**
+     * @return the revision written to the database, or {@code null} if the write failed or
+     * deleted a local document
+     */
+    public DocumentRevision getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return the reason the document could not be written, or {@code null} if the write
+     * succeeded
+     */
+    public DocumentException getError() {
+        return error;
+    }
+
+    /**
+     * @return {@code true} if the document was written
+     */
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentWriteResult{" +
+                "input=" + input +
+                ", revision=" + revision +
+                ", error=" + error +
+                '}';
+    }
+}
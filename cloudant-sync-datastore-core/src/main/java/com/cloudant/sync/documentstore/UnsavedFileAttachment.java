@@ -16,6 +16,10 @@
 
 package com.cloudant.sync.documentstore;
 
+import com.cloudant.sync.internal.util.Misc;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -44,6 +48,20 @@ public class UnsavedFileAttachment extends Attachment {
         return new FileInputStream(file);
     }
 
+    @Override
+    public InputStream getInputStream(long offset, long length) throws IOException {
+        Misc.checkArgument(offset >= 0, "Offset must not be negative.");
+        Misc.checkArgument(length >= 0, "Length must not be negative.");
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            fis.getChannel().position(offset);
+        } catch (IOException e) {
+            fis.close();
+            throw e;
+        }
+        return new BoundedInputStream(fis, length);
+    }
+
     private File file;
 
 }
@@ -36,10 +36,8 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.sql.SQLException;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -78,8 +76,8 @@ public class AttachmentManager {
             "FROM attachments " +
             "WHERE sequence = ?";
 
-    private static final String SQL_ATTACHMENTS_SELECT_ALL_KEYS = "SELECT key " +
-            "FROM attachments";
+    private static final String SQL_ATTACHMENTS_COUNT_KEY = "SELECT COUNT(*) " +
+            "FROM attachments WHERE key = X'%s'";
 
     /**
      * Name of database mapping key to filename.
@@ -91,10 +89,10 @@ public class AttachmentManager {
     private static final String SQL_FILENAME_LOOKUP_QUERY = String.format(
             "SELECT filename FROM %1$s WHERE key=?", ATTACHMENTS_KEY_FILENAME);
     /**
-     * SQL statement to return all key,filename mappings.
+     * SQL statement to return the key,filename mappings of blobs which no attachments refer to.
      */
-    private static final String SQL_ATTACHMENTS_SELECT_KEYS_FILENAMES = String.format(
-            "SELECT key,filename FROM %1$s", ATTACHMENTS_KEY_FILENAME);
+    private static final String SQL_UNREFERENCED_KEYS_FILENAMES = String.format(
+            "SELECT key,filename FROM %1$s WHERE refcount <= 0", ATTACHMENTS_KEY_FILENAME);
     /**
      * Random number generator used to generate filenames.
      */
@@ -138,16 +136,8 @@ public class AttachmentManager {
         values.put("encoded_length", encodedLength);
         values.put("revpos", revpos);
 
-        // delete and insert in case there is already an attachment at this seq (eg copied over from a previous rev)
-        db.delete("attachments", " filename = ? and sequence = ? ", new String[]{name,
-                String.valueOf(sequence)});
-        long result = db.insert("attachments", values);
-        if (result == -1) {
-            // if we can't insert into DB then don't copy the attachment
-            a.tempFile.delete();
-            throw new AttachmentNotSavedException("Could not insert attachment " + a + " into database with values " + values + "; not copying to attachments directory");
-        }
-        // move file to blob store, with file name based on sha1
+        // look up the blob first, so that it has a row in attachments_key_filename for the
+        // trigger on the attachments table to count the new reference against
         File newFile = null;
         try {
             newFile = fileFromKey(db, sha1, attachmentsDir, true);
@@ -160,6 +150,25 @@ public class AttachmentManager {
             throw new AttachmentNotSavedException("Couldn't generate name for new attachment", ex);
         }
 
+        // delete and insert in case there is already an attachment at this seq (eg copied over from a previous rev)
+        db.delete("attachments", " filename = ? and sequence = ? ", new String[]{name,
+                String.valueOf(sequence)});
+        long result = db.insert("attachments", values);
+        if (result == -1) {
+            // if we can't insert into DB then don't copy the attachment; if the blob is new, its
+            // unreferenced attachments_key_filename row is removed by the next compaction
+            a.tempFile.delete();
+            throw new AttachmentNotSavedException("Could not insert attachment " + a + " into database with values " + values + "; not copying to attachments directory");
+        }
+
+        // move file to blob store, with file name based on sha1
+        if (newFile.exists()) {
+            // File with same SHA1 hash in the store, we assume it's the same content so can
+            // discard the duplicate data we have just downloaded
+            a.tempFile.delete();
+            return;
+        }
+
         try {
             FileUtils.moveFile(a.tempFile, newFile);
         } catch (FileExistsException fee) {
@@ -326,18 +335,9 @@ public class AttachmentManager {
             c = db.rawQuery(SQL_ATTACHMENTS_SELECT_ALL,
                     new String[]{String.valueOf(sequence)});
             while (c.moveToNext()) {
-                String filename = c.getString(c.getColumnIndex("filename"));
-                byte[] key = c.getBlob(c.getColumnIndex("key"));
-                String type = c.getString(c.getColumnIndex("type"));
-                int encoding = c.getInt(c.getColumnIndex("encoding"));
-                long length = c.getInt(c.getColumnIndex("length"));
-                long encodedLength = c.getInt(c.getColumnIndex("encoded_length"));
-                int revpos = c.getInt(c.getColumnIndex("revpos"));
-                File file = fileFromKey(db, key, attachmentsDir, false);
-
-                atts.put(filename, new SavedAttachment(sequence, filename, key, type, Attachment.Encoding
-                        .values()[encoding], length, encodedLength, revpos, file,
-                        attachmentStreamFactory));
+                SavedAttachment att = savedAttachmentFromCursor(db, c, attachmentsDir,
+                        attachmentStreamFactory);
+                atts.put(att.name, att);
             }
             return atts;
         } catch (SQLException e) {
@@ -348,6 +348,29 @@ public class AttachmentManager {
         }
     }
 
+    /**
+     * Builds a {@link SavedAttachment} from the current row of a cursor over the columns in
+     * {@link #SQL_ATTACHMENTS_SELECT_ALL}.
+     */
+    public static SavedAttachment savedAttachmentFromCursor(SQLDatabase db, Cursor c,
+                                                            String attachmentsDir,
+                                                            AttachmentStreamFactory attachmentStreamFactory)
+            throws AttachmentException {
+        long sequence = c.getLong(c.getColumnIndex("sequence"));
+        String filename = c.getString(c.getColumnIndex("filename"));
+        byte[] key = c.getBlob(c.getColumnIndex("key"));
+        String type = c.getString(c.getColumnIndex("type"));
+        int encoding = c.getInt(c.getColumnIndex("encoding"));
+        long length = c.getInt(c.getColumnIndex("length"));
+        long encodedLength = c.getInt(c.getColumnIndex("encoded_length"));
+        int revpos = c.getInt(c.getColumnIndex("revpos"));
+        File file = fileFromKey(db, key, attachmentsDir, false);
+
+        return new SavedAttachment(sequence, filename, key, type, Attachment.Encoding
+                .values()[encoding], length, encodedLength, revpos, file,
+                attachmentStreamFactory);
+    }
+
     private static void copyCursorValuesToNewSequence(SQLDatabase db, Cursor c, long newSequence) {
         while (c.moveToNext()) {
             String filename = c.getString(1);
@@ -409,22 +432,25 @@ public class AttachmentManager {
 
     /**
      * Called by DatabaseImpl on the execution queue, this needs to have the db passed to it.
+     *
+     * Triggers on the attachments table keep a count of the references to each blob in
+     * attachments_key_filename, so only blobs whose count has dropped to zero are deleted,
+     * rather than checking every blob against the attachments table.
+     *
      * @param db database to purge attachments from
      */
     public static void purgeAttachments(SQLDatabase db, String attachmentsDir) {
-        // it's easier to deal with Strings since java doesn't know how to compare byte[]s
-        Set<String> currentKeys = new HashSet<String>();
+        Map<String, String> unreferenced = new HashMap<String, String>();
         Cursor c = null;
         try {
             // delete attachment table entries for revs which have been purged
             db.delete("attachments", "sequence IN " +
                     "(SELECT sequence from revs WHERE json IS null)", null);
 
-            // get all keys from attachments table
-            c = db.rawQuery(SQL_ATTACHMENTS_SELECT_ALL_KEYS, null);
+            // get the blobs which are no longer referenced
+            c = db.rawQuery(SQL_UNREFERENCED_KEYS_FILENAMES, null);
             while (c.moveToNext()) {
-                byte[] key = c.getBlob(0);
-                currentKeys.add(keyToString(key));
+                unreferenced.put(c.getString(0), c.getString(1));
             }
 
         } catch (SQLException e) {
@@ -437,34 +463,53 @@ public class AttachmentManager {
 
         try {
 
-            // Now iterate through the attachments_key_filename, deleting items we need to
-            // (both db row and file on disk).
+            // Now delete the unreferenced items (both db row and file on disk).
             File attachments = new File(attachmentsDir);
-            c = db.rawQuery(SQL_ATTACHMENTS_SELECT_KEYS_FILENAMES, null);
-            while (c.moveToNext()) {
-                String keyForFile = c.getString(0);
-
-                if (!currentKeys.contains(keyForFile)) {
-                    File f = new File(attachments, c.getString(1));
-                    try {
-                        boolean deleted = f.delete();
-                        if (deleted) {
-                            db.delete(ATTACHMENTS_KEY_FILENAME, "key = ?", new String[]{keyForFile});
-                        } else {
-                            logger.warning("Could not delete file from BLOB store: " +
-                                    f.getAbsolutePath());
-                        }
-                    } catch (SecurityException e) {
-                        String msg = String.format("SecurityException deleting %s from blob store",
+            for (Map.Entry<String, String> keyFilename : unreferenced.entrySet()) {
+                String keyForFile = keyFilename.getKey();
+
+                // the count is only a hint, so make sure nothing refers to the blob before
+                // deleting it
+                int references = countReferences(db, keyForFile);
+                if (references > 0) {
+                    logger.warning(String.format("Correcting reference count of blob %s to %d",
+                            keyForFile, references));
+                    ContentValues cv = new ContentValues(1);
+                    cv.put("refcount", references);
+                    db.update(ATTACHMENTS_KEY_FILENAME, cv, "key = ?", new String[]{keyForFile});
+                    continue;
+                }
+
+                File f = new File(attachments, keyFilename.getValue());
+                try {
+                    // the file won't exist if the attachment failed to save
+                    boolean deleted = f.delete() || !f.exists();
+                    if (deleted) {
+                        db.delete(ATTACHMENTS_KEY_FILENAME, "key = ?", new String[]{keyForFile});
+                    } else {
+                        logger.warning("Could not delete file from BLOB store: " +
                                 f.getAbsolutePath());
-                        logger.log(Level.WARNING, msg, e);
                     }
+                } catch (SecurityException e) {
+                    String msg = String.format("SecurityException deleting %s from blob store",
+                            f.getAbsolutePath());
+                    logger.log(Level.WARNING, msg, e);
                 }
             }
 
         } catch (SQLException e) {
             logger.log(Level.SEVERE,
                     "SQL exception in purgeAttachments when removing redundant attachments", e);
+        }
+    }
+
+    private static int countReferences(SQLDatabase db, String keyString) throws SQLException {
+        Cursor c = null;
+        try {
+            // the key is hex, so is safe to use as a blob literal; binding it as an argument
+            // would compare it as text
+            c = db.rawQuery(String.format(SQL_ATTACHMENTS_COUNT_KEY, keyString), null);
+            return c.moveToFirst() ? c.getInt(0) : 0;
         } finally {
             DatabaseUtils.closeCursorQuietly(c);
         }
@@ -501,7 +546,11 @@ public class AttachmentManager {
         String keyString = keyToString(key);
         String filename = null;
 
-        db.beginTransaction();
+        // A lookup alone doesn't need a transaction, which allows it to be run on read-only
+        // connections.
+        if (allowCreateName) {
+            db.beginTransaction();
+        }
         Cursor c = null;
         try {
             c = db.rawQuery(SQL_FILENAME_LOOKUP_QUERY, new String[]{ keyString });
@@ -512,13 +561,17 @@ public class AttachmentManager {
                 filename = generateFilenameForKey(db, keyString);
                 logger.finest(String.format("Added filename %s for key %s", filename, keyString));
             }
-            db.setTransactionSuccessful();
+            if (allowCreateName) {
+                db.setTransactionSuccessful();
+            }
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Couldn't read key,filename mapping database", e);
             filename = null;
         } finally {
             DatabaseUtils.closeCursorQuietly(c);
-            db.endTransaction();
+            if (allowCreateName) {
+                db.endTransaction();
+            }
         }
 
         if (filename != null) {
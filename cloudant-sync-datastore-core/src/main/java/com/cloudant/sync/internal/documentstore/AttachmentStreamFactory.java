@@ -17,18 +17,19 @@ package com.cloudant.sync.internal.documentstore;
 import com.cloudant.sync.documentstore.Attachment;
 import com.cloudant.sync.internal.documentstore.encryption.EncryptedAttachmentInputStream;
 import com.cloudant.sync.internal.documentstore.encryption.EncryptedAttachmentOutputStream;
+import com.cloudant.sync.internal.documentstore.encryption.EncryptionConstants;
 import com.cloudant.sync.documentstore.encryption.KeyProvider;
+import com.cloudant.sync.internal.util.Misc;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
-import java.security.SecureRandom;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -112,6 +113,54 @@ public class AttachmentStreamFactory {
         return is;
     }
 
+    /**
+     * Return a stream to be used to read part of the file on disk.
+     *
+     * Stream's bytes will be the unzipped, unencrypted attachment content starting
+     * {@code offset} bytes in and ending after at most {@code length} bytes.
+     *
+     * Unencoded files are read from the offset without reading the content before it, or in
+     * the case of encrypted files, only the cipher block before it. A GZIP stream can't be
+     * decompressed from part way through, so for encoded files the content before the offset
+     * is decompressed and discarded.
+     *
+     * @param file File object to read from.
+     * @param encoding Encoding of attachment.
+     * @param offset Number of bytes into the attachment content to start reading from.
+     * @param length Maximum number of bytes to read.
+     * @return Stream for reading the range of attachment data.
+     * @throws IOException if there's a problem reading from disk, including issues with
+     *      encryption (bad key length and other key issues).
+     */
+    public InputStream getInputStream(File file, Attachment.Encoding encoding, long offset,
+                                      long length) throws IOException {
+        Misc.checkArgument(offset >= 0, "Offset must not be negative.");
+        Misc.checkArgument(length >= 0, "Length must not be negative.");
+
+        if (encoding == Attachment.Encoding.Gzip) {
+            return Misc.slice(getInputStream(file, encoding), offset, length);
+        }
+
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            InputStream is;
+            if (key != null) {
+                is = new EncryptedAttachmentInputStream(fis, key, offset);
+            } else {
+                fis.getChannel().position(offset);
+                is = fis;
+            }
+            return new BoundedInputStream(is, length);
+        } catch (InvalidKeyException ex) {
+            fis.close();
+            // See getInputStream(File, Encoding)
+            throw new IOException("Bad key used to open file; check encryption key.", ex);
+        } catch (IOException ex) {
+            fis.close();
+            throw ex;
+        }
+    }
+
     /**
      * Get stream for writing attachment data to disk.
      *
@@ -144,11 +193,10 @@ public class AttachmentStreamFactory {
 
             try {
 
-                // Create IV
-                byte[] iv = new byte[16];
-                new SecureRandom().nextBytes(iv);
-
-                os = new EncryptedAttachmentOutputStream(os, key, iv);
+                // Each chunk is encrypted with its own random IV, so encrypted
+                // attachments can be read from part way through.
+                os = new EncryptedAttachmentOutputStream(os, key,
+                        EncryptionConstants.ATTACHMENT_CHUNK_SIZE);
 
             } catch (InvalidKeyException ex) {
                 // Replace with an IOException as we validate the key when opening
@@ -156,11 +204,6 @@ public class AttachmentStreamFactory {
                 // not worth forcing the developer to catch something they can't
                 // fix during file read; generic IOException works better.
                 throw new IOException("Bad key used to write file; check encryption key.", ex);
-            } catch (InvalidAlgorithmParameterException ex) {
-                // We are creating what should be a valid IV for AES, 16-bytes.
-                // Therefore this shouldn't happen. Again, the developer cannot
-                // fix it, so wrap in an IOException as we can't write the file.
-                throw new IOException("Bad key used to write file; check encryption key.", ex);
             }
 
         }
@@ -30,6 +30,7 @@ import com.cloudant.sync.documentstore.DocumentException;
 import com.cloudant.sync.documentstore.DocumentNotFoundException;
 import com.cloudant.sync.documentstore.DocumentRevision;
 import com.cloudant.sync.documentstore.DocumentStoreException;
+import com.cloudant.sync.documentstore.DocumentWriteResult;
 import com.cloudant.sync.documentstore.InvalidDocumentException;
 import com.cloudant.sync.documentstore.LocalDocument;
 import com.cloudant.sync.documentstore.encryption.KeyProvider;
@@ -40,7 +41,6 @@ import com.cloudant.sync.event.notifications.DocumentModified;
 import com.cloudant.sync.event.notifications.DocumentUpdated;
 import com.cloudant.sync.internal.common.CouchConstants;
 import com.cloudant.sync.internal.common.CouchUtils;
-import com.cloudant.sync.internal.common.ValueListMap;
 import com.cloudant.sync.internal.documentstore.callables.ChangesCallable;
 import com.cloudant.sync.internal.documentstore.callables.CompactCallable;
 import com.cloudant.sync.internal.documentstore.callables.DeleteAllRevisionsCallable;
@@ -53,6 +53,7 @@ import com.cloudant.sync.internal.documentstore.callables.GetAllRevisionsOfDocum
 import com.cloudant.sync.internal.documentstore.callables.GetConflictedDocumentIdsCallable;
 import com.cloudant.sync.internal.documentstore.callables.GetDocumentCallable;
 import com.cloudant.sync.internal.documentstore.callables.GetDocumentCountCallable;
+import com.cloudant.sync.internal.documentstore.callables.GetDocumentTreesCallable;
 import com.cloudant.sync.internal.documentstore.callables.GetDocumentsWithIdsCallable;
 import com.cloudant.sync.internal.documentstore.callables.GetLastSequenceCallable;
 import com.cloudant.sync.internal.documentstore.callables.GetLocalDocumentCallable;
@@ -63,17 +64,17 @@ import com.cloudant.sync.internal.documentstore.callables.InsertDocumentIDCallab
 import com.cloudant.sync.internal.documentstore.callables.InsertLocalDocumentCallable;
 import com.cloudant.sync.internal.documentstore.callables.InsertRevisionCallable;
 import com.cloudant.sync.internal.documentstore.callables.ResolveConflictsForDocumentCallable;
-import com.cloudant.sync.internal.documentstore.callables.RevsDiffBatchCallable;
+import com.cloudant.sync.internal.documentstore.callables.RevsDiffCallable;
 import com.cloudant.sync.internal.documentstore.callables.SetCurrentCallable;
 import com.cloudant.sync.internal.documentstore.callables.UpdateDocumentFromRevisionCallable;
 import com.cloudant.sync.internal.documentstore.migrations.MigrateDatabase100To200;
+import com.cloudant.sync.internal.documentstore.migrations.MigrateDatabase200To201;
 import com.cloudant.sync.internal.documentstore.migrations.MigrateDatabase6To100;
 import com.cloudant.sync.internal.documentstore.migrations.SchemaOnlyMigration;
 import com.cloudant.sync.internal.sqlite.Cursor;
 import com.cloudant.sync.internal.sqlite.SQLCallable;
 import com.cloudant.sync.internal.sqlite.SQLDatabase;
 import com.cloudant.sync.internal.sqlite.SQLDatabaseQueue;
-import com.cloudant.sync.internal.util.CollectionUtils;
 import com.cloudant.sync.internal.util.DatabaseUtils;
 import com.cloudant.sync.internal.util.JSONUtils;
 import com.cloudant.sync.internal.util.Misc;
@@ -168,6 +169,8 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
         queue.updateSchema(new MigrateDatabase6To100(), 100);
         queue.updateSchema(new MigrateDatabase100To200(DatastoreConstants.getSchemaVersion200()),
                 200);
+        queue.updateSchema(new MigrateDatabase200To201(DatastoreConstants.getSchemaVersion201()),
+                201);
         this.eventBus = new EventBus();
 
         this.attachmentStreamFactory = new AttachmentStreamFactory(this.getKeyProvider());
@@ -187,7 +190,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
         Misc.checkState(this.isOpen(), "Database is closed");
 
         try {
-            return get(queue.submit(new GetLastSequenceCallable()));
+            return get(queue.submitReadOnly(new GetLastSequenceCallable()));
         } catch (ExecutionException e) {
             throwCauseAs(e, IllegalStateException.class);
             String message = "Failed to get last Sequence";
@@ -200,7 +203,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
     public int getDocumentCount() throws DocumentStoreException {
         Misc.checkState(this.isOpen(), "Database is closed");
         try {
-            return get(queue.submit(new GetDocumentCountCallable()));
+            return get(queue.submitReadOnly(new GetDocumentCountCallable()));
         } catch (ExecutionException e) {
             String message = "Failed to get document count";
             logger.log(Level.SEVERE, message, e);
@@ -247,11 +250,11 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
             if (id.startsWith(CouchConstants._local_prefix)) {
                 Misc.checkArgument(rev == null, "Local documents must have a null revision ID");
                 String localId = id.substring(CouchConstants._local_prefix.length());
-                LocalDocument ld = get(queue.submit(new GetLocalDocumentCallable(localId)));
+                LocalDocument ld = get(queue.submitReadOnly(new GetLocalDocumentCallable(localId)));
                 // convert to DocumentRevision, adding back "_local/" prefix which was stripped off when document was written
                 return new DocumentRevisionBuilder().setDocId(CouchConstants._local_prefix + ld.docId).setBody(ld.body).build();
             } else {
-                return get(queue.submit(new GetDocumentCallable(id, rev, this.attachmentsDir, this.attachmentStreamFactory)));
+                return get(queue.submitReadOnly(new GetDocumentCallable(id, rev, this.attachmentsDir, this.attachmentStreamFactory)));
             }
         } catch (ExecutionException e) {
             throwCauseAs(e, DocumentNotFoundException.class);
@@ -273,13 +276,38 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
     public DocumentRevisionTree getAllRevisionsOfDocument(final String docId) {
 
         try {
-            return get(queue.submit(new GetAllRevisionsOfDocumentCallable(docId, this.attachmentsDir, this.attachmentStreamFactory)));
+            return get(queue.submitReadOnly(new GetAllRevisionsOfDocumentCallable(docId, this.attachmentsDir, this.attachmentStreamFactory)));
         } catch (ExecutionException e) {
             logger.log(Level.SEVERE, "Failed to get all revisions of document", e);
         }
         return null;
     }
 
+    /**
+     * <p>Returns the {@code DocumentRevisionTree}s of a set of documents.</p>
+     *
+     * <p>Each tree contains the complete revision history of the document, but only the leaf
+     * revisions have their attachments loaded.</p>
+     *
+     * @param docIds IDs of the documents
+     * @return map of document ID to its {@code DocumentRevisionTree}, which is empty if the
+     * document does not exist
+     * @throws DocumentStoreException if there was an error reading from the database
+     */
+    public Map<String, DocumentRevisionTree> getDocumentTrees(final List<String> docIds)
+            throws DocumentStoreException {
+        Misc.checkState(this.isOpen(), "Database is closed");
+        Misc.checkNotNull(docIds, "Input document IDs");
+        try {
+            return get(queue.submitReadOnly(new GetDocumentTreesCallable(docIds, this
+                    .attachmentsDir, this.attachmentStreamFactory)));
+        } catch (ExecutionException e) {
+            String message = "Failed to get revision trees of documents";
+            logger.log(Level.SEVERE, message, e);
+            throw new DocumentStoreException(message, e.getCause());
+        }
+    }
+
     @Override
     public Changes changes(long since, final int limit) throws DocumentStoreException {
         Misc.checkState(this.isOpen(), "Database is closed");
@@ -287,7 +315,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
         final long verifiedSince = since >= 0 ? since : 0;
 
         try {
-            return get(queue.submit(new ChangesCallable(verifiedSince, limit, attachmentsDir, attachmentStreamFactory)));
+            return get(queue.submitReadOnly(new ChangesCallable(verifiedSince, limit, attachmentsDir, attachmentStreamFactory)));
         } catch (ExecutionException e) {
             String message = "Failed to get changes";
             logger.log(Level.SEVERE, message, e);
@@ -306,7 +334,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
             throw new IllegalArgumentException("limit must be >= 0");
         }
         try {
-            return get(queue.submit(new GetAllDocumentsCallable(offset, limit, descending, this.attachmentsDir, this.attachmentStreamFactory)));
+            return get(queue.submitReadOnly(new GetAllDocumentsCallable(offset, limit, descending, this.attachmentsDir, this.attachmentStreamFactory)));
         } catch (ExecutionException e) {
             String message = "Failed to get all documents";
             logger.log(Level.SEVERE, message, e);
@@ -318,7 +346,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
     public List<String> getIds() throws DocumentStoreException {
         Misc.checkState(this.isOpen(), "Database is closed");
         try {
-            return get(queue.submit(new GetAllDocumentIdsCallable()));
+            return get(queue.submitReadOnly(new GetAllDocumentIdsCallable()));
         } catch (ExecutionException e) {
             String message = "Failed to get all document ids";
             logger.log(Level.SEVERE, message, e);
@@ -333,7 +361,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
         Misc.checkNotNull(docIds, "Input document id list");
         Misc.checkArgument(!docIds.isEmpty(), "Input document id list must contain document ids");
         try {
-            return get (queue.submit(new GetDocumentsWithIdsCallable(docIds, attachmentsDir, attachmentStreamFactory)));
+            return get (queue.submitReadOnly(new GetDocumentsWithIdsCallable(docIds, attachmentsDir, attachmentStreamFactory)));
         } catch (ExecutionException e) {
             String message = "Failed to get documents with ids";
             logger.log(Level.SEVERE, message, e);
@@ -345,7 +373,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
                                                        final String revId,
                                                        final int limit) throws DocumentStoreException {
         try {
-            return get(queue.submit(new GetPossibleAncestorRevisionIdsCallable(docId, revId, limit)));
+            return get(queue.submitReadOnly(new GetPossibleAncestorRevisionIdsCallable(docId, revId, limit)));
         } catch (ExecutionException e) {
             throw new DocumentStoreException(e);
         }
@@ -361,7 +389,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
     public LocalDocument getLocalDocument(final String docId) throws DocumentNotFoundException {
         Misc.checkState(this.isOpen(), "Database is closed");
         try {
-            return get(queue.submit(new GetLocalDocumentCallable(docId)));
+            return get(queue.submitReadOnly(new GetLocalDocumentCallable(docId)));
         } catch (ExecutionException e) {
             throw new DocumentNotFoundException(e);
         }
@@ -495,7 +523,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
     public String getPublicIdentifier() throws DocumentStoreException {
         Misc.checkState(this.isOpen(), "Database is closed");
         try {
-            return get(queue.submit(new GetPublicIdentifierCallable()));
+            return get(queue.submitReadOnly(new GetPublicIdentifierCallable()));
         } catch (ExecutionException e) {
             logger.log(Level.SEVERE, "Failed to get public ID", e);
             throw new DocumentStoreException("Failed to get public ID", e);
@@ -665,24 +693,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
         Misc.checkArgument(!revisions.isEmpty(), "revisions cannot be empty");
 
         try {
-
-            ValueListMap<String, String> missingRevs = new ValueListMap<String, String>();
-
-            // Break down by docId first to avoid potential rev ID clashes between doc IDs
-            for (Map.Entry<String, List<String>> entry : revisions.entrySet()) {
-                String docId = entry.getKey();
-                List<String> revs = entry.getValue();
-                // Partition into batches to avoid exceeding placeholder limit
-                // The doc ID will use one placeholder, so use limit - 1 for the number of
-                // revs for the remaining placeholders.
-                List<List<String>> batches = CollectionUtils.partition(revs,
-                        SQLITE_QUERY_PLACEHOLDERS_LIMIT - 1);
-
-                for (List<String> revsBatch : batches) {
-                    missingRevs.addValuesToKey(docId, get(queue.submit(new RevsDiffBatchCallable(docId, revsBatch))));
-                }
-            }
-            return missingRevs;
+            return get(queue.submitReadOnly(new RevsDiffCallable(revisions)));
         } catch (ExecutionException e) {
             String message = "Failed to calculate difference in revisions";
             logger.log(Level.SEVERE, message, e);
@@ -693,7 +704,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
     @Override
     public Iterable<String> getConflictedIds() throws DocumentStoreException {
         try {
-            return get(queue.submit(new GetConflictedDocumentIdsCallable()));
+            return get(queue.submitReadOnly(new GetConflictedDocumentIdsCallable()));
         } catch (ExecutionException e) {
             String message = "Failed to get conflicted document ids";
             logger.log(Level.SEVERE, message, e);
@@ -710,7 +721,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
 
             // before starting the tx, get the 'new winner' and see if we need to prepare its
             // attachments
-            final DocumentRevisionTree docTree = get(queue.submit(new GetAllRevisionsOfDocumentCallable(docId, attachmentsDir, attachmentStreamFactory)));
+            final DocumentRevisionTree docTree = get(queue.submitReadOnly(new GetAllRevisionsOfDocumentCallable(docId, attachmentsDir, attachmentStreamFactory)));
             if (!docTree.hasConflicts()) {
                 return;
             }
@@ -827,7 +838,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
     public Attachment getAttachment(final String id, final String rev, final String
             attachmentName) {
         try {
-            return get(queue.submit(new SQLCallable<Attachment>() {
+            return get(queue.submitReadOnly(new SQLCallable<Attachment>() {
                 @Override
                 public Attachment call(SQLDatabase db) throws Exception {
                     long sequence = new GetSequenceCallable(id, rev).call(db);
@@ -855,7 +866,7 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
     public Map<String, ? extends Attachment> attachmentsForRevision(final InternalDocumentRevision rev) throws
             AttachmentException {
         try {
-            return get(queue.submit(new SQLCallable<Map<String, ? extends Attachment>>() {
+            return get(queue.submitReadOnly(new SQLCallable<Map<String, ? extends Attachment>>() {
 
                 @Override
                 public Map<String, ? extends Attachment> call(SQLDatabase db) throws Exception {
@@ -1074,6 +1085,233 @@ public class DatabaseImpl implements Database, com.cloudant.sync.documentstore.a
         }
     }
 
+    @Override
+    public List<DocumentWriteResult> createAll(final List<DocumentRevision> revs)
+            throws AttachmentException, InvalidDocumentException, DocumentStoreException {
+        Misc.checkNotNull(revs, "DocumentRevisions");
+        Misc.checkState(isOpen(), "Datastore is closed");
+
+        List<BatchWrite> writes = new ArrayList<BatchWrite>(revs.size());
+        for (DocumentRevision rev : revs) {
+            Misc.checkNotNull(rev, "DocumentRevision");
+            Misc.checkArgument(rev.getRevision() == null, "Revision ID must be null for new " +
+                    "DocumentRevisions");
+            Misc.checkArgument(rev.isFullRevision(), "Projected revisions cannot be used to " +
+                    "create documents");
+            // create docid if docid is null
+            String docId = rev.getId() == null ? CouchUtils.generateDocumentId() : rev.getId();
+            writes.add(prepareBatchWrite(BatchWriteType.CREATE, rev, docId));
+        }
+        return writeAll(writes, "Failed to create documents");
+    }
+
+    @Override
+    public List<DocumentWriteResult> updateAll(final List<DocumentRevision> revs)
+            throws AttachmentException, InvalidDocumentException, DocumentStoreException {
+        Misc.checkNotNull(revs, "DocumentRevisions");
+        Misc.checkState(isOpen(), "Datastore is closed");
+
+        List<BatchWrite> writes = new ArrayList<BatchWrite>(revs.size());
+        for (DocumentRevision rev : revs) {
+            Misc.checkNotNull(rev, "DocumentRevision");
+            Misc.checkArgument(rev.isFullRevision(), "Projected revisions cannot be used to " +
+                    "create documents");
+            if (rev.getId().startsWith(CouchConstants._local_prefix)) {
+                // create/update of local doc
+                writes.add(prepareBatchWrite(BatchWriteType.CREATE, rev, rev.getId()));
+            } else if (rev.isDeleted()) {
+                writes.add(prepareBatchWrite(BatchWriteType.DELETE, rev, rev.getId()));
+            } else {
+                writes.add(prepareBatchWrite(BatchWriteType.UPDATE, rev, rev.getId()));
+            }
+        }
+        return writeAll(writes, "Failed to update documents");
+    }
+
+    @Override
+    public List<DocumentWriteResult> deleteAll(final List<DocumentRevision> revs)
+            throws DocumentStoreException {
+        Misc.checkNotNull(revs, "DocumentRevisions");
+        Misc.checkState(isOpen(), "Datastore is closed");
+
+        List<BatchWrite> writes = new ArrayList<BatchWrite>(revs.size());
+        for (DocumentRevision rev : revs) {
+            Misc.checkNotNull(rev, "DocumentRevision");
+            try {
+                writes.add(prepareBatchWrite(BatchWriteType.DELETE, rev, rev.getId()));
+            } catch (AttachmentException e) {
+                // deletions don't prepare attachments
+                throw new DocumentStoreException(e);
+            }
+        }
+        return writeAll(writes, "Failed to delete documents");
+    }
+
+    /**
+     * Validates {@code rev} and prepares any new attachments, outside of the transaction which
+     * will write it.
+     */
+    private BatchWrite prepareBatchWrite(BatchWriteType type, DocumentRevision rev, String docId)
+            throws AttachmentException {
+        BatchWrite write = new BatchWrite(type, rev, docId);
+        if (write.isLocal()) {
+            if (type == BatchWriteType.DELETE) {
+                Misc.checkArgument(rev.getRevision() == null, "Local documents must have a null " +
+                        "revision ID");
+            } else {
+                CouchUtils.validateDocumentId(write.localId());
+                Misc.checkNotNull(rev.getBody(), "Input document body");
+            }
+            return write;
+        }
+        CouchUtils.validateDocumentId(docId);
+        if (type == BatchWriteType.DELETE) {
+            Misc.checkNotNullOrEmpty(rev.getRevision(), "Input previous revision id cannot be " +
+                    "empty");
+            return write;
+        }
+        Misc.checkNotNull(rev.getBody(), "Input document body");
+        validateDBBody(rev.getBody());
+
+        // We need to work out which of the attachments for the revision are ones
+        // we can copy over because they exist in the attachment store already and
+        // which are new, that we need to prepare for insertion.
+        Map<String, Attachment> attachments = rev.getAttachments() != null ? rev.getAttachments() : new HashMap<String, Attachment>();
+        write.preparedNewAttachments = AttachmentManager.prepareAttachments(attachmentsDir,
+                attachmentStreamFactory, AttachmentManager.findNewAttachments(attachments));
+        write.existingAttachments = AttachmentManager.findExistingAttachments(attachments);
+        return write;
+    }
+
+    /**
+     * Runs all of {@code writes} in a single transaction, then posts an event for each document
+     * which was written. Conflicts and missing documents are returned as results; any other
+     * error rolls back the transaction.
+     */
+    private List<DocumentWriteResult> writeAll(final List<BatchWrite> writes, String message)
+            throws InvalidDocumentException, DocumentStoreException {
+        if (writes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<DocumentModified> events = new ArrayList<DocumentModified>(writes.size());
+        List<DocumentWriteResult> results;
+        try {
+            results = get(queue.submitTransaction(new SQLCallable<List<DocumentWriteResult>>() {
+                @Override
+                public List<DocumentWriteResult> call(SQLDatabase db) throws Exception {
+                    List<DocumentWriteResult> results = new ArrayList<DocumentWriteResult>(writes
+                            .size());
+                    for (BatchWrite write : writes) {
+                        try {
+                            results.add(write(db, write, events));
+                        } catch (ConflictException e) {
+                            results.add(new DocumentWriteResult(write.rev, e));
+                        } catch (DocumentNotFoundException e) {
+                            results.add(new DocumentWriteResult(write.rev, e));
+                        }
+                    }
+                    return results;
+                }
+            }));
+        } catch (ExecutionException e) {
+            // invalid if eg there are keys starting with _
+            throwCauseAs(e, InvalidDocumentException.class);
+            logger.log(Level.SEVERE, message, e);
+            throw new DocumentStoreException(message, e.getCause());
+        }
+        for (DocumentModified event : events) {
+            eventBus.post(event);
+        }
+        return results;
+    }
+
+    /**
+     * Writes a single document from a batch. This must not change the database before throwing
+     * a {@link ConflictException} or {@link DocumentNotFoundException}, as the rest of the batch
+     * will still be committed.
+     */
+    private DocumentWriteResult write(SQLDatabase db, BatchWrite write,
+                                      List<DocumentModified> events) throws Exception {
+        DocumentRevision rev = write.rev;
+        switch (write.type) {
+            case CREATE:
+                if (write.isLocal()) {
+                    new InsertLocalDocumentCallable(write.localId(), rev.getBody()).call(db);
+                    events.add(new DocumentCreated(rev));
+                    // the input document is returned as-is since there was no doc id or rev id
+                    // to generate
+                    return new DocumentWriteResult(rev, rev);
+                } else {
+                    // Save document with new JSON body, add new attachments and copy over
+                    // existing attachments
+                    InternalDocumentRevision saved = createDocumentBody(db, write.docId, rev
+                            .getBody());
+                    AttachmentManager.addAttachmentsToRevision(db, attachmentsDir, saved,
+                            write.preparedNewAttachments);
+                    AttachmentManager.copyAttachmentsToRevision(db, write.existingAttachments,
+                            saved);
+                    // now re-fetch the revision with updated attachments
+                    InternalDocumentRevision created = new GetDocumentCallable(saved.getId(),
+                            saved.getRevision(), attachmentsDir, attachmentStreamFactory).call(db);
+                    events.add(new DocumentCreated(created));
+                    return new DocumentWriteResult(rev, created);
+                }
+            case UPDATE:
+                InternalDocumentRevision previous = new GetDocumentCallable(rev.getId(), rev
+                        .getRevision(), attachmentsDir, attachmentStreamFactory).call(db);
+                InternalDocumentRevision updated = new UpdateDocumentFromRevisionCallable(rev,
+                        write.preparedNewAttachments, write.existingAttachments,
+                        attachmentsDir, attachmentStreamFactory).call(db);
+                events.add(new DocumentUpdated(previous, updated));
+                return new DocumentWriteResult(rev, updated);
+            case DELETE:
+                if (write.isLocal()) {
+                    new DeleteLocalDocumentCallable(write.localId()).call(db);
+                    events.add(new DocumentDeleted(rev, null));
+                    return new DocumentWriteResult(rev, (DocumentRevision) null);
+                } else {
+                    InternalDocumentRevision deleted = new DeleteDocumentCallable(rev.getId(),
+                            rev.getRevision()).call(db);
+                    events.add(new DocumentDeleted(rev, deleted));
+                    return new DocumentWriteResult(rev, deleted);
+                }
+            default:
+                throw new IllegalStateException("Unknown write type " + write.type);
+        }
+    }
+
+    private enum BatchWriteType {
+        CREATE, UPDATE, DELETE
+    }
+
+    /**
+     * A document from a batch passed to createAll, updateAll or deleteAll, along with the
+     * attachments prepared for it.
+     */
+    private static class BatchWrite {
+
+        private final BatchWriteType type;
+        private final DocumentRevision rev;
+        private final String docId;
+        private Map<String, PreparedAttachment> preparedNewAttachments =
+                Collections.emptyMap();
+        private Map<String, SavedAttachment> existingAttachments = Collections.emptyMap();
+
+        private BatchWrite(BatchWriteType type, DocumentRevision rev, String docId) {
+            this.type = type;
+            this.rev = rev;
+            this.docId = docId;
+        }
+
+        private boolean isLocal() {
+            return docId.startsWith(CouchConstants._local_prefix);
+        }
+
+        private String localId() {
+            return docId.substring(CouchConstants._local_prefix.length());
+        }
+    }
+
     <T> Future<T> runOnDbQueue(SQLCallable<T> callable) {
         return queue.submit(callable);
     }
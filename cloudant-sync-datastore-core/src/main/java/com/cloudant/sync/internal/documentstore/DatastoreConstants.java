@@ -166,4 +166,29 @@ class DatastoreConstants {
         };
     }
 
+    // NB the reference counts added in schema version 201 are populated by the
+    // MigrateDatabase200To201 class
+    public static String[] getSchemaVersion201() {
+        return new String[]{
+                // number of rows in the attachments table which refer to each blob, so that
+                // unreferenced blobs can be found without scanning the attachments table
+                "    ALTER TABLE attachments_key_filename ADD COLUMN refcount INTEGER NOT NULL " +
+                "        DEFAULT 0; ",
+                "    CREATE INDEX attachments_key_filename_refcount ON " +
+                "        attachments_key_filename(refcount); ",
+                "    CREATE INDEX attachments_by_key ON attachments(key); ",
+                // attachments_key_filename keys are the lower case hex of attachments keys
+                "    CREATE TRIGGER attachments_refcount_insert AFTER INSERT ON attachments " +
+                "    BEGIN " +
+                "        UPDATE attachments_key_filename SET refcount = refcount + 1 " +
+                "            WHERE key = lower(hex(NEW.key)); " +
+                "    END; ",
+                "    CREATE TRIGGER attachments_refcount_delete AFTER DELETE ON attachments " +
+                "    BEGIN " +
+                "        UPDATE attachments_key_filename SET refcount = refcount - 1 " +
+                "            WHERE key = lower(hex(OLD.key)); " +
+                "    END; ",
+        };
+    }
+
 }
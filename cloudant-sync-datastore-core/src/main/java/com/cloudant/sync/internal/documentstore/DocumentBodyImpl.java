@@ -23,27 +23,48 @@ import com.cloudant.sync.documentstore.DocumentBody;
 import com.cloudant.sync.internal.util.JSONUtils;
 import com.cloudant.sync.internal.util.Misc;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * <p>
+ * A document body which keeps whichever of its JSON bytes and its map it was created from,
+ * creating the other only when it is first asked for.
+ * </p>
+ * <p>
+ * Bytes from an untrusted source are checked to be a well formed JSON object without being
+ * parsed. Bytes read from the database were checked when they were written, so
+ * {@link #trustedBodyWith(byte[])} skips the check. Either way, the bytes are parsed at most
+ * once, when {@link #asMap()} is first called.
+ * </p>
+ */
 public final class DocumentBodyImpl implements DocumentBody {
 
     private byte[] bytes;
     private Map<String, Object> map;
 
     public DocumentBodyImpl(byte[] bytes) {
+        this(bytes, true);
+    }
+
+    private DocumentBodyImpl(byte[] bytes, boolean validate) {
         // compacted revisions have their bodies set to null, so return an empty body
         if (bytes == null) {
             bytes = JSONUtils.emptyJSONObjectAsBytes();
         }
-        if(JSONUtils.isValidJSON(bytes)) {
+        if(!validate || JSONUtils.isValidJSON(bytes)) {
             this.bytes = bytes;
         } else {
             throw new IllegalArgumentException("Input bytes is not valid json data.");
         }
     }
 
+    @SuppressWarnings("unchecked")
     public DocumentBodyImpl(Map map) {
         // Note uses checkArgument not checkNotNull to keep IllegalArgumentException not NPE
         Misc.checkArgument(map != null, "Document body map must not be null.");
@@ -58,20 +79,34 @@ public final class DocumentBodyImpl implements DocumentBody {
         return new DocumentBodyImpl(bytes);
     }
 
+    /**
+     * Creates a body from JSON bytes which are known to be a valid JSON object, such as those
+     * read back from the database, without checking them.
+     *
+     * @param bytes JSON object bytes, or {@code null} for an empty body
+     * @return the document body
+     */
+    public static DocumentBody trustedBodyWith(byte[] bytes) {
+        return new DocumentBodyImpl(bytes, false);
+    }
+
     public static DocumentBody bodyWith(Map map) {
         return new DocumentBodyImpl(map);
     }
 
     @Override
     public byte[] asBytes() {
-        byte[] jsonCopy = getJsonBytes();
-        return Arrays.copyOf(jsonCopy, jsonCopy.length);
+        byte[] json = getJsonBytes();
+        return Arrays.copyOf(json, json.length);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Returns a map which reads through to this body's map until it is first modified, when
+     * it makes its own shallow copy, so reading the fields of a body doesn't copy them.
+     */
     @Override
     public Map<String, Object> asMap() {
-        return (Map<String,Object>) getMapObject();
+        return new CopyOnWriteMap(getMapObject());
     }
 
     @Override
@@ -85,21 +120,142 @@ public final class DocumentBodyImpl implements DocumentBody {
         }
     }
 
-    private byte[] getJsonBytes() {
+    /**
+     * @return this body's JSON bytes, without copying them, so they must not be modified
+     */
+    public synchronized byte[] getJsonBytes() {
         if(bytes == null) {
             assert map != null;
             bytes = JSONUtils.serializeAsBytes(map);
         }
-        return bytes.clone();
+        return bytes;
     }
 
-    private Map getMapObject() {
+    /**
+     * @return this body's map if it has already been created, otherwise {@code null}. The map
+     * must not be modified.
+     */
+    public synchronized Map<String, Object> getParsedMap() {
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized Map<String, Object> getMapObject() {
         if(map == null) {
             assert bytes != null;
             map = JSONUtils.deserialize(bytes);
         }
+        return map;
+    }
+
+    /**
+     * A map which reads from {@code source} until it is modified, when it copies
+     * {@code source} and modifies the copy instead.
+     */
+    private static final class CopyOnWriteMap extends AbstractMap<String, Object> {
+
+        private Map<String, Object> map;
+        private boolean copied = false;
+
+        CopyOnWriteMap(Map<String, Object> source) {
+            this.map = source;
+        }
+
+        private Map<String, Object> writable() {
+            if (!copied) {
+                map = new HashMap<String, Object>(map);
+                copied = true;
+            }
+            return map;
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
 
-        // Return a shallow copy
-        return new HashMap(map);
+        @Override
+        public boolean containsKey(Object key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return map.containsValue(value);
+        }
+
+        @Override
+        public Object get(Object key) {
+            return map.get(key);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            return writable().put(key, value);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return writable().remove(key);
+        }
+
+        @Override
+        public void clear() {
+            writable().clear();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    if (copied) {
+                        return map.entrySet().iterator();
+                    }
+                    // iterate over the source, making changes to the copy
+                    final Iterator<Entry<String, Object>> it = map.entrySet().iterator();
+                    return new Iterator<Entry<String, Object>>() {
+                        private String current;
+                        private boolean hasCurrent = false;
+
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            Entry<String, Object> entry = it.next();
+                            current = entry.getKey();
+                            hasCurrent = true;
+                            return new SimpleEntry<String, Object>(entry) {
+                                private static final long serialVersionUID =
+                                        1771280476203945282L;
+
+                                @Override
+                                public Object setValue(Object value) {
+                                    super.setValue(value);
+                                    return writable().put(getKey(), value);
+                                }
+                            };
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (!hasCurrent) {
+                                throw new IllegalStateException();
+                            }
+                            writable().remove(current);
+                            hasCurrent = false;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return map.size();
+                }
+            };
+        }
     }
 }
@@ -20,10 +20,12 @@ import com.cloudant.sync.internal.common.CouchConstants;
 import com.cloudant.sync.internal.mazha.CouchClient;
 import com.cloudant.sync.internal.util.JSONUtils;
 
-import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Map;
@@ -86,6 +88,11 @@ public class MultipartAttachmentWriter {
     private static byte crlf[] = "\r\n".getBytes(Charset.forName("UTF-8"));
     private byte contentType[];
 
+    // the separators between the parts, built once and shared by every stream
+    private byte bodyHeader[];
+    private byte attachmentHeader[];
+    private byte trailer[];
+
     private String id;
 
     private long contentLength;
@@ -123,6 +130,10 @@ public class MultipartAttachmentWriter {
             throw new RuntimeException(e);
         }
 
+        this.bodyHeader = concat(partBoundary, crlf, contentType, crlf, crlf);
+        this.attachmentHeader = concat(crlf, partBoundary, crlf, crlf);
+        this.trailer = concat(crlf, trailingBoundary);
+
         attachments = new ArrayList<Attachment>();
 
         // some preamble
@@ -233,83 +244,175 @@ public class MultipartAttachmentWriter {
         return new WriterInputStream();
     }
 
+    /**
+     * Utility to concatenate a number of byte arrays
+     *
+     * @param ins 1 or more byte arrays
+     * @return a byte array containing a concatenation of {@code ins}
+     */
+    private static byte[] concat(byte[]... ins) {
+        int total = 0;
+        for (byte[] in : ins) {
+            total += in.length;
+        }
+        byte[] out = new byte[total];
+        int current = 0;
+        for (byte[] in : ins) {
+            System.arraycopy(in, 0, out, current, in.length);
+            current += in.length;
+        }
+        return out;
+    }
+
     /**
      * Utility class to allow the multipart to be accessed as a stream
      *
      * This class keeps track of the current part of the multipart being written using a basic state
      * machine (see comment in {@link #next()} for details)
+     *
+     * The body and the separators between parts are copied straight out of byte arrays which are
+     * shared between streams. Attachments which are read from a file on disk without any
+     * decoding are read through the file's {@link FileChannel} directly into the caller's
+     * buffer; other attachments are read through their input stream.
      */
     private class WriterInputStream extends InputStream {
         int currentAttachment;
-        InputStream currentStream;
         State state;
 
+        // the source of the part currently being read, one of which is set
+        byte[] currentBytes;
+        int currentBytesPosition;
+        InputStream currentStream;
+        FileChannel currentChannel;
+
+        // for read()
+        private final byte[] single = new byte[1];
+
         public WriterInputStream() {
             state = State.BEGIN;
             currentAttachment = 0;
         }
 
+        @Override
         public int read() throws IOException {
-            byte[] b = new byte[1];
-            int amountRead = this.read(b);
+            int amountRead = this.read(single, 0, 1);
             // read one byte and return its value or -1 if no bytes were read
-            return amountRead == 1 ? b[0] : -1;
+            return amountRead == 1 ? single[0] & 0xff : -1;
         }
 
+        @Override
         public int read(byte b[]) throws IOException {
+            return this.read(b, 0, b.length);
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
 
             if (state == State.BEGIN) {
                 state = State.BODY;
-                byte[] bytes = concat(partBoundary, crlf, contentType, crlf, crlf);
-                currentStream = new ByteArrayInputStream(bytes);
+                setCurrent(bodyHeader);
             }
 
             int amountRead = 0;
-            int howMuch = 0;
 
-            while (currentStream != null) {
+            while (state != State.END || hasCurrent()) {
                 // try to read enough bytes to fill the rest of the bytes array
-                howMuch = b.length - amountRead;
+                int howMuch = len - amountRead;
                 if (howMuch <= 0) {
                     break;
                 }
-                int read = currentStream.read(b, amountRead, howMuch);
+                int read = readCurrent(b, off + amountRead, howMuch);
                 if (read <= 0) {
-                    currentStream.close();
-                    currentStream = this.next();
+                    closeCurrent();
+                    this.next();
                     continue;
                 }
                 amountRead += read;
             }
 
             // signal EOF if we don't have any more
-            int retnum = amountRead > 0 ? amountRead : -1;
-            return retnum;
+            return amountRead > 0 ? amountRead : -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            state = State.END;
+            closeCurrent();
+        }
+
+        private boolean hasCurrent() {
+            return currentBytes != null || currentStream != null || currentChannel != null;
+        }
+
+        private int readCurrent(byte[] b, int off, int len) throws IOException {
+            if (currentBytes != null) {
+                int amount = Math.min(len, currentBytes.length - currentBytesPosition);
+                System.arraycopy(currentBytes, currentBytesPosition, b, off, amount);
+                currentBytesPosition += amount;
+                return amount;
+            } else if (currentChannel != null) {
+                return currentChannel.read(ByteBuffer.wrap(b, off, len));
+            } else if (currentStream != null) {
+                return currentStream.read(b, off, len);
+            } else {
+                return -1;
+            }
+        }
+
+        private void setCurrent(byte[] bytes) {
+            currentBytes = bytes;
+            currentBytesPosition = 0;
+        }
+
+        private void setCurrent(InputStream stream) {
+            if (stream instanceof FileInputStream) {
+                // a plain file on disk, so the bytes can be read straight from the file
+                currentChannel = ((FileInputStream) stream).getChannel();
+            } else {
+                currentStream = stream;
+            }
+        }
+
+        private void closeCurrent() throws IOException {
+            currentBytes = null;
+            try {
+                if (currentChannel != null) {
+                    // closes the FileInputStream too
+                    currentChannel.close();
+                } else if (currentStream != null) {
+                    currentStream.close();
+                }
+            } finally {
+                currentChannel = null;
+                currentStream = null;
+            }
         }
 
         /**
-         * Get the next input stream for the current part of the multipart (body / boundary /
-         * attachment / trailing boundary)
+         * Move on to the next part of the multipart (body / boundary / attachment / trailing
+         * boundary)
          *
          * Advance the current state as follows:
          * BEGIN -> BODY -> (BOUNDARY -> ATTACHMENT)+ -> TRAILING_BOUNDARY -> END
          * (where ()+ represents a repeating group of 1..n attachments)
          *
-         * After the state reaches END, return null
-         *
-         * @return The next input stream for the current part of the multipart, or null
+         * After the state reaches END, there is nothing left to read
          */
-        private InputStream next() throws IOException {
-            InputStream nextStream;
+        private void next() throws IOException {
             if (state == State.BODY) {
                 // next state
                 state = State.BOUNDARY;
-                nextStream = new ByteArrayInputStream(bodyBytes);
+                setCurrent(bodyBytes);
             } else if (state == State.BOUNDARY) {
                 // next state
                 state = State.ATTACHMENT;
-                byte[] bytes = concat(crlf, partBoundary, crlf, crlf);
-                nextStream = new ByteArrayInputStream(bytes);
+                setCurrent(attachmentHeader);
             } else if (state == State.ATTACHMENT) {
                 // next state
                 if (currentAttachment == attachments.size() -1) {
@@ -319,38 +422,14 @@ public class MultipartAttachmentWriter {
                     // next attachment
                     state = State.BOUNDARY;
                 }
-                nextStream = attachments.get(currentAttachment++).getInputStream();
+                setCurrent(attachments.get(currentAttachment++).getInputStream());
             } else if (state == State.TRAILING_BOUNDARY) {
                 // next state
                 state = State.END;
-                byte[] bytes = concat(crlf, trailingBoundary);
-                nextStream = new ByteArrayInputStream(bytes);
-            } else if (state == State.END) {
-                nextStream = null;
-            } else {
+                setCurrent(trailer);
+            } else if (state != State.END) {
                 throw new RuntimeException("Unknown state");
             }
-            return nextStream;
-        }
-
-        /**
-         * Utility to concatenate a number of byte arrays
-         *
-         * @param ins 1 or more byte arrays
-         * @return a byte array containing a concatenation of {@code ins}
-         */
-        private byte[] concat(byte[]... ins) {
-            int total = 0;
-            for (byte[] in : ins) {
-                total += in.length;
-            }
-            byte[] out = new byte[total];
-            int current = 0;
-            for (byte[] in : ins) {
-                System.arraycopy(in, 0, out, current, in.length);
-                current += in.length;
-            }
-            return out;
         }
 
     }
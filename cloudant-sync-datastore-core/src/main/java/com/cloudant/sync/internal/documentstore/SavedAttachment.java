@@ -79,6 +79,11 @@ public class SavedAttachment extends Attachment {
         return this.attachmentStreamFactory.getInputStream(file, encoding);
     }
 
+    @Override
+    public InputStream getInputStream(long offset, long length) throws IOException {
+        return this.attachmentStreamFactory.getInputStream(file, encoding, offset, length);
+    }
+
     public boolean isLarge() {
         return this.onDiskLength() > largeSizeBytes;
     }
@@ -78,6 +78,7 @@ public class DeleteDocumentCallable implements SQLCallable<InternalDocumentRevis
             String leafQuery = "SELECT " + CallableSQLConstants.METADATA_COLS + " FROM revs, docs WHERE " +
                     "docs.docid=? AND revs.doc_id=docs.doc_id AND revid=? AND revs.sequence NOT " +
                     "IN (SELECT DISTINCT parent FROM revs revs_inner WHERE parent NOT NULL AND revs_inner.doc_id=docs.doc_id) ";
+            DatabaseUtils.closeCursorQuietly(c);
             c = db.rawQuery(leafQuery, new String[]{docId, prevRevId});
             boolean isLeaf = c.moveToFirst();
             if (!isLeaf) {
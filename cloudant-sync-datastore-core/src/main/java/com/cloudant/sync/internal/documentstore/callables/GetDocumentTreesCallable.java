@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.documentstore.callables;
+
+import com.cloudant.sync.documentstore.Attachment;
+import com.cloudant.sync.documentstore.AttachmentException;
+import com.cloudant.sync.documentstore.DocumentStoreException;
+import com.cloudant.sync.internal.documentstore.AttachmentManager;
+import com.cloudant.sync.internal.documentstore.AttachmentStreamFactory;
+import com.cloudant.sync.internal.documentstore.DatabaseImpl;
+import com.cloudant.sync.internal.documentstore.DocumentRevisionTree;
+import com.cloudant.sync.internal.documentstore.InternalDocumentRevision;
+import com.cloudant.sync.internal.documentstore.helpers.GetFullRevisionFromCurrentCursor;
+import com.cloudant.sync.internal.sqlite.Cursor;
+import com.cloudant.sync.internal.sqlite.SQLCallable;
+import com.cloudant.sync.internal.sqlite.SQLDatabase;
+import com.cloudant.sync.internal.util.CollectionUtils;
+import com.cloudant.sync.internal.util.DatabaseUtils;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Get all Revisions for a set of Document IDs, in the form of a {@code DocumentRevisionTree} for
+ * each Document ID.
+ * </p>
+ * <p>
+ * Unlike {@link GetAllRevisionsOfDocumentCallable}, only the leaf revisions of each tree have
+ * their attachments loaded, which is all that is needed to push the open revisions of the
+ * documents. The revisions and attachments are read with two queries for each batch of up to
+ * {@link DatabaseImpl#SQLITE_QUERY_PLACEHOLDERS_LIMIT} documents.
+ * </p>
+ *
+ * @see DocumentRevisionTree
+ */
+public class GetDocumentTreesCallable implements SQLCallable<Map<String, DocumentRevisionTree>> {
+
+    private static final String GET_LEAF_ATTACHMENTS = "SELECT attachments.sequence AS sequence, " +
+            "filename, key, type, encoding, length, encoded_length, revpos " +
+            "FROM attachments, revs, docs WHERE docs.docid IN ( %s ) " +
+            "AND revs.doc_id = docs.doc_id AND attachments.sequence = revs.sequence " +
+            "AND NOT EXISTS (SELECT 1 FROM revs children WHERE children.parent = revs.sequence)";
+
+    private static final String GET_REVISIONS = "SELECT " + CallableSQLConstants
+            .FULL_DOCUMENT_COLS + " FROM revs, docs WHERE docs.docid IN ( %s ) " +
+            "AND revs.doc_id = docs.doc_id ORDER BY sequence ASC";
+
+    private static final Logger logger = Logger.getLogger(DatabaseImpl.class.getCanonicalName());
+
+    private final List<String> docIds;
+    private final String attachmentsDir;
+    private final AttachmentStreamFactory attachmentStreamFactory;
+
+    /**
+     * @param docIds                  The Document IDs to get the trees for
+     * @param attachmentsDir          Location of attachments
+     * @param attachmentStreamFactory Factory to manage access to attachment streams
+     */
+    public GetDocumentTreesCallable(List<String> docIds, String attachmentsDir,
+                                    AttachmentStreamFactory attachmentStreamFactory) {
+        // remove duplicates, which would waste placeholders
+        this.docIds = new ArrayList<String>(new LinkedHashSet<String>(docIds));
+        this.attachmentsDir = attachmentsDir;
+        this.attachmentStreamFactory = attachmentStreamFactory;
+    }
+
+    /**
+     * @return map of Document ID to its tree, with an empty tree for Document IDs which aren't in
+     * the database
+     */
+    @Override
+    public Map<String, DocumentRevisionTree> call(SQLDatabase db) throws DocumentStoreException,
+            AttachmentException {
+        Map<String, DocumentRevisionTree> trees = new HashMap<String, DocumentRevisionTree>();
+        for (String docId : docIds) {
+            trees.put(docId, new DocumentRevisionTree());
+        }
+
+        for (List<String> batch : CollectionUtils.partition(docIds,
+                DatabaseImpl.SQLITE_QUERY_PLACEHOLDERS_LIMIT)) {
+            String[] args = batch.toArray(new String[batch.size()]);
+            String placeholders = DatabaseUtils.makePlaceholders(batch.size());
+            Map<Long, Map<String, Attachment>> attachments = getLeafAttachments(db,
+                    String.format(GET_LEAF_ATTACHMENTS, placeholders), args);
+
+            Cursor cursor = null;
+            try {
+                cursor = db.rawQuery(String.format(GET_REVISIONS, placeholders), args);
+                while (cursor.moveToNext()) {
+                    Map<String, Attachment> atts = attachments.get(cursor.getLong(3));
+                    InternalDocumentRevision rev = GetFullRevisionFromCurrentCursor.get(cursor,
+                            atts != null ? atts : Collections.<String, Attachment>emptyMap());
+                    trees.get(rev.getId()).add(rev);
+                }
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "Error getting all revisions of documents", e);
+                throw new DocumentStoreException("Failed to get revision trees for documents", e);
+            } finally {
+                DatabaseUtils.closeCursorQuietly(cursor);
+            }
+        }
+        return trees;
+    }
+
+    private Map<Long, Map<String, Attachment>> getLeafAttachments(SQLDatabase db, String sql,
+                                                                  String[] args)
+            throws AttachmentException {
+        Map<Long, Map<String, Attachment>> attachments = new HashMap<Long, Map<String,
+                Attachment>>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, args);
+            while (cursor.moveToNext()) {
+                long sequence = cursor.getLong(0);
+                String filename = cursor.getString(1);
+                Map<String, Attachment> atts = attachments.get(sequence);
+                if (atts == null) {
+                    atts = new HashMap<String, Attachment>();
+                    attachments.put(sequence, atts);
+                }
+                atts.put(filename, AttachmentManager.savedAttachmentFromCursor(db, cursor,
+                        attachmentsDir, attachmentStreamFactory));
+            }
+            return attachments;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to get attachments", e);
+            throw new AttachmentException(e);
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+    }
+}
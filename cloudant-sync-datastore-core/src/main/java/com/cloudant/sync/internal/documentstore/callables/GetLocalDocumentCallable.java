@@ -15,8 +15,8 @@
 package com.cloudant.sync.internal.documentstore.callables;
 
 import com.cloudant.sync.internal.documentstore.DatabaseImpl;
+import com.cloudant.sync.internal.documentstore.DocumentBodyImpl;
 import com.cloudant.sync.documentstore.DocumentStoreException;
-import com.cloudant.sync.documentstore.DocumentBodyFactory;
 import com.cloudant.sync.documentstore.DocumentNotFoundException;
 import com.cloudant.sync.documentstore.LocalDocument;
 import com.cloudant.sync.internal.sqlite.Cursor;
@@ -53,7 +53,7 @@ public class GetLocalDocumentCallable implements SQLCallable<LocalDocument> {
             if (cursor.moveToFirst()) {
                 byte[] json = cursor.getBlob(0);
 
-                return new LocalDocument(docId, DocumentBodyFactory.create(json));
+                return new LocalDocument(docId, DocumentBodyImpl.trustedBodyWith(json));
             } else {
                 throw new DocumentNotFoundException(String.format("No local document found with " +
                         "id: %s", docId));
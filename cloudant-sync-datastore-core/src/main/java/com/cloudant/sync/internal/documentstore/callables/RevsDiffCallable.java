@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2016, 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.documentstore.callables;
+
+import com.cloudant.sync.documentstore.DocumentStoreException;
+import com.cloudant.sync.internal.common.ValueListMap;
+import com.cloudant.sync.internal.documentstore.DatabaseImpl;
+import com.cloudant.sync.internal.sqlite.Cursor;
+import com.cloudant.sync.internal.sqlite.SQLCallable;
+import com.cloudant.sync.internal.sqlite.SQLDatabase;
+import com.cloudant.sync.internal.util.CollectionUtils;
+import com.cloudant.sync.internal.util.DatabaseUtils;
+import com.cloudant.sync.internal.util.Misc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Checks the supplied revisions for each document ID and returns only those entries that are
+ * missing from the database.
+ * </p>
+ * <p>
+ * Many documents are checked in each query: the document IDs and revision IDs are packed into
+ * batches which don't exceed {@link DatabaseImpl#SQLITE_QUERY_PLACEHOLDERS_LIMIT} placeholders
+ * between them, and the (document ID, revision ID) pairs returned are matched against the input
+ * to discard any which weren't asked for.
+ * </p>
+ */
+public class RevsDiffCallable implements SQLCallable<Map<String, List<String>>> {
+
+    private final Map<String, List<String>> revisions;
+    private final int placeholdersLimit;
+
+    /**
+     * @param revisions map of doc ID to the rev IDs to check
+     */
+    public RevsDiffCallable(Map<String, List<String>> revisions) {
+        this(revisions, DatabaseImpl.SQLITE_QUERY_PLACEHOLDERS_LIMIT);
+    }
+
+    /**
+     * @param revisions         map of doc ID to the rev IDs to check
+     * @param placeholdersLimit the most placeholders to use in each query, at least 2
+     */
+    public RevsDiffCallable(Map<String, List<String>> revisions, int placeholdersLimit) {
+        Misc.checkArgument(!revisions.isEmpty(), "revisions cannot be empty");
+        Misc.checkArgument(placeholdersLimit >= 2, "placeholdersLimit must be at least 2");
+        this.revisions = revisions;
+        this.placeholdersLimit = placeholdersLimit;
+    }
+
+    /**
+     * @return map of doc ID to the rev IDs not present in the database, with no entry for
+     * documents which have all of their revisions
+     */
+    @Override
+    public Map<String, List<String>> call(SQLDatabase db) throws Exception {
+        // Consider all missing to start
+        Map<String, Set<String>> missingRevs = new HashMap<String, Set<String>>(revisions.size());
+        for (Map.Entry<String, List<String>> entry : revisions.entrySet()) {
+            missingRevs.put(entry.getKey(), new LinkedHashSet<String>(entry.getValue()));
+        }
+
+        Set<String> docIds = new LinkedHashSet<String>();
+        Set<String> revIds = new LinkedHashSet<String>();
+        for (Map.Entry<String, Set<String>> entry : missingRevs.entrySet()) {
+            String docId = entry.getKey();
+            // The doc ID will use one placeholder, so a single document can use at most
+            // limit - 1 for its revs.
+            for (List<String> revsBatch : CollectionUtils.partition(new ArrayList<String>(entry
+                    .getValue()), placeholdersLimit - 1)) {
+                int placeholders = docIds.contains(docId) ? 0 : 1;
+                for (String revId : revsBatch) {
+                    if (!revIds.contains(revId)) {
+                        placeholders++;
+                    }
+                }
+                if (docIds.size() + revIds.size() + placeholders > placeholdersLimit) {
+                    removeExistingRevs(db, docIds, revIds, missingRevs);
+                    docIds.clear();
+                    revIds.clear();
+                }
+                docIds.add(docId);
+                revIds.addAll(revsBatch);
+            }
+        }
+        if (!docIds.isEmpty()) {
+            removeExistingRevs(db, docIds, revIds, missingRevs);
+        }
+
+        ValueListMap<String, String> result = new ValueListMap<String, String>();
+        for (Map.Entry<String, Set<String>> entry : missingRevs.entrySet()) {
+            result.addValuesToKey(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Removes the revisions from {@code missingRevs} which exist in the database, out of those
+     * with a doc ID in {@code docIds} and a rev ID in {@code revIds}.
+     */
+    private static void removeExistingRevs(SQLDatabase db, Set<String> docIds, Set<String>
+            revIds, Map<String, Set<String>> missingRevs) throws DocumentStoreException {
+        final String sql = String.format(
+                "SELECT docs.docid, revs.revid FROM docs, revs " +
+                        "WHERE docs.doc_id = revs.doc_id AND docs.docid IN (%s) " +
+                        "AND revs.revid IN (%s) ",
+                DatabaseUtils.makePlaceholders(docIds.size()),
+                DatabaseUtils.makePlaceholders(revIds.size()));
+
+        List<String> args = new ArrayList<String>(docIds.size() + revIds.size());
+        args.addAll(docIds);
+        args.addAll(revIds);
+
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, args.toArray(new String[args.size()]));
+            while (cursor.moveToNext()) {
+                // The query can return revs which were only asked for on a different doc ID,
+                // but those won't be in this doc's set so removing them is harmless.
+                Set<String> missing = missingRevs.get(cursor.getString(0));
+                if (missing != null) {
+                    missing.remove(cursor.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DocumentStoreException(e);
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.documentstore.encryption;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * <p>Decrypts the chunks written by {@link ChunkedCipherOutputStream}, one chunk at a time.</p>
+ *
+ * <p>The header is read by {@link EncryptedAttachmentInputStream}.</p>
+ */
+class ChunkedCipherInputStream extends InputStream {
+
+    private static final int BLOCK_SIZE = EncryptionConstants.AES_BLOCK_SIZE;
+
+    private final InputStream in;
+    private final Cipher cipher;
+    private final Key key;
+
+    private final byte[] iv = new byte[BLOCK_SIZE];
+    // a full chunk of plain text is padded with one extra block
+    private final byte[] cipherText;
+    private byte[] plainText = new byte[0];
+    private int position = 0;
+    private boolean eof = false;
+
+    /**
+     * @param in        the stream to read the chunks from, positioned after the header
+     * @param cipher    an AES CBC cipher, which will be initialised for each chunk
+     * @param key       the encryption key
+     * @param chunkSize the number of bytes of plain text in each chunk
+     * @param file      if {@code offset} is more than zero, the file {@code in} reads from,
+     *                  whose channel is moved to the start of the chunk containing the offset
+     * @param offset    the number of bytes of plain text to skip
+     * @throws IOException on I/O exceptions
+     */
+    ChunkedCipherInputStream(InputStream in, Cipher cipher, Key key, int chunkSize,
+                             FileInputStream file, long offset) throws IOException {
+        this.in = in;
+        this.cipher = cipher;
+        this.key = key;
+        this.cipherText = new byte[chunkSize + BLOCK_SIZE];
+        if (offset > 0) {
+            long chunkLength = BLOCK_SIZE + cipherText.length;
+            file.getChannel().position(file.getChannel().position() +
+                    (offset / chunkSize) * chunkLength);
+            if (nextChunk()) {
+                position = (int) Math.min(offset % chunkSize, plainText.length);
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == plainText.length && !nextChunk()) {
+            return -1;
+        }
+        return plainText[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == plainText.length && !nextChunk()) {
+            return -1;
+        }
+        int n = Math.min(len, plainText.length - position);
+        System.arraycopy(plainText, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return plainText.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads and decrypts the next chunk, skipping any empty chunks.
+     *
+     * @return false if there are no more chunks
+     */
+    private boolean nextChunk() throws IOException {
+        while (!eof) {
+            int read = readFully(iv);
+            if (read == 0) {
+                eof = true;
+                break;
+            }
+            if (read != iv.length) {
+                throw new IOException("Could not read initialisation vector of attachment chunk.");
+            }
+            read = readFully(cipherText);
+            if (read == 0 || read % BLOCK_SIZE != 0) {
+                throw new IOException("Attachment chunk is truncated.");
+            }
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+                plainText = cipher.doFinal(cipherText, 0, read);
+            } catch (InvalidKeyException ex) {
+                // Should not happen, the key was checked when the stream was created
+                throw new RuntimeException("Couldn't initialise crypto engine", ex);
+            } catch (InvalidAlgorithmParameterException ex) {
+                // Should not happen, 16 byte IV for AES is correct
+                throw new RuntimeException("Couldn't initialise crypto engine", ex);
+            } catch (GeneralSecurityException ex) {
+                // Bad padding, most likely because the key is wrong
+                throw new IOException("Could not decrypt attachment chunk; check encryption key.",
+                        ex);
+            }
+            position = 0;
+            if (plainText.length > 0) {
+                return true;
+            }
+        }
+        plainText = new byte[0];
+        position = 0;
+        return false;
+    }
+
+    private int readFully(byte[] b) throws IOException {
+        int total = 0;
+        while (total < b.length) {
+            int read = in.read(b, total, b.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.documentstore.encryption;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * <p>Encrypts the bytes written to it in chunks of a fixed number of bytes of plain text, each
+ * encrypted separately using AES CBC with a new random IV. Each chunk is written as:</p>
+ *
+ * <pre>
+ * 16-byte: initialisation vector
+ * AES CBC Encrypted chunk content, with PKCS5 padding.
+ * </pre>
+ *
+ * <p>As the chunk size is a multiple of the block size, padding adds a whole block to every
+ * full chunk, so every chunk but the last takes up exactly {@code chunkSize + 32} bytes and
+ * a chunk can be found from its index without reading the chunks before it.</p>
+ *
+ * <p>The header is written by {@link EncryptedAttachmentOutputStream}.</p>
+ *
+ * @see ChunkedCipherInputStream
+ */
+class ChunkedCipherOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final Cipher cipher;
+    private final Key key;
+    private final SecureRandom random = new SecureRandom();
+
+    private final byte[] chunk;
+    private final byte[] iv = new byte[EncryptionConstants.AES_BLOCK_SIZE];
+    private int count = 0;
+    private boolean closed = false;
+
+    /**
+     * @param out       the stream to write the encrypted chunks to
+     * @param cipher    an AES CBC cipher, which will be initialised for each chunk
+     * @param key       the encryption key
+     * @param chunkSize the number of bytes of plain text in each chunk
+     */
+    ChunkedCipherOutputStream(OutputStream out, Cipher cipher, Key key, int chunkSize) {
+        this.out = out;
+        this.cipher = cipher;
+        this.key = key;
+        this.chunk = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        chunk[count++] = (byte) b;
+        if (count == chunk.length) {
+            writeChunk();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, chunk.length - count);
+            System.arraycopy(b, off, chunk, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == chunk.length) {
+                writeChunk();
+            }
+        }
+    }
+
+    /**
+     * Flushes the chunks which have been encrypted so far. The plain text of an incomplete
+     * chunk is not written until the chunk is filled or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (count > 0) {
+                writeChunk();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        random.nextBytes(iv);
+        byte[] cipherText;
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+            cipherText = cipher.doFinal(chunk, 0, count);
+        } catch (GeneralSecurityException ex) {
+            // The key was checked when the stream was created and the IV is the right size,
+            // so wrap in a RuntimeException
+            throw new RuntimeException("Couldn't encrypt attachment chunk", ex);
+        }
+        out.write(iv);
+        out.write(cipherText);
+        count = 0;
+    }
+}
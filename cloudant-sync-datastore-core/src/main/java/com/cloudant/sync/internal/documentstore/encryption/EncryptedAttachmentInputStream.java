@@ -14,9 +14,11 @@
 
 package com.cloudant.sync.internal.documentstore.encryption;
 
+import java.io.FileInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -33,7 +35,8 @@ import javax.crypto.spec.SecretKeySpec;
  * <p>An EncryptedAttachmentInputStream handles reading AES encrypted data from disk,
  * first reading the attachment file's header to determine the IV and checking the
  * on-disk version is readable.
- * A CipherInputStream is used to decrypt the data read via read() methods.</p>
+ * A CipherInputStream is used to decrypt version 1 data read via read() methods, and a
+ * ChunkedCipherInputStream version 2 data.</p>
  *
  * <p>This class adheres strictly to the semantics, especially the failure semantics, of its
  * ancestor classes java.io.FilterInputStream and java.io.InputStream. This class has exactly
@@ -58,10 +61,25 @@ import javax.crypto.spec.SecretKeySpec;
  * Body:
  * AES CBC Encrypted file content.
  * </pre>
+ *
+ * <p>or:</p>
+ *
+ * <pre>
+ * Header:
+ * 1-byte : version number, 2
+ * 4-byte : chunk size, the number of bytes of plain text in each chunk
+ *
+ * Body:
+ * Chunks, each with a 16-byte initialisation vector followed by AES CBC Encrypted chunk
+ * content, see ChunkedCipherOutputStream.
+ * </pre>
  */
 public class EncryptedAttachmentInputStream extends FilterInputStream {
 
-    private final CipherInputStream cipherInputStream;
+    private static final int IV_LENGTH = 16;
+    private static final int HEADER_LENGTH = 1 + IV_LENGTH;
+
+    private final InputStream cipherInputStream;
 
     /**
      * <p>Creates an input stream without specifying a key.</p>
@@ -94,9 +112,44 @@ public class EncryptedAttachmentInputStream extends FilterInputStream {
      */
     public EncryptedAttachmentInputStream(InputStream in, byte[] key)
             throws InvalidKeyException, IOException {
+        this(in, key, null, 0);
+    }
+
+    /**
+     * <p>Creates an input stream with a key which starts reading the plain text
+     * {@code offset} bytes in.</p>
+     *
+     * <p>For version 1 files, each block of the AES CBC cipher text is decrypted using the
+     * block before it as its IV, so only the header and the block before the one containing
+     * the offset are read before decrypting from the offset, rather than all of the preceding
+     * cipher text. For version 2 files, only the chunk containing the offset is read.</p>
+     *
+     * <p>This constructor moves the position of the file's channel in order to read the
+     * header and seek to the offset.</p>
+     *
+     * @param in the file input stream, which must support positioning its channel.
+     * @param key the encryption key to use. Length must be supported by underlying
+     *            JCE implementation.
+     * @param offset the number of bytes of plain text to skip.
+     *
+     * @throws InvalidKeyException if key is wrong size
+     * @throws IOException on I/O exceptions
+     */
+    public EncryptedAttachmentInputStream(FileInputStream in, byte[] key, long offset)
+            throws InvalidKeyException, IOException {
+        this(in, key, in, offset);
+    }
+
+    private EncryptedAttachmentInputStream(InputStream in, byte[] key, FileInputStream file,
+                                           long offset)
+            throws InvalidKeyException, IOException {
 
         super(in);
 
+        if (file != null) {
+            file.getChannel().position(0);
+        }
+
         Cipher c;
 
         // Don't change under our feet
@@ -122,20 +175,66 @@ public class EncryptedAttachmentInputStream extends FilterInputStream {
                 throw new IOException("Unsupported on-disk version for attachment decryption.");
             }
 
+            SecretKeySpec keySpec = new SecretKeySpec(keyCopy,
+                    EncryptionConstants.KEY_ALGORITHM);
+            c = Cipher.getInstance(EncryptionConstants.CIPHER);
+
+            if (version[0] == EncryptionConstants.ATTACHMENT_DISK_VERSION_CHUNKED_CBC) {
+                // Read chunk size - 4-bytes
+                byte[] chunkSizeBuffer = new byte[4];
+                read = readFully(in, chunkSizeBuffer);
+                if (read != 4) {
+                    throw new IOException("Could not read chunk size from file header.");
+                }
+                int chunkSize = ByteBuffer.wrap(chunkSizeBuffer).getInt();
+                if (chunkSize <= 0 || chunkSize % IV_LENGTH != 0 ||
+                        chunkSize > EncryptionConstants.MAX_ATTACHMENT_CHUNK_SIZE) {
+                    throw new IOException("Invalid chunk size in file header.");
+                }
+
+                // Decrypt chunks - rest of file
+                cipherInputStream = new ChunkedCipherInputStream(in, c, keySpec, chunkSize,
+                        file, offset);
+                return;
+            }
+
             // Read IV - 16-bytes
-            byte[] ivBuffer = new byte[16];
-            read = in.read(ivBuffer);
-            if (read != 16) {
+            byte[] ivBuffer = new byte[IV_LENGTH];
+            read = readFully(in, ivBuffer);
+            if (read != IV_LENGTH) {
                 throw new IOException("Could not read initialisation vector from file header.");
             }
 
+            long block = offset / IV_LENGTH;
+            long blockPosition = HEADER_LENGTH + block * IV_LENGTH;
+            if (block > 0 && blockPosition >= file.getChannel().size()) {
+                // The offset is beyond the end of the cipher text, so nothing will be read and
+                // the IV doesn't matter.
+                file.getChannel().position(file.getChannel().size());
+            } else if (block > 0) {
+                // The IV for a block is the cipher text of the block before it.
+                file.getChannel().position(blockPosition - IV_LENGTH);
+                if (readFully(in, ivBuffer) != IV_LENGTH) {
+                    throw new IOException("Could not read initialisation vector for offset.");
+                }
+                file.getChannel().position(blockPosition);
+            }
+
             // Decrypt cipher text - rest of file
-            c = Cipher.getInstance(EncryptionConstants.CIPHER);
-            c.init(Cipher.DECRYPT_MODE,
-                    new SecretKeySpec(keyCopy, EncryptionConstants.KEY_ALGORITHM),
-                    new IvParameterSpec(ivBuffer));
+            c.init(Cipher.DECRYPT_MODE, keySpec, new IvParameterSpec(ivBuffer));
             cipherInputStream = new CipherInputStream(in, c);
 
+            // Discard the plain text between the start of the block and the offset
+            long remaining = offset % IV_LENGTH;
+            byte[] discard = new byte[IV_LENGTH];
+            while (remaining > 0) {
+                read = cipherInputStream.read(discard, 0, (int) remaining);
+                if (read < 0) {
+                    break;
+                }
+                remaining -= read;
+            }
+
         } catch (NoSuchPaddingException ex) {
             // Should not happen, padding should be supported by every JCE, so wrap in RuntimeEx
             throw new RuntimeException("Couldn't initialise crypto engine", ex);
@@ -258,4 +357,15 @@ public class EncryptedAttachmentInputStream extends FilterInputStream {
         return cipherInputStream.markSupported();
     }
 
+    private static int readFully(InputStream in, byte[] b) throws IOException {
+        int total = 0;
+        while (total < b.length) {
+            int read = in.read(b, total, b.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
 }
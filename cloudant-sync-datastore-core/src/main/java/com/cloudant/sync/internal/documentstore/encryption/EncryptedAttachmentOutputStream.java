@@ -16,6 +16,7 @@ package com.cloudant.sync.internal.documentstore.encryption;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -31,7 +32,8 @@ import javax.crypto.spec.SecretKeySpec;
 /**
  * <p>An EncryptedAttachmentOutputStream handles writing AES encrypted data to disk,
  * combining the encrypted data with a header specifying the IV used during encryption.
- * A CipherOutputStream is used to encrypt the data sent via write() methods.</p>
+ * A CipherOutputStream is used to encrypt the data sent via write() methods for version 1,
+ * and a ChunkedCipherOutputStream for version 2.</p>
  *
  * <p>This class adheres strictly to the semantics, especially the failure semantics,
  * of its ancestor classes java.io.OutputStream and java.io.FilterOutputStream. This class
@@ -55,10 +57,22 @@ import javax.crypto.spec.SecretKeySpec;
  * Body:
  * AES CBC Encrypted file content.
  * </pre>
+ *
+ * <p>or:</p>
+ *
+ * <pre>
+ * Header:
+ * 1-byte : version number, 2
+ * 4-byte : chunk size, the number of bytes of plain text in each chunk
+ *
+ * Body:
+ * Chunks, each with a 16-byte initialisation vector followed by AES CBC Encrypted chunk
+ * content, see ChunkedCipherOutputStream.
+ * </pre>
  */
 public class EncryptedAttachmentOutputStream extends java.io.FilterOutputStream {
 
-    private final CipherOutputStream cipherOutputStream;
+    private final OutputStream cipherOutputStream;
 
     /**
      * <p>Creates an output stream without specifying a key or iv.</p>
@@ -106,7 +120,7 @@ public class EncryptedAttachmentOutputStream extends java.io.FilterOutputStream
                     new IvParameterSpec(ivCopy));
 
             // Write header
-            out.write(new byte[]{EncryptionConstants.ATTACHMENT_DISK_VERSION});
+            out.write(new byte[]{EncryptionConstants.ATTACHMENT_DISK_VERSION_CBC});
             out.write(ivCopy);
 
             // Ready to write the encrypted body
@@ -121,6 +135,69 @@ public class EncryptedAttachmentOutputStream extends java.io.FilterOutputStream
         }
     }
 
+    /**
+     * <p>Creates an output stream with a key which writes the version 2 format, encrypting
+     * each chunk of {@code chunkSize} bytes separately with a new random IV.</p>
+     *
+     * <p>Each chunk can be decrypted without reading the chunks before it, so large attachments
+     * can be read from part way through and chunks can be decrypted independently.</p>
+     *
+     * <p>This constructor writes bytes to the out parameter in order to write the header.</p>
+     *
+     * @param out the output stream object.
+     * @param key the encryption key to use. Length must be supported by underlying
+     *            JCE implementation.
+     * @param chunkSize the number of bytes of plain text in each chunk, which must be a
+     *                  positive multiple of the AES block size no larger than
+     *                  {@link EncryptionConstants#MAX_ATTACHMENT_CHUNK_SIZE}.
+     *
+     * @throws InvalidKeyException if key is wrong size
+     * @throws IOException on I/O exceptions
+     * @see EncryptionConstants#ATTACHMENT_CHUNK_SIZE
+     */
+    public EncryptedAttachmentOutputStream(OutputStream out, byte[] key, int chunkSize)
+            throws InvalidKeyException, IOException {
+        super(out);
+
+        if (chunkSize <= 0 || chunkSize % EncryptionConstants.AES_BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Chunk size must be a positive multiple of " +
+                    EncryptionConstants.AES_BLOCK_SIZE);
+        }
+        if (chunkSize > EncryptionConstants.MAX_ATTACHMENT_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be no larger than " +
+                    EncryptionConstants.MAX_ATTACHMENT_CHUNK_SIZE);
+        }
+
+        // Don't change under our feet
+        SecretKeySpec keySpec = new SecretKeySpec(Arrays.copyOf(key, key.length),
+                EncryptionConstants.KEY_ALGORITHM);
+
+        try {
+
+            // Be sure Cipher is valid with passed parameters before writing anything
+            Cipher c = Cipher.getInstance(EncryptionConstants.CIPHER);
+            c.init(Cipher.ENCRYPT_MODE, keySpec,
+                    new IvParameterSpec(new byte[EncryptionConstants.AES_BLOCK_SIZE]));
+
+            // Write header
+            out.write(new byte[]{EncryptionConstants.ATTACHMENT_DISK_VERSION_CHUNKED_CBC});
+            out.write(ByteBuffer.allocate(4).putInt(chunkSize).array());
+
+            // Ready to write the encrypted chunks
+            cipherOutputStream = new ChunkedCipherOutputStream(out, c, keySpec, chunkSize);
+
+        } catch (NoSuchPaddingException ex) {
+            // Should not happen, padding should be supported by every JCE, so wrap in RuntimeEx
+            throw new RuntimeException("Couldn't initialise crypto engine", ex);
+        } catch (NoSuchAlgorithmException ex) {
+            // Should not happen, AES should be supported by every JCE, so wrap in RuntimeException
+            throw new RuntimeException("Couldn't initialise crypto engine", ex);
+        } catch (InvalidAlgorithmParameterException ex) {
+            // Should not happen, 16 byte IV for AES is correct, so wrap in RuntimeEx
+            throw new RuntimeException("Couldn't initialise crypto engine", ex);
+        }
+    }
+
     @Override
     /**
      * <p>Closes this output stream and releases any system resources associated with this
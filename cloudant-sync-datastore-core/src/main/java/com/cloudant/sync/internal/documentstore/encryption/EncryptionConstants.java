@@ -21,6 +21,38 @@ public class EncryptionConstants {
 
     public static final String CIPHER = "AES/CBC/PKCS5Padding";
     public static final String KEY_ALGORITHM = "AES";
-    public static final byte ATTACHMENT_DISK_VERSION = 1;
+
+    /**
+     * On-disk version of attachments encrypted as a single AES CBC stream.
+     */
+    public static final byte ATTACHMENT_DISK_VERSION_CBC = 1;
+
+    /**
+     * On-disk version of attachments encrypted as a sequence of independently encrypted AES
+     * CBC chunks, each with its own IV.
+     */
+    public static final byte ATTACHMENT_DISK_VERSION_CHUNKED_CBC = 2;
+
+    /**
+     * Latest on-disk version of attachments which can be read.
+     */
+    public static final byte ATTACHMENT_DISK_VERSION = ATTACHMENT_DISK_VERSION_CHUNKED_CBC;
+
+    /**
+     * Number of bytes of plain text in each chunk of a chunked attachment, which must be a
+     * multiple of the AES block size.
+     */
+    public static final int ATTACHMENT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Largest chunk size which is written or read, so a corrupt header can't make a reader
+     * allocate an unreasonably large buffer.
+     */
+    public static final int MAX_ATTACHMENT_CHUNK_SIZE = 16 * ATTACHMENT_CHUNK_SIZE;
+
+    /**
+     * Size in bytes of AES blocks and IVs.
+     */
+    public static final int AES_BLOCK_SIZE = 16;
 
 }
@@ -50,7 +50,7 @@ public class GetFullRevisionFromCurrentCursor {
         DocumentRevisionBuilder builder = new DocumentRevisionBuilder()
                 .setDocId(docId)
                 .setRevId(revId)
-                .setBody(DocumentBodyImpl.bodyWith(json))
+                .setBody(DocumentBodyImpl.trustedBodyWith(json))
                 .setDeleted(deleted)
                 .setSequence(sequence)
                 .setInternalId(internalId)
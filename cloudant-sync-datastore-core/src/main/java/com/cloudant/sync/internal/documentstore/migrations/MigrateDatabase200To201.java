@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.documentstore.migrations;
+
+import com.cloudant.sync.internal.android.ContentValues;
+import com.cloudant.sync.internal.sqlite.Cursor;
+import com.cloudant.sync.internal.sqlite.SQLDatabase;
+import com.cloudant.sync.internal.util.DatabaseUtils;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Migration which adds a reference count to each blob in the attachments_key_filename table,
+ * kept up to date by triggers on the attachments table, so that compaction only has to look at
+ * blobs which are no longer referenced rather than every blob.
+ * </p>
+ * <p>
+ * Older versions of the code can still read and write the migrated database, as the triggers
+ * maintain the counts whichever version writes the attachments.
+ * </p>
+ */
+public class MigrateDatabase200To201 implements Migration {
+
+    private String[] schemaUpdates;
+
+    public MigrateDatabase200To201(String[] schemaUpdates) {
+        this.schemaUpdates = Arrays.copyOf(schemaUpdates, schemaUpdates.length);
+    }
+
+    @Override
+    public void runMigration(SQLDatabase db) throws Exception {
+        new SchemaOnlyMigration(schemaUpdates).runMigration(db);
+
+        // count the existing references to each blob
+        Map<String, Integer> refcounts = new HashMap<String, Integer>();
+        Cursor c = null;
+        try {
+            c = db.rawQuery("SELECT key, COUNT(*) FROM attachments GROUP BY key", null);
+            while (c.moveToNext()) {
+                refcounts.put(new String(Hex.encodeHex(c.getBlob(0))), c.getInt(1));
+            }
+        } finally {
+            DatabaseUtils.closeCursorQuietly(c);
+        }
+
+        for (Map.Entry<String, Integer> refcount : refcounts.entrySet()) {
+            ContentValues cv = new ContentValues(1);
+            cv.put("refcount", refcount.getValue());
+            db.update("attachments_key_filename", cv, "key = ?", new String[]{refcount.getKey()});
+        }
+    }
+}
@@ -14,6 +14,7 @@
 
 package com.cloudant.sync.internal.mazha;
 
+import com.cloudant.sync.internal.documentstore.DocumentRevsList;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.List;
@@ -45,4 +46,20 @@ public class BulkGetResponse {
         @JsonProperty
         public DocumentRevs ok;
     }
+
+    /**
+     * <p>
+     * Receives the documents from a {@code _bulk_get} response one at a time, as soon as all of
+     * the requested revisions of each document have been read, so that the whole response
+     * doesn't have to be held in memory.
+     * </p>
+     * <p>
+     * If reading the response fails part way through and the request is retried, documents
+     * from the failed attempt will already have been passed to the handler, so handlers need to
+     * cope with seeing the same document more than once.
+     * </p>
+     */
+    public interface DocumentHandler {
+        void handleDocument(DocumentRevsList revsList);
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.mazha;
+
+import com.cloudant.sync.internal.documentstore.DocumentRevsList;
+import com.cloudant.sync.internal.util.JSONUtils;
+import com.cloudant.sync.internal.util.Misc;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Reads a {@code _bulk_get} response with a streaming parser, passing each document to a
+ * {@link BulkGetResponse.DocumentHandler} as soon as all of its revisions have been read.
+ * </p>
+ * <p>
+ * The response has one result for each requested (ID, revision) pair, in the order they were
+ * requested, so the revisions of a document are merged from consecutive results with the same
+ * ID. Revisions which couldn't be found are skipped.
+ * </p>
+ * <p>
+ * Processing the stream returns the number of documents passed to the handler.
+ * </p>
+ */
+public class BulkGetResponseStreamProcessor implements CouchClient.InputStreamProcessor<Integer> {
+
+    private final BulkGetResponse.DocumentHandler handler;
+
+    public BulkGetResponseStreamProcessor(BulkGetResponse.DocumentHandler handler) {
+        Misc.checkNotNull(handler, "handler");
+        this.handler = handler;
+    }
+
+    @Override
+    public Integer processStream(InputStream stream) throws IOException {
+        JsonParser parser = JSONUtils.createParser(new InputStreamReader(stream, Charset
+                .forName("UTF-8")));
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected a bulk get response object", parser
+                        .getCurrentLocation());
+            }
+            int documentCount = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (!"results".equals(field) || value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                String currentId = null;
+                List<DocumentRevs> currentRevs = new ArrayList<DocumentRevs>();
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    BulkGetResponse.Result result = parser.readValueAs(BulkGetResponse.Result
+                            .class);
+                    if (currentId != null && !currentId.equals(result.id)) {
+                        documentCount += handle(currentRevs);
+                        currentRevs = new ArrayList<DocumentRevs>();
+                    }
+                    currentId = result.id;
+                    if (result.docs != null) {
+                        for (BulkGetResponse.Doc doc : result.docs) {
+                            if (doc.ok != null) {
+                                currentRevs.add(doc.ok);
+                            }
+                        }
+                    }
+                }
+                documentCount += handle(currentRevs);
+            }
+            return documentCount;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private int handle(List<DocumentRevs> revs) {
+        if (revs.isEmpty()) {
+            return 0;
+        }
+        handler.handleDocument(new DocumentRevsList(revs));
+        return 1;
+    }
+}
@@ -55,6 +55,9 @@ public class ChangesResult {
 	@JsonProperty("last_seq")
 	private Object lastSeq;
 
+	// number of rows when they were passed to a RowHandler rather than kept in results
+	private int handledRowCount = 0;
+
 	public List<Row> getResults() {
 		return results;
 	}
@@ -72,12 +75,32 @@ public class ChangesResult {
 	}
 
     /**
-     * this.getResults().size()
+     * this.getResults().size(), or the number of rows passed to the {@link RowHandler} if the
+     * feed was streamed
      */
     public int size() {
-        return this.getResults() == null ? 0 : this.getResults().size();
+        return this.getResults() == null ? handledRowCount : this.getResults().size();
+    }
+
+    void setHandledRowCount(int handledRowCount) {
+        this.handledRowCount = handledRowCount;
     }
 
+	/**
+	 * <p>
+	 * Receives the rows of a changes feed one at a time, as they are read from the response,
+	 * so that the whole feed doesn't have to be held in memory.
+	 * </p>
+	 * <p>
+	 * If reading the response fails part way through and the request is retried, rows from
+	 * the failed attempt will already have been passed to the handler, so handlers need to cope
+	 * with seeing the same row more than once.
+	 * </p>
+	 */
+	public interface RowHandler {
+		void handleRow(Row row);
+	}
+
 	/**
 	 * Represent a row in Changes result.
 	 */
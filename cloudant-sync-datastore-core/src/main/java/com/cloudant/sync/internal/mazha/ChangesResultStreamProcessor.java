@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.mazha;
+
+import com.cloudant.sync.internal.util.JSONUtils;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Reads a {@code _changes} response with a streaming parser, one row at a time.
+ * </p>
+ * <p>
+ * If a {@link ChangesResult.RowHandler} is given, each row is passed to it as soon as it has
+ * been read and then discarded, so the returned {@link ChangesResult} only has the last
+ * sequence and the number of rows. Otherwise the rows are collected into the result.
+ * </p>
+ */
+public class ChangesResultStreamProcessor implements CouchClient
+        .InputStreamProcessor<ChangesResult> {
+
+    private final ChangesResult.RowHandler handler;
+
+    /**
+     * @param handler handler to pass each row to, or {@code null} to collect the rows into the
+     *                result
+     */
+    public ChangesResultStreamProcessor(ChangesResult.RowHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public ChangesResult processStream(InputStream stream) throws IOException {
+        JsonParser parser = JSONUtils.createParser(new InputStreamReader(stream, Charset
+                .forName("UTF-8")));
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected a changes feed object", parser
+                        .getCurrentLocation());
+            }
+            ChangesResult result = new ChangesResult();
+            List<ChangesResult.Row> rows = null;
+            int rowCount = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("results".equals(field) && value == JsonToken.START_ARRAY) {
+                    if (handler == null) {
+                        rows = new ArrayList<ChangesResult.Row>();
+                    }
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        ChangesResult.Row row = parser.readValueAs(ChangesResult.Row.class);
+                        rowCount++;
+                        if (handler == null) {
+                            rows.add(row);
+                        } else {
+                            handler.handleRow(row);
+                        }
+                    }
+                } else if ("last_seq".equals(field)) {
+                    result.setLastSeq(parser.readValueAs(Object.class));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            result.setResults(rows);
+            result.setHandledRowCount(handler == null ? 0 : rowCount);
+            return result;
+        } finally {
+            parser.close();
+        }
+    }
+}
@@ -445,11 +445,27 @@ public class CouchClient {
     }
 
     public ChangesResult changes(Object since, Integer limit) {
+        return changes(since, limit, (ChangesResult.RowHandler) null);
+    }
+
+    /**
+     * Gets a page of the changes feed, passing each row to {@code handler} as it is read rather
+     * than collecting the rows into the result.
+     *
+     * @return the result, with the last sequence and number of rows in the page
+     * @see ChangesResult.RowHandler
+     */
+    public ChangesResult changes(Object since, Integer limit, ChangesResult.RowHandler handler) {
         Map<String, Object> options = getParametrizedChangeFeedOptions(since, limit);
-        return this.changesRequestWithGet(options);
+        return this.changesRequestWithGet(options, handler);
     }
 
     public ChangesResult changes(PullFilter filter, Object since, Integer limit) {
+        return changes(filter, since, limit, null);
+    }
+
+    public ChangesResult changes(PullFilter filter, Object since, Integer limit, ChangesResult
+            .RowHandler handler) {
         Map<String, Object> options = getParametrizedChangeFeedOptions(since, limit);
         if (filter != null) {
             String filterName = filter.getName();
@@ -461,19 +477,29 @@ public class CouchClient {
                 }
             }
         }
-        return this.changesRequestWithGet(options);
+        return this.changesRequestWithGet(options, handler);
     }
 
     public ChangesResult changes(String selector, Object since, Integer limit) {
+        return changes(selector, since, limit, null);
+    }
+
+    public ChangesResult changes(String selector, Object since, Integer limit, ChangesResult
+            .RowHandler handler) {
         Misc.checkNotNullOrEmpty(selector, null);
 
         Map<String, Object> options = getParametrizedChangeFeedOptions(since, limit);
         options.put("filter", "_selector");
 
-        return changesRequestWithPost(selector, options);
+        return changesRequestWithPost(selector, options, handler);
     }
 
     public ChangesResult changes(List<String> docIds, Object since, Integer limit) {
+        return changes(docIds, since, limit, null);
+    }
+
+    public ChangesResult changes(List<String> docIds, Object since, Integer limit, ChangesResult
+            .RowHandler handler) {
         Misc.checkState((docIds != null && !docIds.isEmpty()), null);
 
         Map<String, Object> options = getParametrizedChangeFeedOptions(since, limit);
@@ -483,20 +509,22 @@ public class CouchClient {
         docIdsMap.put("doc_ids", docIds);
         String docsIdsDoc = JSONUtils.serializeAsString(docIdsMap);
 
-        return changesRequestWithPost(docsIdsDoc, options);
+        return changesRequestWithPost(docsIdsDoc, options, handler);
     }
 
-    private ChangesResult changesRequestWithGet(final Map<String, Object> options) {
+    private ChangesResult changesRequestWithGet(final Map<String, Object> options,
+                                                ChangesResult.RowHandler handler) {
         URI changesFeedUri = uriHelper.changesUri(options);
         HttpConnection connection = Http.GET(changesFeedUri);
-        return executeToJsonObjectWithRetry(connection, ChangesResult.class);
+        return executeWithRetry(connection, new ChangesResultStreamProcessor(handler));
     }
 
-    private ChangesResult changesRequestWithPost( String body, final Map<String, Object> options) {
+    private ChangesResult changesRequestWithPost(String body, final Map<String, Object> options,
+                                                 ChangesResult.RowHandler handler) {
         URI changesFeedUri = uriHelper.changesUri(options);
         HttpConnection connection = Http.POST(changesFeedUri, "application/json");
         connection.setRequestBody(body);
-        return executeToJsonObjectWithRetry(connection, ChangesResult.class);
+        return executeWithRetry(connection, new ChangesResultStreamProcessor(handler));
     }
 
     // TODO does this still work the same way we expect it to?
@@ -624,6 +652,36 @@ public class CouchClient {
      */
     public Iterable<DocumentRevsList> bulkReadDocsWithOpenRevisions(List<BulkGetRequest> request,
                                                                     boolean pullAttachmentsInline) {
+        final List<DocumentRevsList> allRevs = new ArrayList<DocumentRevsList>();
+        bulkReadDocsWithOpenRevisions(request, pullAttachmentsInline, new BulkGetResponse
+                .DocumentHandler() {
+            @Override
+            public void handleDocument(DocumentRevsList revsList) {
+                allRevs.add(revsList);
+            }
+        });
+        return allRevs;
+    }
+
+    /**
+     * <p>
+     * Calls the _bulk_get endpoint, passing each document to {@code handler} as soon as it has
+     * been read from the response rather than reading the whole response first.
+     * </p>
+     * <p>
+     * The requests for each document ID must be next to each other in {@code request}, so that
+     * the document's revisions are merged into one DocumentRevsList.
+     * </p>
+     *
+     * @param request               A request for 1 or more (ID,rev) pairs.
+     * @param pullAttachmentsInline If true, retrieve attachments as inline base64
+     * @param handler               Handler to pass each document to
+     * @return The number of documents passed to the handler.
+     * @see BulkGetResponse.DocumentHandler
+     */
+    public int bulkReadDocsWithOpenRevisions(List<BulkGetRequest> request,
+                                             boolean pullAttachmentsInline,
+                                             BulkGetResponse.DocumentHandler handler) {
         Map<String, Object> options = new HashMap<String, Object>();
         options.put("revs", true);
         options.put("latest", true);
@@ -640,32 +698,8 @@ public class CouchClient {
         jsonRequest.put("docs", request);
         // build request
         connection.setRequestBody(JSONUtils.toJson(jsonRequest));
-        // deserialise response
-        BulkGetResponse response = executeToJsonObjectWithRetry(connection, BulkGetResponse.class);
-
-        Map<String, ArrayList<DocumentRevs>> revsMap = new HashMap<String,
-                ArrayList<DocumentRevs>>();
-
-        // merge results back in, so there is one list of DocumentRevs per ID
-        for (BulkGetResponse.Result result : response.results) {
-            for (BulkGetResponse.Doc doc : result.docs) {
-                if (doc.ok != null) {
-                    String id = doc.ok.getId();
-                    if (!revsMap.containsKey(id)) {
-                        revsMap.put(id, new ArrayList<DocumentRevs>());
-                    }
-                    revsMap.get(id).add(doc.ok);
-                }
-            }
-        }
-
-        List<DocumentRevsList> allRevs = new ArrayList<DocumentRevsList>();
-
-        // flatten out revsMap hash so that there is one entry in our return array for each ID
-        for (ArrayList<DocumentRevs> value : revsMap.values()) {
-            allRevs.add(new DocumentRevsList(value));
-        }
-        return allRevs;
+        // stream the response, one document at a time
+        return executeWithRetry(connection, new BulkGetResponseStreamProcessor(handler));
     }
 
     public Map<String, Object> getDocument(String id) {
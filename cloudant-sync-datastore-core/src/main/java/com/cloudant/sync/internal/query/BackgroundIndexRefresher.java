@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.query;
+
+import com.cloudant.sync.query.QueryException;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Coalesces writes to a database into periodic index refreshes run on a background thread.
+ * </p>
+ * <p>
+ * A refresh runs once there have been no writes for the debounce delay, or once the oldest
+ * write which hasn't been indexed is the maximum lag old, whichever comes first. Writes made
+ * while a refresh is running are picked up by that refresh or the next one.
+ * </p>
+ */
+class BackgroundIndexRefresher {
+
+    private static final Logger logger = Logger.getLogger(BackgroundIndexRefresher.class
+            .getName());
+
+    private final QueryImpl query;
+    private final long debounceNanos;
+    private final long maxLagNanos;
+    private final ScheduledThreadPoolExecutor executor;
+
+    // times of the oldest and newest writes not yet picked up by a refresh, in nanoseconds
+    private long firstPendingWrite;
+    private long lastPendingWrite;
+    private boolean pending = false;
+    private boolean scheduled = false;
+
+    /**
+     * @param query    the query whose indexes to refresh
+     * @param debounce how long to wait after the last write before refreshing
+     * @param maxLag   the longest to wait after a write before refreshing
+     * @param unit     the unit of {@code debounce} and {@code maxLag}
+     */
+    BackgroundIndexRefresher(QueryImpl query, long debounce, long maxLag, TimeUnit unit) {
+        this.query = query;
+        this.debounceNanos = unit.toNanos(debounce);
+        this.maxLagNanos = unit.toNanos(maxLag);
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BackgroundIndexRefresher");
+                // don't keep the VM alive just to index
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // refreshes which are scheduled but haven't started are dropped on shutdown
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Records a write, scheduling a refresh if one isn't already scheduled.
+     */
+    synchronized void documentModified() {
+        long now = System.nanoTime();
+        if (!pending) {
+            pending = true;
+            firstPendingWrite = now;
+        }
+        lastPendingWrite = now;
+        if (!scheduled) {
+            // the earliest a refresh could be due, it will be put back if more writes arrive
+            schedule(Math.min(debounceNanos, maxLagNanos));
+        }
+    }
+
+    /**
+     * Stops refreshing. Refreshes which haven't started are dropped and this waits for a
+     * refresh which is already running to finish, so the indexes can be closed afterwards.
+     */
+    void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Interrupted while waiting for a background refresh to " +
+                    "finish", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void schedule(long delayNanos) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    runIfDue();
+                }
+            }, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+            scheduled = true;
+        } catch (RejectedExecutionException e) {
+            // shut down since we checked
+        }
+    }
+
+    private void runIfDue() {
+        synchronized (this) {
+            scheduled = false;
+            if (!pending) {
+                return;
+            }
+            long now = System.nanoTime();
+            long due = Math.min(lastPendingWrite + debounceNanos, firstPendingWrite +
+                    maxLagNanos);
+            if (due - now > 0) {
+                schedule(due - now);
+                return;
+            }
+            // writes from now on need another refresh
+            pending = false;
+        }
+        try {
+            query.refreshAllIndexesIfNeeded();
+        } catch (QueryException e) {
+            // the next refresh or query will try again
+            logger.log(Level.WARNING, "Failed to refresh indexes in the background", e);
+        }
+    }
+
+}
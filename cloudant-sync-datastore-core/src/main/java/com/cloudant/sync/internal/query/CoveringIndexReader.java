@@ -0,0 +1,227 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.query;
+
+import com.cloudant.sync.documentstore.Attachment;
+import com.cloudant.sync.documentstore.Database;
+import com.cloudant.sync.documentstore.DocumentBodyFactory;
+import com.cloudant.sync.documentstore.DocumentRevision;
+import com.cloudant.sync.documentstore.DocumentStoreException;
+import com.cloudant.sync.internal.documentstore.DocumentRevisionBuilder;
+import com.cloudant.sync.internal.query.callables.SequenceNumberForIndexCallable;
+import com.cloudant.sync.internal.sqlite.Cursor;
+import com.cloudant.sync.internal.sqlite.SQLCallable;
+import com.cloudant.sync.internal.sqlite.SQLDatabase;
+import com.cloudant.sync.internal.sqlite.SQLDatabaseQueue;
+import com.cloudant.sync.internal.util.DatabaseUtils;
+import com.cloudant.sync.internal.util.Misc;
+import com.cloudant.sync.query.QueryException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * <p>
+ * Builds projected revisions from the rows of an index which has all of the projected fields,
+ * so the documents' bodies don't have to be loaded and parsed.
+ * </p>
+ * <p>
+ * Index rows don't keep everything about a value. The columns of an index table have numeric
+ * affinity, so strings which look like numbers, such as "123", are stored as numbers. Booleans
+ * are stored as 1 and 0, a null can be a missing field, a JSON null or a value which isn't
+ * indexed such as an object, and an array has a row for each element, so one with a single
+ * element looks like a scalar. As only values stored as text are known to be exactly what the
+ * body has, revisions are only built for documents whose projected values are all stored as text
+ * in fields which the index metadata records have never had an array value; the rest have to be
+ * loaded from the database.
+ * </p>
+ * <p>
+ * Results are read lazily, so the database can change after the index was last updated. Rows
+ * are only used while the index is up to date with the database; once a document has been
+ * written since, every document is loaded from the database.
+ * </p>
+ * <p>
+ * Revisions built from an index don't have any attachments.
+ * </p>
+ */
+public class CoveringIndexReader {
+
+    private final SQLDatabaseQueue queue;
+    private final String indexName;
+    private final List<String> fields;
+
+    /**
+     * @param queue     the queue for the indexes database
+     * @param indexName an index containing all of {@code fields}
+     * @param fields    the fields to project, which can't be dotted
+     */
+    CoveringIndexReader(SQLDatabaseQueue queue, String indexName, List<String> fields) {
+        this.queue = queue;
+        this.indexName = indexName;
+        this.fields = fields;
+    }
+
+    /**
+     * @return the name of the index revisions are built from
+     */
+    public String getIndexName() {
+        return indexName;
+    }
+
+    /**
+     * Builds projected revisions for the documents which can be read exactly from the index.
+     *
+     * @param docIds   the IDs of the documents to read, no more than
+     *                 {@link com.cloudant.sync.internal.documentstore.DatabaseImpl#SQLITE_QUERY_PLACEHOLDERS_LIMIT}
+     * @param database the database the documents are in
+     * @return map of document ID to projected revision, without entries for documents which
+     * have to be loaded from the database, which is all of them if the index is behind the
+     * database
+     * @throws QueryException if the index can't be read
+     */
+    public Map<String, DocumentRevision> read(final List<String> docIds, final Database database)
+            throws QueryException {
+        final long databaseSequence;
+        try {
+            databaseSequence = database.getLastSequence();
+        } catch (DocumentStoreException e) {
+            throw new QueryException("Failed to get the database's last sequence", e);
+        }
+        try {
+            return queue.submitReadOnly(new SQLCallable<Map<String, DocumentRevision>>() {
+                @Override
+                public Map<String, DocumentRevision> call(SQLDatabase db) throws Exception {
+                    if (new SequenceNumberForIndexCallable(indexName).call(db) <
+                            databaseSequence) {
+                        // rows could be for revisions which aren't current any more
+                        return Collections.emptyMap();
+                    }
+                    return read(docIds, database, db);
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            throw new QueryException(String.format("Failed to read index %s", indexName), e
+                    .getCause());
+        } catch (InterruptedException e) {
+            throw new QueryException(String.format("Interrupted reading index %s", indexName), e);
+        }
+    }
+
+    private Map<String, DocumentRevision> read(List<String> docIds, Database database,
+                                               SQLDatabase db) throws Exception {
+        Map<String, DocumentRevision> revs = new LinkedHashMap<String, DocumentRevision>();
+        if (docIds.isEmpty()) {
+            return revs;
+        }
+
+        List<String> columns = new ArrayList<String>();
+        columns.add("_id");
+        columns.add("_rev");
+        // _id and _rev aren't in the body, so they aren't projected into it
+        List<String> bodyFields = new ArrayList<String>();
+        for (String field : fields) {
+            if (!field.equals("_id") && !field.equals("_rev") && !bodyFields.contains(field)) {
+                bodyFields.add(field);
+                columns.add(String.format("\"%s\"", field));
+            }
+        }
+        if (!scalarFields(bodyFields, db)) {
+            return revs;
+        }
+
+        String sql = String.format(Locale.ENGLISH, "SELECT %s FROM \"%s\" WHERE _id IN (%s)",
+                Misc.join(", ", columns), QueryImpl.tableNameForIndex(indexName),
+                DatabaseUtils.makePlaceholders(docIds.size()));
+
+        Set<String> notExact = new HashSet<String>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, docIds.toArray(new String[docIds.size()]));
+            while (cursor.moveToNext()) {
+                String docId = cursor.getString(0);
+                if (revs.containsKey(docId)) {
+                    // a row for each element of an array field
+                    notExact.add(docId);
+                    continue;
+                }
+                Map<String, Object> body = new HashMap<String, Object>();
+                for (int i = 0; i < bodyFields.size(); i++) {
+                    Object value = exactValue(cursor, i + 2);
+                    if (value == null) {
+                        notExact.add(docId);
+                        break;
+                    }
+                    body.put(bodyFields.get(i), value);
+                }
+                DocumentRevisionBuilder builder = new DocumentRevisionBuilder();
+                builder.setDocId(docId);
+                builder.setRevId(cursor.getString(1));
+                builder.setBody(DocumentBodyFactory.create(body));
+                builder.setAttachments(Collections.<String, Attachment>emptyMap());
+                builder.setDatabase(database);
+                revs.put(docId, builder.buildProjected());
+            }
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+
+        revs.keySet().removeAll(notExact);
+        return revs;
+    }
+
+    /**
+     * Returns whether the index metadata records that none of {@code bodyFields} have ever had
+     * an array value.
+     */
+    private boolean scalarFields(List<String> bodyFields, SQLDatabase db) throws Exception {
+        if (bodyFields.isEmpty()) {
+            return true;
+        }
+        List<String> args = new ArrayList<String>();
+        args.add(indexName);
+        args.addAll(bodyFields);
+        String sql = String.format(Locale.ENGLISH, "SELECT COUNT(*) FROM %s WHERE index_name = ? " +
+                "AND field_name IN (%s) AND array_values = 0", QueryConstants
+                .INDEX_METADATA_TABLE_NAME, DatabaseUtils.makePlaceholders(bodyFields.size()));
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, args.toArray(new String[args.size()]));
+            return cursor.moveToFirst() && cursor.getInt(0) == bodyFields.size();
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+    }
+
+    /**
+     * Returns the value of a column as it would be parsed from the body, or {@code null} if it
+     * can't be known from the index. Only text is known: a number in the column could have been
+     * a string, a boolean or either sort of number in the body.
+     */
+    private static Object exactValue(Cursor cursor, int index) {
+        if (cursor.columnType(index) == Cursor.FIELD_TYPE_STRING) {
+            return cursor.getString(index);
+        }
+        return null;
+    }
+
+}
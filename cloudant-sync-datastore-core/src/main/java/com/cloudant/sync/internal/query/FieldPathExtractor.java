@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.query;
+
+import com.cloudant.sync.documentstore.DocumentBody;
+import com.cloudant.sync.documentstore.DocumentRevision;
+import com.cloudant.sync.internal.documentstore.DocumentBodyImpl;
+import com.cloudant.sync.internal.util.JSONUtils;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Extracts the values of a fixed set of possibly dotted field paths from document bodies.
+ * </p>
+ * <p>
+ * The paths are compiled once into a tree of field names. Bodies which haven't already been
+ * parsed are read with a streaming parser straight from their JSON bytes, so only the values of
+ * the requested paths are created and the rest of the document is skipped over, rather than
+ * deserialising the whole body for each field as
+ * {@link ValueExtractor#extractValueForFieldName(String, DocumentBody)} does.
+ * </p>
+ * <p>
+ * A path which leads through a value which isn't an object has no value, as with
+ * {@link ValueExtractor}. If a field appears more than once in an object, the last occurrence
+ * wins, as it does when the body is parsed into a map.
+ * </p>
+ */
+public class FieldPathExtractor {
+
+    private final PathNode root = new PathNode();
+
+    /**
+     * @param fieldPaths the possibly dotted field paths to extract
+     */
+    public FieldPathExtractor(Collection<String> fieldPaths) {
+        for (String fieldPath : fieldPaths) {
+            PathNode node = root;
+            for (String field : fieldPath.split("\\.")) {
+                node = node.child(field);
+            }
+            node.fieldPath = fieldPath;
+        }
+        root.collectFieldPaths();
+    }
+
+    /**
+     * Extracts the field paths from a revision, taking {@code _id} and {@code _rev} from the
+     * revision rather than its body.
+     *
+     * @param rev the revision to extract values from
+     * @return map of field path to value, with no entry for paths which aren't in the revision
+     * @see ValueExtractor#extractValueForFieldName(String, DocumentRevision)
+     */
+    public Map<String, Object> extract(DocumentRevision rev) {
+        Map<String, Object> values = extract(rev.getBody());
+        if (root.children.containsKey("_id")) {
+            values.put("_id", rev.getId());
+        }
+        if (root.children.containsKey("_rev")) {
+            values.put("_rev", rev.getRevision());
+        }
+        return values;
+    }
+
+    /**
+     * Extracts the field paths from a document body.
+     *
+     * @param body the body to extract values from
+     * @return map of field path to value, with no entry for paths which aren't in the body
+     */
+    public Map<String, Object> extract(DocumentBody body) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        if (root.children.isEmpty()) {
+            return values;
+        }
+        byte[] json;
+        if (body instanceof DocumentBodyImpl) {
+            DocumentBodyImpl bodyImpl = (DocumentBodyImpl) body;
+            // no point parsing the bytes again if the map has already been created
+            Map<String, Object> map = bodyImpl.getParsedMap();
+            if (map != null) {
+                extractFromMap(map, root, values);
+                return values;
+            }
+            json = bodyImpl.getJsonBytes();
+        } else {
+            json = body.asBytes();
+        }
+
+        JsonParser parser = null;
+        try {
+            parser = JSONUtils.createParser(json);
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                extractFromObject(parser, root, values);
+            }
+            return values;
+        } catch (IOException e) {
+            throw new IllegalStateException("Error extracting fields from document body: " +
+                    JSONUtils.bytesToString(json), e);
+        } finally {
+            if (parser != null) {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    // nothing to clean up for a parser over a byte array
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the fields of the object the parser is at the start of, leaving the parser at the
+     * end of the object.
+     */
+    private static void extractFromObject(JsonParser parser, PathNode node,
+                                          Map<String, Object> values) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            PathNode child = node.children.get(parser.getCurrentName());
+            JsonToken token = parser.nextToken();
+            if (child == null) {
+                parser.skipChildren();
+                continue;
+            }
+            // forget anything found in an earlier occurrence of the same field
+            for (String fieldPath : child.fieldPaths) {
+                values.remove(fieldPath);
+            }
+            if (child.fieldPath != null) {
+                // the whole value is needed, so any deeper paths come from the parsed value
+                Object value = parser.readValueAs(Object.class);
+                values.put(child.fieldPath, value);
+                if (value instanceof Map) {
+                    extractFromMap(asMap(value), child, values);
+                }
+            } else if (token == JsonToken.START_OBJECT) {
+                extractFromObject(parser, child, values);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void extractFromMap(Map<String, Object> map, PathNode node,
+                                       Map<String, Object> values) {
+        for (Map.Entry<String, PathNode> entry : node.children.entrySet()) {
+            if (!map.containsKey(entry.getKey())) {
+                continue;
+            }
+            PathNode child = entry.getValue();
+            Object value = map.get(entry.getKey());
+            if (child.fieldPath != null) {
+                values.put(child.fieldPath, value);
+            }
+            if (value instanceof Map) {
+                extractFromMap(asMap(value), child, values);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    private static class PathNode {
+
+        private final Map<String, PathNode> children = new HashMap<String, PathNode>();
+        // the path which ends at this node, if any
+        private String fieldPath;
+        // all the paths which end at or below this node
+        private final List<String> fieldPaths = new ArrayList<String>();
+
+        private PathNode child(String field) {
+            PathNode child = children.get(field);
+            if (child == null) {
+                child = new PathNode();
+                children.put(field, child);
+            }
+            return child;
+        }
+
+        private List<String> collectFieldPaths() {
+            if (fieldPath != null) {
+                fieldPaths.add(fieldPath);
+            }
+            for (PathNode child : children.values()) {
+                fieldPaths.addAll(child.collectFieldPaths());
+            }
+            return fieldPaths;
+        }
+    }
+
+}
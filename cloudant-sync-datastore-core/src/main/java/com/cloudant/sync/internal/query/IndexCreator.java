@@ -113,7 +113,7 @@ class IndexCreator {
         // get existing indexes
         List<Index> existingIndexes;
         try {
-            existingIndexes = DatabaseImpl.get(this.queue.submit(new ListIndexesCallable()));
+            existingIndexes = DatabaseImpl.get(this.queue.submitReadOnly(new ListIndexesCallable()));
         } catch (ExecutionException e) {
             String msg = "Failed to list indexes";
             logger.log(Level.SEVERE, msg, e);
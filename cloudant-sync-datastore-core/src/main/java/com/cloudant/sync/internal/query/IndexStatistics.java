@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.query;
+
+import com.cloudant.sync.internal.sqlite.Cursor;
+import com.cloudant.sync.internal.sqlite.SQLDatabase;
+import com.cloudant.sync.internal.util.DatabaseUtils;
+import com.cloudant.sync.internal.util.Misc;
+import com.cloudant.sync.query.FieldSort;
+import com.cloudant.sync.query.Index;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>
+ * Statistics about the rows in the table of a JSON index, used to estimate how much work a
+ * query over the index will do and how many documents it will return.
+ * </p>
+ * <p>
+ * The row count includes a row for each value of an array field, so it can be more than the
+ * number of documents in the index, which is the number of distinct {@code _id} values.
+ * </p>
+ */
+class IndexStatistics {
+
+    final String indexName;
+    final long rowCount;
+    final long documentCount;
+    final Map<String, Long> distinctCounts;
+
+    IndexStatistics(String indexName, long rowCount, long documentCount,
+                    Map<String, Long> distinctCounts) {
+        this.indexName = indexName;
+        this.rowCount = rowCount;
+        this.documentCount = documentCount;
+        this.distinctCounts = Collections.unmodifiableMap(distinctCounts);
+    }
+
+    /**
+     * @param field the field to look up
+     * @return the number of distinct non-null values of {@code field}, or -1 if it isn't in
+     * the index
+     */
+    long distinctCount(String field) {
+        Long count = distinctCounts.get(field);
+        return count == null ? -1 : count;
+    }
+
+    /**
+     * Counts the rows of an index table and the distinct values of each of its fields with a
+     * single scan of the table.
+     *
+     * @param index the JSON index to collect statistics for
+     * @param db    the indexes database
+     * @return the statistics for {@code index}
+     * @throws SQLException if the index table can't be read
+     */
+    static IndexStatistics collect(Index index, SQLDatabase db) throws SQLException {
+        Misc.checkNotNull(index, "index");
+
+        List<String> fields = new ArrayList<String>();
+        List<String> columns = new ArrayList<String>();
+        columns.add("COUNT(*)");
+        for (FieldSort fieldName : index.fieldNames) {
+            fields.add(fieldName.field);
+            columns.add(String.format("COUNT(DISTINCT \"%s\")", fieldName.field));
+        }
+
+        String sql = String.format(Locale.ENGLISH, "SELECT %s FROM \"%s\"", Misc.join(", ",
+                columns), QueryImpl.tableNameForIndex(index.indexName));
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, new String[]{});
+            Misc.checkState(cursor.moveToFirst(), "Aggregate query returned no rows");
+            long rowCount = cursor.getLong(0);
+            Map<String, Long> distinctCounts = new HashMap<String, Long>();
+            for (int i = 0; i < fields.size(); i++) {
+                distinctCounts.put(fields.get(i), cursor.getLong(i + 1));
+            }
+            Long documentCount = distinctCounts.get("_id");
+            return new IndexStatistics(index.indexName, rowCount,
+                    documentCount == null ? rowCount : documentCount, distinctCounts);
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "%s: %d rows, %d documents, distinct values %s",
+                indexName, rowCount, documentCount, distinctCounts);
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.query;
+
+import com.cloudant.sync.internal.sqlite.SQLDatabase;
+import com.cloudant.sync.query.Index;
+import com.cloudant.sync.query.IndexType;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Holds the {@link IndexStatistics} of the indexes of a {@link QueryImpl}.
+ * </p>
+ * <p>
+ * Statistics are collected when they are first needed by a query. The {@link IndexUpdater}
+ * records how many documents it has changed in each index, and once that is more than a tenth
+ * of the rows the statistics were collected from, they are collected again by the next query
+ * which needs them. This keeps the cost of collecting statistics in proportion to the cost of
+ * updating the index.
+ * </p>
+ */
+class IndexStatisticsCache {
+
+    private static final int STALE_FRACTION = 10;
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * Records that documents in some indexes have been changed.
+     *
+     * @param indexNames the indexes which were updated
+     * @param documents  the number of documents updated in each of the indexes
+     */
+    synchronized void recordChanges(Collection<String> indexNames, int documents) {
+        for (String indexName : indexNames) {
+            Entry entry = entries.get(indexName);
+            if (entry != null) {
+                entry.changesSinceCollected += documents;
+            }
+        }
+    }
+
+    /**
+     * Forgets the statistics of an index, for example because it has been deleted.
+     *
+     * @param indexName the index to forget
+     */
+    synchronized void remove(String indexName) {
+        entries.remove(indexName);
+    }
+
+    /**
+     * Returns statistics for the JSON indexes in {@code indexes}, collecting any which are
+     * missing or stale. This must be called on the indexes database's queue.
+     *
+     * @param indexes the indexes to return statistics for
+     * @param db      the indexes database
+     * @return map of index name to statistics, with no entries for text indexes
+     * @throws SQLException if an index table can't be read
+     */
+    Map<String, IndexStatistics> statisticsForIndexes(List<Index> indexes, SQLDatabase db)
+            throws SQLException {
+        Map<String, IndexStatistics> statistics = new HashMap<String, IndexStatistics>();
+        if (indexes == null) {
+            return statistics;
+        }
+        for (Index index : indexes) {
+            if (index.indexType == IndexType.TEXT) {
+                continue;
+            }
+            IndexStatistics current = current(index.indexName);
+            if (current == null) {
+                // collected without holding the lock, so writers recording changes don't
+                // wait for the index table to be scanned
+                current = IndexStatistics.collect(index, db);
+                put(current);
+            }
+            statistics.put(index.indexName, current);
+        }
+        return statistics;
+    }
+
+    private synchronized IndexStatistics current(String indexName) {
+        Entry entry = entries.get(indexName);
+        if (entry == null || entry.changesSinceCollected * STALE_FRACTION > entry.statistics
+                .rowCount) {
+            return null;
+        }
+        return entry.statistics;
+    }
+
+    private synchronized void put(IndexStatistics statistics) {
+        entries.put(statistics.indexName, new Entry(statistics));
+    }
+
+    private static class Entry {
+
+        private final IndexStatistics statistics;
+        private long changesSinceCollected = 0;
+
+        private Entry(IndexStatistics statistics) {
+            this.statistics = statistics;
+        }
+    }
+
+}
@@ -18,16 +18,19 @@ import com.cloudant.sync.documentstore.DocumentStoreException;
 import com.cloudant.sync.documentstore.Changes;
 import com.cloudant.sync.documentstore.Database;
 import com.cloudant.sync.internal.query.callables.SequenceNumberForIndexCallable;
-import com.cloudant.sync.internal.query.callables.UpdateIndexCallable;
-import com.cloudant.sync.internal.query.callables.UpdateMetadataForIndexCallable;
+import com.cloudant.sync.internal.query.callables.UpdateIndexesCallable;
 import com.cloudant.sync.query.FieldSort;
 import com.cloudant.sync.query.Index;
 import com.cloudant.sync.query.QueryException;
 import com.cloudant.sync.internal.sqlite.SQLDatabaseQueue;
 import com.cloudant.sync.internal.util.Misc;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
@@ -35,6 +38,9 @@ import java.util.logging.Logger;
 
 /**
  *  Handles updating indexes for a given DocumentStore.
+ *
+ *  All of the indexes being updated are updated together from a single read of the changes
+ *  feed, one page of changes per transaction.
  */
 class IndexUpdater {
 
@@ -42,6 +48,9 @@ class IndexUpdater {
 
     private final SQLDatabaseQueue queue;
 
+    // told how many documents change in each index, if set
+    private IndexStatisticsCache statistics;
+
     private static final Logger logger = Logger.getLogger(IndexUpdater.class.getName());
 
     /**
@@ -67,9 +76,30 @@ class IndexUpdater {
     public static void updateAllIndexes(List<Index> indexes,
                                            Database database,
                                            SQLDatabaseQueue queue) throws QueryException {
+        updateAllIndexes(indexes, database, queue, null);
+    }
+
+    /**
+     *  Update all indexes in a set, recording the number of documents changed in each index in
+     *  their statistics.
+     *
+     *  These indexes are assumed to already exist.
+     *
+     *  @param indexes Map of indexes and their definitions.
+     *  @param database The local {@link Database}
+     *  @param queue The executor service queue
+     *  @param statistics The statistics of the indexes, or null
+     *  @return the lowest last sequence committed for the indexes, or {@link Long#MAX_VALUE} if
+     *  there are none
+     */
+    static long updateAllIndexes(List<Index> indexes,
+                                 Database database,
+                                 SQLDatabaseQueue queue,
+                                 IndexStatisticsCache statistics) throws QueryException {
         IndexUpdater updater = new IndexUpdater(database, queue);
+        updater.statistics = statistics;
 
-        updater.updateAllIndexes(indexes);
+        return updater.updateAllIndexes(indexes);
     }
 
     /**
@@ -92,23 +122,39 @@ class IndexUpdater {
         updater.updateIndex(indexName, fieldNames);
     }
 
-    private void updateAllIndexes(List<Index> indexes) throws QueryException {
+    private long updateAllIndexes(List<Index> indexes) throws QueryException {
 
-        for (Index index : indexes) {
-            updateIndex(index.indexName, index.fieldNames);
+        if (indexes.isEmpty()) {
+            return Long.MAX_VALUE;
         }
-    }
-
-    private void updateIndex(String indexName, List<FieldSort> fieldNames) throws QueryException {
 
-        Misc.checkNotNullOrEmpty(indexName, "indexName");
+        // Read the changes once, from the earliest sequence any of the indexes needs
+        Map<String, Long> lastSequences = new HashMap<String, Long>();
+        long lastSequence = Long.MAX_VALUE;
+        for (Index index : indexes) {
+            Misc.checkNotNullOrEmpty(index.indexName, "indexName");
+            long indexSequence = sequenceNumberForIndex(index.indexName);
+            lastSequences.put(index.indexName, indexSequence);
+            lastSequence = Math.min(lastSequence, indexSequence);
+        }
 
         Changes changes;
-        long lastSequence = sequenceNumberForIndex(indexName);
         try {
             do {
                 changes = database.changes(lastSequence, 10000);
-                updateIndex(indexName, fieldNames, changes, lastSequence);
+                // Indexes which are already up to date with this page of changes are skipped.
+                // Indexes part way through the page have some documents indexed again, which
+                // gives the same rows as before.
+                List<Index> toUpdate = new ArrayList<Index>();
+                for (Index index : indexes) {
+                    if (lastSequences.get(index.indexName) < changes.getLastSequence()) {
+                        toUpdate.add(index);
+                        lastSequences.put(index.indexName, changes.getLastSequence());
+                    }
+                }
+                if (!toUpdate.isEmpty()) {
+                    updateIndexes(toUpdate, changes);
+                }
                 lastSequence = changes.getLastSequence();
             } while (changes.getResults().size() > 0);
         } catch (DocumentStoreException e) {
@@ -116,37 +162,55 @@ class IndexUpdater {
             logger.log(Level.SEVERE, message, e);
             throw new QueryException(message, e.getCause());
         }
+
+        // read back what was committed, which is what the indexes can be trusted to contain
+        long committed = Long.MAX_VALUE;
+        for (Index index : indexes) {
+            committed = Math.min(committed, sequenceNumberForIndex(index.indexName));
+        }
+        return committed;
     }
 
-    private void updateIndex(final String indexName,
-                                final List<FieldSort> fieldNames,
-                                final Changes changes,
-                                long lastSequence) throws QueryException {
+    private void updateIndex(String indexName, List<FieldSort> fieldNames) throws QueryException {
 
-        Future<Void> result = queue.submitTransaction(new UpdateIndexCallable(changes, indexName,
-                fieldNames));
+        Misc.checkNotNullOrEmpty(indexName, "indexName");
+
+        updateAllIndexes(Collections.singletonList(new Index(fieldNames, indexName)));
+    }
+
+    private void updateIndexes(final List<Index> indexes,
+                               final Changes changes) throws QueryException {
+
+        // the indexes and their last sequences are updated in the same transaction, so if there
+        // is a problem the whole page is rolled back
+        Future<Void> result = queue.submitTransaction(new UpdateIndexesCallable(changes, indexes));
 
         try {
             result.get();
+            if (statistics != null) {
+                statistics.recordChanges(indexNames(indexes), changes.getResults().size());
+            }
         } catch (ExecutionException e) {
-            String message = String.format("Execution error encountered whilst updating index %s", indexName);
+            String message = String.format("Execution error encountered whilst updating indexes %s", indexNames(indexes));
             logger.log(Level.SEVERE, message, e);
             throw new QueryException(message, e);
         } catch (InterruptedException e) {
-            String message = String.format("Execution interrupted error encountered whilst updating index %s", indexName);
+            String message = String.format("Execution interrupted error encountered whilst updating indexes %s", indexNames(indexes));
             logger.log(Level.SEVERE, message, e);
             throw new QueryException(message, e);
         }
+    }
 
-        // if there was a problem, we rolled back, and threw an exception, so the sequence won't be
-        // updated. otherwise if we got here we can update the sequence.
-        updateMetadataForIndex(indexName, lastSequence);
-
-
+    private static List<String> indexNames(List<Index> indexes) {
+        List<String> names = new ArrayList<String>();
+        for (Index index : indexes) {
+            names.add(index.indexName);
+        }
+        return names;
     }
 
     private long sequenceNumberForIndex(final String indexName) throws QueryException {
-        Future<Long> sequenceNumber = queue.submit(new SequenceNumberForIndexCallable(indexName));
+        Future<Long> sequenceNumber = queue.submitReadOnly(new SequenceNumberForIndexCallable(indexName));
 
         long lastSequenceNumber = 0;
         try {
@@ -160,21 +224,4 @@ class IndexUpdater {
         return lastSequenceNumber;
     }
 
-    private void updateMetadataForIndex(final String indexName, final long lastSequence) throws QueryException {
-        Future<Void> result = queue.submit(new UpdateMetadataForIndexCallable(lastSequence,
-                indexName));
-
-        try {
-            result.get();
-        } catch (ExecutionException e) {
-            String message = String.format("Execution error encountered whilst updating index metadata for index %s", indexName);
-            logger.log(Level.SEVERE, message, e);
-            throw new QueryException(message, e);
-        } catch (InterruptedException e) {
-            String message = String.format("Execution interrupted error encountered whilst updating index metadata for index %s", indexName);
-            logger.log(Level.SEVERE, message, e);
-            throw new QueryException(message, e);
-        }
-    }
-
 }
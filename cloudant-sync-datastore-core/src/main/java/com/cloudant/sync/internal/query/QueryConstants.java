@@ -81,4 +81,15 @@ public final class QueryConstants {
         };
     }
 
+    /**
+     * Adds whether a field of an index has had array values: 0 if it hasn't, 1 if it has, or
+     * NULL if it isn't known because the index was created before this version.
+     */
+    public static String[] getSchemaVersion3() {
+        return new String[] {
+                "ALTER TABLE " + INDEX_METADATA_TABLE_NAME +
+                "        ADD COLUMN array_values INTEGER NULL;"
+        };
+    }
+
 }
@@ -31,6 +31,9 @@ import com.cloudant.sync.internal.util.Misc;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -48,6 +51,7 @@ class QueryExecutor {
 
     private final Database database;
     private final SQLDatabaseQueue queue;
+    private final IndexStatisticsCache statisticsCache;
 
     private static final Logger logger = Logger.getLogger(QueryExecutor.class.getName());
 
@@ -59,8 +63,21 @@ class QueryExecutor {
      *  @param queue the {@link SQLDatabaseQueue} queue used for accessing the indexes database.
      */
     QueryExecutor(Database database, SQLDatabaseQueue queue) {
+        this(database, queue, null);
+    }
+
+    /**
+     *  Constructs a new QueryExecutor which chooses between indexes using their statistics.
+     *  @param database the {@link Database} containing the documents to query.
+     *  @param queue the {@link SQLDatabaseQueue} queue used for accessing the indexes database.
+     *  @param statisticsCache the statistics of the indexes, or null to choose the first
+     *                         suitable index
+     */
+    QueryExecutor(Database database, SQLDatabaseQueue queue,
+                  IndexStatisticsCache statisticsCache) {
         this.database = database;
         this.queue = queue;
+        this.statisticsCache = statisticsCache;
     }
 
     /**
@@ -100,24 +117,57 @@ class QueryExecutor {
         // Execute the query
         //
 
+        final Map<String, IndexStatistics> statistics = statisticsForIndexes(indexes);
+
         Boolean[] indexesCoverQuery = new Boolean[]{ false };
-        final ChildrenQueryNode root = translateQuery(query, indexes, indexesCoverQuery);
+        final ChildrenQueryNode root = translateQuery(query, indexes, statistics,
+                indexesCoverQuery);
+        final SqlParts rootSql = QuerySqlTranslator.sqlForQueryTree(root);
+        final boolean sorted = sortDocument != null && !sortDocument.isEmpty();
 
+        UnindexedMatcher matcher = matcherForIndexCoverage(indexesCoverQuery, query);
 
+        // When every ID returned by the SQL is a result, skip and limit can be applied by
+        // SQLite, which then only has to keep the top skip + limit IDs when sorting.
+        final boolean pageInSql = matcher == null && rootSql != null;
+        final long pageSkip = skip;
+        final long pageLimit = limit;
+        // otherwise, without the matcher only the first skip + limit sorted IDs are needed
+        final long maxSortedIds = matcher == null && limit > 0 ? Math.max(0, skip) + limit : 0;
 
-        Future<List<String>> result = queue.submit(new SQLCallable<List<String>>() {
+        Future<List<String>> result = queue.submitReadOnly(new SQLCallable<List<String>>() {
             @Override
             public List<String> call(SQLDatabase database) throws Exception {
-                Set<String> docIdSet = executeQueryTree(root, database);
-                List<String> docIdList;
+                if (pageInSql) {
+                    SqlParts page = sorted ?
+                            sqlToSortPage(rootSql, sortDocument, indexes, statistics, pageSkip,
+                                    pageLimit) :
+                            sqlForPage(rootSql, pageSkip, pageLimit);
+                    List<String> docIdList = idsForSql(page, database);
+                    // as when sorting in sortIds, no matches at all is null, but a page past
+                    // the last match is just empty
+                    if (sorted && docIdList.isEmpty() && (pageSkip <= 0 ||
+                            idsForSql(sqlForPage(rootSql, 0, 1), database).isEmpty())) {
+                        return null;
+                    }
+                    return docIdList;
+                }
 
-                // sorting
-                if (sortDocument != null && !sortDocument.isEmpty()) {
-                    docIdList = sortIds(docIdSet, sortDocument, indexes, database);
+                List<String> docIdList;
+                if (rootSql != null) {
+                    // SQLite combines the clauses, so only the matching IDs are read
+                    docIdList = idsForSql(rootSql, database);
                 } else {
+                    Set<String> docIdSet = executeQueryTree(root, database);
                     docIdList = docIdSet != null ? new ArrayList<String>(docIdSet) : null;
                 }
 
+                // sorting
+                if (docIdList != null && sorted) {
+                    docIdList = sortIds(new HashSet<String>(docIdList), sortDocument, indexes,
+                            statistics, maxSortedIds, database);
+                }
+
                 return docIdList;
             }
         });
@@ -139,7 +189,11 @@ class QueryExecutor {
             return null;
         }
 
-        UnindexedMatcher matcher = matcherForIndexCoverage(indexesCoverQuery, query);
+        if (pageInSql) {
+            // already applied
+            return new QueryResult(docIds, database, fields, 0, 0, null,
+                    coveringIndexReader(fields, indexes, statistics));
+        }
 
         if (matcher != null) {
             String msg = "query could not be executed using indexes alone; falling back to ";
@@ -148,14 +202,190 @@ class QueryExecutor {
             logger.log(Level.WARNING, msg);
         }
 
-        return new QueryResult(docIds, database, fields, skip, limit, matcher);
+        return new QueryResult(docIds, database, fields, skip, limit, matcher,
+                matcher == null ? coveringIndexReader(fields, indexes, statistics) : null);
+    }
+
+    /**
+     * Returns a reader for the projected fields if an index contains all of them, so the
+     * results can be built without loading the documents' bodies.
+     */
+    private CoveringIndexReader coveringIndexReader(List<String> fields, List<Index> indexes,
+                                                    Map<String, IndexStatistics> statistics) {
+        if (fields == null || indexes == null) {
+            return null;
+        }
+        String indexName = QuerySqlTranslator.chooseIndexForFields(new HashSet<String>(fields),
+                indexes, statistics);
+        return indexName != null ? new CoveringIndexReader(queue, indexName, fields) : null;
+    }
+
+    /**
+     *  Counts the documents matching a query.
+     *
+     *  When the indexes cover the query and its parts can be combined into a single statement,
+     *  SQLite counts the matching IDs and no documents are loaded. Otherwise the query is
+     *  executed and its result counted, which loads the candidate documents if the indexes
+     *  don't cover the query.
+     *
+     *  @param query query to count the results of.
+     *  @param indexes indexes to use (this method will select the most appropriate).
+     *  @return the number of documents matching the query
+     */
+    public int count(Map<String, Object> query,
+                     List<Index> indexes) throws QueryException {
+        Map<String, Object> normalisedQuery = QueryValidator.normaliseAndValidateQuery(query);
+
+        Map<String, IndexStatistics> statistics = statisticsForIndexes(indexes);
+
+        Boolean[] indexesCoverQuery = new Boolean[]{ false };
+        ChildrenQueryNode root = translateQuery(normalisedQuery, indexes, statistics,
+                indexesCoverQuery);
+        SqlParts rootSql = QuerySqlTranslator.sqlForQueryTree(root);
+
+        if (rootSql == null || matcherForIndexCoverage(indexesCoverQuery, normalisedQuery) !=
+                null) {
+            QueryResult result = find(query, indexes, 0, 0, null, null);
+            return result == null ? 0 : result.size();
+        }
+
+        final SqlParts countSql = sqlForCount(rootSql);
+        Future<Integer> result = queue.submitReadOnly(new SQLCallable<Integer>() {
+            @Override
+            public Integer call(SQLDatabase database) throws Exception {
+                Cursor cursor = null;
+                try {
+                    cursor = database.rawQuery(countSql.sqlWithPlaceHolders,
+                            countSql.placeHolderValues);
+                    return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+                } finally {
+                    DatabaseUtils.closeCursorQuietly(cursor);
+                }
+            }
+        });
+
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            String message = "Failed to count query results";
+            logger.log(Level.SEVERE, message, e);
+            throw new QueryException(message, e.getCause());
+        } catch (InterruptedException e) {
+            String message = "Interrupted counting query results";
+            logger.log(Level.SEVERE, message, e);
+            throw new QueryException(message, e);
+        }
+    }
+
+    /**
+     *  Describes how a query would be executed: the index and SQL used for each part of the
+     *  selector with an estimate of how many documents it matches, the statement they are
+     *  combined into, whether the documents have to be matched against the selector after being
+     *  loaded, and the index used for sorting.
+     *
+     *  @param query query to explain.
+     *  @param indexes indexes to use (this method will select the most appropriate).
+     *  @param sortDocument document specifying the order to return results, null to have no sorting
+     *  @return a description of the plan for the query
+     */
+    public String explain(Map<String, Object> query,
+                          List<Index> indexes,
+                          List<FieldSort> sortDocument) throws QueryException {
+        query = QueryValidator.normaliseAndValidateQuery(query);
+
+        Map<String, IndexStatistics> statistics = statisticsForIndexes(indexes);
+
+        Boolean[] indexesCoverQuery = new Boolean[]{ false };
+        ChildrenQueryNode root = translateQuery(query, indexes, statistics, indexesCoverQuery);
+
+        StringBuilder plan = new StringBuilder();
+        explainNode(root, "", plan);
+        SqlParts rootSql = QuerySqlTranslator.sqlForQueryTree(root);
+        if (rootSql != null) {
+            plan.append(String.format(Locale.ENGLISH, "Executed as a single statement: %s %s\n",
+                    rootSql.sqlWithPlaceHolders, Arrays.toString(rootSql.placeHolderValues)));
+        } else {
+            plan.append("Executed by combining the document IDs from each statement\n");
+        }
+        if (matcherForIndexCoverage(indexesCoverQuery, query) == null) {
+            plan.append("Indexes cover the query\n");
+        } else {
+            plan.append("Indexes do not cover the query; candidate documents are loaded and ");
+            plan.append("matched against the selector\n");
+        }
+        if (sortDocument != null && !sortDocument.isEmpty()) {
+            String sortIndex = chooseIndexForSort(sortDocument, indexes, statistics);
+            if (sortIndex == null) {
+                plan.append(String.format(Locale.ENGLISH, "No single index can satisfy order %s\n",
+                        sortDocument));
+            } else {
+                plan.append(String.format(Locale.ENGLISH, "Sort using index \"%s\"\n",
+                        sortIndex));
+            }
+        }
+        return plan.toString();
+    }
+
+    private static void explainNode(QueryNode node, String indent, StringBuilder plan) {
+        if (node instanceof SqlQueryNode) {
+            SqlQueryNode sqlNode = (SqlQueryNode) node;
+            plan.append(indent);
+            if (sqlNode.sql == null) {
+                plan.append("All document IDs from the database");
+            } else {
+                plan.append(String.format(Locale.ENGLISH, "SQL %s %s",
+                        sqlNode.sql.sqlWithPlaceHolders,
+                        Arrays.toString(sqlNode.sql.placeHolderValues)));
+            }
+            plan.append(estimateForExplain(node)).append('\n');
+        } else if (node instanceof ChildrenQueryNode) {
+            plan.append(indent).append(node instanceof AndQueryNode ? "AND" : "OR");
+            plan.append(estimateForExplain(node)).append('\n');
+            for (QueryNode child : ((ChildrenQueryNode) node).children) {
+                explainNode(child, indent + "  ", plan);
+            }
+        }
+    }
+
+    private static String estimateForExplain(QueryNode node) {
+        long estimate = QuerySqlTranslator.estimateDocuments(node);
+        return estimate < 0 ? "" : String.format(Locale.ENGLISH, " (estimated documents: %d)",
+                estimate);
+    }
+
+    /**
+     *  Returns the statistics of the JSON indexes, collecting any which are missing or stale.
+     */
+    private Map<String, IndexStatistics> statisticsForIndexes(final List<Index> indexes) throws
+            QueryException {
+        if (statisticsCache == null) {
+            return Collections.emptyMap();
+        }
+        try {
+            return queue.submitReadOnly(new SQLCallable<Map<String, IndexStatistics>>() {
+                @Override
+                public Map<String, IndexStatistics> call(SQLDatabase db) throws Exception {
+                    return statisticsCache.statisticsForIndexes(indexes, db);
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            String message = "Failed to collect index statistics";
+            logger.log(Level.SEVERE, message, e);
+            throw new QueryException(message, e.getCause());
+        } catch (InterruptedException e) {
+            String message = "Interrupted collecting index statistics";
+            logger.log(Level.SEVERE, message, e);
+            throw new QueryException(message, e);
+        }
     }
 
     protected ChildrenQueryNode translateQuery(Map<String, Object> query,
                                                List<Index> indexes,
+                                               Map<String, IndexStatistics> statistics,
                                                Boolean[] indexesCoverQuery) {
         return (ChildrenQueryNode) QuerySqlTranslator.translateQuery(query,
                                                                      indexes,
+                                                                     statistics,
                                                                      indexesCoverQuery);
     }
 
@@ -201,7 +431,7 @@ class QueryExecutor {
             Set<String> accumulator = null;
 
             AndQueryNode andNode = (AndQueryNode) node;
-            for (QueryNode qNode: andNode.children) {
+            for (QueryNode qNode: childrenBySmallestEstimate(andNode)) {
                 Set<String> childIds = executeQueryTree(qNode, db);
                 if (childIds == null) {
                     continue;
@@ -211,6 +441,10 @@ class QueryExecutor {
                 } else {
                     accumulator.retainAll(childIds);
                 }
+                if (accumulator.isEmpty()) {
+                    // nothing left for the remaining children to rule out
+                    break;
+                }
             }
 
             return accumulator;
@@ -239,23 +473,7 @@ class QueryExecutor {
                 List<String> docIds = null;
 
                 if (sqlNode.sql != null) {
-                    docIds = new ArrayList<String>();
-                    SqlParts sqlParts = sqlNode.sql;
-                    Cursor cursor = null;
-                    try {
-                        cursor = db.rawQuery(sqlParts.sqlWithPlaceHolders, sqlParts.placeHolderValues);
-
-                        while (cursor.moveToNext()) {
-                            String docId = cursor.getString(0);
-                            docIds.add(docId);
-                        }
-                    } catch (SQLException e) {
-                        String message = "Failed to get a list of doc ids.";
-                        logger.log(Level.SEVERE, message, e);
-                        throw new QueryException(message, e);
-                    } finally {
-                        DatabaseUtils.closeCursorQuietly(cursor);
-                    }
+                    docIds = idsForSql(sqlNode.sql, db);
                 } else {
                     // No SQL exists so we are now forced to go directly to the
                     // document DocumentStore to retrieve the list of document IDs.
@@ -273,6 +491,139 @@ class QueryExecutor {
         }
     }
 
+    /**
+     *  Returns the document IDs in the first column of the results of some SQL.
+     */
+    private static List<String> idsForSql(SqlParts sqlParts, SQLDatabase db) throws
+            QueryException {
+        List<String> docIds = new ArrayList<String>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sqlParts.sqlWithPlaceHolders, sqlParts.placeHolderValues);
+
+            while (cursor.moveToNext()) {
+                String docId = cursor.getString(0);
+                docIds.add(docId);
+            }
+        } catch (SQLException e) {
+            String message = "Failed to get a list of doc ids.";
+            logger.log(Level.SEVERE, message, e);
+            throw new QueryException(message, e);
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+        return docIds;
+    }
+
+    /**
+     *  Returns the children of an AND node with those estimated to return the fewest documents
+     *  first, so the intersection shrinks as early as possible and can stop once it is empty.
+     *  Children without an estimate keep their order and go last.
+     */
+    private static List<QueryNode> childrenBySmallestEstimate(AndQueryNode node) {
+        List<QueryNode> children = new ArrayList<QueryNode>(node.children);
+        Collections.sort(children, new Comparator<QueryNode>() {
+            @Override
+            public int compare(QueryNode a, QueryNode b) {
+                long estimateA = QuerySqlTranslator.estimateDocuments(a);
+                long estimateB = QuerySqlTranslator.estimateDocuments(b);
+                estimateA = estimateA < 0 ? Long.MAX_VALUE : estimateA;
+                estimateB = estimateB < 0 ? Long.MAX_VALUE : estimateB;
+                return estimateA < estimateB ? -1 : (estimateA == estimateB ? 0 : 1);
+            }
+        });
+        return children;
+    }
+
+    /**
+     *  Return SQL to count the IDs returned by the SQL for a query tree, which are distinct.
+     *
+     *  @param rootSql the SQL for the query tree
+     *  @return the SQL for the count
+     */
+    protected static SqlParts sqlForCount(SqlParts rootSql) {
+        String sql = String.format(Locale.ENGLISH, "SELECT COUNT(*) FROM (%s)",
+                rootSql.sqlWithPlaceHolders);
+        return SqlParts.partsForSql(sql, rootSql.placeHolderValues);
+    }
+
+    /**
+     *  Return SQL to get a page of the IDs returned by the SQL for a query tree.
+     *
+     *  @param rootSql the SQL for the query tree
+     *  @param skip how many IDs to skip, 0 for none
+     *  @param limit how many IDs to return, 0 for all of them
+     *  @return the SQL for the page
+     */
+    protected static SqlParts sqlForPage(SqlParts rootSql, long skip, long limit) {
+        String limitClause = limitClause(skip, limit);
+        if (limitClause.isEmpty()) {
+            return rootSql;
+        }
+        String sql = String.format(Locale.ENGLISH, "SELECT _id FROM (%s)%s",
+                rootSql.sqlWithPlaceHolders, limitClause);
+        return SqlParts.partsForSql(sql, rootSql.placeHolderValues);
+    }
+
+    /**
+     *  Return SQL to get a page of the IDs returned by the SQL for a query tree, ordered using
+     *  the cheapest index with all the fields in the sort document. When there is a limit,
+     *  SQLite only keeps the first skip + limit IDs in order as it sorts, rather than sorting
+     *  every ID.
+     *
+     *  @param rootSql the SQL for the query tree
+     *  @param sortDocument Array of ordering definitions
+     *                      [ { "fieldName" : "asc" }, { "fieldName2", "desc" } ]
+     *  @param indexes dictionary of indexes
+     *  @param statistics statistics of the indexes
+     *  @param skip how many IDs to skip, 0 for none
+     *  @param limit how many IDs to return, 0 for all of them
+     *  @return the SQL for the page
+     */
+    protected static SqlParts sqlToSortPage(SqlParts rootSql,
+                                            List<FieldSort> sortDocument,
+                                            List<Index> indexes,
+                                            Map<String, IndexStatistics> statistics,
+                                            long skip,
+                                            long limit) throws QueryException {
+        String chosenIndex = chooseIndexForSort(sortDocument, indexes, statistics);
+        if (chosenIndex == null) {
+            String msg = String.format(Locale.ENGLISH, "No single index can satisfy order %s", sortDocument);
+            logger.log(Level.SEVERE, msg);
+            throw new QueryException(msg);
+        }
+
+        // SELECT DISTINCT _id FROM idx WHERE _id IN (root) ORDER BY fieldName ASC LIMIT l OFFSET s
+        String sql = String.format(Locale.ENGLISH,
+                "SELECT DISTINCT _id FROM \"%s\" WHERE _id IN (%s) ORDER BY %s%s",
+                QueryImpl.tableNameForIndex(chosenIndex),
+                rootSql.sqlWithPlaceHolders,
+                orderByClause(sortDocument),
+                limitClause(skip, limit));
+        return SqlParts.partsForSql(sql, rootSql.placeHolderValues);
+    }
+
+    private static String limitClause(long skip, long limit) {
+        if (skip <= 0 && limit <= 0) {
+            return "";
+        }
+        // a negative limit is no limit
+        return String.format(Locale.ENGLISH, " LIMIT %d OFFSET %d", limit > 0 ? limit : -1,
+                Math.max(0, skip));
+    }
+
+    private static String orderByClause(List<FieldSort> sortDocument) {
+        List<String> orderClauses = new ArrayList<String>();
+        for (FieldSort clause : sortDocument) {
+            String fieldName = clause.field;
+            String direction = clause.sort == FieldSort.Direction.ASCENDING ? "asc" : "desc";
+
+            String orderClause = String.format("\"%s\" %s", fieldName, direction.toUpperCase(Locale.ENGLISH));
+            orderClauses.add(orderClause);
+        }
+        return Misc.join(", ", orderClauses);
+    }
+
     /**
      *  Return ordered list of document IDs using provided indexes.
      *
@@ -282,15 +633,19 @@ class QueryExecutor {
      *  @param sortDocument Array of ordering definitions
      *                      '[ {"fieldName": "asc"}, {"fieldName2", "desc"} ]'
      *  @param indexes dictionary of indexes
+     *  @param statistics statistics of the indexes
+     *  @param maxIds how many IDs to return before stopping, 0 for all of them
      *  @param db database containing 'indexes' to use when sorting documents
      *  @return an ordered list of document IDs using provided indexes.
      */
     private List<String> sortIds(Set<String> docIdSet,
                                  List<FieldSort> sortDocument,
                                  List<Index> indexes,
+                                 Map<String, IndexStatistics> statistics,
+                                 long maxIds,
                                  SQLDatabase db) throws QueryException {
         boolean smallResultSet = (docIdSet.size() < SMALL_RESULT_SET_SIZE_THRESHOLD);
-        SqlParts orderBy = sqlToSortIds(docIdSet, sortDocument, indexes);
+        SqlParts orderBy = sqlToSortIds(docIdSet, sortDocument, indexes, statistics);
 
         List<String> sortedIds = null;
         // The query will iterate through a sorted list of docIds.
@@ -315,6 +670,10 @@ class QueryExecutor {
                         sortedIds.add(candidateId);
                     }
                 }
+
+                if (maxIds > 0 && sortedIds.size() >= maxIds) {
+                    break;
+                }
             }
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Failed to sort doc ids.", e);
@@ -340,7 +699,20 @@ class QueryExecutor {
     protected static SqlParts sqlToSortIds(Set<String> docIdSet,
                                   List<FieldSort> sortDocument,
                                   List<Index> indexes) throws QueryException {
-        String chosenIndex = chooseIndexForSort(sortDocument, indexes);
+        return sqlToSortIds(docIdSet, sortDocument, indexes,
+                Collections.<String, IndexStatistics>emptyMap());
+    }
+
+    /**
+     *  Return SQL to get ordered list of docIds, reading the cheapest suitable index.
+     *
+     *  @see #sqlToSortIds(Set, List, List)
+     */
+    protected static SqlParts sqlToSortIds(Set<String> docIdSet,
+                                  List<FieldSort> sortDocument,
+                                  List<Index> indexes,
+                                  Map<String, IndexStatistics> statistics) throws QueryException {
+        String chosenIndex = chooseIndexForSort(sortDocument, indexes, statistics);
         if (chosenIndex == null) {
             String msg = String.format(Locale.ENGLISH, "No single index can satisfy order %s", sortDocument);
             logger.log(Level.SEVERE, msg);
@@ -354,15 +726,6 @@ class QueryExecutor {
         // for large result sets:
         // SELECT _id FROM idx ORDER BY fieldName ASC, fieldName2 DESC
 
-        List<String> orderClauses = new ArrayList<String>();
-        for (FieldSort clause : sortDocument) {
-            String fieldName = clause.field;
-            String direction = clause.sort == FieldSort.Direction.ASCENDING ? "asc" : "desc";
-
-            String orderClause = String.format("\"%s\" %s", fieldName, direction.toUpperCase(Locale.ENGLISH));
-            orderClauses.add(orderClause);
-        }
-
         // If we have few results, it's more efficient to reduce the search space
         // for SQLite. 500 placeholders should be a safe value.
         List<String> parameterList = new ArrayList<String>();
@@ -378,7 +741,7 @@ class QueryExecutor {
             whereClause = String.format("WHERE _id IN (%s)", Misc.join(", ", placeholders));
         }
 
-        String orderBy = Misc.join(", ", orderClauses);
+        String orderBy = orderByClause(sortDocument);
         String sql = String.format("SELECT DISTINCT _id FROM %s %s ORDER BY %s", indexTable,
                                                                                  whereClause,
                                                                                  orderBy);
@@ -386,9 +749,9 @@ class QueryExecutor {
         return SqlParts.partsForSql(sql, parameterList.toArray(parameters));
     }
 
-    @SuppressWarnings("unchecked")
     private static String chooseIndexForSort(List<FieldSort> sortDocument,
-                                      List<Index> indexes) {
+                                             List<Index> indexes,
+                                             Map<String, IndexStatistics> statistics) {
         if (indexes == null || indexes.isEmpty()) {
             return null;  // Can't choose an index if one does not exist.
         }
@@ -403,15 +766,20 @@ class QueryExecutor {
             return null;  // no point in querying empty set of fields
         }
 
+        // the cheapest index to read which has all the fields, or the first without statistics
         String chosenIndex = null;
+        long chosenCost = Long.MAX_VALUE;
         for (Index index : indexes) {
             Set<String> providedFields = new HashSet<String>();
             for (FieldSort field : index.fieldNames) {
                 providedFields.add(field.field);
             }
             if (providedFields.containsAll(neededFields)) {
-                chosenIndex = index.indexName;
-                break;
+                long cost = QuerySqlTranslator.scanCost(index, statistics);
+                if (chosenIndex == null || cost < chosenCost) {
+                    chosenIndex = index.indexName;
+                    chosenCost = cost;
+                }
             }
         }
 
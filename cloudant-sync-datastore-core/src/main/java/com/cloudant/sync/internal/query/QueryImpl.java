@@ -15,7 +15,10 @@
 package com.cloudant.sync.internal.query;
 
 import com.cloudant.sync.documentstore.Database;
+import com.cloudant.sync.documentstore.DocumentStoreException;
 import com.cloudant.sync.documentstore.encryption.KeyProvider;
+import com.cloudant.sync.event.Subscribe;
+import com.cloudant.sync.event.notifications.DocumentModified;
 import com.cloudant.sync.internal.documentstore.DatabaseImpl;
 import com.cloudant.sync.internal.documentstore.migrations.SchemaOnlyMigration;
 import com.cloudant.sync.internal.query.callables.DeleteIndexCallable;
@@ -26,6 +29,7 @@ import com.cloudant.sync.internal.util.Misc;
 import com.cloudant.sync.query.FieldSort;
 import com.cloudant.sync.query.Index;
 import com.cloudant.sync.query.IndexType;
+import com.cloudant.sync.query.IndexUpdateMode;
 import com.cloudant.sync.query.Query;
 import com.cloudant.sync.query.QueryException;
 import com.cloudant.sync.query.QueryResult;
@@ -38,6 +42,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -45,13 +51,16 @@ import java.util.regex.Pattern;
 //
 // The metadata for an index is represented in the database table as follows:
 //
-//   index_name  |  index_type  |  field_name  |  last_sequence
-//   -----------------------------------------------------------
-//     name      |  json        |   _id        |     0
-//     name      |  json        |   _rev       |     0
-//     name      |  json        |   firstName  |     0
-//     name      |  json        |   lastName   |     0
-//     age       |  json        |   age        |     0
+//   index_name  |  index_type  |  field_name  |  last_sequence  |  array_values
+//   ---------------------------------------------------------------------------
+//     name      |  json        |   _id        |     0           |     0
+//     name      |  json        |   _rev       |     0           |     0
+//     name      |  json        |   firstName  |     0           |     0
+//     name      |  json        |   lastName   |     0           |     0
+//     age       |  json        |   age        |     0           |     0
+//
+// array_values is set to 1 once a document has had an array for the field, and is NULL for
+// indexes created before it was added.
 //
 // The index itself is a single table, with a column for docId and each of the indexed fields:
 //
@@ -85,6 +94,25 @@ public class QueryImpl implements Query {
 
     private final SQLDatabaseQueue dbQueue;
 
+    private static final long DEFAULT_BACKGROUND_DEBOUNCE_MS = 500;
+    private static final long DEFAULT_BACKGROUND_MAX_LAG_MS = 5000;
+
+    private volatile IndexUpdateMode indexUpdateMode = IndexUpdateMode.ON_QUERY;
+
+    private long backgroundDebounceMs = DEFAULT_BACKGROUND_DEBOUNCE_MS;
+    private long backgroundMaxLagMs = DEFAULT_BACKGROUND_MAX_LAG_MS;
+    // only set in BACKGROUND mode
+    private volatile BackgroundIndexRefresher backgroundRefresher;
+
+    // the lowest sequence which all of the indexes have committed, only set with refreshLock held
+    private final AtomicLong indexedSequence = new AtomicLong(-1);
+
+    // held while updating the indexes, so a slower update can't commit older rows and sequences
+    // over a faster one
+    private final Object refreshLock = new Object();
+
+    private final IndexStatisticsCache statistics = new IndexStatisticsCache();
+
     /**
      *  Constructs a new IndexManager which indexes documents in the DocumentStore.
      *  @param database The {@link Database} to index
@@ -99,13 +127,15 @@ public class QueryImpl implements Query {
         dbQueue = new SQLDatabaseQueue(indexesDatabaseFile, keyProvider);
         dbQueue.updateSchema(new SchemaOnlyMigration(QueryConstants.getSchemaVersion1()), 1);
         dbQueue.updateSchema(new SchemaOnlyMigration(QueryConstants.getSchemaVersion2()), 2);
+        dbQueue.updateSchema(new SchemaOnlyMigration(QueryConstants.getSchemaVersion3()), 3);
 
-        // register so we can receive purge events
+        // register so we can update indexes on write
         this.database.getEventBus().register(this);
     }
 
     public void close() {
         this.database.getEventBus().unregister(this);
+        stopBackgroundRefresher();
         dbQueue.shutdown();
     }
 
@@ -124,7 +154,7 @@ public class QueryImpl implements Query {
     @Override
     public List<Index> listIndexes() throws QueryException {
         try {
-            return DatabaseImpl.get(dbQueue.submit(new ListIndexesCallable()));
+            return DatabaseImpl.get(dbQueue.submitReadOnly(new ListIndexesCallable()));
         }  catch (ExecutionException e) {
             String msg = "Failed to list indexes";
             logger.log(Level.SEVERE, msg, e);
@@ -162,12 +192,15 @@ public class QueryImpl implements Query {
         // synchronized to prevent race conditions in IndexCreator when looking for existing indexes
         // which have the same name or definition
         synchronized (this) {
-            return IndexCreator.ensureIndexed(new Index(fieldNames,
-                            indexName,
-                            indexType,
-                            tokenizer),
-                    database,
-                    dbQueue);
+            // creating an index updates it, which mustn't overlap a refresh
+            synchronized (refreshLock) {
+                return IndexCreator.ensureIndexed(new Index(fieldNames,
+                                indexName,
+                                indexType,
+                                tokenizer),
+                        database,
+                        dbQueue);
+            }
         }
     }
 
@@ -184,6 +217,7 @@ public class QueryImpl implements Query {
 
         try {
             result.get();
+            statistics.remove(indexName);
         } catch (ExecutionException e) {
             String message = "Execution error during index deletion";
             logger.log(Level.SEVERE, message, e);
@@ -202,9 +236,103 @@ public class QueryImpl implements Query {
      */
     @Override
     public void refreshAllIndexes() throws QueryException {
-        List<Index> indexes = listIndexes();
+        synchronized (refreshLock) {
+            long lastSequence = databaseLastSequence();
 
-        IndexUpdater.updateAllIndexes(indexes, database, dbQueue);
+            List<Index> indexes = listIndexes();
+
+            long committed = IndexUpdater.updateAllIndexes(indexes, database, dbQueue,
+                    statistics);
+
+            // with no indexes there is nothing to be out of date, otherwise only trust the
+            // sequences the indexes have committed
+            indexedSequence.set(indexes.isEmpty() ? lastSequence : committed);
+        }
+    }
+
+    /**
+     * Updates the indexes if there have been writes since they were last updated.
+     */
+    void refreshAllIndexesIfNeeded() throws QueryException {
+        if (databaseLastSequence() > indexedSequence.get()) {
+            refreshAllIndexes();
+        }
+    }
+
+    private long databaseLastSequence() throws QueryException {
+        try {
+            return database.getLastSequence();
+        } catch (DocumentStoreException e) {
+            String msg = "Failed to get last sequence of database";
+            logger.log(Level.SEVERE, msg, e);
+            throw new QueryException(msg, e);
+        }
+    }
+
+    @Override
+    public synchronized void setIndexUpdateMode(IndexUpdateMode mode) {
+        Misc.checkNotNull(mode, "mode");
+        stopBackgroundRefresher();
+        this.indexUpdateMode = mode;
+        if (mode == IndexUpdateMode.BACKGROUND) {
+            backgroundRefresher = new BackgroundIndexRefresher(this, backgroundDebounceMs,
+                    backgroundMaxLagMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void setBackgroundIndexUpdateDelays(long debounce, long maxLag,
+                                                            TimeUnit unit) {
+        Misc.checkNotNull(unit, "unit");
+        Misc.checkArgument(debounce >= 0, "debounce must not be negative");
+        Misc.checkArgument(maxLag >= 0, "maxLag must not be negative");
+        this.backgroundDebounceMs = unit.toMillis(debounce);
+        this.backgroundMaxLagMs = unit.toMillis(maxLag);
+        if (indexUpdateMode == IndexUpdateMode.BACKGROUND) {
+            // restart with the new delays
+            setIndexUpdateMode(IndexUpdateMode.BACKGROUND);
+        }
+    }
+
+    private synchronized void stopBackgroundRefresher() {
+        if (backgroundRefresher != null) {
+            backgroundRefresher.shutdown();
+            backgroundRefresher = null;
+        }
+    }
+
+    @Override
+    public IndexUpdateMode getIndexUpdateMode() {
+        return indexUpdateMode;
+    }
+
+    /**
+     * Brings the indexes up to date with a write when in {@link IndexUpdateMode#ON_WRITE} mode.
+     * Events for the documents in a batch write are posted after the whole batch has been
+     * committed, so the first event updates the indexes with the whole batch and the rest find
+     * nothing to do. In {@link IndexUpdateMode#BACKGROUND} mode the write is handed to the
+     * background refresher instead.
+     *
+     * @param event the write
+     */
+    @Subscribe
+    public void onDocumentModified(DocumentModified event) {
+        if (indexUpdateMode == IndexUpdateMode.BACKGROUND) {
+            BackgroundIndexRefresher refresher = backgroundRefresher;
+            if (refresher != null) {
+                refresher.documentModified();
+            }
+            return;
+        }
+        if (indexUpdateMode != IndexUpdateMode.ON_WRITE) {
+            return;
+        }
+        try {
+            refreshAllIndexesIfNeeded();
+        } catch (QueryException e) {
+            // the next query will try again
+            logger.log(Level.SEVERE, "Failed to update indexes on write", e);
+        }
     }
 
     @Override
@@ -220,14 +348,40 @@ public class QueryImpl implements Query {
                             List<FieldSort> sortSpecification) throws QueryException {
         Misc.checkNotNull(query, "query");
 
-        refreshAllIndexes();
+        refreshAllIndexesIfNeeded();
 
-        QueryExecutor queryExecutor = new QueryExecutor(database, dbQueue);
+        QueryExecutor queryExecutor = new QueryExecutor(database, dbQueue, statistics);
         List<Index> indexes = listIndexes();
 
         return queryExecutor.find(query, indexes, skip, limit, fields, sortSpecification);
     }
 
+    @Override
+    public int count(Map<String, Object> query) throws QueryException {
+        Misc.checkNotNull(query, "query");
+
+        refreshAllIndexesIfNeeded();
+
+        QueryExecutor queryExecutor = new QueryExecutor(database, dbQueue, statistics);
+        List<Index> indexes = listIndexes();
+
+        return queryExecutor.count(query, indexes);
+    }
+
+    @Override
+    public String explain(Map<String, Object> query,
+                          List<FieldSort> sortSpecification) throws QueryException {
+        Misc.checkNotNull(query, "query");
+
+        // plan over the same indexes find would use
+        refreshAllIndexesIfNeeded();
+
+        QueryExecutor queryExecutor = new QueryExecutor(database, dbQueue, statistics);
+        List<Index> indexes = listIndexes();
+
+        return queryExecutor.explain(query, indexes, sortSpecification);
+    }
+
     public static String tableNameForIndex(String indexName) {
         return QueryConstants.INDEX_TABLE_PREFIX.concat(indexName);
     }
@@ -31,10 +31,11 @@ import static com.cloudant.sync.internal.query.QueryConstants.SEARCH;
 import static com.cloudant.sync.internal.query.QueryConstants.SIZE;
 import static com.cloudant.sync.internal.query.QueryConstants.TEXT;
 
+import com.cloudant.sync.internal.documentstore.DatabaseImpl;
+import com.cloudant.sync.internal.util.Misc;
 import com.cloudant.sync.query.FieldSort;
 import com.cloudant.sync.query.Index;
 import com.cloudant.sync.query.IndexType;
-import com.cloudant.sync.internal.util.Misc;
 import com.cloudant.sync.query.QueryException;
 
 import java.util.ArrayList;
@@ -62,7 +63,10 @@ import java.util.logging.Logger;
  *  This merging of results in code allows us to make more intelligent use of indexes
  *  within the SQLite database. As SQLite allows us to use just a single index per query,
  *  performing several queries over indexes and then using set operations works out
- *  more flexible and likely more efficient.
+ *  more flexible and likely more efficient. Where it can, the executor then compiles the
+ *  whole tree into a single SQL statement using {@link #sqlForQueryTree(QueryNode)}, so that
+ *  the set operations over the separate index tables are carried out by SQLite, and only
+ *  merges document ID sets in code when it can't.
  *
  *  The SQL must be executed separately so we can do it in a transaction so we're doing
  *  it over a consistent view of the index.
@@ -116,6 +120,13 @@ import java.util.logging.Logger;
  *  sql sql
  *
  *  These basic patterns can be composed into more complicate structures.
+ *
+ *  Where several indexes could satisfy a clause, the one which is cheapest to read is chosen
+ *  using the {@link IndexStatistics} passed in. The SQLite index on each index table leads with
+ *  _id, so any clause over an index reads the whole table; the cost of an index is therefore
+ *  its row count times its width. Each SQL node is also given an estimate of how many documents
+ *  it returns, from the distinct counts of the fields in its clause, which the executor uses to
+ *  order the intersections of AND nodes. Without statistics the first suitable index is chosen.
  */
 class QuerySqlTranslator {
 
@@ -124,7 +135,16 @@ class QuerySqlTranslator {
     public static QueryNode translateQuery(Map<String, Object> query,
                                            List<Index> indexes,
                                            Boolean[] indexesCoverQuery) {
+        return translateQuery(query, indexes,
+                Collections.<String, IndexStatistics>emptyMap(), indexesCoverQuery);
+    }
+
+    public static QueryNode translateQuery(Map<String, Object> query,
+                                           List<Index> indexes,
+                                           Map<String, IndexStatistics> statistics,
+                                           Boolean[] indexesCoverQuery) {
         TranslatorState state = new TranslatorState();
+        state.statistics = statistics;
         QueryNode node = translateQuery(query, indexes, state);
 
         Misc.checkState(!state.textIndexMissing, "No text index defined, cannot execute query containing a text search.");
@@ -140,12 +160,17 @@ class QuerySqlTranslator {
             // run over every document to manually carry out the query.
             SqlQueryNode sqlNode = new SqlQueryNode();
             Set<String> neededFields = new HashSet<String>(Collections.singletonList("_id"));
-            String allDocsIndex = chooseIndexForFields(neededFields, indexes);
+            String allDocsIndex = chooseIndexForFields(neededFields, indexes, statistics);
 
             if (allDocsIndex != null && !allDocsIndex.isEmpty()) {
                 String tableName = QueryImpl.tableNameForIndex(allDocsIndex);
                 String sql = String.format(Locale.ENGLISH, "SELECT _id FROM \"%s\"", tableName);
                 sqlNode.sql = SqlParts.partsForSql(sql, new String[]{});
+                sqlNode.indexName = allDocsIndex;
+                IndexStatistics indexStatistics = statistics.get(allDocsIndex);
+                if (indexStatistics != null) {
+                    sqlNode.estimatedDocuments = indexStatistics.documentCount;
+                }
             }
 
             AndQueryNode root = new AndQueryNode();
@@ -206,7 +231,8 @@ class QuerySqlTranslator {
                 // For an AND query, we require a single compound index and we generate a
                 // single SQL statement to use that index to satisfy the clauses.
 
-                String chosenIndex = chooseIndexForAndClause(basicClauses, indexes);
+                String chosenIndex = chooseIndexForAndClause(basicClauses, indexes,
+                        state.statistics);
                 if (chosenIndex == null || chosenIndex.isEmpty()) {
                     state.atLeastOneIndexMissing = true;
                     String msg = String.format("No single index contains all of %s; %s",
@@ -221,6 +247,9 @@ class QuerySqlTranslator {
 
                     SqlQueryNode sqlNode = new SqlQueryNode();
                     sqlNode.sql = select;
+                    sqlNode.indexName = chosenIndex;
+                    sqlNode.estimatedDocuments = estimateDocumentsForAndClause(basicClauses,
+                            state.statistics.get(chosenIndex));
 
                     if (root != null) {
                         root.children.add(sqlNode);
@@ -239,7 +268,8 @@ class QuerySqlTranslator {
 
                 for (Object basicClause : basicClauses) {
                     List<Object> wrappedClause = Arrays.asList(basicClause);
-                    String chosenIndex = chooseIndexForAndClause(wrappedClause, indexes);
+                    String chosenIndex = chooseIndexForAndClause(wrappedClause, indexes,
+                            state.statistics);
                     if (chosenIndex == null || chosenIndex.isEmpty()) {
                         state.atLeastOneIndexMissing = true;
                         state.atLeastOneORIndexMissing = true;
@@ -255,6 +285,9 @@ class QuerySqlTranslator {
 
                         SqlQueryNode sqlNode = new SqlQueryNode();
                         sqlNode.sql = select;
+                        sqlNode.indexName = chosenIndex;
+                        sqlNode.estimatedDocuments = estimateDocumentsForAndClause(
+                                wrappedClause, state.statistics.get(chosenIndex));
 
                         if (root != null) {
                             root.children.add(sqlNode);
@@ -372,6 +405,13 @@ class QuerySqlTranslator {
 
     protected static String chooseIndexForAndClause(List<Object> clause,
                                                     List<Index>indexes) {
+        return chooseIndexForAndClause(clause, indexes,
+                Collections.<String, IndexStatistics>emptyMap());
+    }
+
+    protected static String chooseIndexForAndClause(List<Object> clause,
+                                                    List<Index> indexes,
+                                                    Map<String, IndexStatistics> statistics) {
 
         if (clause == null || clause.isEmpty()) {
             return null;
@@ -394,12 +434,24 @@ class QuerySqlTranslator {
 
         Misc.checkState(!neededFields.isEmpty(), String.format("Invalid clauses in $and clause %s.", clause.toString()));
 
-        return chooseIndexForFields(neededFields, indexes);
+        return chooseIndexForFields(neededFields, indexes, statistics);
     }
 
     protected static String chooseIndexForFields(Set<String> neededFields,
                                                  List<Index> indexes) {
+        return chooseIndexForFields(neededFields, indexes,
+                Collections.<String, IndexStatistics>emptyMap());
+    }
+
+    /**
+     * Chooses the cheapest JSON index to read which contains all of {@code neededFields}. Ties,
+     * including between indexes without statistics, go to the earliest index in the list.
+     */
+    protected static String chooseIndexForFields(Set<String> neededFields,
+                                                 List<Index> indexes,
+                                                 Map<String, IndexStatistics> statistics) {
         String chosenIndex = null;
+        long chosenCost = Long.MAX_VALUE;
         for (Index index : indexes) {
 
             // Don't choose a text index for a non-text query clause
@@ -414,14 +466,174 @@ class QuerySqlTranslator {
             }
 
             if (providedFields.containsAll(neededFields)) {
-                chosenIndex = index.indexName;
-                break;
+                long cost = scanCost(index, statistics);
+                if (chosenIndex == null || cost < chosenCost) {
+                    chosenIndex = index.indexName;
+                    chosenCost = cost;
+                }
             }
         }
 
         return chosenIndex;
     }
 
+    /**
+     * Returns the relative cost of reading the whole table of an index, which is the number of
+     * values in it, or {@link Long#MAX_VALUE} if there are no statistics for the index.
+     */
+    protected static long scanCost(Index index, Map<String, IndexStatistics> statistics) {
+        IndexStatistics indexStatistics = statistics.get(index.indexName);
+        if (indexStatistics == null) {
+            return Long.MAX_VALUE;
+        }
+        return indexStatistics.rowCount * index.fieldNames.size();
+    }
+
+    /**
+     * Estimates how many documents match an AND clause over an index, assuming the fields are
+     * independent and their values evenly distributed.
+     *
+     * @return the estimate, or -1 if there are no statistics for the index
+     */
+    @SuppressWarnings("unchecked")
+    protected static long estimateDocumentsForAndClause(List<Object> clause,
+                                                        IndexStatistics statistics) {
+        if (statistics == null) {
+            return -1;
+        }
+        double selectivity = 1.0;
+        for (Object rawTerm : clause) {
+            Map<String, Object> term = (Map<String, Object>) rawTerm;
+            String fieldName = (String) term.keySet().toArray()[0];
+            Map<String, Object> predicate = (Map<String, Object>) term.get(fieldName);
+            String operator = (String) predicate.keySet().toArray()[0];
+            long distinct = statistics.distinctCount(fieldName);
+            if (operator.equals(NOT)) {
+                Map<String, Object> negated = (Map<String, Object>) predicate.get(NOT);
+                String negatedOperator = (String) negated.keySet().toArray()[0];
+                selectivity *= 1.0 - selectivity(negatedOperator, negated.get(negatedOperator),
+                        distinct);
+            } else {
+                selectivity *= selectivity(operator, predicate.get(operator), distinct);
+            }
+        }
+        return Math.round(statistics.documentCount * selectivity);
+    }
+
+    private static double selectivity(String operator, Object value, long distinct) {
+        if (operator.equals(EQ)) {
+            return distinct > 0 ? 1.0 / distinct : 0.0;
+        } else if (operator.equals(IN)) {
+            int size = ((List) value).size();
+            return distinct > 0 ? Math.min(1.0, (double) size / distinct) : 0.0;
+        } else if (operator.equals(GT) || operator.equals(GTE) || operator.equals(LT) ||
+                operator.equals(LTE)) {
+            // the guess SQLite makes for a range without statistics
+            return 1.0 / 3;
+        } else {
+            // $exists and $mod
+            return 0.5;
+        }
+    }
+
+    /**
+     * Estimates how many documents a node of a query tree returns.
+     *
+     * @return the estimate, or -1 if it isn't known
+     */
+    protected static long estimateDocuments(QueryNode node) {
+        if (node instanceof SqlQueryNode) {
+            return ((SqlQueryNode) node).estimatedDocuments;
+        } else if (node instanceof AndQueryNode) {
+            // no more than the smallest child
+            long estimate = -1;
+            for (QueryNode child : ((AndQueryNode) node).children) {
+                long childEstimate = estimateDocuments(child);
+                if (childEstimate >= 0 && (estimate < 0 || childEstimate < estimate)) {
+                    estimate = childEstimate;
+                }
+            }
+            return estimate;
+        } else if (node instanceof OrQueryNode) {
+            // no more than all the children together
+            long estimate = 0;
+            for (QueryNode child : ((OrQueryNode) node).children) {
+                long childEstimate = estimateDocuments(child);
+                if (childEstimate < 0) {
+                    return -1;
+                }
+                estimate += childEstimate;
+            }
+            return estimate;
+        }
+        return -1;
+    }
+
+    /**
+     * <p>
+     * Compiles a query tree into a single SQL statement which returns the distinct IDs of the
+     * documents matching it, so SQLite can combine the results of the clauses rather than each
+     * clause's results being read separately. The statements of the children of an AND node are
+     * combined with INTERSECT, and those of an OR node with UNION, each child becoming a
+     * subquery.
+     * </p>
+     * <p>
+     * Trees which need every document ID from the database, or which contain an empty AND or
+     * OR node, can't be compiled, nor can those needing more placeholders than SQLite allows.
+     * </p>
+     *
+     * @param node the root of the query tree
+     * @return the statement, or null if the tree can't be compiled
+     */
+    protected static SqlParts sqlForQueryTree(QueryNode node) {
+        List<String> values = new ArrayList<String>();
+        String sql = sqlForNode(node, values);
+        if (sql == null || values.size() > DatabaseImpl.SQLITE_QUERY_PLACEHOLDERS_LIMIT) {
+            return null;
+        }
+
+        QueryNode leaf = node;
+        while (leaf instanceof ChildrenQueryNode && ((ChildrenQueryNode) leaf).children.size()
+                == 1) {
+            leaf = ((ChildrenQueryNode) leaf).children.get(0);
+        }
+        if (leaf instanceof SqlQueryNode) {
+            // not combined with anything to remove the duplicate rows of array fields
+            sql = String.format(Locale.ENGLISH, "SELECT DISTINCT _id FROM (%s)", sql);
+        }
+
+        return SqlParts.partsForSql(sql, values.toArray(new String[values.size()]));
+    }
+
+    private static String sqlForNode(QueryNode node, List<String> values) {
+        if (node instanceof SqlQueryNode) {
+            SqlParts sql = ((SqlQueryNode) node).sql;
+            if (sql == null) {
+                // the IDs have to come from the database rather than an index
+                return null;
+            }
+            values.addAll(Arrays.asList(sql.placeHolderValues));
+            return sql.sqlWithPlaceHolders;
+        } else if (node instanceof ChildrenQueryNode) {
+            List<QueryNode> children = ((ChildrenQueryNode) node).children;
+            if (children.isEmpty()) {
+                return null;
+            } else if (children.size() == 1) {
+                return sqlForNode(children.get(0), values);
+            }
+            List<String> selects = new ArrayList<String>();
+            for (QueryNode child : children) {
+                String childSql = sqlForNode(child, values);
+                if (childSql == null) {
+                    return null;
+                }
+                selects.add(String.format(Locale.ENGLISH, "SELECT _id FROM (%s)", childSql));
+            }
+            return Misc.join(node instanceof AndQueryNode ? " INTERSECT " : " UNION ", selects);
+        }
+        return null;
+    }
+
     private static String getTextIndex(List<Index> indexes) {
         String textIndex = null;
         for (Index index : indexes) {
@@ -26,4 +26,10 @@ class SqlQueryNode implements QueryNode {
 
     public SqlParts sql;
 
+    // the index the SQL reads, null for the text index or when there is no SQL
+    public String indexName;
+
+    // estimate of how many document IDs the SQL returns, -1 if not known
+    public long estimatedDocuments = -1;
+
 }
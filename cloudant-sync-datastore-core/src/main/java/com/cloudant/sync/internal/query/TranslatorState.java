@@ -16,6 +16,9 @@
 
 package com.cloudant.sync.internal.query;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  *  The purpose of a TranslatorState object is to track the state of a query translation operation
  *  performed by method calls in the {@link QuerySqlTranslator}.  Since
@@ -33,6 +36,7 @@ class TranslatorState {
     public boolean atLeastOneORIndexMissing;
     public boolean textIndexRequired;
     public boolean textIndexMissing;
+    public Map<String, IndexStatistics> statistics;
 
     TranslatorState() {
         atLeastOneIndexUsed = false;
@@ -40,6 +44,7 @@ class TranslatorState {
         atLeastOneORIndexMissing = false;
         textIndexRequired = false;
         textIndexMissing = false;
+        statistics = Collections.emptyMap();
     }
 
 }
@@ -22,8 +22,10 @@ import com.cloudant.sync.internal.documentstore.InternalDocumentRevision;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -88,6 +90,8 @@ public class UnindexedMatcher {
 
     private ChildrenQueryNode root;
 
+    private FieldPathExtractor extractor;
+
     private static final Logger logger = Logger.getLogger(UnindexedMatcher.class.getName());
 
     /**
@@ -105,10 +109,27 @@ public class UnindexedMatcher {
 
         UnindexedMatcher matcher = new UnindexedMatcher();
         matcher.root = root;
+        Set<String> fieldNames = new HashSet<String>();
+        collectFieldNames(root, fieldNames);
+        matcher.extractor = new FieldPathExtractor(fieldNames);
 
         return matcher;
     }
 
+    /**
+     * Adds the names of the fields which the tree compares values of to {@code fieldNames}, so
+     * that the values can be read from each document in one pass.
+     */
+    private static void collectFieldNames(QueryNode node, Set<String> fieldNames) {
+        if (node instanceof ChildrenQueryNode) {
+            for (QueryNode child : ((ChildrenQueryNode) node).children) {
+                collectFieldNames(child, fieldNames);
+            }
+        } else if (node instanceof OperatorExpressionNode) {
+            fieldNames.addAll(((OperatorExpressionNode) node).expression.keySet());
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private static ChildrenQueryNode buildExecutionTreeForSelector(Map<String, Object> selector) {
         // At this point we will have a root compound predicate, AND or OR, and
@@ -189,18 +210,18 @@ public class UnindexedMatcher {
      * @return document and matcher's selector matching status.
      */
     public boolean matches(DocumentRevision rev) {
-        return executeSelectorTree(root, rev);
+        return executeSelectorTree(root, extractor.extract(rev));
     }
 
     @SuppressWarnings("unchecked")
-    private boolean executeSelectorTree(QueryNode node, DocumentRevision rev) {
+    private boolean executeSelectorTree(QueryNode node, Map<String, Object> values) {
         if (node instanceof AndQueryNode) {
             boolean passed = true;
 
             AndQueryNode andNode = (AndQueryNode) node;
 
             for (QueryNode child: andNode.children) {
-                passed = passed && executeSelectorTree(child, rev);
+                passed = passed && executeSelectorTree(child, values);
             }
 
             return passed;
@@ -211,7 +232,7 @@ public class UnindexedMatcher {
             OrQueryNode orNode = (OrQueryNode) node;
 
             for (QueryNode child: orNode.children) {
-                passed = passed || executeSelectorTree(child, rev);
+                passed = passed || executeSelectorTree(child, values);
             }
 
             return passed;
@@ -238,7 +259,7 @@ public class UnindexedMatcher {
             }
 
             Object expected = operatorExpression.get(operator);
-            Object actual = ValueExtractor.extractValueForFieldName(fieldName, rev);
+            Object actual = values.get(fieldName);
 
             boolean passed = false;
             List<String> specialCaseOperators = Arrays.asList(QueryConstants.MOD, QueryConstants.SIZE);
@@ -56,6 +56,7 @@ public class CreateIndexCallable implements SQLCallable<Void> {
             parameters.put("index_settings", TokenizerHelper.tokenizerToJson(index.tokenizer));
             parameters.put("field_name", fieldName.field);
             parameters.put("last_sequence", 0);
+            parameters.put("array_values", 0);
             long rowId = database.insert(QueryConstants.INDEX_METADATA_TABLE_NAME,
                     parameters);
             if (rowId < 0) {
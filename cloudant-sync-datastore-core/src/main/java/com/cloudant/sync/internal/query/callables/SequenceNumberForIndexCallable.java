@@ -45,9 +45,8 @@ public class SequenceNumberForIndexCallable implements SQLCallable<Long> {
         Cursor cursor = null;
         try {
             cursor = database.rawQuery(sql, new String[]{indexName});
-            if (cursor.getCount() > 0) {
+            if (cursor.moveToFirst()) {
                 // All rows for a given index will have the same last_sequence
-                cursor.moveToNext();
                 result = cursor.getLong(0);
             }
         } catch (SQLException e) {
@@ -0,0 +1,269 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.query.callables;
+
+import com.cloudant.sync.documentstore.Changes;
+import com.cloudant.sync.documentstore.DocumentRevision;
+import com.cloudant.sync.internal.android.ContentValues;
+import com.cloudant.sync.internal.documentstore.DatabaseImpl;
+import com.cloudant.sync.internal.query.FieldPathExtractor;
+import com.cloudant.sync.internal.query.QueryConstants;
+import com.cloudant.sync.internal.query.QueryImpl;
+import com.cloudant.sync.internal.sqlite.SQLCallable;
+import com.cloudant.sync.internal.sqlite.SQLDatabase;
+import com.cloudant.sync.internal.util.CollectionUtils;
+import com.cloudant.sync.internal.util.DatabaseUtils;
+import com.cloudant.sync.internal.util.Misc;
+import com.cloudant.sync.query.FieldSort;
+import com.cloudant.sync.query.Index;
+import com.cloudant.sync.query.QueryException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Updates a set of Query Indexes with a page of changes, and sets the last sequence of each
+ * index to the last sequence of the changes.
+ * </p>
+ * <p>
+ * The fields needed by all of the indexes are read from each revision's body in one pass. The
+ * rows for each index are written with a single delete of the changed documents' rows followed by
+ * an insert per row which always names every column of the index table, so each insert reuses
+ * the same compiled statement.
+ * </p>
+ * <p>
+ * Fields which have an array value in any of the changes are recorded in the metadata, so it's
+ * known which index fields only have scalar values.
+ * </p>
+ * <p>
+ * Indexes whose last sequence, read in the same transaction, is already at or past the last
+ * sequence of the changes are left alone, so an update which read its changes before another
+ * update committed can't write older rows or move the last sequence backwards.
+ * </p>
+ * <p>
+ * This callable must be run in a transaction so that the indexes and their last sequences are
+ * updated together.
+ * </p>
+ */
+public class UpdateIndexesCallable implements SQLCallable<Void> {
+
+    private static final Logger logger = Logger.getLogger(UpdateIndexesCallable.class.getName());
+
+    private final Changes changes;
+    private final List<Index> indexes;
+    private final FieldPathExtractor extractor;
+
+    /**
+     * @param changes the page of changes to index
+     * @param indexes the indexes to update, which must already exist
+     */
+    public UpdateIndexesCallable(Changes changes, List<Index> indexes) {
+        this.changes = changes;
+        this.indexes = indexes;
+        Set<String> fields = new LinkedHashSet<String>();
+        for (Index index : indexes) {
+            for (FieldSort fieldName : index.fieldNames) {
+                fields.add(fieldName.field);
+            }
+        }
+        this.extractor = new FieldPathExtractor(fields);
+    }
+
+    @Override
+    public Void call(SQLDatabase database) throws Exception {
+        List<Index> toUpdate = new ArrayList<Index>();
+        for (Index index : indexes) {
+            long lastSequence = new SequenceNumberForIndexCallable(index.indexName).call
+                    (database);
+            if (lastSequence < changes.getLastSequence()) {
+                toUpdate.add(index);
+            }
+        }
+
+        // The rows for each index, by document ID, in the order of the changes. Deleted
+        // documents have no rows.
+        List<Map<String, List<ContentValues>>> rowsForIndexes = new
+                ArrayList<Map<String, List<ContentValues>>>();
+        // the fields of each index which have an array value in this page
+        List<Set<String>> arrayFieldsForIndexes = new ArrayList<Set<String>>();
+        for (int i = 0; i < toUpdate.size(); i++) {
+            rowsForIndexes.add(new LinkedHashMap<String, List<ContentValues>>());
+            arrayFieldsForIndexes.add(new HashSet<String>());
+        }
+
+        for (DocumentRevision rev : changes.getResults()) {
+            Map<String, Object> values = rev.isDeleted() ? null : extractor.extract(rev.getBody());
+            for (int i = 0; i < toUpdate.size(); i++) {
+                List<ContentValues> rows = new ArrayList<ContentValues>();
+                if (values != null) {
+                    for (FieldSort fieldName : toUpdate.get(i).fieldNames) {
+                        if (values.get(fieldName.field) instanceof List) {
+                            arrayFieldsForIndexes.get(i).add(fieldName.field);
+                        }
+                    }
+                    List<ContentValues> revRows = rowsToIndexRevision(rev, toUpdate.get(i),
+                            values);
+                    if (revRows != null) {
+                        rows = revRows;
+                    }
+                    // otherwise a non-fatal error found with this rev, but we can carry on
+                    // indexing; the document's existing rows are still removed
+                }
+                rowsForIndexes.get(i).put(rev.getId(), rows);
+            }
+        }
+
+        for (int i = 0; i < toUpdate.size(); i++) {
+            String indexName = toUpdate.get(i).indexName;
+            String tableName = QueryImpl.tableNameForIndex(indexName);
+            Map<String, List<ContentValues>> rowsForIndex = rowsForIndexes.get(i);
+
+            // Delete existing values
+            for (List<String> batch : CollectionUtils.partition(new ArrayList<String>
+                    (rowsForIndex.keySet()), DatabaseImpl.SQLITE_QUERY_PLACEHOLDERS_LIMIT)) {
+                database.delete(tableName, String.format(" _id IN (%s) ",
+                        DatabaseUtils.makePlaceholders(batch.size())),
+                        batch.toArray(new String[batch.size()]));
+            }
+
+            // Insert new values
+            for (List<ContentValues> rows : rowsForIndex.values()) {
+                for (ContentValues row : rows) {
+                    long rowId = database.insert(tableName, row);
+                    if (rowId < 0) {
+                        String msg = String.format("Updating index %s failed.", indexName);
+                        throw new QueryException(msg);
+                    }
+                }
+            }
+
+            new UpdateMetadataForIndexCallable(changes.getLastSequence(), indexName).call
+                    (database);
+
+            for (String arrayField : arrayFieldsForIndexes.get(i)) {
+                ContentValues v = new ContentValues();
+                v.put("array_values", 1);
+                database.update(QueryConstants.INDEX_METADATA_TABLE_NAME, v,
+                        " index_name = ? AND field_name = ? ", new String[]{indexName,
+                                arrayField});
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns a List of ContentValues to index a document in an index, or {@code null} if the
+     * document can't be indexed.
+     *
+     * For most revisions, a single entry will be returned. If a field
+     * is an array, however, multiple entries are required.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<ContentValues> rowsToIndexRevision(DocumentRevision rev, Index index,
+                                                           Map<String, Object> values) {
+        Misc.checkNotNull(rev, "rev");
+
+        int arrayCount = 0;
+        String arrayFieldName = null; // only record the last, as error if more than one
+        for (FieldSort fieldName : index.fieldNames) {
+            Object value = values.get(fieldName.field);
+            if (value != null && value instanceof List) {
+                arrayCount = arrayCount + 1;
+                arrayFieldName = fieldName.field;
+            }
+        }
+
+        if (arrayCount > 1) {
+            String msg = String.format("Indexing %s in index %s includes > 1 array field; " +
+                            "Only one array field per index allowed.",
+                    rev.getId(),
+                    index.indexName);
+            logger.log(Level.SEVERE, msg);
+            return null;
+        }
+
+        List<ContentValues> rows = new ArrayList<ContentValues>();
+        List<Object> arrayFieldValues = null;
+        if (arrayCount == 1) {
+            arrayFieldValues = (List) values.get(arrayFieldName);
+        }
+
+        if (arrayFieldValues != null && arrayFieldValues.size() > 0) {
+            // For each value in the list we create a row, with that value in place of the
+            // array and the other fields as they are.
+            for (Object value : arrayFieldValues) {
+                rows.add(row(rev, index, values, arrayFieldName, value));
+            }
+        } else {
+            // We know that there is no populated list in the values that we are indexing.
+            rows.add(row(rev, index, values, null, null));
+        }
+
+        return rows;
+    }
+
+    /**
+     * Returns a row with a value for every column of the index table, using {@code arrayValue}
+     * for the field {@code arrayFieldName} if it isn't null. _id and _rev are special fields in
+     * that they don't appear in the body, so they need special-casing to get the values.
+     */
+    private static ContentValues row(DocumentRevision rev, Index index,
+                                     Map<String, Object> values, String arrayFieldName,
+                                     Object arrayValue) {
+        ContentValues contentValues = new ContentValues();
+        contentValues.put("\"_id\"", rev.getId());
+        contentValues.put("\"_rev\"", rev.getRevision());
+        for (FieldSort f : index.fieldNames) {
+            if (f.field.equals("_id") || f.field.equals("_rev")) {
+                continue;
+            }
+            Object argument = f.field.equals(arrayFieldName) ? arrayValue : values.get(f.field);
+            String fieldName = String.format("\"%s\"", f.field);
+            if (argument instanceof Boolean) {
+                contentValues.put(fieldName, (Boolean) argument);
+            } else if (argument instanceof Byte) {
+                contentValues.put(fieldName, (Byte) argument);
+            } else if (argument instanceof byte[]) {
+                contentValues.put(fieldName, (byte[]) argument);
+            } else if (argument instanceof Double) {
+                contentValues.put(fieldName, (Double) argument);
+            } else if (argument instanceof Float) {
+                contentValues.put(fieldName, (Float) argument);
+            } else if (argument instanceof Integer) {
+                contentValues.put(fieldName, (Integer) argument);
+            } else if (argument instanceof Long) {
+                contentValues.put(fieldName, (Long) argument);
+            } else if (argument instanceof Short) {
+                contentValues.put(fieldName, (Short) argument);
+            } else if (argument instanceof String) {
+                contentValues.put(fieldName, (String) argument);
+            } else {
+                // missing values, empty lists and unsupported types don't get indexed
+                contentValues.putNull(fieldName);
+            }
+        }
+        return contentValues;
+    }
+
+}
@@ -20,6 +20,7 @@ import com.cloudant.sync.internal.mazha.ChangesResult;
 import com.cloudant.sync.internal.util.Misc;
 
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -28,9 +29,50 @@ class ChangesResultWrapper {
 
     private final ChangesResult changes;
 
+    // open revisions collected from a streamed changes feed, null if the rows are in changes
+    private final Map<String, Set<String>> streamedOpenRevisions;
+
     public ChangesResultWrapper(ChangesResult changes) {
+        this(changes, null);
+    }
+
+    private ChangesResultWrapper(ChangesResult changes,
+                                 Map<String, Set<String>> streamedOpenRevisions) {
         Misc.checkNotNull(changes, "Changes");
         this.changes = changes;
+        this.streamedOpenRevisions = streamedOpenRevisions;
+    }
+
+    /**
+     * Collects the open revisions from the rows of a changes feed as they are streamed, without
+     * keeping the rows themselves.
+     */
+    static class OpenRevisionsCollector implements ChangesResult.RowHandler {
+
+        // sets, so that rows seen again when a request is retried don't duplicate revisions
+        private final Map<String, Set<String>> openRevisions = new LinkedHashMap<String,
+                Set<String>>();
+
+        @Override
+        public void handleRow(ChangesResult.Row row) {
+            Set<String> openRevs = openRevisions.get(row.getId());
+            if (openRevs == null) {
+                openRevs = new HashSet<String>(row.getChanges().size());
+                openRevisions.put(row.getId(), openRevs);
+            }
+            for (ChangesResult.Row.Rev rev : row.getChanges()) {
+                openRevs.add(rev.getRev());
+            }
+        }
+
+        /**
+         * @param changes the result returned once all the rows have been passed to this
+         *                collector
+         * @return a wrapper for the streamed changes feed
+         */
+        ChangesResultWrapper wrap(ChangesResult changes) {
+            return new ChangesResultWrapper(changes, openRevisions);
+        }
     }
 
 
@@ -42,11 +84,35 @@ class ChangesResultWrapper {
         return this.changes.getLastSeq();
     }
 
+    /**
+     * @return the rows of the changes feed, or {@code null} if the feed was streamed
+     */
     public List<ChangesResult.Row> getResults() {
         return this.changes.getResults();
     }
 
+    /**
+     * @return the open revisions of every document in the changes feed
+     */
+    public Map<String, List<String>> openRevisions() {
+        if (this.streamedOpenRevisions == null) {
+            return this.size() == 0 ? new ValueListMap<String, String>() : this.openRevisions
+                    (0, this.size());
+        }
+        ValueListMap<String, String> openRevisions = new ValueListMap<String, String>();
+        for (Map.Entry<String, Set<String>> e : this.streamedOpenRevisions.entrySet()) {
+            openRevisions.addValuesToKey(e.getKey(), e.getValue());
+        }
+        return openRevisions;
+    }
+
+    /**
+     * Gets the open revisions of a range of rows, which is only possible if the feed wasn't
+     * streamed.
+     */
     public Map<String, List<String>> openRevisions(int start, int end) {
+        Misc.checkState(this.getResults() != null, "The rows of a streamed changes feed aren't " +
+                "kept.");
         Misc.checkArgument(start >= 0, "Start position must be greater or equal to zero.");
         Misc.checkArgument(end > start, "End position must be greater than start.");
         Misc.checkArgument(end <= this.size(), "End position must be less than or equal to the " +
@@ -21,6 +21,7 @@ import com.cloudant.http.HttpConnectionResponseInterceptor;
 import com.cloudant.sync.internal.documentstore.DocumentRevsList;
 import com.cloudant.sync.internal.documentstore.InternalDocumentRevision;
 import com.cloudant.sync.internal.documentstore.MultipartAttachmentWriter;
+import com.cloudant.sync.internal.mazha.BulkGetResponse;
 import com.cloudant.sync.internal.mazha.ChangesResult;
 import com.cloudant.sync.internal.mazha.CouchClient;
 import com.cloudant.sync.internal.mazha.CouchException;
@@ -134,38 +135,69 @@ public class CouchClientWrapper implements CouchDB {
 
     @Override
     public ChangesResult changes(PullFilter filter, Object lastSequence, int limit) {
+        return changes(filter, lastSequence, limit, null);
+    }
+
+    @Override
+    public ChangesResult changes(String selector, Object lastSequence, int limit) {
+        return changes(selector, lastSequence, limit, null);
+    }
+
+    @Override
+    public ChangesResult changes(List<String> docIds, Object lastSequence, int limit) {
+        return changes(docIds, lastSequence, limit, null);
+    }
+
+    @Override
+    public ChangesResult changes(PullFilter filter, Object lastSequence, int limit,
+                                 ChangesResult.RowHandler handler) {
         if (filter == null) {
-            return couchClient.changes(lastSequence, limit);
+            return couchClient.changes(lastSequence, limit, handler);
         } else {
-            return couchClient.changes(filter, lastSequence, limit);
+            return couchClient.changes(filter, lastSequence, limit, handler);
         }
     }
 
     @Override
-    public ChangesResult changes(String selector, Object lastSequence, int limit) {
+    public ChangesResult changes(String selector, Object lastSequence, int limit,
+                                 ChangesResult.RowHandler handler) {
         if (selector == null) {
-            return couchClient.changes(lastSequence, limit);
+            return couchClient.changes(lastSequence, limit, handler);
         } else {
-            return couchClient.changes(selector, lastSequence, limit);
+            return couchClient.changes(selector, lastSequence, limit, handler);
         }
     }
 
     @Override
-    public ChangesResult changes(List<String> docIds, Object lastSequence, int limit) {
+    public ChangesResult changes(List<String> docIds, Object lastSequence, int limit,
+                                 ChangesResult.RowHandler handler) {
         if (docIds == null || docIds.isEmpty()) {
-            return couchClient.changes(lastSequence, limit);
+            return couchClient.changes(lastSequence, limit, handler);
         } else {
-            return couchClient.changes(docIds, lastSequence, limit);
+            return couchClient.changes(docIds, lastSequence, limit, handler);
         }
     }
 
     @Override
     public Iterable<DocumentRevsList> bulkGetRevisions(List<BulkGetRequest> requests,
                                                        boolean pullAttachmentsInline) {
+        return couchClient.bulkReadDocsWithOpenRevisions(splitBulkGetRequests(requests,
+                pullAttachmentsInline), pullAttachmentsInline);
+    }
+
+    @Override
+    public int bulkGetRevisions(List<BulkGetRequest> requests, boolean pullAttachmentsInline,
+                                BulkGetResponse.DocumentHandler handler) {
+        return couchClient.bulkReadDocsWithOpenRevisions(splitBulkGetRequests(requests,
+                pullAttachmentsInline), pullAttachmentsInline, handler);
+    }
+
+    private static List<com.cloudant.sync.internal.mazha.BulkGetRequest> splitBulkGetRequests
+            (List<BulkGetRequest> requests, boolean pullAttachmentsInline) {
         List<com.cloudant.sync.internal.mazha.BulkGetRequest> splitRequests = new ArrayList<com
                 .cloudant.sync.internal.mazha.BulkGetRequest>();
 
-        // split the requests out
+        // split the requests out, keeping the revisions of each document together
         for (BulkGetRequest request : requests) {
             for (String rev : request.revs) {
                 com.cloudant.sync.internal.mazha.BulkGetRequest splitRequest = new com.cloudant
@@ -178,7 +210,7 @@ public class CouchClientWrapper implements CouchDB {
                 splitRequests.add(splitRequest);
             }
         }
-        return couchClient.bulkReadDocsWithOpenRevisions(splitRequests, pullAttachmentsInline);
+        return splitRequests;
     }
 
     /**
@@ -19,6 +19,7 @@ package com.cloudant.sync.internal.replication;
 import com.cloudant.sync.internal.documentstore.InternalDocumentRevision;
 import com.cloudant.sync.internal.documentstore.DocumentRevsList;
 import com.cloudant.sync.internal.documentstore.MultipartAttachmentWriter;
+import com.cloudant.sync.internal.mazha.BulkGetResponse;
 import com.cloudant.sync.internal.mazha.ChangesResult;
 import com.cloudant.sync.internal.mazha.CouchClient;
 import com.cloudant.sync.internal.mazha.DocumentRevs;
@@ -51,6 +52,13 @@ interface CouchDB {
     ChangesResult changes(PullFilter filter, Object lastSequence, int limit);
     ChangesResult changes(String selector, Object lastSequence, int limit);
     ChangesResult changes(List<String> docIds, Object lastSequence, int limit);
+    // streaming versions of the above, which pass each row to the handler as it is read
+    ChangesResult changes(PullFilter filter, Object lastSequence, int limit,
+                          ChangesResult.RowHandler handler);
+    ChangesResult changes(String selector, Object lastSequence, int limit,
+                          ChangesResult.RowHandler handler);
+    ChangesResult changes(List<String> docIds, Object lastSequence, int limit,
+                          ChangesResult.RowHandler handler);
     List<DocumentRevs> getRevisions(String documentId,
                                            Collection<String> revisionIds,
                                            Collection<String> attsSince,
@@ -62,6 +70,8 @@ interface CouchDB {
 
     Iterable<DocumentRevsList> bulkGetRevisions(List<BulkGetRequest> requests,
                                                    boolean pullAttachmentsInline);
+    int bulkGetRevisions(List<BulkGetRequest> requests, boolean pullAttachmentsInline,
+                         BulkGetResponse.DocumentHandler handler);
     boolean isBulkSupported();
 
     <T> T pullAttachmentWithRetry(String id, String rev, String name, CouchClient.InputStreamProcessor<T> streamProcessor);
@@ -126,15 +126,13 @@ class DatastoreWrapper {
         }
     }
 
-    Map<String, DocumentRevisionTree> getDocumentTrees(List<DocumentRevision> documents) {
-        Map<String, DocumentRevisionTree> allDocumentTrees =
-                new HashMap<String, DocumentRevisionTree>();
+    Map<String, DocumentRevisionTree> getDocumentTrees(List<DocumentRevision> documents)
+            throws DocumentStoreException {
+        List<String> docIds = new ArrayList<String>(documents.size());
         for(DocumentRevision doc: documents) {
-            DocumentRevisionTree tree =
-                    this.dbCore.getAllRevisionsOfDocument(doc.getId());
-            allDocumentTrees.put(doc.getId(), tree);
+            docIds.add(doc.getId());
         }
-        return allDocumentTrees;
+        return this.dbCore.getDocumentTrees(docIds);
     }
 
     protected PreparedAttachment prepareAttachment(Attachment att, long length, long encodedLength) throws AttachmentException {
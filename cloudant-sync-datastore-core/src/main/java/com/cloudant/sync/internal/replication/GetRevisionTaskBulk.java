@@ -17,14 +17,17 @@
 package com.cloudant.sync.internal.replication;
 
 import com.cloudant.sync.internal.documentstore.DocumentRevsList;
+import com.cloudant.sync.internal.mazha.BulkGetResponse;
 import com.cloudant.sync.internal.util.Misc;
 
 import java.util.Iterator;
 import java.util.List;
 
 /**
- * Handles calling CouchClient.bulkReadDocsWithOpenRevisions(), returning the results back in a
- * manner which can be iterated over (to avoid deserialising the entire result into memory)
+ * Handles calling CouchClient.bulkReadDocsWithOpenRevisions(), either passing each document to a
+ * handler as soon as it has been read from the response (see
+ * {@link #process(BulkGetResponse.DocumentHandler)}), or returning the results back in a manner
+ * which can be iterated over
  *
  * For each revision ID, gets the revision tree for a given document ID and lists of open revision IDs
  * and "atts_since" (revision IDs for which we know we have attachments)
@@ -65,7 +68,6 @@ class GetRevisionTaskBulk implements Iterable<DocumentRevsList> {
     private final CouchDB sourceDb;
     private final List<BulkGetRequest> requests;
     private final boolean pullAttachmentsInline;
-    private final Iterable<DocumentRevsList> resultsIterable;
 
     public GetRevisionTaskBulk(CouchDB sourceDb,
                            List<BulkGetRequest> requests,
@@ -79,12 +81,21 @@ class GetRevisionTaskBulk implements Iterable<DocumentRevsList> {
         this.sourceDb = sourceDb;
         this.requests = requests;
         this.pullAttachmentsInline = pullAttachmentsInline;
-        this.resultsIterable = sourceDb.bulkGetRevisions(requests, pullAttachmentsInline);
+    }
+
+    /**
+     * Makes the request, passing each document to {@code handler} as soon as all of its
+     * revisions have been read, so only one document at a time needs to be held in memory.
+     *
+     * @return the number of documents passed to the handler
+     */
+    public int process(BulkGetResponse.DocumentHandler handler) {
+        return sourceDb.bulkGetRevisions(requests, pullAttachmentsInline, handler);
     }
 
     @Override
     public Iterator<DocumentRevsList> iterator() {
-        return this.resultsIterable.iterator();
+        return sourceDb.bulkGetRevisions(requests, pullAttachmentsInline).iterator();
     }
 
     @Override
@@ -26,6 +26,7 @@ import com.cloudant.sync.documentstore.DocumentException;
 import com.cloudant.sync.event.EventBus;
 import com.cloudant.sync.internal.documentstore.DocumentRevsList;
 import com.cloudant.sync.internal.documentstore.PreparedAttachment;
+import com.cloudant.sync.internal.mazha.BulkGetResponse;
 import com.cloudant.sync.internal.mazha.ChangesResult;
 import com.cloudant.sync.internal.mazha.CouchClient;
 import com.cloudant.sync.internal.mazha.DocumentRevs;
@@ -42,13 +43,23 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -99,6 +110,23 @@ public class PullStrategy implements ReplicationStrategy {
 
     public boolean pullAttachmentsInline = false;
 
+    public boolean pipelined = false;
+
+    public int attachmentDownloadSlots = 1;
+
+    public long maxAttachmentDownloadBytes = 16 * 1024 * 1024;
+
+    // downloads attachments in the background when there is more than one download slot,
+    // set for the duration of each replication
+    private AttachmentDownloads attachmentDownloads = null;
+
+    // how many items each stage of a pipelined replication can get ahead of the next one
+    private static final int PIPELINE_QUEUE_CAPACITY = 2;
+
+    // inline attachment data, as base64 characters, to read from a _bulk_get response before
+    // inserting the documents read so far
+    private static final int MAX_BUFFERED_INLINE_ATTACHMENT_CHARS = 8 * 1024 * 1024;
+
     public PullStrategy(URI source,
                         Database target,
                         PullFilter filter,
@@ -237,6 +265,44 @@ public class PullStrategy implements ReplicationStrategy {
 
         this.state.documentCounter = 0;
 
+        if (this.attachmentDownloadSlots > 1 && !this.pullAttachmentsInline) {
+            this.attachmentDownloads = new AttachmentDownloads(this.attachmentDownloadSlots,
+                    this.maxAttachmentDownloadBytes);
+        }
+        try {
+            if (this.pipelined) {
+                replicatePipelined();
+            } else {
+                replicateSequentially();
+            }
+        } finally {
+            if (this.attachmentDownloads != null) {
+                this.attachmentDownloads.shutdown();
+                this.attachmentDownloads = null;
+            }
+        }
+
+        long endTime = System.currentTimeMillis();
+        long deltaTime = endTime - startTime;
+        String msg;
+        if (this.state.cancel) {
+            msg = String.format(Locale.ENGLISH,
+                    "Pull canceled after %sms (%s changes processed)",
+                    deltaTime,
+                    this.state.documentCounter);
+        } else {
+            msg = String.format(Locale.ENGLISH,
+                    "Pull completed in %sms (%s total changes processed)",
+                    deltaTime,
+                    this.state.documentCounter
+            );
+        }
+        logger.info(msg);
+
+    }
+
+    private void replicateSequentially() throws ExecutionException, InterruptedException,
+            DocumentException, DocumentStoreException {
         while (!this.state.cancel) {
             this.state.batchCounter++;
             final Object lastKnownCheckpoint = this.targetDb.getCheckpoint(this.getReplicationId());
@@ -290,24 +356,208 @@ public class PullStrategy implements ReplicationStrategy {
                 break;
             }
         }
+    }
 
-        long endTime = System.currentTimeMillis();
-        long deltaTime = endTime - startTime;
-        String msg;
-        if (this.state.cancel) {
-            msg = String.format(Locale.ENGLISH,
-                    "Pull canceled after %sms (%s changes processed)",
-                    deltaTime,
-                    this.state.documentCounter);
-        } else {
-            msg = String.format(Locale.ENGLISH,
-                    "Pull completed in %sms (%s total changes processed)",
-                    deltaTime,
-                    this.state.documentCounter
-            );
+    /**
+     * <p>
+     * Runs the replication as three stages, so that the network and the local database are
+     * busy at the same time:
+     * </p>
+     * <ol>
+     *     <li>fetching pages of the {@code _changes} feed,</li>
+     *     <li>finding which revisions are missing locally and downloading them, and</li>
+     *     <li>inserting the downloaded revisions and writing checkpoints.</li>
+     * </ol>
+     * <p>
+     * The first two stages run on their own threads and the last runs on the replication
+     * thread. The stages are connected by bounded queues, so a stage can only get
+     * {@link #PIPELINE_QUEUE_CAPACITY} items ahead of the next one. Items reach the insert
+     * stage in feed order, so a checkpoint is only written for a page of changes once all of
+     * the revisions from that page have been inserted.
+     * </p>
+     */
+    private void replicatePipelined() throws ExecutionException, InterruptedException,
+            DocumentException, DocumentStoreException {
+        final Object lastKnownCheckpoint = this.targetDb.getCheckpoint(this.getReplicationId());
+        final BlockingQueue<PipelineItem> changesQueue = new ArrayBlockingQueue<PipelineItem>
+                (PIPELINE_QUEUE_CAPACITY);
+        final BlockingQueue<PipelineItem> insertQueue = new ArrayBlockingQueue<PipelineItem>
+                (PIPELINE_QUEUE_CAPACITY);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fetchChanges(lastKnownCheckpoint, changesQueue);
+                }
+            });
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fetchRevisions(changesQueue, insertQueue);
+                }
+            });
+            insertRevisions(lastKnownCheckpoint, insertQueue);
+        } finally {
+            // if we stopped early because of an error or cancel, this interrupts the other
+            // stages if they are blocked waiting for us
+            executor.shutdownNow();
         }
-        logger.info(msg);
+    }
 
+    // first stage of a pipelined replication
+    private void fetchChanges(Object since, BlockingQueue<PipelineItem> changesQueue) {
+        try {
+            while (!this.state.cancel) {
+                ChangesResultWrapper changeFeeds = this.nextBatch(since);
+                logger.info(String.format("Fetched %s changes up to %s", changeFeeds.size(),
+                        changeFeeds.getLastSeq()));
+                changesQueue.put(PipelineItem.changes(changeFeeds));
+                if (changeFeeds.size() < this.changeLimitPerBatch) {
+                    break;
+                }
+                since = changeFeeds.getLastSeq();
+            }
+            changesQueue.put(PipelineItem.END);
+        } catch (InterruptedException e) {
+            // the insert stage has stopped, so there is nothing to hand on to
+        } catch (Throwable t) {
+            putError(changesQueue, t);
+        }
+    }
+
+    // second stage of a pipelined replication
+    private void fetchRevisions(BlockingQueue<PipelineItem> changesQueue,
+                                final BlockingQueue<PipelineItem> insertQueue) {
+        try {
+            while (true) {
+                PipelineItem item = changesQueue.take();
+                if (item.changes == null) {
+                    // end of the feed or an error, pass it on
+                    insertQueue.put(item);
+                    return;
+                }
+                ChangesResultWrapper changeFeeds = item.changes;
+                if (changeFeeds.size() > 0 && !this.state.cancel) {
+                    Map<String, List<String>> openRevs = changeFeeds.openRevisions();
+                    Map<String, List<String>> missingRevisions = this.targetDb.getDbCore()
+                            .revsDiff(openRevs);
+                    List<String> ids = new ArrayList<String>(missingRevisions.keySet());
+                    for (List<String> batch : CollectionUtils.partition(ids,
+                            this.insertBatchSize)) {
+                        if (this.state.cancel) {
+                            break;
+                        }
+                        fetchBatch(batch, missingRevisions, new BatchItemsConsumer() {
+                            @Override
+                            public void accept(List<BatchItem> items) throws Exception {
+                                insertQueue.put(PipelineItem.revisions(items));
+                            }
+                        });
+                    }
+                }
+                // everything from this page of changes is now ahead of this item in the queue
+                insertQueue.put(PipelineItem.changes(changeFeeds));
+            }
+        } catch (InterruptedException e) {
+            // the insert stage has stopped, so there is nothing to hand on to
+        } catch (Throwable t) {
+            putError(insertQueue, t);
+        }
+    }
+
+    // last stage of a pipelined replication, run on the replication thread
+    private void insertRevisions(Object lastKnownCheckpoint,
+                                 BlockingQueue<PipelineItem> insertQueue)
+            throws ExecutionException, InterruptedException, DocumentException {
+        int batchChangesProcessed = 0;
+        long batchStartTime = System.currentTimeMillis();
+        while (!this.state.cancel) {
+            PipelineItem item = insertQueue.take();
+            if (item.error != null) {
+                throw new ExecutionException(item.error);
+            } else if (item.revisions != null) {
+                // We promise not to insert documents after cancel is set
+                if (this.state.cancel) {
+                    break;
+                }
+                try {
+                    this.targetDb.bulkInsert(item.revisions, this.pullAttachmentsInline);
+                } catch (Exception e) {
+                    throw new ExecutionException(e);
+                }
+                batchChangesProcessed += item.revisions.size();
+                this.state.documentCounter += item.revisions.size();
+            } else if (item.changes != null) {
+                // all of the revisions from this page of changes have been inserted
+                this.state.batchCounter++;
+                Object lastSeq = item.changes.getLastSeq();
+                if (!this.state.cancel && (lastKnownCheckpoint == null || !lastKnownCheckpoint
+                        .equals(lastSeq))) {
+                    try {
+                        this.targetDb.putCheckpoint(this.getReplicationId(), lastSeq);
+                        lastKnownCheckpoint = lastSeq;
+                    } catch (DocumentStoreException e) {
+                        logger.log(Level.WARNING, "Failed to put checkpoint doc, next " +
+                                "replication will start from previous checkpoint", e);
+                    }
+                }
+                long batchEndTime = System.currentTimeMillis();
+                logger.info(String.format(
+                        "Batch %s completed in %sms (batch was %s changes)",
+                        this.state.batchCounter,
+                        batchEndTime - batchStartTime,
+                        batchChangesProcessed
+                ));
+                batchChangesProcessed = 0;
+                batchStartTime = batchEndTime;
+            } else {
+                // end of the feed
+                break;
+            }
+        }
+    }
+
+    private static void putError(BlockingQueue<PipelineItem> queue, Throwable t) {
+        try {
+            queue.put(PipelineItem.error(t));
+        } catch (InterruptedException e) {
+            // the insert stage has stopped, so there is nothing to hand on to
+        }
+    }
+
+    /**
+     * Item passed between the stages of a pipelined replication. Depending on which fields are
+     * set, it is a page of changes, a batch of revisions to insert, an error from an earlier
+     * stage or the end of the feed.
+     */
+    private static class PipelineItem {
+
+        private static final PipelineItem END = new PipelineItem(null, null, null);
+
+        private final ChangesResultWrapper changes;
+        private final List<BatchItem> revisions;
+        private final Throwable error;
+
+        private PipelineItem(ChangesResultWrapper changes, List<BatchItem> revisions,
+                             Throwable error) {
+            this.changes = changes;
+            this.revisions = revisions;
+            this.error = error;
+        }
+
+        private static PipelineItem changes(ChangesResultWrapper changes) {
+            return new PipelineItem(changes, null, null);
+        }
+
+        private static PipelineItem revisions(List<BatchItem> revisions) {
+            return new PipelineItem(null, revisions, null);
+        }
+
+        private static PipelineItem error(Throwable error) {
+            return new PipelineItem(null, null, error);
+        }
     }
 
     public static class BatchItem {
@@ -328,11 +578,11 @@ public class PullStrategy implements ReplicationStrategy {
         String feed = String.format(
                 "Change feed: { last_seq: %s, change size: %s}",
                 changeFeeds.getLastSeq(),
-                changeFeeds.getResults().size()
+                changeFeeds.size()
         );
         logger.info(feed);
 
-        Map<String, List<String>> openRevs = changeFeeds.openRevisions(0, changeFeeds.size());
+        Map<String, List<String>> openRevs = changeFeeds.openRevisions();
         Map<String, List<String>> missingRevisions = this.targetDb.getDbCore().revsDiff
                 (openRevs);
 
@@ -345,108 +595,455 @@ public class PullStrategy implements ReplicationStrategy {
 
         for (List<String> batch : batches) {
 
-            List<BatchItem> batchesToInsert = new ArrayList<BatchItem>();
-
             if (this.state.cancel) {
                 break;
             }
 
             try {
-                Iterable<DocumentRevsList> result = createTask(batch, missingRevisions);
-
-                for (DocumentRevsList revsList : result) {
-                    // We promise not to insert documents after cancel is set
-                    if (this.state.cancel) {
-                        break;
+                changesProcessed += fetchBatch(batch, missingRevisions, new
+                        BatchItemsConsumer() {
+                    @Override
+                    public void accept(List<BatchItem> items) throws Exception {
+                        targetDb.bulkInsert(items, pullAttachmentsInline);
                     }
+                });
+            } catch (Exception e) {
+                throw new ExecutionException(e);
+            }
+        }
+
+        return changesProcessed;
+    }
 
-                    // attachments, keyed by docId and revId, so that
-                    // we can add the attachments to the correct leaf
-                    // nodes
-                    HashMap<String[], Map<String, PreparedAttachment>> atts = new HashMap<String[],
-                            Map<String, PreparedAttachment>>();
-
-                    // now put together a list of attachments we need to download
-                    if (!this.pullAttachmentsInline) {
-                        try {
-                            for (DocumentRevs documentRevs : revsList) {
-                                Map<String, Object> attachments = documentRevs.getAttachments();
-                                // keep track of attachments we are going to prepare
-                                Map<String, PreparedAttachment> preparedAtts = new
-                                        HashMap<String, PreparedAttachment>();
-                                atts.put(new String[]{documentRevs.getId(), documentRevs.getRev()
-                                }, preparedAtts);
-
-                                for (Map.Entry<String, Object> entry : attachments.entrySet()) {
-                                    String attachmentName = entry.getKey();
-                                    Map attachmentMetadata = (Map) entry.getValue();
-                                    int revpos = (Integer) attachmentMetadata.get("revpos");
-                                    String contentType = (String) attachmentMetadata.get
-                                            ("content_type");
-                                    String encoding = (String) attachmentMetadata.get("encoding");
-                                    long length = (Integer) attachmentMetadata.get("length");
-                                    long encodedLength = 0; // encodedLength can default to 0 if
-                                    // it's not encoded
-                                    if (Attachment.getEncodingFromString(encoding) != Attachment
-                                            .Encoding.Plain) {
-                                        encodedLength = (Integer) attachmentMetadata.get
-                                                ("encoded_length");
-                                    }
-
-                                    // do we already have the attachment @ this revpos?
-                                    // look back up the tree for this document and see:
-                                    // if we already have it, then we don't need to fetch it
-                                    DocumentRevs.Revisions revs = documentRevs.getRevisions();
-                                    int offset = revs.getStart() - revpos;
-                                    if (offset >= 0 && offset < revs.getIds().size()) {
-                                        String revId = String.valueOf(revpos) + "-" + revs.getIds
-                                                ().get(offset);
-
-                                        Attachment a = this.targetDb.getDbCore()
-                                                .getAttachment(documentRevs.getId(), revId,
-                                                        attachmentName);
-                                        if (a != null) {
-                                            // skip attachment, already got it
-                                            continue;
-                                        }
-
-                                    }
-
-                                    // by preparing the attachment here, it is downloaded outside
-                                    // of the database transaction
-                                    preparedAtts.put(attachmentName, this.sourceDb
-                                            .pullAttachmentWithRetry
-                                                    (documentRevs.getId(), documentRevs.getRev(),
-                                                            entry
-                                                            .getKey(), new
-                                                                    AttachmentPullProcessor(this
-                                                            .targetDb, entry.getKey(), contentType,
-                                                            encoding, length, encodedLength)));
-                                }
+    /**
+     * Downloads the missing revisions of the given documents, along with any of their
+     * attachments which aren't pulled inline, and passes them to {@code consumer} ready to be
+     * inserted into the local database.
+     *
+     * When {@code _bulk_get} is used the documents are read from the response one at a time.
+     * They are normally passed to {@code consumer} together once the whole response has been
+     * read, but if more than {@link #MAX_BUFFERED_INLINE_ATTACHMENT_CHARS} of inline
+     * attachment data builds up, the documents read so far are passed on straight away so that
+     * large batches don't have to be held in memory all at once.
+     *
+     * If the replication is cancelled part way through, only the revisions downloaded before the
+     * cancel are passed on.
+     *
+     * @return the number of documents passed to {@code consumer}
+     */
+    private int fetchBatch(List<String> ids, Map<String, List<String>> missingRevisions,
+                           BatchItemsConsumer consumer) throws Exception {
+        BatchItemsBuffer buffer = new BatchItemsBuffer(consumer);
+        Iterable<DocumentRevsList> task = createTask(ids, missingRevisions);
+        if (task instanceof GetRevisionTaskBulk) {
+            ((GetRevisionTaskBulk) task).process(buffer);
+        } else {
+            for (DocumentRevsList revsList : task) {
+                // We promise not to insert documents after cancel is set
+                if (this.state.cancel) {
+                    break;
+                }
+                buffer.handleDocument(revsList);
+            }
+        }
+        buffer.flush();
+        return buffer.count;
+    }
+
+    /**
+     * Prepares a document's revisions for insertion, downloading any attachments which aren't
+     * pulled inline. If an attachment can't be downloaded the replication is cancelled.
+     *
+     * When there is more than one attachment download slot, the downloads are started in the
+     * background and added to {@code pendingAttachments} instead, and the attachments are added
+     * to the returned item by {@link #completeAttachments(List)}.
+     */
+    private BatchItem prepareBatchItem(DocumentRevsList revsList,
+                                       List<PendingAttachment> pendingAttachments) {
+        // attachments, keyed by docId and revId, so that
+        // we can add the attachments to the correct leaf
+        // nodes
+        HashMap<String[], Map<String, PreparedAttachment>> atts = new HashMap<String[],
+                Map<String, PreparedAttachment>>();
+
+        // now put together a list of attachments we need to download
+        if (!this.pullAttachmentsInline) {
+            try {
+                for (DocumentRevs documentRevs : revsList) {
+                    Map<String, Object> attachments = documentRevs.getAttachments();
+                    // keep track of attachments we are going to prepare
+                    Map<String, PreparedAttachment> preparedAtts = new
+                            HashMap<String, PreparedAttachment>();
+                    atts.put(new String[]{documentRevs.getId(), documentRevs.getRev()
+                    }, preparedAtts);
+
+                    for (Map.Entry<String, Object> entry : attachments.entrySet()) {
+                        String attachmentName = entry.getKey();
+                        Map attachmentMetadata = (Map) entry.getValue();
+                        int revpos = (Integer) attachmentMetadata.get("revpos");
+                        String contentType = (String) attachmentMetadata.get
+                                ("content_type");
+                        String encoding = (String) attachmentMetadata.get("encoding");
+                        long length = (Integer) attachmentMetadata.get("length");
+                        long encodedLength = 0; // encodedLength can default to 0 if
+                        // it's not encoded
+                        if (Attachment.getEncodingFromString(encoding) != Attachment
+                                .Encoding.Plain) {
+                            encodedLength = (Integer) attachmentMetadata.get
+                                    ("encoded_length");
+                        }
+
+                        // do we already have the attachment @ this revpos?
+                        // look back up the tree for this document and see:
+                        // if we already have it, then we don't need to fetch it
+                        DocumentRevs.Revisions revs = documentRevs.getRevisions();
+                        int offset = revs.getStart() - revpos;
+                        if (offset >= 0 && offset < revs.getIds().size()) {
+                            String revId = String.valueOf(revpos) + "-" + revs.getIds
+                                    ().get(offset);
+
+                            Attachment a = this.targetDb.getDbCore()
+                                    .getAttachment(documentRevs.getId(), revId,
+                                            attachmentName);
+                            if (a != null) {
+                                // skip attachment, already got it
+                                continue;
                             }
-                        } catch (Exception e) {
-                            logger.log(Level.SEVERE,
-                                    "There was a problem downloading an attachment to the" +
-                                            " datastore, terminating replication",
-                                    e);
-                            this.state.cancel = true;
+
+                        }
+
+                        // by preparing the attachment here, it is downloaded outside
+                        // of the database transaction
+                        Callable<PreparedAttachment> download = attachmentDownload
+                                (documentRevs.getId(), documentRevs.getRev(), attachmentName,
+                                        new AttachmentPullProcessor(this.targetDb,
+                                                attachmentName, contentType, encoding, length,
+                                                encodedLength));
+                        if (this.attachmentDownloads == null) {
+                            preparedAtts.put(attachmentName, download.call());
+                        } else {
+                            pendingAttachments.add(new PendingAttachment(preparedAtts,
+                                    attachmentName, this.attachmentDownloads.submit(download,
+                                    encodedLength > 0 ? encodedLength : length)));
                         }
                     }
+                }
+            } catch (InterruptedException e) {
+                // interrupted waiting to start a download, eg because the insert stage of a
+                // pipelined replication has stopped
+                logger.log(Level.INFO, "Interrupted while downloading attachments, cancelling " +
+                        "replication");
+                Thread.currentThread().interrupt();
+                this.state.cancel = true;
+                deletePreparedAttachments(atts);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE,
+                        "There was a problem downloading an attachment to the" +
+                                " datastore, terminating replication",
+                        e);
+                this.state.cancel = true;
+                deletePreparedAttachments(atts);
+            }
+        }
+        return new BatchItem(revsList, atts);
+    }
 
-                    if (this.state.cancel) {
-                        break;
+    /**
+     * Deletes the temporary files of attachments which have been downloaded but won't be
+     * inserted.
+     */
+    private static void deletePreparedAttachments(Map<String[], Map<String, PreparedAttachment>>
+                                                          atts) {
+        for (Map<String, PreparedAttachment> preparedAtts : atts.values()) {
+            for (PreparedAttachment prepared : preparedAtts.values()) {
+                deletePreparedAttachment(prepared);
+            }
+        }
+    }
+
+    private static void deletePreparedAttachment(PreparedAttachment prepared) {
+        if (prepared != null && prepared.tempFile.exists() && !prepared.tempFile.delete()) {
+            logger.log(Level.WARNING, String.format("Could not delete temporary attachment " +
+                    "file %s", prepared.tempFile));
+        }
+    }
+
+    /**
+     * Stops a download we no longer need, deleting the attachment if it has already been
+     * downloaded.
+     */
+    private static void discardDownload(Future<PreparedAttachment> download) {
+        if (download.cancel(true) || download.isCancelled()) {
+            // a download which finishes after being cancelled deletes its own attachment
+            return;
+        }
+        try {
+            deletePreparedAttachment(download.get());
+        } catch (ExecutionException e) {
+            // nothing was downloaded
+        } catch (InterruptedException e) {
+            // can't happen as the download has finished
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Callable<PreparedAttachment> attachmentDownload(final String id, final String rev,
+                                                            final String attachmentName,
+                                                            final AttachmentPullProcessor
+                                                                    processor) {
+        return new Callable<PreparedAttachment>() {
+            @Override
+            public PreparedAttachment call() throws Exception {
+                return sourceDb.pullAttachmentWithRetry(id, rev, attachmentName, processor);
+            }
+        };
+    }
+
+    /**
+     * Waits for the attachments being downloaded in the background for a batch item, adding
+     * them to the item. If an attachment can't be downloaded the replication is cancelled.
+     *
+     * @return false if any of the attachments couldn't be downloaded
+     */
+    private boolean completeAttachments(List<PendingAttachment> pendingAttachments) throws
+            InterruptedException {
+        for (PendingAttachment pending : pendingAttachments) {
+            try {
+                pending.preparedAtts.put(pending.name, pending.download.get());
+            } catch (ExecutionException e) {
+                logger.log(Level.SEVERE,
+                        "There was a problem downloading an attachment to the" +
+                                " datastore, terminating replication",
+                        e.getCause());
+                this.state.cancel = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int inlineAttachmentChars(DocumentRevsList revsList) {
+        int chars = 0;
+        if (this.pullAttachmentsInline) {
+            for (DocumentRevs documentRevs : revsList) {
+                for (Object attachment : documentRevs.getAttachments().values()) {
+                    Object data = ((Map) attachment).get("data");
+                    if (data instanceof String) {
+                        chars += ((String) data).length();
                     }
+                }
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Receives the revisions downloaded by
+     * {@link #fetchBatch(List, Map, BatchItemsConsumer)}, ready to be inserted.
+     */
+    private interface BatchItemsConsumer {
+        void accept(List<BatchItem> items) throws Exception;
+    }
+
+    /**
+     * Collects documents as they are downloaded, preparing them and passing them to a
+     * {@link BatchItemsConsumer} when {@link #flush()} is called or when too much inline
+     * attachment data has built up.
+     */
+    private class BatchItemsBuffer implements BulkGetResponse.DocumentHandler {
+
+        private final BatchItemsConsumer consumer;
+        private final List<DocumentRevsList> revsLists = new ArrayList<DocumentRevsList>();
+        // a retried request repeats revisions which have already been handled, so keep track
+        // of the ID and revision ID of each one
+        private final Set<List<String>> handledRevs = new HashSet<List<String>>();
+        private int bufferedChars = 0;
+        private int count = 0;
+        // error passing documents on from within the response handler, rethrown by flush
+        private Exception error = null;
+
+        BatchItemsBuffer(BatchItemsConsumer consumer) {
+            this.consumer = consumer;
+        }
 
-                    batchesToInsert.add(new BatchItem(revsList, atts));
-                    changesProcessed++;
+        @Override
+        public void handleDocument(DocumentRevsList revsList) {
+            if (error != null || state.cancel) {
+                return;
+            }
+            List<DocumentRevs> newRevs = new ArrayList<DocumentRevs>();
+            for (DocumentRevs documentRevs : revsList) {
+                if (handledRevs.add(Arrays.asList(documentRevs.getId(), documentRevs.getRev()))) {
+                    newRevs.add(documentRevs);
+                }
+            }
+            if (newRevs.isEmpty()) {
+                return;
+            }
+            revsList = new DocumentRevsList(newRevs);
+            revsLists.add(revsList);
+            bufferedChars += inlineAttachmentChars(revsList);
+            if (bufferedChars > MAX_BUFFERED_INLINE_ATTACHMENT_CHARS) {
+                try {
+                    flush();
+                } catch (Exception e) {
+                    error = e;
                 }
-                this.targetDb.bulkInsert(batchesToInsert, this.pullAttachmentsInline);
-            } catch (Exception e) {
-                throw new ExecutionException(e);
             }
         }
 
-        return changesProcessed;
+        void flush() throws Exception {
+            if (error != null) {
+                throw error;
+            }
+            List<BatchItem> items = new ArrayList<BatchItem>();
+            List<List<PendingAttachment>> pendingAttachments = new
+                    ArrayList<List<PendingAttachment>>();
+            int passedOn = 0;
+            try {
+                for (DocumentRevsList revsList : revsLists) {
+                    // We promise not to insert documents after cancel is set
+                    if (state.cancel) {
+                        break;
+                    }
+                    List<PendingAttachment> pending = new ArrayList<PendingAttachment>();
+                    pendingAttachments.add(pending);
+                    BatchItem item = prepareBatchItem(revsList, pending);
+                    if (state.cancel) {
+                        break;
+                    }
+                    items.add(item);
+                }
+                // only pass on the items before the first one whose attachments couldn't be
+                // downloaded
+                while (passedOn < items.size() &&
+                        completeAttachments(pendingAttachments.get(passedOn))) {
+                    passedOn++;
+                }
+            } finally {
+                // stop the downloads for items which aren't passed on, and delete what has
+                // already been downloaded for them
+                for (int i = passedOn; i < pendingAttachments.size(); i++) {
+                    for (PendingAttachment attachment : pendingAttachments.get(i)) {
+                        discardDownload(attachment.download);
+                    }
+                }
+                for (int i = passedOn; i < items.size(); i++) {
+                    deletePreparedAttachments(items.get(i).attachments);
+                }
+            }
+            revsLists.clear();
+            bufferedChars = 0;
+            if (passedOn > 0) {
+                consumer.accept(items.subList(0, passedOn));
+                count += passedOn;
+            }
+        }
+    }
+
+    /**
+     * An attachment being downloaded in the background, which is added to
+     * {@code preparedAtts} once it has been downloaded.
+     */
+    private static class PendingAttachment {
+
+        private final Map<String, PreparedAttachment> preparedAtts;
+        private final String name;
+        private final Future<PreparedAttachment> download;
+
+        PendingAttachment(Map<String, PreparedAttachment> preparedAtts, String name,
+                          Future<PreparedAttachment> download) {
+            this.preparedAtts = preparedAtts;
+            this.name = name;
+            this.download = download;
+        }
+    }
+
+    /**
+     * <p>
+     * Downloads attachments in the background using a fixed number of threads.
+     * </p>
+     * <p>
+     * The total size of the attachments being downloaded at once is limited to
+     * {@code maxBytes}, so {@link #submit(Callable, long)} blocks until enough earlier downloads
+     * have finished. An attachment larger than the limit is downloaded once nothing else is
+     * being downloaded.
+     * </p>
+     */
+    private static class AttachmentDownloads {
+
+        private final ExecutorService executor;
+        private final long maxBytes;
+        private long bytesInFlight = 0;
+
+        AttachmentDownloads(int downloadSlots, long maxBytes) {
+            this.executor = Executors.newFixedThreadPool(downloadSlots);
+            this.maxBytes = maxBytes;
+        }
+
+        Future<PreparedAttachment> submit(Callable<PreparedAttachment> download,
+                                          final long bytes) throws InterruptedException {
+            acquire(bytes);
+            DownloadTask task = new DownloadTask(download, bytes);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                release(bytes);
+                throw e;
+            }
+            return task;
+        }
+
+        private synchronized void acquire(long bytes) throws InterruptedException {
+            while (bytesInFlight > 0 && bytesInFlight + bytes > maxBytes) {
+                wait();
+            }
+            bytesInFlight += bytes;
+        }
+
+        private synchronized void release(long bytes) {
+            bytesInFlight -= bytes;
+            notifyAll();
+        }
+
+        void shutdown() {
+            // interrupts any downloads still in flight if we stopped because of an error or
+            // cancel
+            executor.shutdownNow();
+        }
+
+        /**
+         * A download which releases its bytes once it has stopped running, rather than when
+         * it is cancelled, as a cancelled download can still be writing to its temporary file.
+         */
+        private class DownloadTask extends FutureTask<PreparedAttachment> {
+
+            private final long bytes;
+
+            DownloadTask(Callable<PreparedAttachment> download, long bytes) {
+                super(download);
+                this.bytes = bytes;
+            }
+
+            @Override
+            public void run() {
+                // returns straight away if the download was cancelled before it started
+                try {
+                    super.run();
+                } finally {
+                    release(bytes);
+                }
+            }
+
+            @Override
+            protected void set(PreparedAttachment prepared) {
+                super.set(prepared);
+                if (isCancelled()) {
+                    // nobody will get the attachment, so it won't be inserted
+                    deletePreparedAttachment(prepared);
+                }
+            }
+        }
     }
 
     public String getReplicationId() throws DocumentStoreException {
@@ -475,25 +1072,31 @@ public class PullStrategy implements ReplicationStrategy {
     private ChangesResultWrapper nextBatch(final Object lastCheckpoint) {
         logger.fine("last checkpoint " + lastCheckpoint);
 
+        // the feed is streamed, keeping only the open revisions from each row
+        ChangesResultWrapper.OpenRevisionsCollector collector = new ChangesResultWrapper
+                .OpenRevisionsCollector();
         ChangesResult changeFeeds = null;
         if (this.selector != null) {
             changeFeeds = this.sourceDb.changes(
                     this.selector,
                     lastCheckpoint,
-                    this.changeLimitPerBatch);
+                    this.changeLimitPerBatch,
+                    collector);
         } else if (this.docIds != null && !this.docIds.isEmpty()) {
             changeFeeds = this.sourceDb.changes(
                     this.docIds,
                     lastCheckpoint,
-                    this.changeLimitPerBatch);
+                    this.changeLimitPerBatch,
+                    collector);
         } else {
             changeFeeds = this.sourceDb.changes(
                     this.filter,
                     lastCheckpoint,
-                    this.changeLimitPerBatch);
+                    this.changeLimitPerBatch,
+                    collector);
         }
         logger.finer("changes feed: " + JSONUtils.toPrettyJson(changeFeeds));
-        return new ChangesResultWrapper(changeFeeds);
+        return collector.wrap(changeFeeds);
     }
 
     public Iterable<DocumentRevsList> createTask(List<String> ids,
@@ -45,11 +45,18 @@ import java.net.URI;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -94,6 +101,8 @@ public class PushStrategy implements ReplicationStrategy {
 
     public PushAttachmentsInline pushAttachmentsInline = PushAttachmentsInline.Small;
 
+    public int uploadSlots = 1;
+
     public PushStrategy(Database source,
                         URI target,
                         List<HttpConnectionRequestInterceptor> requestInterceptors,
@@ -204,6 +213,42 @@ public class PushStrategy implements ReplicationStrategy {
         }
 
         this.state.documentCounter = 0;
+
+        // with more than one upload slot, batches are uploaded in the background while the
+        // next ones are prepared
+        Uploads uploads = this.uploadSlots > 1 ? new Uploads(this.uploadSlots) : null;
+        try {
+            replicateBatches(uploads);
+        } finally {
+            if (uploads != null) {
+                uploads.shutdown();
+            }
+        }
+
+        long endTime = System.currentTimeMillis();
+        long deltaTime = endTime - startTime;
+        String msg;
+        if (this.state.cancel) {
+            msg = String.format(Locale.ENGLISH,
+                            "Push canceled after %sms (%s changes processed)",
+                            deltaTime,
+                            this.state.documentCounter
+                    );
+        } else {
+            msg = String.format(Locale.ENGLISH,
+                    "Push completed in %sms (%s total changes processed)",
+                    deltaTime,
+                    this.state.documentCounter
+            );
+        }
+        logger.info(msg);
+    }
+
+    private void replicateBatches(Uploads uploads) throws InterruptedException,
+            ExecutionException, AttachmentException, DocumentStoreException {
+        // when uploading in the background, the checkpoint on the remote database lags behind
+        // the batches we have read, so we keep track of where we are up to ourselves
+        long lastReadSequence = uploads != null ? getLastCheckpointSequence() : -1;
         while (!this.state.cancel) {
             this.state.batchCounter++;
 
@@ -217,7 +262,7 @@ public class PushStrategy implements ReplicationStrategy {
             long batchStartTime = System.currentTimeMillis();
 
             // Get the next batch of changes and record the size and last sequence
-            Changes changes = getNextBatch();
+            Changes changes = uploads != null ? getNextBatch(lastReadSequence) : getNextBatch();
             final int unfilteredChangesSize = changes.getResults().size();
             final long lastSeq = changes.getLastSequence();
 
@@ -249,12 +294,20 @@ public class PushStrategy implements ReplicationStrategy {
             logger.info(msg);
 
             if (filteredChangesSize > 0) {
-                changesProcessed = processOneChangesBatch(changes);
+                changesProcessed = processOneChangesBatch(changes, uploads);
                 this.state.documentCounter += changesProcessed;
             }
 
-            // If not cancelled and there were any changes set a checkpoint
-            if (!this.state.cancel && unfilteredChangesSize > 0) {
+            if (uploads != null) {
+                // the checkpoint is set once all of the uploads for this batch, and for every
+                // batch before it, have succeeded
+                if (unfilteredChangesSize > 0) {
+                    uploads.endBatch(lastSeq);
+                    lastReadSequence = lastSeq;
+                }
+                uploads.checkpointCompletedBatches(false);
+            } else if (!this.state.cancel && unfilteredChangesSize > 0) {
+                // If not cancelled and there were any changes set a checkpoint
                 try {
                     this.putCheckpoint(String.valueOf(lastSeq));
                 } catch (DocumentStoreException e) {
@@ -280,29 +333,19 @@ public class PushStrategy implements ReplicationStrategy {
             }
         }
 
-        long endTime = System.currentTimeMillis();
-        long deltaTime = endTime - startTime;
-        String msg;
-        if (this.state.cancel) {
-            msg = String.format(Locale.ENGLISH,
-                            "Push canceled after %sms (%s changes processed)",
-                            deltaTime,
-                            this.state.documentCounter
-                    );
-        } else {
-            msg = String.format(Locale.ENGLISH,
-                    "Push completed in %sms (%s total changes processed)",
-                    deltaTime,
-                    this.state.documentCounter
-            );
+        if (uploads != null && !this.state.cancel) {
+            uploads.checkpointCompletedBatches(true);
         }
-        logger.info(msg);
     }
 
     private Changes getNextBatch() throws ExecutionException, InterruptedException, DocumentStoreException {
         long lastPushSequence = getLastCheckpointSequence();
         logger.fine("Last push sequence from remote database: " + lastPushSequence);
-        return this.sourceDb.getDbCore().changes(lastPushSequence, this.changeLimitPerBatch);
+        return getNextBatch(lastPushSequence);
+    }
+
+    private Changes getNextBatch(long since) throws DocumentStoreException {
+        return this.sourceDb.getDbCore().changes(since, this.changeLimitPerBatch);
     }
 
     private static class FilteredChanges extends ChangesImpl {
@@ -326,7 +369,12 @@ public class PushStrategy implements ReplicationStrategy {
         List<MultipartAttachmentWriter> multiparts;
     }
 
-    private int processOneChangesBatch(Changes changes) throws AttachmentException, DocumentStoreException {
+    /**
+     * @return the number of documents pushed, which is always 0 if {@code uploads} is not
+     * {@code null} as the documents are counted when their upload completes
+     */
+    private int processOneChangesBatch(Changes changes, Uploads uploads) throws
+            AttachmentException, DocumentStoreException, InterruptedException {
 
         int changesProcessed = 0;
 
@@ -345,19 +393,144 @@ public class PushStrategy implements ReplicationStrategy {
             Map<String, CouchClient.MissingRevisions> docMissingRevs = this.targetDb.revsDiff(docOpenRevs);
 
             ItemsToPush itemsToPush = missingRevisionsToJsonDocs(allTrees, docMissingRevs);
-            List<String> serialisedMissingRevs = itemsToPush.serializedDocs;
-            List<MultipartAttachmentWriter> multiparts = itemsToPush.multiparts;
 
             if (!this.state.cancel) {
-                this.targetDb.putMultiparts(multiparts);
-                this.targetDb.bulkCreateSerializedDocs(serialisedMissingRevs);
-                changesProcessed += docMissingRevs.size();
+                if (uploads != null) {
+                    uploads.submit(itemsToPush, docMissingRevs.size());
+                } else {
+                    upload(itemsToPush);
+                    changesProcessed += docMissingRevs.size();
+                }
             }
         }
 
         return changesProcessed;
     }
 
+    private void upload(ItemsToPush itemsToPush) {
+        this.targetDb.putMultiparts(itemsToPush.multiparts);
+        this.targetDb.bulkCreateSerializedDocs(itemsToPush.serializedDocs);
+    }
+
+    /**
+     * <p>
+     * Uploads batches of documents on a pool of threads, allowing up to a fixed number of
+     * uploads to be in flight at once. {@link #submit(ItemsToPush, int)} blocks while all of the
+     * upload slots are in use.
+     * </p>
+     * <p>
+     * The uploads are grouped by the batch of changes they came from. A batch's checkpoint is
+     * only set once all of its uploads, and all of the uploads from earlier batches, have
+     * succeeded, so the checkpoint only ever moves forward over sequences which have been
+     * pushed.
+     * </p>
+     */
+    private class Uploads {
+
+        private final ExecutorService executor;
+        private final Semaphore slots;
+
+        // batches of changes whose checkpoint hasn't been set yet, oldest first
+        private final LinkedList<PendingBatch> pendingBatches = new LinkedList<PendingBatch>();
+        private List<Future<Integer>> currentUploads = new ArrayList<Future<Integer>>();
+
+        Uploads(int uploadSlots) {
+            this.executor = Executors.newFixedThreadPool(uploadSlots);
+            this.slots = new Semaphore(uploadSlots);
+        }
+
+        void submit(final ItemsToPush itemsToPush, final int documentCount) throws
+                InterruptedException {
+            slots.acquire();
+            try {
+                currentUploads.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        try {
+                            upload(itemsToPush);
+                            return documentCount;
+                        } finally {
+                            slots.release();
+                        }
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                slots.release();
+                throw e;
+            }
+        }
+
+        /**
+         * Marks the end of the uploads for the batch of changes up to {@code lastSequence}.
+         */
+        void endBatch(long lastSequence) {
+            pendingBatches.add(new PendingBatch(lastSequence, currentUploads));
+            currentUploads = new ArrayList<Future<Integer>>();
+        }
+
+        /**
+         * Sets the checkpoint for the batches whose uploads have completed, stopping at the
+         * first batch which still has uploads in flight, unless {@code wait} is {@code true} in
+         * which case it waits for every upload to complete.
+         *
+         * @throws ExecutionException if any of the uploads failed
+         */
+        void checkpointCompletedBatches(boolean wait) throws InterruptedException,
+                ExecutionException {
+            while (!pendingBatches.isEmpty()) {
+                PendingBatch batch = pendingBatches.getFirst();
+                if (!wait && !batch.isDone()) {
+                    break;
+                }
+                for (Future<Integer> upload : batch.uploads) {
+                    try {
+                        state.documentCounter += upload.get();
+                    } catch (ExecutionException e) {
+                        // report upload errors the same way as when uploading synchronously
+                        if (e.getCause() instanceof RuntimeException) {
+                            throw (RuntimeException) e.getCause();
+                        }
+                        throw e;
+                    }
+                }
+                pendingBatches.removeFirst();
+                if (!state.cancel) {
+                    try {
+                        putCheckpoint(String.valueOf(batch.lastSequence));
+                    } catch (DocumentStoreException e) {
+                        logger.log(Level.WARNING, "Failed to put checkpoint doc, next " +
+                                "replication will start from previous checkpoint", e);
+                    }
+                }
+            }
+        }
+
+        void shutdown() {
+            // interrupts any uploads still in flight if we stopped because of an error or cancel
+            executor.shutdownNow();
+        }
+    }
+
+    private static class PendingBatch {
+
+        private final long lastSequence;
+        private final List<Future<Integer>> uploads;
+
+        PendingBatch(long lastSequence, List<Future<Integer>> uploads) {
+            this.lastSequence = lastSequence;
+            this.uploads = uploads;
+        }
+
+        boolean isDone() {
+            for (Future<Integer> upload : uploads) {
+                if (!upload.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * Generate serialised JSON strings and/or MIME multipart/related writer objects for revisions
      * which are missing on the server
@@ -388,9 +561,9 @@ public class PushStrategy implements ReplicationStrategy {
                 long sequence = tree.lookup(docId, rev).getSequence();
                 List<InternalDocumentRevision> path = tree.getPathForNode(sequence);
 
-                // get the attachments for the leaf of this path
+                // get the attachments for the leaf of this path, which were loaded with the tree
                 InternalDocumentRevision dr = path.get(0);
-                Map<String, ? extends Attachment> atts = this.sourceDb.getDbCore().attachmentsForRevision(dr);
+                Map<String, ? extends Attachment> atts = dr.getAttachments();
 
                 // get common ancestor generation - needed to correctly stub out attachments
                 // closest back (first) instance of one of the possible ancestors rev ID in the history tree
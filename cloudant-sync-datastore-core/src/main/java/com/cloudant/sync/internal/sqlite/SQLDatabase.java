@@ -21,6 +21,7 @@
 package com.cloudant.sync.internal.sqlite;
 
 import com.cloudant.sync.internal.android.ContentValues;
+import com.cloudant.sync.internal.util.DatabaseUtils;
 
 import java.sql.SQLException;
 
@@ -235,4 +236,28 @@ public abstract class SQLDatabase {
      */
     public abstract long insertWithOnConflict(String table, ContentValues initialValues, int conflictAlgorithm);
 
+    /**
+     * <p>Switches the database to write-ahead logging, allowing read-only connections to read
+     * from the database concurrently with a writer.</p>
+     *
+     * <p>The journal mode is persistent, so this only needs to be called on the writer
+     * connection. It must not be called from within a transaction.</p>
+     *
+     * @return true if the database is now in WAL mode, false if the mode could not be changed
+     * (for example, for in-memory databases)
+     *
+     * @see <a target="_blank" href="https://www.sqlite.org/wal.html">SQLite Write-Ahead Logging</a>
+     */
+    public boolean enableWriteAheadLogging() {
+        Cursor cursor = null;
+        try {
+            cursor = this.rawQuery("PRAGMA journal_mode = WAL", null);
+            return cursor.moveToFirst() && "wal".equalsIgnoreCase(cursor.getString(0));
+        } catch (SQLException e) {
+            return false;
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+    }
+
 }
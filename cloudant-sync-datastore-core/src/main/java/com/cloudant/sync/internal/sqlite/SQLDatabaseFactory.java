@@ -99,6 +99,61 @@ public class SQLDatabaseFactory {
         return internalOpenSQLDatabase(dbFile, provider);
     }
 
+    /**
+     * <p>
+     * Open a read-only connection to an existing database file, optionally backed by a SQLCipher
+     * enabled database.
+     * </p>
+     * <p>
+     * Read-only connections are intended to be used alongside a single writer connection on a
+     * database in WAL mode (see {@link SQLDatabase#enableWriteAheadLogging()}). Like the writer
+     * connection, they must only be used from the thread which opened them.
+     * </p>
+     * @param dbFile full file path of the db file, which must already exist
+     * @param provider Key provider object storing the SQLCipher key
+     *                 Supply a NullKeyProvider to use a non-encrypted database.
+     * @return read-only {@code SQLDatabase} for the given filename
+     * @throws SQLException if the database cannot be opened.
+     */
+    public static SQLDatabase openReadOnlySQLDatabase(File dbFile, KeyProvider provider) throws
+            SQLException {
+        Misc.checkNotNull(dbFile, "dbFile");
+        Misc.checkArgument(dbFile.exists(), "Database file must exist to be opened read-only");
+
+        boolean useSqlCipher = (provider.getEncryptionKey() != null);
+
+        try {
+            if (Misc.isRunningOnAndroid()) {
+                if (useSqlCipher) {
+                    return (SQLDatabase) Class.forName("com.cloudant.sync.internal.sqlite.android" +
+                            ".AndroidSQLCipherSQLite")
+                            .getMethod("openReadOnly", File.class, KeyProvider.class)
+                            .invoke(null, new Object[]{dbFile, provider});
+                } else {
+                    return (SQLDatabase) Class.forName("com.cloudant.sync.internal.sqlite.android" +
+                            ".AndroidSQLite")
+                            .getMethod("openReadOnly", File.class)
+                            .invoke(null, dbFile);
+                }
+            } else {
+                if (useSqlCipher) {
+                    throw new UnsupportedOperationException("No SQLCipher-based database " +
+                            "implementation for Java SE");
+                } else {
+                    return (SQLDatabase) Class.forName("com.cloudant.sync.internal.sqlite" +
+                            ".sqlite4java.SQLiteWrapper")
+                            .getMethod("openReadOnly", File.class)
+                            .invoke(null, dbFile);
+                }
+            }
+        } catch (RuntimeException e){
+            throw e;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Failed to load database module", e);
+            throw new SQLException("Failed to load database module", e);
+        }
+    }
+
     /**
      * Internal method for creating a SQLDatabase that allows a null filename to create an in-memory
      * database which can be useful for performing checks, but creating in-memory databases is not
@@ -17,10 +17,13 @@ package com.cloudant.sync.internal.sqlite;
 import com.cloudant.sync.documentstore.encryption.KeyProvider;
 import com.cloudant.sync.documentstore.encryption.NullKeyProvider;
 import com.cloudant.sync.internal.documentstore.migrations.Migration;
+import com.cloudant.sync.internal.util.DatabaseUtils;
+import com.cloudant.sync.internal.util.Misc;
 
 import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -33,17 +36,43 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * <p>
  * SQLDatabaseQuue provides the ability to ensure that the
  * only a single thread accesses the SQLDatabase. Tasks submitted to this
  * queue are guaranteed to be executed in the order they are received
+ * </p>
+ * <p>
+ * Where the database can be put into WAL mode, tasks submitted via
+ * {@link #submitReadOnly(SQLCallable)} are instead executed on a bounded pool of read-only
+ * connections, concurrently with each other and with the single writer. Such tasks see the
+ * database as of the last committed transaction and are not ordered with respect to tasks
+ * submitted to the writer queue.
+ * </p>
  */
 public class SQLDatabaseQueue {
 
+    /**
+     * The default maximum number of read-only connections opened for a database.
+     */
+    public static final int DEFAULT_READER_CONNECTIONS =
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+
     private final SQLDatabase db;
     private final ExecutorService queue;
+    private final ExecutorService readers;
     private final Logger logger = Logger.getLogger(SQLDatabase.class.getCanonicalName());
     private AtomicBoolean acceptTasks = new AtomicBoolean(true);
     private String sqliteVersion = null;
+
+    // Each reader thread owns its read-only connection, which is closed when the thread exits.
+    private final ThreadLocal<SQLDatabase> readerConnection = new ThreadLocal<SQLDatabase>();
+    private final File file;
+    private final KeyProvider provider;
+
+    // Completes once the writer has opened the database, with true if WAL mode was enabled.
+    private final Future<Boolean> writeAheadLogging;
+    // The most recently submitted schema update; readers are not used until it has completed.
+    private volatile Future<?> lastSchemaUpdate;
     /**
      * Creates an SQLQueue for the database specified.
      * @param file The file where the database is located
@@ -63,14 +92,49 @@ public class SQLDatabaseQueue {
      * @throws SQLException If the database cannot be opened.
      */
     public SQLDatabaseQueue(final File file, KeyProvider provider) throws IOException, SQLException {
+        this(file, provider, DEFAULT_READER_CONNECTIONS);
+    }
+
+    /**
+     * Creates an SQLQueue for the SQLCipher-based database specified, with up to
+     * {@code readerConnections} read-only connections for tasks submitted via
+     * {@link #submitReadOnly(SQLCallable)}.
+     * @param file The file where the database is located
+     * @param provider The key provider object that contains the user-defined SQLCipher key.
+     *                 Supply a NullKeyProvider to use a non-encrypted database.
+     * @param readerConnections The maximum number of read-only connections to open. Supply 0 to
+     *                          run all tasks on the single writer connection.
+     * @throws IOException If a problem occurs creating the database
+     * @throws SQLException If the database cannot be opened.
+     */
+    public SQLDatabaseQueue(final File file, KeyProvider provider, final int readerConnections)
+            throws IOException, SQLException {
+        Misc.checkArgument(readerConnections >= 0, "readerConnections must not be negative");
+        this.file = file;
+        this.provider = provider;
         queue = Executors.newSingleThreadExecutor(new ThreadFactory(file));
+        if (readerConnections > 0) {
+            readers = Executors.newFixedThreadPool(readerConnections, new ReaderThreadFactory(file));
+        } else {
+            readers = null;
+        }
         this.db = SQLDatabaseFactory.openSQLDatabase(file, provider);
-        queue.execute(new Runnable() {
+        writeAheadLogging = queue.submit(new Callable<Boolean>() {
             @Override
-            public void run() {
+            public Boolean call() {
                 db.open();
+                if (readerConnections == 0) {
+                    return false;
+                }
+                boolean enabled = db.enableWriteAheadLogging();
+                if (!enabled) {
+                    logger.log(Level.WARNING, String.format("Could not enable WAL mode for %s, " +
+                            "all tasks will run on the writer connection", file));
+                }
+                return enabled;
             }
         });
+        lastSchemaUpdate = writeAheadLogging;
     }
 
     /**
@@ -79,7 +143,9 @@ public class SQLDatabaseQueue {
      * @param version The version of the schema
      */
     public void updateSchema(final Migration migration, final int version){
-        queue.execute(new UpdateSchemaCallable(migration, version)); // Fire and forget
+        // Fire and forget, but keep hold of the Future so that read-only tasks are not run
+        // against a partially migrated schema.
+        lastSchemaUpdate = queue.submit(new UpdateSchemaCallable(migration, version));
     }
 
     /**
@@ -121,6 +187,32 @@ public class SQLDatabaseQueue {
         return this.submitTaskToQueue(new SQLQueueCallable<T>(db, callable, true));
     }
 
+    /**
+     * <p>
+     * Submits a database task which only reads from the database for execution.
+     * </p>
+     * <p>
+     * The task is executed on one of the read-only connections if they are available, otherwise
+     * it is queued on the writer connection as for {@link #submit(SQLCallable)}. The task must
+     * not write to the database, nor rely on tasks submitted earlier having completed unless it
+     * has waited for their {@link Future}s.
+     * </p>
+     * @param callable The task to be performed
+     * @param <T> The type of object that is returned from the task
+     * @throws RejectedExecutionException Thrown when the queue has been shutdown
+     * @return Future representing the task to be executed.
+     */
+    public <T> Future<T> submitReadOnly(SQLCallable<T> callable){
+        if (!readersAvailable()) {
+            return this.submit(callable);
+        }
+        if(acceptTasks.get()){
+            return readers.submit(new ReadOnlyCallable<T>(callable));
+        } else {
+            throw new RejectedExecutionException("Database is closed");
+        }
+    }
+
     /**
      * Shuts down this database queue and closes
      * the underlying database connection. Any tasks
@@ -131,6 +223,15 @@ public class SQLDatabaseQueue {
     public void shutdown() {
         // If shutdown has already been called then we don't need to shutdown again
         if (acceptTasks.getAndSet(false)) {
+            // readers close their own connections as their threads exit
+            if (readers != null) {
+                readers.shutdown();
+                try {
+                    readers.awaitTermination(5, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    logger.log(Level.SEVERE, "Interrupted while waiting for readers to terminate", e);
+                }
+            }
             //pass straight to queue, tasks passed via submitTaskToQueue will now be blocked.
             Future<?> close = queue.submit(new Runnable() {
                 @Override
@@ -176,6 +277,37 @@ public class SQLDatabaseQueue {
         }
     }
 
+    /**
+     * Read-only connections are only used once the database is in WAL mode and any schema
+     * updates submitted so far have completed, so they never see a partially migrated database.
+     * @return true if tasks can be submitted to the read-only connections
+     */
+    private boolean readersAvailable() {
+        if (readers == null || !lastSchemaUpdate.isDone() || !writeAheadLogging.isDone()) {
+            return false;
+        }
+        try {
+            return writeAheadLogging.get();
+        } catch (InterruptedException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the read-only connection for the current reader thread, opening it if needed.
+     */
+    private SQLDatabase getReaderConnection() throws SQLException {
+        SQLDatabase reader = readerConnection.get();
+        if (reader == null) {
+            reader = SQLDatabaseFactory.openReadOnlySQLDatabase(file, provider);
+            reader.open();
+            readerConnection.set(reader);
+        }
+        return reader;
+    }
+
     /**
      * Returns the SQLite Version.
      * @return The SQLite version or "Unknown" if the version could not be determined.
@@ -203,12 +335,15 @@ public class SQLDatabaseQueue {
         @Override
         public String call(SQLDatabase db) throws Exception {
             Cursor cursor = db.rawQuery("SELECT sqlite_version()", null);
-
-            StringBuilder stringBuilder = new StringBuilder();
-            while (cursor.moveToNext()) {
-                stringBuilder.append(cursor.getString(0));
+            try {
+                StringBuilder stringBuilder = new StringBuilder();
+                while (cursor.moveToNext()) {
+                    stringBuilder.append(cursor.getString(0));
+                }
+                return stringBuilder.toString();
+            } finally {
+                DatabaseUtils.closeCursorQuietly(cursor);
             }
-            return stringBuilder.toString();
         }
     }
 
@@ -232,6 +367,47 @@ public class SQLDatabaseQueue {
         }
     }
 
+    private class ReaderThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final File file;
+
+        public ReaderThreadFactory(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        r.run();
+                    } finally {
+                        // connections are confined to the thread which opened them, so close
+                        // this thread's connection (if any) on the way out
+                        SQLDatabase reader = readerConnection.get();
+                        if (reader != null) {
+                            readerConnection.remove();
+                            reader.close();
+                        }
+                    }
+                }
+            }, "SQLDatabaseQueue reader - " + file);
+        }
+    }
+
+    private class ReadOnlyCallable<T> implements Callable<T> {
+        private final SQLCallable<T> sqlCallable;
+
+        public ReadOnlyCallable(SQLCallable<T> sqlCallable) {
+            this.sqlCallable = sqlCallable;
+        }
+
+        @Override
+        public T call() throws Exception {
+            return sqlCallable.call(getReaderConnection());
+        }
+    }
+
     private class UpdateSchemaCallable implements Runnable {
         private final Migration migration;
         private final int version;
@@ -22,7 +22,9 @@ import com.cloudant.sync.internal.mazha.CouchClient;
 import com.cloudant.sync.internal.mazha.Document;
 import com.cloudant.sync.internal.mazha.OpenRevision;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JavaType;
@@ -122,12 +124,32 @@ public class JSONUtils {
         }
     }
 
+    /**
+     * Checks that {@code json} starts with a well formed JSON object. The tokens are checked
+     * without deserialising them, so this is much cheaper than parsing the object.
+     *
+     * @param json the bytes to check
+     * @return true if the bytes start with a JSON object
+     */
     public static boolean isValidJSON(final byte[] json) {
+        JsonParser parser = null;
         try {
-            getsMapper().readValue(json, Map.class);
-            return true;
+            parser = sMapper.getFactory().createParser(json);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            parser.skipChildren();
+            return parser.getCurrentToken() == JsonToken.END_OBJECT;
         } catch (Exception e) {
             return false;
+        } finally {
+            if (parser != null) {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    // nothing to release for a byte array
+                }
+            }
         }
     }
 
@@ -226,6 +248,22 @@ public class JSONUtils {
         }
     }
 
+    /**
+     * @return a streaming parser for {@code reader}, which can read values as objects using the
+     * same configuration as the other methods of this class
+     */
+    public static JsonParser createParser(Reader reader) throws IOException {
+        return sMapper.getFactory().createParser(reader);
+    }
+
+    /**
+     * @return a streaming parser for {@code json}, which can read values as objects using the
+     * same configuration as the other methods of this class
+     */
+    public static JsonParser createParser(byte[] json) throws IOException {
+        return sMapper.getFactory().createParser(json);
+    }
+
     public static Map<String, Object> fromJson(Reader reader) {
         return fromJson(reader, STRING_MAP_TYPE_DEF);
     }
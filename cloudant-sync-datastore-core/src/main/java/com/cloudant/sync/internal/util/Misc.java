@@ -16,6 +16,9 @@
 
 package com.cloudant.sync.internal.util;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
@@ -58,6 +61,30 @@ public class Misc {
         return sha1.digest();
     }
 
+    /**
+     * Returns a stream of at most {@code length} bytes of {@code in}, starting {@code offset}
+     * bytes in. The bytes before the offset are read and discarded, so the stream is empty if
+     * {@code in} ends before the offset. Closing the returned stream closes {@code in}.
+     *
+     * @param in     the stream to read from
+     * @param offset the number of bytes to discard from the start of {@code in}
+     * @param length the maximum number of bytes to read after the offset
+     * @return the bytes of {@code in} between the offset and the end of the range
+     * @throws IOException if there was an error reading the bytes before the offset
+     */
+    public static InputStream slice(InputStream in, long offset, long length) throws
+            IOException {
+        checkArgument(offset >= 0, "Offset must not be negative.");
+        checkArgument(length >= 0, "Length must not be negative.");
+        try {
+            IOUtils.skip(in, offset);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(in);
+            throw e;
+        }
+        return new BoundedInputStream(in, length);
+    }
+
     /**
      * Utility to join strings with a separator. Skips null strings and does not append a trailing
      * separator.
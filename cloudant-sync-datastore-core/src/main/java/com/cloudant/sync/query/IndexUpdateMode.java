@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.query;
+
+/**
+ * Denotes when the indexes of a {@link Query} are brought up to date with changes to the
+ * documents in the database.
+ *
+ * @see Query#setIndexUpdateMode(IndexUpdateMode)
+ */
+public enum IndexUpdateMode {
+
+    /**
+     * Indexes are updated when they are queried, or when {@link Query#refreshAllIndexes()} is
+     * called. Writes are not slowed down, but the first query after a large number of writes has
+     * to wait for the indexes to catch up. This is the default.
+     */
+    ON_QUERY,
+    /**
+     * Indexes are updated by every write to the database, including writes made by pull
+     * replications, before the write returns. Queries never have to wait for the indexes to
+     * catch up, but each write takes longer.
+     */
+    ON_WRITE,
+    /**
+     * Indexes are updated on a background thread shortly after writes to the database. Bursts
+     * of writes are gathered into a single update, which runs once the writes pause or once the
+     * oldest write has waited for a maximum lag. Queries only have to wait for the indexes to
+     * catch up with writes made since the last background update.
+     *
+     * @see Query#setBackgroundIndexUpdateDelays(long, long, java.util.concurrent.TimeUnit)
+     */
+    BACKGROUND
+
+}
@@ -16,6 +16,7 @@ package com.cloudant.sync.query;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import com.cloudant.sync.query.FieldSort.Direction;
 
@@ -161,6 +162,42 @@ public interface Query {
                      List<FieldSort> sortSpecification)
             throws QueryException;
 
+    /**
+     * <p>
+     * Counts the documents matching a query, without returning them.
+     * </p>
+     * <p>
+     * When indexes cover every field in the query, the documents are counted using the indexes
+     * alone. Otherwise the matching documents are loaded to be counted, as they would be to
+     * return them from {@link #find(Map)}.
+     * </p>
+     * @param query query in Cloudant Query syntax
+     * @return the number of documents matching the query
+     * @throws QueryException if there was a problem executing the query
+     */
+    int count(Map<String, Object> query) throws QueryException;
+
+    /**
+     * <p>
+     * Describes how a query would be executed, without executing it. The description lists the
+     * index and SQL used for each part of the selector with an estimate of the number of
+     * documents it matches, whether documents have to be loaded to be matched against the
+     * selector, and the index used to sort the results.
+     * </p>
+     * <p>
+     * Where more than one index could be used, the one which is cheapest to read is chosen,
+     * using statistics about the number of rows and distinct values in each index. The format
+     * of the description is intended to be read by people and may change between releases.
+     * </p>
+     * @param query query in Cloudant Query syntax
+     * @param sortSpecification specification of fields to use to order the result, or
+     *                          {@code null} for no ordering
+     * @return a description of the plan for the query
+     * @throws QueryException if there was a problem planning the query
+     */
+    String explain(Map<String, Object> query, List<FieldSort> sortSpecification)
+            throws QueryException;
+
     /**
      * Returns {@code true} if the underlying SQLite instance supports Full Text Search (FTS);
      * {@code false} otherwise
@@ -169,5 +206,41 @@ public interface Query {
      */
     boolean isTextSearchEnabled();
 
+    /**
+     * <p>
+     * Sets when indexes are brought up to date with changes to the documents in the database.
+     * </p>
+     * <p>
+     * In {@link IndexUpdateMode#ON_WRITE} mode the indexes are updated after each write
+     * transaction commits, on the thread which made the write and before the write returns.
+     * The indexes are stored in a separate database, so they are not updated in the same
+     * transaction as the documents. If updating the indexes fails, the failure is logged and
+     * the indexes are brought up to date by the next query instead.
+     * </p>
+     * @param mode when to update indexes
+     */
+    void setIndexUpdateMode(IndexUpdateMode mode);
+
+    /**
+     * @return when indexes are brought up to date with changes to the documents in the database
+     * @see #setIndexUpdateMode(IndexUpdateMode)
+     */
+    IndexUpdateMode getIndexUpdateMode();
+
+    /**
+     * <p>
+     * Sets how long background index updates wait in {@link IndexUpdateMode#BACKGROUND} mode.
+     * An update runs once there have been no writes for {@code debounce}, or once the oldest
+     * write not yet indexed has waited for {@code maxLag}, whichever is sooner.
+     * </p>
+     * <p>
+     * The defaults are a debounce of 500 milliseconds and a maximum lag of 5 seconds.
+     * </p>
+     * @param debounce how long to wait after the most recent write
+     * @param maxLag the longest to wait after any write
+     * @param unit the unit of {@code debounce} and {@code maxLag}
+     */
+    void setBackgroundIndexUpdateDelays(long debounce, long maxLag, TimeUnit unit);
+
 }
 
@@ -22,6 +22,8 @@ import com.cloudant.sync.documentstore.DocumentBodyFactory;
 import com.cloudant.sync.documentstore.DocumentRevision;
 import com.cloudant.sync.documentstore.DocumentStoreException;
 import com.cloudant.sync.internal.documentstore.DocumentRevisionBuilder;
+import com.cloudant.sync.internal.query.CoveringIndexReader;
+import com.cloudant.sync.internal.query.FieldPathExtractor;
 import com.cloudant.sync.internal.query.QueryImpl;
 import com.cloudant.sync.internal.query.UnindexedMatcher;
 import com.cloudant.sync.internal.util.CollectionUtils;
@@ -32,6 +34,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  *  Iterable result of a query executed with {@link Query}.
@@ -41,6 +45,8 @@ import java.util.NoSuchElementException;
  */
 public class QueryResult implements Iterable<DocumentRevision> {
 
+    private static final Logger logger = Logger.getLogger(QueryResult.class.getName());
+
     private final static int DEFAULT_BATCH_SIZE = 50;
 
     private final List<String> originalDocIds;
@@ -49,6 +55,8 @@ public class QueryResult implements Iterable<DocumentRevision> {
     private final long skip;
     private final long limit;
     private final UnindexedMatcher matcher;
+    private final FieldPathExtractor projection;
+    private final CoveringIndexReader indexReader;
 
     public QueryResult(List<String> originalDocIds,
                        Database database,
@@ -56,21 +64,51 @@ public class QueryResult implements Iterable<DocumentRevision> {
                        long skip,
                        long limit,
                        UnindexedMatcher matcher) {
+        this(originalDocIds, database, fields, skip, limit, matcher, null);
+    }
+
+    /**
+     * @param indexReader if not {@code null}, projected revisions are built from the rows of
+     *                    this index where it has their exact values rather than from the
+     *                    documents' bodies
+     */
+    public QueryResult(List<String> originalDocIds,
+                       Database database,
+                       List<String> fields,
+                       long skip,
+                       long limit,
+                       UnindexedMatcher matcher,
+                       CoveringIndexReader indexReader) {
         this.originalDocIds = originalDocIds;
         this.database = database;
         this.fields = fields;
         this.skip = skip;
         this.limit = limit;
         this.matcher = matcher;
+        this.projection = fields != null && !fields.isEmpty() ? new FieldPathExtractor(fields)
+                : null;
+        this.indexReader = this.projection != null ? indexReader : null;
     }
 
     /**
      *  Returns the number of documents in this query result.
      *
+     *  When the indexes cover the query, this is worked out from the document IDs the query
+     *  found without loading the documents. Otherwise each document is loaded to be matched
+     *  against the query.
+     *
      *  @return the number of documents {@code DocumentRevision} in this query result.
      */
     public int size() {
-        return documentIds().size();
+        if (matcher != null) {
+            return documentIds().size();
+        }
+        // every ID is a result, so only skip and limit need applying
+        long size = Math.max(0, originalDocIds.size() - Math.max(0, skip));
+        if (limit > 0) {
+            size = Math.min(size, limit);
+        }
+        return (int) size;
     }
 
     /**
@@ -154,7 +192,7 @@ public class QueryResult implements Iterable<DocumentRevision> {
                     range.length = Math.min(DEFAULT_BATCH_SIZE, originalDocIds.size() - range.location);
                     List<String> batch = originalDocIds.subList(range.location,
                         range.location + range.length);
-                    List<? extends DocumentRevision> docs = database.read(batch);
+                    List<? extends DocumentRevision> docs = readBatch(batch);
                     for (DocumentRevision rev : docs) {
                         DocumentRevision innerRev;
                         innerRev = rev;  // Allows us to replace later if projecting
@@ -170,8 +208,9 @@ public class QueryResult implements Iterable<DocumentRevision> {
                             continue;
                         }
 
-                        if (fields != null && !fields.isEmpty()) {
-                            innerRev = projectFields(fields, rev, database);
+                        // revisions read from the index are already projected
+                        if (projection != null && rev.isFullRevision()) {
+                            innerRev = projectFields(rev, database);
                         }
 
                         docList.add(innerRev);
@@ -202,18 +241,56 @@ public class QueryResult implements Iterable<DocumentRevision> {
         }
     }
 
-    private DocumentRevision projectFields(List<String> fields,
-                                           DocumentRevision rev,
-                                                   Database database) {
-        // grab the map filter fields and rebuild object
-        Map<String, Object> originalBody = rev.getBody().asMap();
-        Map<String, Object> body = new HashMap<String, Object>();
-        for (Map.Entry<String, Object> entry : originalBody.entrySet()) {
-            if (fields.contains(entry.getKey())) {
-                body.put(entry.getKey(), entry.getValue());
+    private List<? extends DocumentRevision> readBatch(List<String> batch)
+            throws DocumentStoreException {
+        if (indexReader == null) {
+            return database.read(batch);
+        }
+
+        Map<String, DocumentRevision> fromIndex;
+        try {
+            fromIndex = indexReader.read(batch, database);
+        } catch (QueryException e) {
+            logger.log(Level.WARNING, String.format("Failed to read projected fields from index " +
+                    "%s, reading documents instead", indexReader.getIndexName()), e);
+            return database.read(batch);
+        }
+        if (fromIndex.isEmpty()) {
+            return database.read(batch);
+        }
+
+        // load the bodies of documents whose values the index doesn't have exactly
+        List<String> missing = new ArrayList<String>();
+        for (String docId : batch) {
+            if (!fromIndex.containsKey(docId)) {
+                missing.add(docId);
+            }
+        }
+        Map<String, DocumentRevision> fromDatabase = new HashMap<String, DocumentRevision>();
+        if (!missing.isEmpty()) {
+            for (DocumentRevision rev : database.read(missing)) {
+                fromDatabase.put(rev.getId(), rev);
             }
         }
 
+        List<DocumentRevision> docs = new ArrayList<DocumentRevision>();
+        for (String docId : batch) {
+            DocumentRevision rev = fromIndex.get(docId);
+            if (rev == null) {
+                rev = fromDatabase.get(docId);
+            }
+            if (rev != null) {
+                docs.add(rev);
+            }
+        }
+        return docs;
+    }
+
+    private DocumentRevision projectFields(DocumentRevision rev, Database database) {
+        // read just the projected fields from the body and rebuild object; projected fields
+        // can't be dotted, so these are all top level fields
+        Map<String, Object> body = projection.extract(rev.getBody());
+
         DocumentRevisionBuilder revBuilder = new DocumentRevisionBuilder();
         revBuilder.setDocId(rev.getId());
         revBuilder.setRevId(rev.getRevision());
@@ -179,6 +179,8 @@ public abstract class ReplicatorBuilder<S, T, E> {
 
         private PushFilter pushFilter = null;
 
+        private int uploadSlots = 1;
+
         @Override
         public Replicator build() {
 
@@ -197,6 +199,7 @@ public abstract class ReplicatorBuilder<S, T, E> {
             pushStrategy.bulkInsertSize = bulkInsertSize;
             pushStrategy.pushAttachmentsInline = pushAttachmentsInline;
             pushStrategy.filter = pushFilter;
+            pushStrategy.uploadSlots = uploadSlots;
 
             return new ReplicatorImpl(pushStrategy, super.id);
         }
@@ -248,6 +251,25 @@ public abstract class ReplicatorBuilder<S, T, E> {
             return this;
         }
 
+        /**
+         * <p>Sets the number of batches of documents which can be uploaded to the CouchDB
+         * instance at the same time.
+         * </p>
+         * <p>With more than one upload slot, the next batch of changes is read and compared
+         * against the CouchDB instance while earlier batches are still being uploaded, which can
+         * make replications over high-latency connections significantly faster. The checkpoint
+         * is only moved past a batch once it and all earlier batches have been uploaded.
+         * </p>
+         *
+         * @param uploadSlots The number of batches to upload at the same time, defaults to 1
+         * @return This instance of {@link ReplicatorBuilder}
+         */
+        public Push uploadSlots(int uploadSlots) {
+            Misc.checkArgument(uploadSlots > 0, "uploadSlots must be greater than 0");
+            this.uploadSlots = uploadSlots;
+            return this;
+        }
+
     }
 
     /**
@@ -267,6 +289,12 @@ public abstract class ReplicatorBuilder<S, T, E> {
 
         private boolean pullAttachmentsInline = false;
 
+        private boolean pipelined = false;
+
+        private int attachmentDownloadSlots = 1;
+
+        private long maxAttachmentDownloadBytes = 16 * 1024 * 1024;
+
         @Override
         public Replicator build() {
 
@@ -293,6 +321,9 @@ public abstract class ReplicatorBuilder<S, T, E> {
             pullStrategy.changeLimitPerBatch = changeLimitPerBatch;
             pullStrategy.insertBatchSize = insertBatchSize;
             pullStrategy.pullAttachmentsInline = pullAttachmentsInline;
+            pullStrategy.pipelined = pipelined;
+            pullStrategy.attachmentDownloadSlots = attachmentDownloadSlots;
+            pullStrategy.maxAttachmentDownloadBytes = maxAttachmentDownloadBytes;
 
             return new ReplicatorImpl(pullStrategy, super.id);
         }
@@ -378,6 +409,66 @@ public abstract class ReplicatorBuilder<S, T, E> {
             this.pullAttachmentsInline = pullAttachmentsInline;
             return this;
         }
+
+        /**
+         * <p>Sets whether to pipeline the replication, so that the next batch of changes and
+         * revisions are fetched from the source database while the previous batch is being
+         * inserted into the local database.
+         * </p>
+         * <p>This can make replications of many changes significantly faster, at the cost of
+         * using two extra threads and holding up to a few batches of revisions in memory while
+         * the replication runs. Checkpoints are still only written once all of the changes in a
+         * batch have been inserted.
+         * </p>
+         *
+         * @param pipelined Whether to pipeline the replication, defaults to {@code false}
+         * @return This instance of {@link ReplicatorBuilder}
+         */
+        public Pull pipelined(boolean pipelined) {
+            this.pipelined = pipelined;
+            return this;
+        }
+
+        /**
+         * <p>Sets the number of attachments which can be downloaded from the source database at
+         * the same time, when attachments aren't pulled inline.
+         * </p>
+         * <p>With more than one download slot, the attachments of each batch of documents are
+         * downloaded in parallel rather than one at a time, which can make replications of
+         * documents with many attachments significantly faster over high-latency connections.
+         * The attachments are still downloaded before the documents are inserted into the local
+         * database.
+         * </p>
+         *
+         * @param attachmentDownloadSlots The number of attachments to download at the same time,
+         *                                defaults to 1
+         * @return This instance of {@link ReplicatorBuilder}
+         * @see #maxAttachmentDownloadBytes(long)
+         */
+        public Pull attachmentDownloadSlots(int attachmentDownloadSlots) {
+            Misc.checkArgument(attachmentDownloadSlots > 0,
+                    "attachmentDownloadSlots must be greater than 0");
+            this.attachmentDownloadSlots = attachmentDownloadSlots;
+            return this;
+        }
+
+        /**
+         * <p>Sets the maximum total size of the attachments which can be downloaded at the same
+         * time when there is more than one attachment download slot. An attachment larger than
+         * this is downloaded on its own.
+         * </p>
+         *
+         * @param maxAttachmentDownloadBytes The maximum number of bytes of attachments to
+         *                                   download at the same time, defaults to 16 MiB
+         * @return This instance of {@link ReplicatorBuilder}
+         * @see #attachmentDownloadSlots(int)
+         */
+        public Pull maxAttachmentDownloadBytes(long maxAttachmentDownloadBytes) {
+            Misc.checkArgument(maxAttachmentDownloadBytes > 0,
+                    "maxAttachmentDownloadBytes must be greater than 0");
+            this.maxAttachmentDownloadBytes = maxAttachmentDownloadBytes;
+            return this;
+        }
     }
 
 
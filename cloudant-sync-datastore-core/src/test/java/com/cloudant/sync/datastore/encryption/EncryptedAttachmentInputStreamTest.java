@@ -15,6 +15,8 @@
 package com.cloudant.sync.datastore.encryption;
 
 import com.cloudant.sync.internal.documentstore.encryption.EncryptedAttachmentInputStream;
+import com.cloudant.sync.internal.documentstore.encryption.EncryptedAttachmentOutputStream;
+import com.cloudant.sync.internal.documentstore.encryption.EncryptionConstants;
 import com.cloudant.sync.util.TestUtils;
 
 import org.apache.commons.io.IOUtils;
@@ -23,11 +25,16 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.InvalidKeyException;
+import java.util.Arrays;
 
 /**
  * Test encrypting an attachment to check correct on disk format is read.
@@ -83,6 +90,99 @@ public class EncryptedAttachmentInputStreamTest {
                 new FileInputStream(encryptedAttachmentBlob), EncryptionTestConstants.key16Byte);
     }
 
+    /**
+     * Test reading the chunked format, from the start and from offsets in and around chunk
+     * and block boundaries.
+     */
+    @Test
+    public void testReadingChunkedFile() throws IOException, InvalidKeyException {
+        byte[] plainText = new byte[100];
+        for (int i = 0; i < plainText.length; i++) {
+            plainText[i] = (byte) i;
+        }
+        File encryptedAttachmentBlob = File.createTempFile("chunked", null);
+        try {
+            OutputStream out = new EncryptedAttachmentOutputStream(
+                    new FileOutputStream(encryptedAttachmentBlob),
+                    EncryptionTestConstants.key16Byte, 32);
+            out.write(plainText);
+            out.close();
+
+            Assert.assertArrayEquals(plainText, IOUtils.toByteArray(
+                    new EncryptedAttachmentInputStream(
+                            new FileInputStream(encryptedAttachmentBlob),
+                            EncryptionTestConstants.key16Byte)));
+            for (int offset : new int[]{0, 1, 15, 16, 31, 32, 33, 64, 99, 100, 150}) {
+                InputStream encryptedInputStream = new EncryptedAttachmentInputStream(
+                        new FileInputStream(encryptedAttachmentBlob),
+                        EncryptionTestConstants.key16Byte, offset);
+                Assert.assertArrayEquals("Wrong bytes for offset " + offset,
+                        Arrays.copyOfRange(plainText, Math.min(offset, plainText.length),
+                                plainText.length), IOUtils.toByteArray(encryptedInputStream));
+                encryptedInputStream.close();
+            }
+        } finally {
+            encryptedAttachmentBlob.delete();
+        }
+    }
+
+    /**
+     * Test reading the original format from offsets, which reads the block before the offset
+     * as its IV, including offsets at and beyond the end of the plain text.
+     */
+    @Test
+    public void testReadingValidFileFromOffsets() throws IOException, InvalidKeyException {
+        File encryptedAttachmentBlob = TestUtils.loadFixture(
+                "fixture/EncryptedAttachmentTest_cipherText_aes128");
+        byte[] plainText = IOUtils.toByteArray(new FileInputStream(TestUtils.loadFixture(
+                "fixture/EncryptedAttachmentTest_plainText")));
+
+        for (int offset : new int[]{0, 1, 15, 16, 17, 32, plainText.length - 1,
+                plainText.length, plainText.length + 16, plainText.length + 100}) {
+            InputStream encryptedInputStream = new EncryptedAttachmentInputStream(
+                    new FileInputStream(encryptedAttachmentBlob),
+                    EncryptionTestConstants.key16Byte, offset);
+            Assert.assertArrayEquals("Wrong bytes for offset " + offset,
+                    Arrays.copyOfRange(plainText, Math.min(offset, plainText.length),
+                            plainText.length), IOUtils.toByteArray(encryptedInputStream));
+            encryptedInputStream.close();
+        }
+    }
+
+    /**
+     * Test a chunk cut short is reported rather than read as the end of the attachment.
+     */
+    @Test
+    public void testReadingTruncatedChunk() throws IOException, InvalidKeyException {
+        exception.expect(IOException.class);
+        exception.expectMessage("Attachment chunk is truncated.");
+
+        ByteArrayOutputStream cipherText = new ByteArrayOutputStream();
+        OutputStream out = new EncryptedAttachmentOutputStream(cipherText,
+                EncryptionTestConstants.key16Byte, 32);
+        out.write(new byte[40]);
+        out.close();
+        byte[] truncated = Arrays.copyOf(cipherText.toByteArray(), 5 + 64 + 16 + 8);
+
+        IOUtils.toByteArray(new EncryptedAttachmentInputStream(
+                new ByteArrayInputStream(truncated), EncryptionTestConstants.key16Byte));
+    }
+
+    /**
+     * Test a chunk size in the header which is too large is rejected before anything is
+     * allocated for it.
+     */
+    @Test
+    public void testReadingTooLargeChunkSize() throws IOException, InvalidKeyException {
+        exception.expect(IOException.class);
+        exception.expectMessage("Invalid chunk size in file header.");
+
+        byte[] header = new byte[]{EncryptionConstants.ATTACHMENT_DISK_VERSION_CHUNKED_CBC,
+                0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0};
+        new EncryptedAttachmentInputStream(new ByteArrayInputStream(header),
+                EncryptionTestConstants.key16Byte);
+    }
+
     @Test(expected=InvalidKeyException.class)
     public void Test31ByteKey() throws IOException, InvalidKeyException {
         new EncryptedAttachmentInputStream(null, EncryptionTestConstants.keyLength31);
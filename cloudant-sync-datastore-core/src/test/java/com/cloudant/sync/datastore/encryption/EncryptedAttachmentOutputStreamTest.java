@@ -27,6 +27,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -60,6 +61,37 @@ public class EncryptedAttachmentOutputStreamTest {
                         new FileInputStream(expectedCipherText)));
     }
 
+    /**
+     * Test the chunked format has the version 2 header and a fixed size for every chunk but
+     * the last.
+     */
+    @Test
+    public void testWritingChunkedFile() throws IOException, InvalidKeyException {
+        int chunkSize = 32;
+        for (int length : new int[]{0, 1, 31, 32, 33, 64, 100}) {
+            ByteArrayOutputStream actualEncryptedOutput = new ByteArrayOutputStream();
+            OutputStream encryptedOutputStream = new EncryptedAttachmentOutputStream(
+                    actualEncryptedOutput, EncryptionTestConstants.key16Byte, chunkSize);
+            encryptedOutputStream.write(new byte[length]);
+            encryptedOutputStream.close();
+
+            byte[] cipherText = actualEncryptedOutput.toByteArray();
+            Assert.assertEquals(2, cipherText[0]);
+            Assert.assertEquals(chunkSize, ByteBuffer.wrap(cipherText, 1, 4).getInt());
+            // IV and a block of padding per chunk
+            int fullChunks = length / chunkSize;
+            int lastChunk = length % chunkSize == 0 ? 0 : 32 + (length % chunkSize) / 16 * 16;
+            Assert.assertEquals("Wrong cipher text length for " + length + " bytes",
+                    5 + fullChunks * (chunkSize + 32) + lastChunk, cipherText.length);
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testChunkSizeNotMultipleOfBlockSize() throws IOException, InvalidKeyException {
+        new EncryptedAttachmentOutputStream(
+                new ByteArrayOutputStream(), EncryptionTestConstants.key16Byte, 40);
+    }
+
     @Test(expected=InvalidKeyException.class)
     public void Test31ByteKey() throws NoSuchPaddingException, NoSuchAlgorithmException,
             InvalidAlgorithmParameterException, InvalidKeyException, IOException {
@@ -29,12 +29,15 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.InvalidKeyException;
 import java.util.Arrays;
 import java.util.UUID;
 import java.util.zip.GZIPInputStream;
 
+import javax.crypto.BadPaddingException;
+
 /**
  * Test the AttachmentStreamFactory for encrypted and unencrypted streams.
  */
@@ -270,8 +273,9 @@ public class AttachmentStreamFactoryTest extends BasicDatastoreTestBase {
      * read using a SavedAttachment doesn't give us the original plaintext. That is, make sure
      * using the wrong key does what you'd expect: fails to decrypt the attachment.
      *
-     * Note the decryption process will still work as AES doesn't check the plaintext decrypted
-     * is correct or not, you just get garbage data out.
+     * Note AES doesn't check the plaintext decrypted is correct or not, so a single chunk
+     * decrypted with the wrong key has about a 1 in 256 chance of having valid padding. The
+     * fixture is five chunks long, so at least one of them fails to have its padding removed.
      */
     public void testSavedAttachmentCannotReadPreparedAttachmentEncryptedUsingDifferentKey()
             throws AttachmentException, IOException, InvalidKeyException {
@@ -309,10 +313,15 @@ public class AttachmentStreamFactoryTest extends BasicDatastoreTestBase {
         SavedAttachment savedAttachment = new SavedAttachment(0, "test", null, "text/plain", Attachment.Encoding.Plain, 0, 0, 0,
                 preparedAttachment.tempFile, asf2);
 
-        Assert.assertFalse("Reading with different key shouldn't produce plaintext content",
-                IOUtils.contentEquals(
-                        savedAttachment.getInputStream(),
-                        new FileInputStream(plainText)));
+        try {
+            IOUtils.toByteArray(savedAttachment.getInputStream());
+            Assert.fail("Reading with different key should fail to decrypt");
+        } catch (IOException e) {
+            Assert.assertEquals("Could not decrypt attachment chunk; check encryption key.",
+                    e.getMessage());
+            Assert.assertTrue("Decrypting with different key should fail to remove padding",
+                    e.getCause() instanceof BadPaddingException);
+        }
 
     }
 
@@ -380,6 +389,80 @@ public class AttachmentStreamFactoryTest extends BasicDatastoreTestBase {
 
     }
 
+    // =====================
+    // Ranged reads
+    // =====================
+
+    @Test
+    /**
+     * Assert ranged reads of an unencrypted, un-encoded file return the right bytes.
+     */
+    public void testSavedAttachmentReadsRangesOfUnencryptedUnencodedStream()
+            throws IOException {
+        assertRangesRead(new AttachmentStreamFactory(new NullKeyProvider()),
+                f("fixture/EncryptedAttachmentTest_plainText"), Attachment.Encoding.Plain);
+    }
+
+    @Test
+    /**
+     * Assert ranged reads of an unencrypted, gzipped file return the right bytes.
+     */
+    public void testSavedAttachmentReadsRangesOfUnencryptedEncodedStream()
+            throws IOException {
+        assertRangesRead(new AttachmentStreamFactory(new NullKeyProvider()),
+                f("fixture/EncryptedAttachmentTest_plainText.gz"), Attachment.Encoding.Gzip);
+    }
+
+    @Test
+    /**
+     * Assert ranged reads of an encrypted, un-encoded file return the right bytes, including
+     * ranges starting on and either side of cipher block boundaries.
+     */
+    public void testSavedAttachmentReadsRangesOfEncryptedUnencodedStream()
+            throws IOException {
+        assertRangesRead(new AttachmentStreamFactory(EncryptionTestConstants.keyProvider16Byte),
+                f("fixture/EncryptedAttachmentTest_cipherText_aes128"),
+                Attachment.Encoding.Plain);
+    }
+
+    @Test
+    /**
+     * Assert ranged reads of an encrypted, gzipped file return the right bytes.
+     */
+    public void testSavedAttachmentReadsRangesOfEncryptedEncodedStream()
+            throws IOException {
+        assertRangesRead(new AttachmentStreamFactory(EncryptionTestConstants.keyProvider16Byte),
+                f("fixture/EncryptedAttachmentTest_gzip_cipherText_aes128"),
+                Attachment.Encoding.Gzip);
+    }
+
+    private static void assertRangesRead(AttachmentStreamFactory asf, File blob,
+                                         Attachment.Encoding encoding) throws IOException {
+        byte[] plainText = IOUtils.toByteArray(
+                new FileInputStream(f("fixture/EncryptedAttachmentTest_plainText")));
+        SavedAttachment savedAttachment = new SavedAttachment(0, "test", null, "text/plain",
+                encoding, plainText.length, 0, 0, blob, asf);
+
+        long[] offsets = {0, 1, 15, 16, 17, 31, 32, 100000, plainText.length - 20,
+                plainText.length - 1, plainText.length, plainText.length + 100};
+        long[] lengths = {0, 1, 16, 33, 70000, Long.MAX_VALUE};
+        for (long offset : offsets) {
+            for (long length : lengths) {
+                int from = (int) Math.min(offset, plainText.length);
+                int to = (int) Math.min(offset + Math.min(length, plainText.length),
+                        plainText.length);
+                InputStream is = savedAttachment.getInputStream(offset, length);
+                try {
+                    Assert.assertArrayEquals("Wrong bytes for offset " + offset + " length " +
+                            length, Arrays.copyOfRange(plainText, from, to),
+                            IOUtils.toByteArray(is));
+                } finally {
+                    is.close();
+                }
+            }
+        }
+    }
+
     private static File f(String filename) {
         return TestUtils.loadFixture(filename);
     }
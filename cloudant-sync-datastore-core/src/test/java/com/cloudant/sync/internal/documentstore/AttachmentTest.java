@@ -44,8 +44,11 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -301,6 +304,45 @@ public class AttachmentTest extends BasicDatastoreTestBase {
         }
     }
 
+    @Test
+    public void rangedReadOfSavedAttachmentTest() throws Exception {
+        String attachmentName = "bonsai-boston.jpg";
+        File f = TestUtils.loadFixture("fixture/" + attachmentName);
+        byte[] expected;
+        FileInputStream fis = new FileInputStream(f);
+        try {
+            expected = IOUtils.toByteArray(fis);
+        } finally {
+            IOUtils.closeQuietly(fis);
+        }
+        Attachment unsaved = new UnsavedFileAttachment(f, "image/jpeg");
+
+        DocumentRevision rev = new DocumentRevision();
+        rev.setBody(bodyOne);
+        rev.getAttachments().put(attachmentName, unsaved);
+        rev = datastore.create(rev);
+        Attachment saved = datastore.getAttachment(rev.getId(), rev.getRevision(),
+                attachmentName);
+
+        for (Attachment att : Arrays.asList(unsaved, saved)) {
+            Assert.assertArrayEquals(Arrays.copyOfRange(expected, 1000, 1100),
+                    readRange(att, 1000, 100));
+            Assert.assertArrayEquals(Arrays.copyOfRange(expected, expected.length - 10,
+                    expected.length), readRange(att, expected.length - 10, 100));
+            Assert.assertEquals(0, readRange(att, expected.length + 1, 100).length);
+        }
+    }
+
+    private static byte[] readRange(Attachment att, long offset, long length) throws
+            IOException {
+        InputStream in = att.getInputStream(offset, length);
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
     @Test
     public void testLengthPreparedAttachmentsTest() throws Exception {
         String textAttachmentName = "attachment_1.txt";
@@ -464,4 +506,85 @@ public class AttachmentTest extends BasicDatastoreTestBase {
         Assert.assertTrue(attachments.isEmpty());
     }
 
+    @Test
+    public void getDocumentTreesLoadsLeafAttachments() throws Exception {
+        String attachmentName = "attachment_1.txt";
+        DocumentRevision rev_1Mut = new DocumentRevision("doc1");
+        rev_1Mut.setBody(bodyOne);
+        rev_1Mut.getAttachments().put(attachmentName, new UnsavedFileAttachment(TestUtils
+                .loadFixture("fixture/" + attachmentName), "text/plain"));
+        DocumentRevision rev_1 = datastore.create(rev_1Mut);
+        String rev_1Id = rev_1.getRevision();
+        // rev 2 keeps the attachment from rev 1
+        rev_1.setBody(bodyTwo);
+        DocumentRevision rev_2 = datastore.update(rev_1);
+
+        DocumentRevision otherMut = new DocumentRevision("doc2");
+        otherMut.setBody(bodyOne);
+        datastore.create(otherMut);
+
+        Map<String, DocumentRevisionTree> trees = datastore.getDocumentTrees(Arrays.asList
+                ("doc1", "doc2", "doc1", "missing"));
+
+        Assert.assertEquals(3, trees.size());
+        DocumentRevisionTree tree = trees.get("doc1");
+        Assert.assertEquals(rev_2.getRevision(), tree.getCurrentRevision().getRevision());
+        Assert.assertTrue(tree.getCurrentRevision().getAttachments().containsKey(attachmentName));
+        // non-leaf revisions don't have their attachments loaded
+        Assert.assertTrue(tree.lookup("doc1", rev_1Id).getAttachments().isEmpty());
+        Assert.assertEquals(1, trees.get("doc2").leafRevisionIds().size());
+        Assert.assertTrue(trees.get("missing").leafRevisionIds().isEmpty());
+    }
+
+    @Test
+    public void identicalAttachmentsShareOneReferenceCountedBlob() throws Exception {
+        String attachmentName = "bonsai-boston.jpg";
+        File f = TestUtils.loadFixture("fixture/" + attachmentName);
+        List<DocumentRevision> revs = new ArrayList<DocumentRevision>();
+        for (String id : Arrays.asList("doc1", "doc2")) {
+            DocumentRevision mut = new DocumentRevision(id);
+            mut.setBody(bodyOne);
+            mut.getAttachments().put(attachmentName, new UnsavedFileAttachment(f, "image/jpeg"));
+            revs.add(datastore.create(mut));
+        }
+        // copying the attachment forward to a new revision adds a reference
+        DocumentRevision doc1 = revs.get(0);
+        doc1.setBody(bodyTwo);
+        doc1 = datastore.update(doc1);
+
+        File attachments = new File(datastore.datastoreDir + "/extensions/com.cloudant" +
+                ".attachments");
+        Assert.assertEquals(1, attachments.listFiles().length);
+        Assert.assertEquals(Arrays.asList(3), getRefcounts());
+
+        // the revisions of doc1 still refer to the blob until they are compacted
+        datastore.delete(doc1);
+        Assert.assertEquals(Arrays.asList(3), getRefcounts());
+        datastore.compact();
+        Assert.assertEquals(Arrays.asList(1), getRefcounts());
+        Assert.assertEquals(1, attachments.listFiles().length);
+        Assert.assertNotNull(datastore.getAttachment("doc2", revs.get(1).getRevision(),
+                attachmentName));
+
+        datastore.delete(revs.get(1));
+        datastore.compact();
+        Assert.assertEquals(Collections.<Integer>emptyList(), getRefcounts());
+        Assert.assertEquals(0, attachments.listFiles().length);
+    }
+
+    private List<Integer> getRefcounts() throws Exception {
+        return datastore.runOnDbQueue(new SQLCallable<List<Integer>>() {
+            @Override
+            public List<Integer> call(SQLDatabase db) throws Exception {
+                List<Integer> refcounts = new ArrayList<Integer>();
+                Cursor c = db.rawQuery("SELECT refcount FROM attachments_key_filename", null);
+                while (c.moveToNext()) {
+                    refcounts.add(c.getInt(0));
+                }
+                c.close();
+                return refcounts;
+            }
+        }).get();
+    }
+
 }
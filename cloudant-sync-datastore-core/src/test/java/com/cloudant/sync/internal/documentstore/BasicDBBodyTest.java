@@ -28,6 +28,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -97,6 +98,46 @@ public class BasicDBBodyTest {
         Assert.assertTrue(m.get("IntegerValue").equals(2147483647)); // Integer.MAX_VALUE
     }
 
+    @Test
+    public void asMap_modifyingMapDoesNotChangeBody() {
+        DocumentBody body = new DocumentBodyImpl(jsonData);
+        Map<String, Object> map = body.asMap();
+        map.put("Sunrise", false);
+        map.remove("Data");
+        Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getKey().equals("Activities")) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals(false, map.get("Sunrise"));
+        Assert.assertFalse(map.containsKey("Activities"));
+
+        assertMapIsCorrect(body.asMap());
+        Assert.assertTrue(Arrays.equals(jsonData, body.asBytes()));
+    }
+
+    @Test
+    public void asMap_settingEntryValueDoesNotChangeBody() {
+        DocumentBody body = new DocumentBodyImpl(jsonData);
+        Map<String, Object> map = body.asMap();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (entry.getKey().equals("Sunrise")) {
+                entry.setValue(false);
+            }
+        }
+        Assert.assertEquals(false, map.get("Sunrise"));
+        assertMapIsCorrect(body.asMap());
+    }
+
+    @Test
+    public void trustedBodyWith_nullIsEmptyBody() {
+        DocumentBody body = DocumentBodyImpl.trustedBodyWith(null);
+        Assert.assertTrue(Arrays.equals("{}".getBytes(), body.asBytes()));
+        Assert.assertTrue(body.asMap().isEmpty());
+    }
+
     private void assertMapIsCorrect(Map<String, Object> actualMap) {
         Assert.assertEquals(5, actualMap.size());
         Assert.assertTrue((Boolean) actualMap.get("Sunrise"));
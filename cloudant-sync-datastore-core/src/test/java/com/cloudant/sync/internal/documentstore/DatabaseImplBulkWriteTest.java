@@ -0,0 +1,204 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.documentstore;
+
+import com.cloudant.sync.documentstore.ConflictException;
+import com.cloudant.sync.documentstore.DocumentBodyFactory;
+import com.cloudant.sync.documentstore.DocumentNotFoundException;
+import com.cloudant.sync.documentstore.DocumentRevision;
+import com.cloudant.sync.documentstore.DocumentWriteResult;
+import com.cloudant.sync.documentstore.InvalidDocumentException;
+import com.cloudant.sync.event.Subscribe;
+import com.cloudant.sync.event.notifications.DocumentCreated;
+import com.cloudant.sync.event.notifications.DocumentDeleted;
+import com.cloudant.sync.event.notifications.DocumentUpdated;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DatabaseImplBulkWriteTest extends BasicDatastoreTestBase {
+
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger updated = new AtomicInteger();
+    private final AtomicInteger deleted = new AtomicInteger();
+
+    @Test
+    public void createAll_createsEveryDocument() throws Exception {
+        datastore.getEventBus().register(this);
+        List<DocumentRevision> revs = new ArrayList<DocumentRevision>();
+        for (int i = 0; i < 10; i++) {
+            revs.add(newRevision("doc" + i, i));
+        }
+        // ID is generated
+        revs.add(newRevision(null, 10));
+
+        List<DocumentWriteResult> results = datastore.createAll(revs);
+
+        Assert.assertEquals(11, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            DocumentWriteResult result = results.get(i);
+            Assert.assertTrue(result.isSuccessful());
+            Assert.assertSame(revs.get(i), result.getInput());
+            Assert.assertNotNull(result.getRevision().getId());
+            Assert.assertTrue(result.getRevision().getRevision().startsWith("1-"));
+            Assert.assertEquals(i, result.getRevision().getBody().asMap().get("index"));
+        }
+        Assert.assertEquals("doc3", results.get(3).getRevision().getId());
+        Assert.assertEquals(11, datastore.getDocumentCount());
+        Assert.assertEquals(11, created.get());
+    }
+
+    @Test
+    public void createAll_reportsConflictsAndCreatesTheRest() throws Exception {
+        datastore.create(newRevision("existing", 0));
+        datastore.getEventBus().register(this);
+
+        List<DocumentWriteResult> results = datastore.createAll(Arrays.asList(
+                newRevision("a", 1), newRevision("existing", 2), newRevision("b", 3),
+                newRevision("b", 4)));
+
+        Assert.assertTrue(results.get(0).isSuccessful());
+        Assert.assertTrue(results.get(1).getError() instanceof ConflictException);
+        Assert.assertNull(results.get(1).getRevision());
+        Assert.assertTrue(results.get(2).isSuccessful());
+        // duplicate within the batch
+        Assert.assertTrue(results.get(3).getError() instanceof ConflictException);
+
+        Assert.assertEquals(3, datastore.getDocumentCount());
+        Assert.assertEquals(0, datastore.read("existing").getBody().asMap().get("index"));
+        Assert.assertEquals(3, datastore.read("b").getBody().asMap().get("index"));
+        Assert.assertEquals(2, created.get());
+    }
+
+    @Test
+    public void createAll_invalidBodyWritesNothing() throws Exception {
+        Map<String, Object> invalid = new HashMap<String, Object>();
+        invalid.put("_invalid", true);
+        DocumentRevision invalidRev = new DocumentRevision("invalid");
+        invalidRev.setBody(DocumentBodyFactory.create(invalid));
+
+        try {
+            datastore.createAll(Arrays.asList(newRevision("valid", 0), invalidRev));
+            Assert.fail("Expected InvalidDocumentException");
+        } catch (InvalidDocumentException e) {
+            // expected
+        }
+        Assert.assertEquals(0, datastore.getDocumentCount());
+    }
+
+    @Test
+    public void createAll_emptyList() throws Exception {
+        Assert.assertTrue(datastore.createAll(Collections.<DocumentRevision>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void createAll_localDocuments() throws Exception {
+        List<DocumentWriteResult> results = datastore.createAll(Arrays.asList(
+                newRevision("_local/one", 1), newRevision("two", 2)));
+
+        Assert.assertTrue(results.get(0).isSuccessful());
+        Assert.assertTrue(results.get(1).isSuccessful());
+        Assert.assertEquals(1, datastore.read("_local/one").getBody().asMap().get("index"));
+        // local documents aren't counted
+        Assert.assertEquals(1, datastore.getDocumentCount());
+    }
+
+    @Test
+    public void updateAll_reportsConflictsAndUpdatesTheRest() throws Exception {
+        DocumentRevision a = datastore.create(newRevision("a", 0));
+        DocumentRevision b = datastore.create(newRevision("b", 0));
+        DocumentRevision c = datastore.create(newRevision("c", 0));
+        // make the revision of b stale
+        b.setBody(DocumentBodyFactory.create(Collections.singletonMap("index", 1)));
+        datastore.update(b);
+        datastore.getEventBus().register(this);
+
+        a.setBody(DocumentBodyFactory.create(Collections.singletonMap("index", 2)));
+        b.setBody(DocumentBodyFactory.create(Collections.singletonMap("index", 2)));
+        c.setBody(DocumentBodyFactory.create(Collections.singletonMap("index", 2)));
+        List<DocumentWriteResult> results = datastore.updateAll(Arrays.asList(a, b, c));
+
+        Assert.assertTrue(results.get(0).getRevision().getRevision().startsWith("2-"));
+        Assert.assertTrue(results.get(1).getError() instanceof ConflictException);
+        Assert.assertTrue(results.get(2).getRevision().getRevision().startsWith("2-"));
+        Assert.assertEquals(2, datastore.read("a").getBody().asMap().get("index"));
+        Assert.assertEquals(1, datastore.read("b").getBody().asMap().get("index"));
+        Assert.assertEquals(2, datastore.read("c").getBody().asMap().get("index"));
+        Assert.assertEquals(2, updated.get());
+    }
+
+    @Test
+    public void updateAll_missingRevision() throws Exception {
+        datastore.create(newRevision("a", 0));
+        DocumentRevision missing = new DocumentRevision("a", "1-abcdef");
+        missing.setBody(DocumentBodyFactory.create(Collections.singletonMap("index", 1)));
+
+        List<DocumentWriteResult> results = datastore.updateAll(Collections.singletonList(missing));
+
+        Assert.assertTrue(results.get(0).getError() instanceof DocumentNotFoundException);
+    }
+
+    @Test
+    public void deleteAll_reportsMissingAndDeletesTheRest() throws Exception {
+        DocumentRevision a = datastore.create(newRevision("a", 0));
+        DocumentRevision b = datastore.create(newRevision("b", 0));
+        DocumentRevision local = datastore.create(newRevision("_local/c", 0));
+        DocumentRevision bDeleted = datastore.delete(b);
+        datastore.getEventBus().register(this);
+
+        List<DocumentWriteResult> results = datastore.deleteAll(Arrays.asList(a, b, bDeleted,
+                local));
+
+        Assert.assertTrue(results.get(0).getRevision().isDeleted());
+        // no longer a leaf
+        Assert.assertTrue(results.get(1).getError() instanceof ConflictException);
+        // already deleted
+        Assert.assertTrue(results.get(2).getError() instanceof DocumentNotFoundException);
+        Assert.assertTrue(results.get(3).isSuccessful());
+        Assert.assertNull(results.get(3).getRevision());
+        Assert.assertEquals(0, datastore.getDocumentCount());
+        Assert.assertFalse(datastore.contains("_local/c"));
+        Assert.assertEquals(2, deleted.get());
+    }
+
+    private DocumentRevision newRevision(String id, int index) {
+        DocumentRevision rev = new DocumentRevision(id);
+        rev.setBody(DocumentBodyFactory.create(Collections.singletonMap("index", index)));
+        return rev;
+    }
+
+    @Subscribe
+    public void onDocumentCreated(DocumentCreated dc) {
+        created.incrementAndGet();
+    }
+
+    @Subscribe
+    public void onDocumentUpdated(DocumentUpdated du) {
+        updated.incrementAndGet();
+    }
+
+    @Subscribe
+    public void onDocumentDeleted(DocumentDeleted dd) {
+        deleted.incrementAndGet();
+    }
+}
@@ -18,12 +18,16 @@ package com.cloudant.sync.internal.documentstore;
 
 import com.cloudant.sync.documentstore.DocumentRevision;
 import com.cloudant.sync.internal.common.ValueListMap;
+import com.cloudant.sync.internal.documentstore.callables.RevsDiffCallable;
 
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -144,4 +148,77 @@ public class DatabaseImplRevsDiffTest extends BasicDatastoreTestBase{
         Assert.assertFalse(missing.get(rev1.getId()).contains(rev1.getRevision()));
     }
 
+    @Test
+    public void revsDiff_revsFromOtherDocs_returned() throws Exception {
+        DocumentRevision revMut1 = new DocumentRevision();
+        revMut1.setBody(bodyOne);
+        DocumentRevision rev1 = datastore.create(revMut1);
+        DocumentRevision revMut2 = new DocumentRevision();
+        revMut2.setBody(bodyTwo);
+        DocumentRevision rev2 = datastore.create(revMut2);
+
+        // each doc is asked about the other's revision, which both exist in the revs table
+        ValueListMap<String, String> revs = new ValueListMap<String, String>();
+        revs.addValueToKey(rev1.getId(), rev2.getRevision());
+        revs.addValueToKey(rev2.getId(), rev1.getRevision());
+
+        Map<String, List<String>> missing = datastore.revsDiff(revs);
+        Assert.assertEquals(2, missing.size());
+        Assert.assertEquals(rev2.getRevision(), missing.get(rev1.getId()).get(0));
+        Assert.assertEquals(rev1.getRevision(), missing.get(rev2.getId()).get(0));
+    }
+
+    @Test
+    public void revsDiff_manyDocs_onlyNonExistingRevisionsReturned() throws Exception {
+        ValueListMap<String, String> revs = new ValueListMap<String, String>();
+        for (int i = 0; i < 1000; i++) {
+            DocumentRevision revMut = new DocumentRevision("doc" + i);
+            revMut.setBody(bodyOne);
+            DocumentRevision rev = datastore.create(revMut);
+            revs.addValueToKey(rev.getId(), rev.getRevision());
+            if (i % 2 == 0) {
+                revs.addValueToKey(rev.getId(), "2-a");
+            }
+        }
+        revs.addValueToKey("missing", "1-a");
+
+        Map<String, List<String>> missing = datastore.revsDiff(revs);
+        Assert.assertEquals(501, missing.size());
+        for (int i = 0; i < 1000; i += 2) {
+            Assert.assertEquals(Collections.singletonList("2-a"), missing.get("doc" + i));
+        }
+        Assert.assertEquals(Collections.singletonList("1-a"), missing.get("missing"));
+    }
+
+    @Test
+    public void revsDiff_smallPlaceholdersLimit_batchesSpanDocsAndRevs() throws Exception {
+        ValueListMap<String, String> revs = new ValueListMap<String, String>();
+        Map<String, List<String>> expected = new HashMap<String, List<String>>();
+        for (int i = 0; i < 10; i++) {
+            DocumentRevision revMut = new DocumentRevision("doc" + i);
+            revMut.setBody(bodyOne);
+            DocumentRevision rev = datastore.create(revMut);
+            revs.addValueToKey(rev.getId(), rev.getRevision());
+            // a different number of missing revisions for each doc, so batches end part way
+            // through a doc's revisions as well as between docs
+            List<String> missingRevs = new ArrayList<String>();
+            for (int j = 0; j < i % 4; j++) {
+                missingRevs.add((j + 2) + "-a");
+            }
+            revs.addValuesToKey(rev.getId(), missingRevs);
+            if (!missingRevs.isEmpty()) {
+                expected.put(rev.getId(), missingRevs);
+            }
+        }
+        revs.addValueToKey("missing", "1-a");
+        expected.put("missing", Collections.singletonList("1-a"));
+
+        for (int limit : new int[]{2, 3, 4, 7}) {
+            Map<String, List<String>> missing = datastore.runOnDbQueue(new RevsDiffCallable
+                    (revs, limit)).get();
+            Assert.assertEquals("Wrong missing revisions with limit " + limit, expected,
+                    missing);
+        }
+    }
+
 }
@@ -51,6 +51,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
@@ -619,6 +620,49 @@ public class DatastoreSchemaTests {
         }
     }
 
+    /**
+     * Test that migrating to schema version 201 counts the existing references to each blob.
+     */
+    @Test
+    public void migrationTo201CountsBlobReferences() throws Exception {
+        File temp_folder = new File(TestUtils.createTempTestingDir(this.getClass().getName()));
+        File zippedComplexDatabase = f("fixture/v100ComplexWithoutDuplicates.zip");
+        Assert.assertTrue(unzipToDirectory(zippedComplexDatabase, temp_folder));
+
+        DatabaseImpl datastore = (DatabaseImpl) DocumentStore.getInstance(
+                new File(temp_folder + "/datastores", "v100ComplexWithoutDuplicates")).database();
+
+        try {
+            List<String> mismatches = datastore.runOnDbQueue(new SQLCallable<List<String>>() {
+                @Override
+                public List<String> call(SQLDatabase db) throws Exception {
+                    Assert.assertTrue("DB version should be 201 or more", db.getVersion() >= 201);
+                    List<String> mismatches = new ArrayList<String>();
+                    Cursor c = null;
+                    try {
+                        c = db.rawQuery("SELECT key, refcount, (SELECT COUNT(*) FROM " +
+                                "attachments WHERE lower(hex(attachments.key)) = " +
+                                "attachments_key_filename.key) FROM attachments_key_filename",
+                                null);
+                        Assert.assertTrue("There should be some blobs", c.getCount() > 0);
+                        while (c.moveToNext()) {
+                            if (c.getInt(1) != c.getInt(2)) {
+                                mismatches.add(c.getString(0));
+                            }
+                        }
+                        return mismatches;
+                    } finally {
+                        DatabaseUtils.closeCursorQuietly(c);
+                    }
+                }
+            }).get();
+            Assert.assertEquals("Reference counts should match the attachments table",
+                    Collections.<String>emptyList(), mismatches);
+        } finally {
+            datastore.close();
+        }
+    }
+
     // utility methods used by tests
     private void assertLeafCount(Database database, String docId, int expectedLeafCount) {
         int actualLeafCount = ((DatabaseImpl) database).getAllRevisionsOfDocument(docId).
@@ -156,4 +156,40 @@ public class MultipartAttachmentWriterTests {
         Assert.assertTrue(TestUtils.streamsEqual(fis, new ByteArrayInputStream(bos.toByteArray())));
     }
 
+    @Test
+    public void ReadWithOffsetAndSingleBytesTest() throws Exception {
+        DocumentRevision docMut = new DocumentRevision();
+        docMut.setBody(bodyOne);
+        InternalDocumentRevision doc = (InternalDocumentRevision)database.create(docMut);
+
+        File f = TestUtils.loadFixture("fixture/bonsai-boston.jpg");
+        MultipartAttachmentWriter mpw = new MultipartAttachmentWriter();
+        mpw.setBody(doc.asMap());
+        mpw.addAttachment(new UnsavedFileAttachment(f, "image/jpeg"), f.length());
+        mpw.addAttachment(new UnsavedFileAttachment(f, "image/jpeg"), f.length());
+
+        // read into the middle of a buffer
+        ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+        InputStream is = mpw.makeInputStream();
+        byte buf[] = new byte[chunkSize + 10];
+        int amountRead;
+        while ((amountRead = is.read(buf, 5, chunkSize)) > 0) {
+            chunked.write(buf, 5, amountRead);
+        }
+        is.close();
+
+        // read a byte at a time, which must not sign extend
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        is = mpw.makeInputStream();
+        int b;
+        while ((b = is.read()) != -1) {
+            Assert.assertTrue(b >= 0 && b <= 255);
+            single.write(b);
+        }
+        is.close();
+
+        Assert.assertEquals(mpw.getContentLength(), chunked.size());
+        Assert.assertArrayEquals(chunked.toByteArray(), single.toByteArray());
+    }
+
 }
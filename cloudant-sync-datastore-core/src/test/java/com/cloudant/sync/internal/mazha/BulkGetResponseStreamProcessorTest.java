@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.mazha;
+
+import com.cloudant.sync.internal.documentstore.DocumentRevsList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BulkGetResponseStreamProcessorTest {
+
+    private final List<DocumentRevsList> handled = new ArrayList<DocumentRevsList>();
+
+    private final BulkGetResponse.DocumentHandler handler = new BulkGetResponse
+            .DocumentHandler() {
+        @Override
+        public void handleDocument(DocumentRevsList revsList) {
+            handled.add(revsList);
+        }
+    };
+
+    @Test
+    public void processStream_mergesRevisionsOfEachDocument() throws IOException {
+        String json = "{\"results\": [" +
+                result("a", ok("a", "1-x")) + "," +
+                result("a", ok("a", "2-y")) + "," +
+                result("b", ok("b", "1-z")) + "]}";
+
+        int count = process(json);
+
+        Assert.assertEquals(2, count);
+        Assert.assertEquals(2, handled.size());
+        Assert.assertEquals("a", handled.get(0).get(0).getId());
+        Assert.assertEquals("a", handled.get(0).get(1).getId());
+        Assert.assertEquals("b", handled.get(1).get(0).getId());
+        Assert.assertEquals("1-z", handled.get(1).get(0).getRev());
+    }
+
+    @Test
+    public void processStream_skipsMissingRevisions() throws IOException {
+        String json = "{\"results\": [" +
+                result("a", "{\"error\": {\"id\": \"a\", \"rev\": \"1-x\", \"error\": " +
+                        "\"not_found\", \"reason\": \"missing\"}}") + "," +
+                result("b", ok("b", "1-z")) + "], \"other\": {\"c\": [1, 2]}}";
+
+        int count = process(json);
+
+        Assert.assertEquals(1, count);
+        Assert.assertEquals(1, handled.size());
+        Assert.assertEquals("b", handled.get(0).get(0).getId());
+    }
+
+    @Test
+    public void processStream_emptyResults() throws IOException {
+        Assert.assertEquals(0, process("{\"results\": []}"));
+        Assert.assertTrue(handled.isEmpty());
+    }
+
+    private int process(String json) throws IOException {
+        return new BulkGetResponseStreamProcessor(handler).processStream(new
+                ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+
+    private static String result(String id, String doc) {
+        return String.format("{\"id\": \"%s\", \"docs\": [%s]}", id, doc);
+    }
+
+    private static String ok(String id, String rev) {
+        String[] parts = rev.split("-");
+        return String.format("{\"ok\": {\"_id\": \"%s\", \"_rev\": \"%s\", \"_revisions\": " +
+                "{\"start\": %s, \"ids\": [\"%s\"]}}}", id, rev, parts[0], parts[1]);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.mazha;
+
+import com.cloudant.sync.util.TestUtils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChangesResultStreamProcessorTest {
+
+    @Test
+    public void processStream_withoutHandlerCollectsRows() throws IOException {
+        ChangesResult changes = process("fixture/10K_changes_feeds.json", null);
+        Assert.assertEquals(10000, changes.size());
+        Assert.assertEquals(10000, changes.getResults().size());
+        Assert.assertEquals(234307, changes.getLastSeq());
+        ChangesResult.Row last = changes.getResults().get(9999);
+        Assert.assertEquals("express-cachebuster", last.getId());
+        Assert.assertEquals("29-56ccdae12d184b759ad86bc855d5ef0c",
+                last.getChanges().get(0).getRev());
+    }
+
+    @Test
+    public void processStream_withHandlerDiscardsRows() throws IOException {
+        final List<ChangesResult.Row> handled = new ArrayList<ChangesResult.Row>();
+        ChangesResult changes = process("fixture/change_feed_0.json", new ChangesResult
+                .RowHandler() {
+            @Override
+            public void handleRow(ChangesResult.Row row) {
+                handled.add(row);
+            }
+        });
+        Assert.assertNull(changes.getResults());
+        Assert.assertEquals(handled.size(), changes.size());
+        Assert.assertTrue(handled.size() > 0);
+        Assert.assertEquals("c65f7da7a699454e8087153b7dc692df", handled.get(0).getId());
+        Assert.assertEquals("2-9fb189e316ea9eab813494195f0c0423",
+                handled.get(0).getChanges().get(0).getRev());
+        Assert.assertTrue(((String) changes.getLastSeq()).startsWith("7-"));
+    }
+
+    @Test
+    public void processStream_lastSeqBeforeAndAfterResults() throws IOException {
+        String json = "{\"pending\": 3, \"last_seq\": \"2-abc\", \"extra\": {\"a\": [1]}, " +
+                "\"results\": [{\"seq\": \"1-a\", \"id\": \"doc\", \"changes\": [{\"rev\": " +
+                "\"1-x\"}]}]}";
+        ChangesResult changes = new ChangesResultStreamProcessor(null).processStream(new
+                ByteArrayInputStream(json.getBytes("UTF-8")));
+        Assert.assertEquals("2-abc", changes.getLastSeq());
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals("doc", changes.getResults().get(0).getId());
+    }
+
+    private ChangesResult process(String fixture, ChangesResult.RowHandler handler) throws
+            IOException {
+        InputStream in = new FileInputStream(TestUtils.loadFixture(fixture));
+        try {
+            return new ChangesResultStreamProcessor(handler).processStream(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -15,6 +15,7 @@
 package com.cloudant.sync.internal.query;
 
 import com.cloudant.sync.query.Index;
+import com.cloudant.sync.query.IndexUpdateMode;
 import com.cloudant.sync.query.Query;
 import com.cloudant.sync.query.QueryException;
 import com.cloudant.sync.query.QueryResult;
@@ -23,6 +24,7 @@ import com.cloudant.sync.query.Tokenizer;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public abstract class DelegatingMockQuery implements Query {
 
@@ -67,11 +69,36 @@ public abstract class DelegatingMockQuery implements Query {
         return delegate.find(query, skip, limit, fields, sortSpecification);
     }
 
+    @Override
+    public int count(Map<String, Object> query) throws QueryException {
+        return delegate.count(query);
+    }
+
+    @Override
+    public String explain(Map<String, Object> query, List<FieldSort> sortSpecification) throws QueryException {
+        return delegate.explain(query, sortSpecification);
+    }
+
     @Override
     public boolean isTextSearchEnabled() {
         return delegate.isTextSearchEnabled();
     }
 
+    @Override
+    public void setIndexUpdateMode(IndexUpdateMode mode) {
+        delegate.setIndexUpdateMode(mode);
+    }
+
+    @Override
+    public IndexUpdateMode getIndexUpdateMode() {
+        return delegate.getIndexUpdateMode();
+    }
+
+    @Override
+    public void setBackgroundIndexUpdateDelays(long debounce, long maxLag, TimeUnit unit) {
+        delegate.setBackgroundIndexUpdateDelays(debounce, maxLag, unit);
+    }
+
     public void close() {
         delegate.close();
     }
@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.query;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+import com.cloudant.sync.documentstore.DocumentBody;
+import com.cloudant.sync.internal.documentstore.DocumentBodyImpl;
+import com.cloudant.sync.internal.documentstore.DocumentRevisionBuilder;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+public class FieldPathExtractorTest {
+
+    private static final String JSON = "{\"name\": \"mike\", \"age\": 12, " +
+            "\"pet\": {\"species\": \"cat\", \"names\": [\"tom\", \"tiddles\"], " +
+            "\"vet\": {\"name\": \"jo\"}}, \"skipped\": {\"a\": [1, {\"b\": 2}]}, " +
+            "\"nothing\": null, \"number\": 1}";
+
+    private static final String[] PATHS = new String[]{"name", "age", "pet.species",
+            "pet.names", "pet.vet", "pet.vet.name", "nothing", "missing", "name.first",
+            "number.value"};
+
+    @Test
+    public void extractFromBytes() {
+        assertExtracted(DocumentBodyImpl.trustedBodyWith(JSON.getBytes()));
+    }
+
+    @Test
+    public void extractFromParsedBody() {
+        DocumentBody body = DocumentBodyImpl.trustedBodyWith(JSON.getBytes());
+        body.asMap();
+        assertExtracted(body);
+    }
+
+    @Test
+    public void extractIsSameAsValueExtractor() {
+        DocumentBody body = DocumentBodyImpl.trustedBodyWith(JSON.getBytes());
+        Map<String, Object> values = new FieldPathExtractor(Arrays.asList(PATHS))
+                .extract(DocumentBodyImpl.trustedBodyWith(JSON.getBytes()));
+        for (String path : PATHS) {
+            assertThat(path, values.get(path),
+                    is(ValueExtractor.extractValueForFieldName(path, body)));
+        }
+    }
+
+    @Test
+    public void lastDuplicateFieldWins() {
+        DocumentBody body = DocumentBodyImpl.trustedBodyWith(
+                "{\"a\": {\"b\": 1, \"c\": 2}, \"a\": {\"b\": 3}}".getBytes());
+        Map<String, Object> values = new FieldPathExtractor(Arrays.asList("a.b", "a.c"))
+                .extract(body);
+        assertThat(values, hasEntry("a.b", (Object) 3));
+        assertThat(values, not(hasKey("a.c")));
+    }
+
+    @Test
+    public void extractIdAndRevFromRevision() {
+        DocumentRevisionBuilder builder = new DocumentRevisionBuilder();
+        builder.setDocId("dsfsdfdfs");
+        builder.setRevId("1-qweqeqwewqe");
+        builder.setBody(DocumentBodyImpl.trustedBodyWith(JSON.getBytes()));
+        Map<String, Object> values = new FieldPathExtractor(Arrays.asList("_id", "_rev",
+                "name")).extract(builder.build());
+        assertThat(values, hasEntry("_id", (Object) "dsfsdfdfs"));
+        assertThat(values, hasEntry("_rev", (Object) "1-qweqeqwewqe"));
+        assertThat(values, hasEntry("name", (Object) "mike"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertExtracted(DocumentBody body) {
+        Map<String, Object> values = new FieldPathExtractor(Arrays.asList(PATHS)).extract(body);
+        assertThat(values, hasEntry("name", (Object) "mike"));
+        assertThat(values, hasEntry("age", (Object) 12));
+        assertThat(values, hasEntry("pet.species", (Object) "cat"));
+        assertThat(values, hasEntry("pet.names", (Object) Arrays.asList("tom", "tiddles")));
+        assertThat((Map<String, Object>) values.get("pet.vet"), hasEntry("name", (Object) "jo"));
+        assertThat(values, hasEntry("pet.vet.name", (Object) "jo"));
+        // present but null
+        assertThat(values, hasKey("nothing"));
+        assertThat(values.get("nothing"), is(nullValue()));
+        assertThat(values, not(hasKey("missing")));
+        // paths through values which aren't objects
+        assertThat(values, not(hasKey("name.first")));
+        assertThat(values, not(hasKey("number.value")));
+        assertThat(values.size(), is(7));
+    }
+}
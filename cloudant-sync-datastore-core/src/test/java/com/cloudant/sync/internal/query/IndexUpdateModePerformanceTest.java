@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.query;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import com.cloudant.common.PerformanceTest;
+import com.cloudant.sync.documentstore.DocumentBodyFactory;
+import com.cloudant.sync.documentstore.DocumentRevision;
+import com.cloudant.sync.query.FieldSort;
+import com.cloudant.sync.query.IndexUpdateMode;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Compares the cost of writes, and of the first query after them, when indexes are updated on
+ * query, on write and in the background. Documents are written one at a time, as by an
+ * application, and in batches, as by a pull replication.
+ */
+@Category(PerformanceTest.class)
+public class IndexUpdateModePerformanceTest extends AbstractIndexTestBase {
+
+    private static final Logger logger = Logger.getLogger(IndexUpdateModePerformanceTest.class
+            .getName());
+
+    private static final int N_DOCS = 2000;
+    private static final int BATCH_SIZE = 100;
+
+    @Test
+    public void singleWritesOnQuery() throws Exception {
+        run(IndexUpdateMode.ON_QUERY, 1);
+    }
+
+    @Test
+    public void singleWritesOnWrite() throws Exception {
+        run(IndexUpdateMode.ON_WRITE, 1);
+    }
+
+    @Test
+    public void batchedWritesOnQuery() throws Exception {
+        run(IndexUpdateMode.ON_QUERY, BATCH_SIZE);
+    }
+
+    @Test
+    public void batchedWritesOnWrite() throws Exception {
+        run(IndexUpdateMode.ON_WRITE, BATCH_SIZE);
+    }
+
+    @Test
+    public void singleWritesBackground() throws Exception {
+        run(IndexUpdateMode.BACKGROUND, 1);
+    }
+
+    @Test
+    public void batchedWritesBackground() throws Exception {
+        run(IndexUpdateMode.BACKGROUND, BATCH_SIZE);
+    }
+
+    private void run(IndexUpdateMode mode, int batchSize) throws Exception {
+        im.setIndexUpdateMode(mode);
+        im.createJsonIndex(Arrays.<FieldSort>asList(new FieldSort("name")), "name");
+        im.createJsonIndex(Arrays.<FieldSort>asList(new FieldSort("age"),
+                new FieldSort("pet")), "agePet");
+        im.createJsonIndex(Arrays.<FieldSort>asList(new FieldSort("town")), "town");
+        long initialIndexBytes = indexDatabaseBytes();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < N_DOCS; i += batchSize) {
+            List<DocumentRevision> revs = new ArrayList<DocumentRevision>();
+            for (int j = i; j < i + batchSize; j++) {
+                revs.add(newRevision(j));
+            }
+            if (batchSize == 1) {
+                ds.create(revs.get(0));
+            } else {
+                ds.createAll(revs);
+            }
+        }
+        long writeNanos = System.nanoTime() - start;
+
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("name", "name" + (N_DOCS - 1));
+        start = System.nanoTime();
+        int found = im.find(query).size();
+        long queryNanos = System.nanoTime() - start;
+        assertThat(found, is(1));
+
+        logger.info(String.format(Locale.ENGLISH, "%s, batches of %d: %.1f us per write, " +
+                        "first query %.1f ms, index database grew by %d bytes per document",
+                mode, batchSize, writeNanos / 1000.0 / N_DOCS, queryNanos / 1000000.0,
+                (indexDatabaseBytes() - initialIndexBytes) / N_DOCS));
+    }
+
+    private DocumentRevision newRevision(int i) {
+        Map<String, Object> body = new HashMap<String, Object>();
+        body.put("name", "name" + i);
+        body.put("age", i % 80);
+        body.put("pet", i % 2 == 0 ? "cat" : "dog");
+        body.put("town", "town" + (i % 50));
+        DocumentRevision rev = new DocumentRevision();
+        rev.setBody(DocumentBodyFactory.create(body));
+        return rev;
+    }
+
+    private long indexDatabaseBytes() {
+        File dir = new File(new File(factoryPath, "extensions"), QueryConstants.EXTENSION_NAME);
+        long bytes = 0;
+        for (String suffix : new String[]{"", "-wal", "-journal"}) {
+            bytes += new File(dir, QueryConstants.DB_FILE_NAME + suffix).length();
+        }
+        return bytes;
+    }
+
+}
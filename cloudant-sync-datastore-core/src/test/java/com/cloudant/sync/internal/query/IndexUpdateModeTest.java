@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.query;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+import com.cloudant.sync.documentstore.Changes;
+import com.cloudant.sync.documentstore.DocumentBodyFactory;
+import com.cloudant.sync.documentstore.DocumentRevision;
+import com.cloudant.sync.internal.query.callables.SequenceNumberForIndexCallable;
+import com.cloudant.sync.internal.query.callables.UpdateIndexesCallable;
+import com.cloudant.sync.query.FieldSort;
+import com.cloudant.sync.query.IndexUpdateMode;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class IndexUpdateModeTest extends AbstractIndexTestBase {
+
+    @Test
+    public void defaultsToOnQuery() {
+        assertThat(im.getIndexUpdateMode(), is(IndexUpdateMode.ON_QUERY));
+    }
+
+    @Test
+    public void onQueryDoesNotUpdateIndexesOnWrite() throws Exception {
+        im.createJsonIndex(Collections.singletonList(new FieldSort("name")), "name");
+        create("mike");
+
+        assertThat(indexSequence("name"), is(0L));
+        assertThat(find("mike"), is(1));
+        assertThat(indexSequence("name"), is(1L));
+    }
+
+    @Test
+    public void onWriteUpdatesIndexesOnWrite() throws Exception {
+        im.setIndexUpdateMode(IndexUpdateMode.ON_WRITE);
+        im.createJsonIndex(Collections.singletonList(new FieldSort("name")), "name");
+        im.createJsonIndex(Collections.singletonList(new FieldSort("age")), "age");
+
+        DocumentRevision mike = create("mike");
+        assertThat(indexSequence("name"), is(1L));
+        assertThat(indexSequence("age"), is(1L));
+
+        ds.delete(mike);
+        assertThat(indexSequence("name"), is(2L));
+        assertThat(find("mike"), is(0));
+    }
+
+    @Test
+    public void onWriteUpdatesIndexesWithWholeBatch() throws Exception {
+        im.setIndexUpdateMode(IndexUpdateMode.ON_WRITE);
+        im.createJsonIndex(Collections.singletonList(new FieldSort("name")), "name");
+
+        List<DocumentRevision> revs = new ArrayList<DocumentRevision>();
+        for (int i = 0; i < 10; i++) {
+            DocumentRevision rev = new DocumentRevision();
+            rev.setBody(DocumentBodyFactory.create(Collections.singletonMap("name", "doc" + i)));
+            revs.add(rev);
+        }
+        ds.createAll(revs);
+
+        assertThat(indexSequence("name"), is(10L));
+        assertThat(find("doc7"), is(1));
+    }
+
+    @Test
+    public void switchingBackToOnQueryStopsUpdatesOnWrite() throws Exception {
+        im.setIndexUpdateMode(IndexUpdateMode.ON_WRITE);
+        im.createJsonIndex(Collections.singletonList(new FieldSort("name")), "name");
+        create("mike");
+        im.setIndexUpdateMode(IndexUpdateMode.ON_QUERY);
+        create("fred");
+
+        assertThat(indexSequence("name"), is(1L));
+        assertThat(find("fred"), is(1));
+        assertThat(indexSequence("name"), is(2L));
+    }
+
+    @Test
+    public void backgroundUpdatesIndexesAfterWritesPause() throws Exception {
+        im.setBackgroundIndexUpdateDelays(50, 60000, TimeUnit.MILLISECONDS);
+        im.setIndexUpdateMode(IndexUpdateMode.BACKGROUND);
+        im.createJsonIndex(Collections.singletonList(new FieldSort("name")), "name");
+        create("mike");
+        create("fred");
+
+        waitForIndexSequence("name", 2L);
+    }
+
+    @Test
+    public void backgroundUpdatesIndexesAfterMaxLag() throws Exception {
+        // the debounce is never reached, so only the maximum lag triggers an update
+        im.setBackgroundIndexUpdateDelays(60000, 100, TimeUnit.MILLISECONDS);
+        im.setIndexUpdateMode(IndexUpdateMode.BACKGROUND);
+        im.createJsonIndex(Collections.singletonList(new FieldSort("name")), "name");
+        create("mike");
+
+        waitForIndexSequence("name", 1L);
+    }
+
+    @Test
+    public void backgroundDoesNotUpdateIndexesOnWriteThread() throws Exception {
+        im.setBackgroundIndexUpdateDelays(60000, 60000, TimeUnit.MILLISECONDS);
+        im.setIndexUpdateMode(IndexUpdateMode.BACKGROUND);
+        im.createJsonIndex(Collections.singletonList(new FieldSort("name")), "name");
+        create("mike");
+
+        assertThat(indexSequence("name"), is(0L));
+        // queries still catch up with anything the background updates haven't indexed yet
+        assertThat(find("mike"), is(1));
+        assertThat(indexSequence("name"), is(1L));
+    }
+
+    @Test
+    public void concurrentRefreshesLeaveIndexesUpToDate() throws Exception {
+        im.createJsonIndex(Collections.singletonList(new FieldSort("name")), "name");
+        final int nThreads = 4;
+        final int nDocs = 25;
+        final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < nThreads; i++) {
+            final int thread = i;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < nDocs; j++) {
+                            create("doc" + thread + "_" + j);
+                            im.refreshAllIndexes();
+                        }
+                    } catch (Exception e) {
+                        errors.add(e);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(errors.isEmpty(), is(true));
+        assertThat(indexSequence("name"), is(ds.getLastSequence()));
+        for (int i = 0; i < nThreads; i++) {
+            assertThat(find("doc" + i + "_" + (nDocs - 1)), is(1));
+        }
+    }
+
+    @Test
+    public void olderChangesDoNotOverwriteNewerIndexRows() throws Exception {
+        im.createJsonIndex(Collections.singletonList(new FieldSort("name")), "name");
+        DocumentRevision rev = create("mike");
+        im.refreshAllIndexes();
+        // read before the update below, as a slow refresh would have
+        Changes olderChanges = ds.changes(0, 100);
+
+        rev.setBody(DocumentBodyFactory.create(Collections.singletonMap("name", "fred")));
+        ds.update(rev);
+        im.refreshAllIndexes();
+        assertThat(indexSequence("name"), is(2L));
+
+        indexManagerDatabaseQueue.submitTransaction(new UpdateIndexesCallable(olderChanges,
+                im.listIndexes())).get();
+        assertThat(indexSequence("name"), is(2L));
+        assertThat(find("fred"), is(1));
+        assertThat(find("mike"), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void backgroundNegativeDelay() {
+        im.setBackgroundIndexUpdateDelays(100, -1, TimeUnit.MILLISECONDS);
+    }
+
+    private void waitForIndexSequence(String indexName, long sequence) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (indexSequence(indexName) < sequence) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Index " + indexName + " wasn't updated to sequence " + sequence);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private int find(String name) throws Exception {
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("name", name);
+        return im.find(query).size();
+    }
+
+    private DocumentRevision create(String name) throws Exception {
+        DocumentRevision rev = new DocumentRevision(name);
+        rev.setBody(DocumentBodyFactory.create(Collections.singletonMap("name", name)));
+        return ds.create(rev);
+    }
+
+    private long indexSequence(String indexName) throws Exception {
+        return indexManagerDatabaseQueue.submit(new SequenceNumberForIndexCallable(indexName))
+                .get();
+    }
+
+}
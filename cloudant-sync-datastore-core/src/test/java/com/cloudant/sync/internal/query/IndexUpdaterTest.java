@@ -1055,6 +1055,50 @@ public class IndexUpdaterTest extends AbstractIndexTestBase {
 
     }
 
+    @Test
+    public void updateAllIndexesAtDifferentSequences() throws Exception {
+        DocumentRevision mike = createNamed("mike", "mike");
+        createNamed("fred", "fred");
+        createIndex("early", Arrays.<FieldSort>asList(new FieldSort("name")));
+        assertThat(getIndexSequenceNumber("early"), is(2l));
+
+        mike.setBody(DocumentBodyFactory.create(Collections.singletonMap("name", "michael")));
+        ds.update(mike);
+        createNamed("john", "john");
+        createIndex("late", Arrays.<FieldSort>asList(new FieldSort("name"), new FieldSort("age")),
+                IndexType.JSON);
+        assertThat(getIndexSequenceNumber("early"), is(2l));
+        assertThat(getIndexSequenceNumber("late"), is(4l));
+
+        createNamed("bill", "bill");
+        im.refreshAllIndexes();
+
+        assertThat(getIndexSequenceNumber("early"), is(5l));
+        assertThat(getIndexSequenceNumber("late"), is(5l));
+        for (String indexName : Arrays.asList("early", "late")) {
+            final String sql = String.format("SELECT _id, name FROM %s ORDER BY _id",
+                    QueryImpl.tableNameForIndex(indexName));
+            List<String> rows = indexManagerDatabaseQueue.submit(new SQLCallable<List<String>>() {
+                @Override
+                public List<String> call(SQLDatabase db) throws Exception {
+                    List<String> rows = new ArrayList<String>();
+                    Cursor cursor = null;
+                    try {
+                        cursor = db.rawQuery(sql, new String[]{});
+                        while (cursor.moveToNext()) {
+                            rows.add(cursor.getString(0) + "=" + cursor.getString(1));
+                        }
+                    } finally {
+                        DatabaseUtils.closeCursorQuietly(cursor);
+                    }
+                    return rows;
+                }
+            }).get();
+            assertThat(indexName, rows, contains("bill=bill", "fred=fred", "john=john",
+                    "mike=michael"));
+        }
+    }
+
     @Test
     public void indexUpdatesPersistFromCreation() throws Exception {
         long exepctedSequence = 0l;
@@ -1159,6 +1203,12 @@ public class IndexUpdaterTest extends AbstractIndexTestBase {
         }
     }
 
+    private DocumentRevision createNamed(String id, String name) throws Exception {
+        DocumentRevision rev = new DocumentRevision(id);
+        rev.setBody(DocumentBodyFactory.create(Collections.singletonMap("name", name)));
+        return ds.create(rev);
+    }
+
     private long getIndexSequenceNumber(String indexName) throws Exception {
         String where = String.format("index_name = \"%s\" group by last_sequence", indexName);
         final String sql = String.format("SELECT last_sequence FROM %s where %s",
@@ -54,6 +54,7 @@ public class MockMatcherQueryExecutor extends QueryExecutor{
     @Override
     protected ChildrenQueryNode translateQuery(Map<String, Object> query,
                                                List<Index> indexes,
+                                               Map<String, IndexStatistics> statistics,
                                                Boolean[] indexesCoverQuery) {
         return new AndQueryNode();
     }
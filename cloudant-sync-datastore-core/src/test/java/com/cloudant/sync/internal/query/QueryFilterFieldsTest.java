@@ -19,6 +19,7 @@ package com.cloudant.sync.internal.query;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
@@ -29,6 +30,7 @@ import com.cloudant.sync.documentstore.ConflictException;
 import com.cloudant.sync.documentstore.DocumentBodyFactory;
 import com.cloudant.sync.documentstore.DocumentRevision;
 import com.cloudant.sync.internal.documentstore.ProjectedDocumentRevision;
+import com.cloudant.sync.query.FieldSort;
 import com.cloudant.sync.query.QueryException;
 import com.cloudant.sync.query.QueryResult;
 import com.cloudant.sync.util.SQLDatabaseTestUtils;
@@ -39,7 +41,9 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class QueryFilterFieldsTest extends AbstractQueryTestBase {
@@ -222,4 +226,164 @@ public class QueryFilterFieldsTest extends AbstractQueryTestBase {
         }
     }
 
+    @Test
+    public void projectsFieldsFromCoveringIndex() throws Exception {
+        // query - { "name" : "mike" }, "pet" has both name and pet
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("name", "mike");
+        QueryResult queryResult = im.find(query, 0, 0, Arrays.asList("_id", "name", "pet"),
+                null);
+        assertThat(queryResult.size(), is(3));
+        for (DocumentRevision rev : queryResult) {
+            assertThat(rev, is(instanceOf(ProjectedDocumentRevision.class)));
+            assertThat(rev.getBody().asMap(), is(projectedBody(rev.getId(), "name", "pet")));
+            assertThat(rev.getRevision(), is(ds.read(rev.getId()).getRevision()));
+            assertThat(rev.toFullRevision().getBody().asMap().keySet(),
+                    containsInAnyOrder("name", "age", "pet"));
+        }
+
+        CoveringIndexReader reader = new CoveringIndexReader(indexManagerDatabaseQueue, "pet",
+                Arrays.asList("name", "pet"));
+        Map<String, DocumentRevision> fromIndex = reader.read(Arrays.asList("mike12", "fred34",
+                "fred12"), ds);
+        // fred12 has no pet
+        assertThat(fromIndex.keySet(), containsInAnyOrder("mike12", "fred34"));
+    }
+
+    @Test
+    public void projectsCurrentFieldsWhenDocumentUpdatedAfterFind() throws Exception {
+        // query - { "name" : "mike" }, "pet" has both name and pet
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("name", "mike");
+        QueryResult queryResult = im.find(query, 0, 0, Arrays.asList("_id", "name", "pet"),
+                null);
+
+        // the index isn't updated until the next query
+        DocumentRevision update = ds.read("mike12");
+        Map<String, Object> body = update.getBody().asMap();
+        body.put("pet", "snake");
+        update.setBody(DocumentBodyFactory.create(body));
+        String revId = ds.update(update).getRevision();
+
+        CoveringIndexReader reader = new CoveringIndexReader(indexManagerDatabaseQueue, "pet",
+                Arrays.asList("name", "pet"));
+        assertThat(reader.read(Arrays.asList("mike12", "mike34"), ds).isEmpty(), is(true));
+
+        assertThat(queryResult.size(), is(3));
+        for (DocumentRevision rev : queryResult) {
+            assertThat(rev.getBody().asMap(), is(projectedBody(rev.getId(), "name", "pet")));
+            assertThat(rev.getRevision(), is(ds.read(rev.getId()).getRevision()));
+            if (rev.getId().equals("mike12")) {
+                assertThat(rev.getRevision(), is(revId));
+                assertThat(rev.getBody().asMap().get("pet"), is((Object) "snake"));
+            }
+        }
+    }
+
+    @Test
+    public void projectsFieldsFromBodyWhenIndexValuesAreNotExact() throws Exception {
+        Map<String, Object> bodyMap = new HashMap<String, Object>();
+        bodyMap.put("name", "bill");
+        bodyMap.put("age", true);
+        createDoc("billTrue", bodyMap);
+        bodyMap.put("age", 1);
+        createDoc("billOne", bodyMap);
+        bodyMap.put("age", 1.5);
+        createDoc("billFloat", bodyMap);
+        bodyMap.put("age", null);
+        createDoc("billNull", bodyMap);
+        bodyMap.remove("age");
+        createDoc("billMissing", bodyMap);
+        bodyMap.put("age", Collections.singletonMap("years", 30));
+        createDoc("billObject", bodyMap);
+        bodyMap.put("age", 3000000000L);
+        createDoc("billLong", bodyMap);
+        bodyMap.put("age", "thirty");
+        createDoc("billString", bodyMap);
+
+        // query - { "name" : "bill" }
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("name", "bill");
+        List<String> fields = Arrays.asList("name", "age");
+        QueryResult queryResult = im.find(query, 0, 0, fields, null);
+        assertThat(queryResult.size(), is(8));
+        for (DocumentRevision rev : queryResult) {
+            assertThat(rev.getBody().asMap(), is(projectedBody(rev.getId(), "name", "age")));
+        }
+
+        CoveringIndexReader reader = new CoveringIndexReader(indexManagerDatabaseQueue, "basic",
+                fields);
+        Map<String, DocumentRevision> fromIndex = reader.read(queryResult.documentIds(), ds);
+        assertThat(fromIndex.keySet(), contains("billString"));
+    }
+
+    @Test
+    public void projectsNumericStringsFromBody() throws Exception {
+        im.createJsonIndex(Arrays.asList(new FieldSort("zip"), new FieldSort("code")), "zip");
+        Map<String, Object> bodyMap = new HashMap<String, Object>();
+        bodyMap.put("zip", "02139");
+        bodyMap.put("code", "123");
+        createDoc("cambridge", bodyMap);
+
+        // query - { "zip" : "02139" }
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("zip", "02139");
+        List<String> fields = Arrays.asList("zip", "code");
+        QueryResult queryResult = im.find(query, 0, 0, fields, null);
+        assertThat(queryResult.documentIds(), contains("cambridge"));
+        Map<String, Object> body = queryResult.iterator().next().getBody().asMap();
+        assertThat(body.get("zip"), is((Object) "02139"));
+        assertThat(body.get("code"), is((Object) "123"));
+
+        // the index has them as numbers
+        CoveringIndexReader reader = new CoveringIndexReader(indexManagerDatabaseQueue, "zip",
+                fields);
+        assertThat(reader.read(Collections.singletonList("cambridge"), ds).keySet(),
+                is(empty()));
+    }
+
+    @Test
+    public void projectsFieldsFromBodyForArrayFields() throws Exception {
+        im.createJsonIndex(Arrays.asList(new FieldSort("name"), new FieldSort("pets")), "pets");
+        Map<String, Object> bodyMap = new HashMap<String, Object>();
+        bodyMap.put("name", "jane");
+        bodyMap.put("pets", Arrays.asList("cat", "dog"));
+        createDoc("jane", bodyMap);
+        bodyMap.put("name", "john");
+        bodyMap.put("pets", Collections.singletonList("fish"));
+        createDoc("john", bodyMap);
+
+        // query - { "pets" : "fish" }
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("pets", "fish");
+        List<String> fields = Arrays.asList("name", "pets");
+        QueryResult queryResult = im.find(query, 0, 0, fields, null);
+        assertThat(queryResult.documentIds(), contains("john"));
+        assertThat(queryResult.iterator().next().getBody().asMap(),
+                is(projectedBody("john", "name", "pets")));
+
+        // john's single pet has one row, just like a scalar, but the index has had arrays
+        CoveringIndexReader reader = new CoveringIndexReader(indexManagerDatabaseQueue, "pets",
+                fields);
+        assertThat(reader.read(Arrays.asList("jane", "john"), ds).keySet(), is(empty()));
+    }
+
+    private void createDoc(String docId, Map<String, Object> bodyMap) throws Exception {
+        DocumentRevision rev = new DocumentRevision(docId);
+        rev.setBody(DocumentBodyFactory.create(bodyMap));
+        ds.create(rev);
+    }
+
+    // the fields of the document's body, as projection from the body returns them
+    private Map<String, Object> projectedBody(String docId, String... fields) throws Exception {
+        Map<String, Object> body = ds.read(docId).getBody().asMap();
+        Map<String, Object> projected = new HashMap<String, Object>();
+        for (String field : fields) {
+            if (body.containsKey(field)) {
+                projected.put(field, body.get(field));
+            }
+        }
+        return projected;
+    }
+
 }
@@ -0,0 +1,227 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.query;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import com.cloudant.sync.documentstore.DocumentBodyFactory;
+import com.cloudant.sync.documentstore.DocumentRevision;
+import com.cloudant.sync.internal.sqlite.SQLCallable;
+import com.cloudant.sync.internal.sqlite.SQLDatabase;
+import com.cloudant.sync.query.FieldSort;
+import com.cloudant.sync.query.Index;
+import com.cloudant.sync.query.IndexType;
+import com.cloudant.sync.query.QueryResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class QueryPlannerTest extends AbstractIndexTestBase {
+
+    @Test
+    public void collectsRowAndDistinctCounts() throws Exception {
+        createDocs(10);
+        Index index = im.createJsonIndex(Arrays.asList(new FieldSort("name"),
+                new FieldSort("pets")), "pets");
+
+        IndexStatistics statistics = collect(index);
+        // a row for each of the three pets of each document
+        assertThat(statistics.rowCount, is(30L));
+        assertThat(statistics.documentCount, is(10L));
+        assertThat(statistics.distinctCount("name"), is(10L));
+        assertThat(statistics.distinctCount("pets"), is(3L));
+        assertThat(statistics.distinctCount("missing"), is(-1L));
+    }
+
+    @Test
+    public void choosesCheapestIndex() throws Exception {
+        createDocs(10);
+        // created first, so it would be chosen without statistics
+        im.createJsonIndex(Arrays.asList(new FieldSort("name"), new FieldSort("pets")), "wide");
+        im.createJsonIndex(Collections.singletonList(new FieldSort("name")), "narrow");
+
+        String plan = im.explain(selector("name", "doc3"), null);
+        assertThat(plan, containsString(QueryImpl.tableNameForIndex("narrow")));
+        assertThat(plan, not(containsString(QueryImpl.tableNameForIndex("wide"))));
+        assertThat(plan, containsString("estimated documents: 1"));
+        assertThat(plan, containsString("Indexes cover the query"));
+
+        QueryResult result = im.find(selector("name", "doc3"));
+        assertThat(result.documentIds().size(), is(1));
+    }
+
+    @Test
+    public void choosesFirstIndexWithoutStatistics() throws Exception {
+        Index wide = new Index(Arrays.asList(new FieldSort("name"), new FieldSort("pets")),
+                "wide", IndexType.JSON);
+        Index narrow = new Index(Collections.singletonList(new FieldSort("name")), "narrow",
+                IndexType.JSON);
+        List<Object> clause = Collections.<Object>singletonList(eq("name", "mike"));
+
+        assertThat(QuerySqlTranslator.chooseIndexForAndClause(clause, Arrays.asList(wide,
+                narrow)), is("wide"));
+
+        Map<String, IndexStatistics> statistics = new HashMap<String, IndexStatistics>();
+        statistics.put("wide", statistics("wide", 300, 100));
+        statistics.put("narrow", statistics("narrow", 100, 100));
+        assertThat(QuerySqlTranslator.chooseIndexForAndClause(clause, Arrays.asList(wide,
+                narrow), statistics), is("narrow"));
+    }
+
+    @Test
+    public void estimatesDocumentsForClauses() {
+        Map<String, Long> distinct = new HashMap<String, Long>();
+        distinct.put("name", 50L);
+        distinct.put("age", 10L);
+        IndexStatistics statistics = new IndexStatistics("index", 100, 100, distinct);
+
+        assertThat(QuerySqlTranslator.estimateDocumentsForAndClause(
+                Collections.<Object>singletonList(eq("name", "mike")), statistics), is(2L));
+        assertThat(QuerySqlTranslator.estimateDocumentsForAndClause(
+                Arrays.<Object>asList(eq("name", "mike"), eq("age", 12)), statistics), is(0L));
+        Map<String, Object> notAge = new HashMap<String, Object>();
+        notAge.put("age", Collections.singletonMap(QueryConstants.NOT,
+                Collections.singletonMap(QueryConstants.EQ, 12)));
+        assertThat(QuerySqlTranslator.estimateDocumentsForAndClause(
+                Collections.<Object>singletonList(notAge), statistics), is(90L));
+        assertThat(QuerySqlTranslator.estimateDocumentsForAndClause(
+                Collections.<Object>singletonList(eq("name", "mike")), null), is(-1L));
+    }
+
+    @Test
+    public void andSubclausesGiveSameResultsInAnyOrder() throws Exception {
+        createDocs(20);
+        im.createJsonIndex(Collections.singletonList(new FieldSort("name")), "name");
+        im.createJsonIndex(Collections.singletonList(new FieldSort("age")), "age");
+
+        // {$and: [{$or: [{age: 1}, {age: 2}]}, {$or: [{name: doc1}, {name: doc5}]}]}
+        Map<String, Object> ages = new HashMap<String, Object>();
+        ages.put("$or", new ArrayList<Object>(Arrays.asList(selector("age", 1),
+                selector("age", 2))));
+        Map<String, Object> names = new HashMap<String, Object>();
+        names.put("$or", new ArrayList<Object>(Arrays.asList(selector("name", "doc1"),
+                selector("name", "doc5"))));
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("$and", new ArrayList<Object>(Arrays.asList(ages, names)));
+
+        QueryResult result = im.find(query);
+        // doc1 is 1 and doc5 is 5 % 4 == 1
+        assertThat(result.documentIds().size(), is(2));
+
+        // doc3 is 3, so the intersection is empty
+        Map<String, Object> otherAges = new HashMap<String, Object>();
+        otherAges.put("$or", new ArrayList<Object>(Arrays.asList(selector("age", 1),
+                selector("age", 2))));
+        Map<String, Object> noMatch = new HashMap<String, Object>();
+        noMatch.put("$and", new ArrayList<Object>(Arrays.asList(otherAges, selector("name",
+                "doc3"))));
+        assertThat(im.find(noMatch).documentIds().size(), is(0));
+    }
+
+    @Test
+    public void statisticsAreCollectedAgainWhenStale() throws Exception {
+        createDocs(10);
+        final Index index = im.createJsonIndex(Collections.singletonList(new FieldSort("name")),
+                "name");
+        final IndexStatisticsCache cache = new IndexStatisticsCache();
+
+        IndexStatistics first = statisticsFromCache(cache, index);
+        assertThat(first.rowCount, is(10L));
+
+        // a change to one document in ten is not enough to collect them again
+        cache.recordChanges(Collections.singletonList("name"), 1);
+        assertThat(statisticsFromCache(cache, index), is(sameInstance(first)));
+
+        createDocs(10);
+        im.refreshAllIndexes();
+        cache.recordChanges(Collections.singletonList("name"), 10);
+        assertThat(statisticsFromCache(cache, index).rowCount, is(20L));
+
+        cache.remove("name");
+        assertThat(statisticsFromCache(cache, index), is(not(sameInstance(first))));
+    }
+
+    @Test
+    public void explainsSortAndUncoveredQueries() throws Exception {
+        createDocs(5);
+        im.createJsonIndex(Collections.singletonList(new FieldSort("name")), "name");
+
+        String plan = im.explain(selector("age", 1), Collections.singletonList(new FieldSort
+                ("name")));
+        assertThat(plan, containsString("Indexes do not cover the query"));
+        assertThat(plan, containsString("Sort using index \"name\""));
+    }
+
+    private IndexStatistics collect(final Index index) throws Exception {
+        return indexManagerDatabaseQueue.submit(new SQLCallable<IndexStatistics>() {
+            @Override
+            public IndexStatistics call(SQLDatabase db) throws Exception {
+                return IndexStatistics.collect(index, db);
+            }
+        }).get();
+    }
+
+    private IndexStatistics statisticsFromCache(final IndexStatisticsCache cache, final Index
+            index) throws Exception {
+        return indexManagerDatabaseQueue.submit(new SQLCallable<IndexStatistics>() {
+            @Override
+            public IndexStatistics call(SQLDatabase db) throws Exception {
+                return cache.statisticsForIndexes(Collections.singletonList(index), db).get
+                        (index.indexName);
+            }
+        }).get();
+    }
+
+    private static IndexStatistics statistics(String indexName, long rowCount, long
+            documentCount) {
+        return new IndexStatistics(indexName, rowCount, documentCount,
+                Collections.singletonMap("name", documentCount));
+    }
+
+    private static Map<String, Object> eq(String field, Object value) {
+        Map<String, Object> term = new HashMap<String, Object>();
+        term.put(field, Collections.singletonMap(QueryConstants.EQ, value));
+        return term;
+    }
+
+    private static Map<String, Object> selector(String field, Object value) {
+        Map<String, Object> selector = new HashMap<String, Object>();
+        selector.put(field, value);
+        return selector;
+    }
+
+    private void createDocs(int count) throws Exception {
+        int start = ds.getDocumentCount();
+        for (int i = start; i < start + count; i++) {
+            Map<String, Object> body = new HashMap<String, Object>();
+            body.put("name", "doc" + i);
+            body.put("age", i % 4);
+            body.put("pets", Arrays.asList("cat", "dog", "fish"));
+            DocumentRevision rev = new DocumentRevision();
+            rev.setBody(DocumentBodyFactory.create(body));
+            ds.create(rev);
+        }
+    }
+}
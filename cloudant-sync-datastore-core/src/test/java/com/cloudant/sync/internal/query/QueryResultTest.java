@@ -33,6 +33,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -93,4 +95,65 @@ public class QueryResultTest extends AbstractQueryTestBase {
         // NoSuchElementException because the revs table has been dropped.
         queryResult.documentIds();
     }
+
+    /*
+     * Perform a query covered by indexes then drop the revs table, the size of the result is
+     * still known because it doesn't need the documents.
+     */
+    @Test
+    public void testSizeWithoutLoadingDocuments() throws Exception {
+        // query - { "name" : "mike" }
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("name", "mike");
+        QueryResult queryResult = im.find(query);
+        QueryResult page = new QueryResult(Arrays.asList("mike12", "mike34", "mike72"), ds, null,
+                1, 5, null);
+
+        dropRevsTable();
+
+        assertThat(queryResult.size(), is(3));
+        assertThat(page.size(), is(2));
+    }
+
+    @Test
+    public void testCountWithIndexes() throws Exception {
+        // query - { "name" : "mike" }
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("name", "mike");
+        assertThat(im.count(query), is(3));
+
+        // query - { "$or" : [ { "pet" : "cat" }, { "age" : 12 } ] }
+        Map<String, Object> pet = new HashMap<String, Object>();
+        pet.put("pet", "cat");
+        Map<String, Object> age = new HashMap<String, Object>();
+        age.put("age", 12);
+        query = new HashMap<String, Object>();
+        query.put("$or", new ArrayList<Object>(Arrays.asList(pet, age)));
+        assertThat(im.count(query), is(4));
+
+        // query - { "name" : "bill" }
+        query = new HashMap<String, Object>();
+        query.put("name", "bill");
+        assertThat(im.count(query), is(0));
+    }
+
+    @Test
+    public void testCountWithoutCoveringIndexes() throws Exception {
+        im.deleteIndex("pet");
+
+        // query - { "pet" : "cat" }
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("pet", "cat");
+        assertThat(im.count(query), is(3));
+    }
+
+    private void dropRevsTable() throws Exception {
+        queue.submit(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                db.execSQL("DROP TABLE IF EXISTS revs");
+                return null;
+            }
+        }).get();
+    }
 }
@@ -16,7 +16,9 @@
 
 package com.cloudant.sync.internal.query;
 
+import static com.cloudant.sync.internal.query.QueryExecutor.sqlForPage;
 import static com.cloudant.sync.internal.query.QueryExecutor.sqlToSortIds;
+import static com.cloudant.sync.internal.query.QueryExecutor.sqlToSortPage;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
@@ -35,6 +37,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -100,6 +103,50 @@ public class QuerySortTest extends AbstractQueryTestBase {
         assertThat(queryResult.documentIds(), contains("mike12", "fred11", "fred34"));
     }
 
+    @Test
+    public void sortsOnNameWithSkipAndLimit() throws Exception {
+        setUpSortingQueryData();
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("same", "all");
+        List<FieldSort> order = Arrays.<FieldSort>asList(new FieldSort("name", FieldSort.Direction.ASCENDING), new FieldSort("age", FieldSort.Direction.DESCENDING));
+        QueryResult queryResult = im.find(query, 1, 1, null, order);
+        assertThat(queryResult.documentIds(), contains("fred11"));
+        queryResult = im.find(query, 2, 0, null, order);
+        assertThat(queryResult.documentIds(), contains("mike12"));
+    }
+
+    @Test
+    public void sortsOnNameWithSkipPastLastMatch() throws Exception {
+        setUpSortingQueryData();
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("same", "all");
+        List<FieldSort> order = Arrays.<FieldSort>asList(new FieldSort("name", FieldSort.Direction.ASCENDING), new FieldSort("age", FieldSort.Direction.DESCENDING));
+        QueryResult queryResult = im.find(query, 3, 10, null, order);
+        assertThat(queryResult, is(notNullValue()));
+        assertThat(queryResult.size(), is(0));
+        assertThat(queryResult.documentIds().isEmpty(), is(true));
+        queryResult = im.find(query, 100, 0, null, order);
+        assertThat(queryResult, is(notNullValue()));
+        assertThat(queryResult.size(), is(0));
+        // no matches at all is still null
+        query.put("same", "none");
+        queryResult = im.find(query, 100, 10, null, order);
+        assertThat(queryResult, is(nullValue()));
+    }
+
+    @Test
+    public void sortsOnNameWithLimitWhenNotCoveredByIndex() throws Exception {
+        setUpSortingQueryData();
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("same", "all");
+        // not indexed, so skip and limit are applied after matching the documents
+        query.put("unindexed", new HashMap<String, Object>(Collections
+                .singletonMap("$exists", false)));
+        List<FieldSort> order = Arrays.<FieldSort>asList(new FieldSort("name", FieldSort.Direction.DESCENDING), new FieldSort("age", FieldSort.Direction.ASCENDING));
+        QueryResult queryResult = im.find(query, 0, 2, null, order);
+        assertThat(queryResult.documentIds(), contains("mike12", "fred11"));
+    }
+
     // TODO check test can be deleted - i think it relates to the way the sort document is built up which is no longer relevant
     //@Test
     public void returnsNullWhenTooManyClauses() throws Exception{
@@ -228,6 +275,28 @@ public class QuerySortTest extends AbstractQueryTestBase {
         assertThat(parts.placeHolderValues, is(new String[]{}));
     }
 
+    @Test
+    public void pageOfSortedIdsForSingleFieldUsingAsc() throws QueryException {
+        List<FieldSort> order = Arrays.<FieldSort>asList(new FieldSort("name", FieldSort.Direction.ASCENDING));
+        SqlParts root = SqlParts.partsForSql("SELECT _id FROM b WHERE x = ?", new String[]{"1"});
+        SqlParts parts = sqlToSortPage(root, order, indexes,
+                Collections.<String, IndexStatistics>emptyMap(), 10, 20);
+        String sql = "SELECT DISTINCT _id FROM \"_t_cloudant_sync_query_index_a\" WHERE _id IN " +
+                "(SELECT _id FROM b WHERE x = ?) ORDER BY \"name\" ASC LIMIT 20 OFFSET 10";
+        assertThat(parts.sqlWithPlaceHolders, is(sql));
+        assertThat(parts.placeHolderValues, is(new String[]{"1"}));
+    }
+
+    @Test
+    public void pageOfIds() throws QueryException {
+        SqlParts root = SqlParts.partsForSql("SELECT _id FROM b WHERE x = ?", new String[]{"1"});
+        assertThat(sqlForPage(root, 0, 0), is(root));
+        assertThat(sqlForPage(root, 0, 5).sqlWithPlaceHolders,
+                is("SELECT _id FROM (SELECT _id FROM b WHERE x = ?) LIMIT 5 OFFSET 0"));
+        assertThat(sqlForPage(root, 5, 0).sqlWithPlaceHolders,
+                is("SELECT _id FROM (SELECT _id FROM b WHERE x = ?) LIMIT -1 OFFSET 5"));
+    }
+
     @Test(expected = QueryException.class)
     public void failsWhenUsingUnindexedField() throws QueryException {
         List<FieldSort> order = Arrays.<FieldSort>asList(new FieldSort("apples", FieldSort.Direction.ASCENDING));
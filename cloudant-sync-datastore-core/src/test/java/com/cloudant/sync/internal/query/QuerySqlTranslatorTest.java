@@ -1303,4 +1303,61 @@ public class QuerySqlTranslatorTest extends AbstractIndexTestBase {
         assertThat(QuerySqlTranslator.isOperatorFoundInClause("$size", clause), is(false));
     }
 
+    // When compiling a query tree into a single statement
+
+    @Test
+    public void compilesSingleStatementWithDistinct() {
+        AndQueryNode and = new AndQueryNode();
+        and.children.add(sqlNode("SELECT _id FROM a WHERE x = ?", "1"));
+
+        SqlParts sql = QuerySqlTranslator.sqlForQueryTree(and);
+        assertThat(sql.sqlWithPlaceHolders,
+                is("SELECT DISTINCT _id FROM (SELECT _id FROM a WHERE x = ?)"));
+        assertThat(sql.placeHolderValues, is(arrayContaining("1")));
+    }
+
+    @Test
+    public void compilesAndOrTreeIntoIntersectAndUnion() {
+        OrQueryNode or = new OrQueryNode();
+        or.children.add(sqlNode("SELECT _id FROM b WHERE y = ?", "2"));
+        or.children.add(sqlNode("SELECT _id FROM c WHERE z = ?", "3"));
+        AndQueryNode and = new AndQueryNode();
+        and.children.add(sqlNode("SELECT _id FROM a WHERE x = ?", "1"));
+        and.children.add(or);
+
+        SqlParts sql = QuerySqlTranslator.sqlForQueryTree(and);
+        assertThat(sql.sqlWithPlaceHolders, is("SELECT _id FROM (SELECT _id FROM a WHERE x = ?)" +
+                " INTERSECT SELECT _id FROM (SELECT _id FROM (SELECT _id FROM b WHERE y = ?)" +
+                " UNION SELECT _id FROM (SELECT _id FROM c WHERE z = ?))"));
+        assertThat(sql.placeHolderValues, is(arrayContaining("1", "2", "3")));
+    }
+
+    @Test
+    public void doesNotCompileTreeNeedingAllDocumentIds() {
+        AndQueryNode and = new AndQueryNode();
+        and.children.add(sqlNode("SELECT _id FROM a WHERE x = ?", "1"));
+        and.children.add(new SqlQueryNode());
+
+        assertThat(QuerySqlTranslator.sqlForQueryTree(and), is(nullValue()));
+        assertThat(QuerySqlTranslator.sqlForQueryTree(new OrQueryNode()), is(nullValue()));
+    }
+
+    @Test
+    public void doesNotCompileTreeWithTooManyPlaceholders() {
+        String[] values = new String[300];
+        Arrays.fill(values, "1");
+        AndQueryNode and = new AndQueryNode();
+        and.children.add(sqlNode("SELECT _id FROM a WHERE x IN (...)", values));
+        assertThat(QuerySqlTranslator.sqlForQueryTree(and), is(notNullValue()));
+
+        and.children.add(sqlNode("SELECT _id FROM b WHERE y IN (...)", values));
+        assertThat(QuerySqlTranslator.sqlForQueryTree(and), is(nullValue()));
+    }
+
+    private static SqlQueryNode sqlNode(String sql, String... values) {
+        SqlQueryNode node = new SqlQueryNode();
+        node.sql = SqlParts.partsForSql(sql, values);
+        return node;
+    }
+
 }
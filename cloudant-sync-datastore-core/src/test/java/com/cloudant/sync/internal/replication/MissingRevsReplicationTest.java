@@ -35,10 +35,12 @@ import org.mockito.stubbing.Answer;
 public class MissingRevsReplicationTest extends ReplicationTestBase {
 
     private CouchClient clientMock;
+    private CouchClient realClient;
 
     @Before
     public void setupMocks() throws Exception {
         // Partially mock the remote and replace it for our test
+        realClient = remoteDb.couchClient;
         clientMock = spy(remoteDb.couchClient);
         remoteDb.couchClient = clientMock;
         couchClient = clientMock;
@@ -65,15 +67,21 @@ public class MissingRevsReplicationTest extends ReplicationTestBase {
 
             @Override
             public ChangesResult answer(InvocationOnMock invocation) throws Throwable {
-                @SuppressWarnings("unchecked")
-                ChangesResult changesResult = (ChangesResult) invocation.callRealMethod();
-
-                // modify the changes feed so that it returns a revision that isn't a leaf revision.
-                changesResult.getResults().get(0).getChanges().get(0).setRev(b.getRevision());
-                return changesResult;
-
+                Object[] args = invocation.getArguments();
+                final ChangesResult.RowHandler handler = (ChangesResult.RowHandler) args[2];
+                return realClient.changes(args[0], (Integer) args[1], new ChangesResult
+                        .RowHandler() {
+                    @Override
+                    public void handleRow(ChangesResult.Row row) {
+                        // modify the changes feed so that it returns a revision that isn't a
+                        // leaf revision.
+                        row.getChanges().get(0).setRev(b.getRevision());
+                        handler.handleRow(row);
+                    }
+                });
             }
-        }).when(clientMock).changes(Matchers.anyObject(), anyInt());
+        }).when(clientMock).changes(Matchers.anyObject(), anyInt(), Matchers.any(ChangesResult
+                .RowHandler.class));
 
         // Do the pull replication
         pull();
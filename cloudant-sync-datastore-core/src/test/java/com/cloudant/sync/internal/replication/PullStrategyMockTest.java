@@ -19,18 +19,26 @@ package com.cloudant.sync.internal.replication;
 import static org.junit.Assume.assumeNoException;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyBoolean;
+import static org.mockito.Mockito.anyCollectionOf;
+import static org.mockito.Mockito.anyListOf;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.cloudant.common.RequireRunningCouchDB;
+import com.cloudant.sync.documentstore.Attachment;
 import com.cloudant.sync.event.Subscribe;
 import com.cloudant.sync.internal.documentstore.DocumentRevsList;
+import com.cloudant.sync.internal.mazha.BulkGetResponse;
 import com.cloudant.sync.internal.mazha.ChangesResult;
+import com.cloudant.sync.internal.mazha.CouchClient;
 import com.cloudant.sync.internal.mazha.DocumentRevs;
 import com.cloudant.sync.internal.mazha.OkOpenRevision;
 import com.cloudant.sync.internal.mazha.OpenRevision;
@@ -39,18 +47,23 @@ import com.cloudant.sync.replication.PullFilter;
 import com.cloudant.sync.util.TestUtils;
 import com.fasterxml.jackson.core.type.TypeReference;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileReader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Category(RequireRunningCouchDB.class)
 public class PullStrategyMockTest extends ReplicationTestBase {
@@ -159,12 +172,13 @@ public class PullStrategyMockTest extends ReplicationTestBase {
     @Test
     public void testReplicationDocWithEmptyId() throws Exception {
         CouchDB mockRemoteDb = mock(CouchDB.class);
-        when(mockRemoteDb.changes((PullFilter) null, null, 1000)).then(new Answer<Object>() {
+        when(mockRemoteDb.changes((PullFilter) isNull(), isNull(), eq(1000), any(ChangesResult
+                .RowHandler.class))).then(new Answer<Object>() {
             @Override
             public Object answer(InvocationOnMock invocation) throws Throwable {
                 FileReader fr = new FileReader(TestUtils.loadFixture
                         ("fixture/testReplicationDocWithEmptyId_changes.json"));
-                return JSONUtils.fromJson(fr, ChangesResult.class);
+                return streamRows(JSONUtils.fromJson(fr, ChangesResult.class), invocation);
             }
         });
         when(mockRemoteDb.exists()).thenReturn(true);
@@ -173,12 +187,13 @@ public class PullStrategyMockTest extends ReplicationTestBase {
 
         // TODO we could assert on these empty string ones not being called
         // bulkGetRevisions flavour of mock
-        when(mockRemoteDb.bulkGetRevisions(Collections.singletonList(new BulkGetRequest("", new
-                ArrayList<String>(revs), new ArrayList<String>())), false)).then(new Answer<Object>() {
+        when(mockRemoteDb.bulkGetRevisions(eq(Collections.singletonList(new BulkGetRequest("", new
+                ArrayList<String>(revs), new ArrayList<String>()))), eq(false), any(BulkGetResponse
+                .DocumentHandler.class))).then(new Answer<Object>() {
             @Override
             public Object answer(InvocationOnMock invocation) throws Throwable {
-                return loadBulkRevsResponseFromFixture("fixture/testReplicationDocWithEmptyId_open_revs_1" +
-                        ".json");
+                return streamDocuments(loadBulkRevsResponseFromFixture
+                        ("fixture/testReplicationDocWithEmptyId_open_revs_1.json"), invocation);
 
             }
         });
@@ -197,12 +212,13 @@ public class PullStrategyMockTest extends ReplicationTestBase {
         revs.add("1-13d33701a0954729ad029adf8fdc5a04");
 
         // bulkGetRevisions flavour of mock
-        when(mockRemoteDb.bulkGetRevisions(Collections.singletonList(new BulkGetRequest("4d3b3f01362649d79b31d9092799a7e0", new
-                ArrayList<String>(revs), new ArrayList<String>())), false)).then(new Answer<Object>() {
+        when(mockRemoteDb.bulkGetRevisions(eq(Collections.singletonList(new BulkGetRequest("4d3b3f01362649d79b31d9092799a7e0", new
+                ArrayList<String>(revs), new ArrayList<String>()))), eq(false), any(BulkGetResponse
+                .DocumentHandler.class))).then(new Answer<Object>() {
             @Override
             public Object answer(InvocationOnMock invocation) throws Throwable {
-                return loadBulkRevsResponseFromFixture("fixture/testReplicationDocWithEmptyId_open_revs_2" +
-                        ".json");
+                return streamDocuments(loadBulkRevsResponseFromFixture
+                        ("fixture/testReplicationDocWithEmptyId_open_revs_2.json"), invocation);
 
             }
         });
@@ -236,12 +252,13 @@ public class PullStrategyMockTest extends ReplicationTestBase {
     @Test
     public void testSetCheckpointWhenEmpty() throws Exception {
         CouchDB mockRemoteDb = mock(CouchDB.class);
-        when(mockRemoteDb.changes((PullFilter) null, null, 1000)).then(new Answer<Object>() {
+        when(mockRemoteDb.changes((PullFilter) isNull(), isNull(), eq(1000), any(ChangesResult
+                .RowHandler.class))).then(new Answer<Object>() {
             @Override
             public Object answer(InvocationOnMock invocation) throws Throwable {
                 FileReader fr = new FileReader(TestUtils.loadFixture
                         ("fixture/empty_changes.json"));
-                return JSONUtils.fromJson(fr, ChangesResult.class);
+                return streamRows(JSONUtils.fromJson(fr, ChangesResult.class), invocation);
             }
         });
         when(mockRemoteDb.exists()).thenReturn(true);
@@ -267,12 +284,14 @@ public class PullStrategyMockTest extends ReplicationTestBase {
     public void testDoNotSetCheckpointWhenNotModified() throws Exception {
         try {
             CouchDB mockRemoteDb = mock(CouchDB.class);
-            when(mockRemoteDb.changes((PullFilter) null, "10-d9e5b0147af143e5b6d1979378ad957b", 1000)).then(new Answer<Object>() {
+            when(mockRemoteDb.changes((PullFilter) isNull(), eq
+                    ("10-d9e5b0147af143e5b6d1979378ad957b"), eq(1000), any(ChangesResult.RowHandler
+                    .class))).then(new Answer<Object>() {
                 @Override
                 public Object answer(InvocationOnMock invocation) throws Throwable {
                     FileReader fr = new FileReader(TestUtils.loadFixture
                             ("fixture/empty_changes.json"));
-                    return JSONUtils.fromJson(fr, ChangesResult.class);
+                    return streamRows(JSONUtils.fromJson(fr, ChangesResult.class), invocation);
                 }
             });
             when(mockRemoteDb.exists()).thenReturn(true);
@@ -301,13 +320,14 @@ public class PullStrategyMockTest extends ReplicationTestBase {
     public void testSetCheckpointWhenModified() throws Exception {
         try {
             CouchDB mockRemoteDb = mock(CouchDB.class);
-            when(mockRemoteDb.changes((PullFilter) null, "9-d9e5b0147af143e5b6d1979378ad957b",
-                    1000)).then(new Answer<Object>() {
+            when(mockRemoteDb.changes((PullFilter) isNull(), eq
+                    ("9-d9e5b0147af143e5b6d1979378ad957b"), eq(1000), any(ChangesResult.RowHandler
+                    .class))).then(new Answer<Object>() {
                 @Override
                 public Object answer(InvocationOnMock invocation) throws Throwable {
                     FileReader fr = new FileReader(TestUtils.loadFixture
                             ("fixture/empty_changes.json"));
-                    return JSONUtils.fromJson(fr, ChangesResult.class);
+                    return streamRows(JSONUtils.fromJson(fr, ChangesResult.class), invocation);
                 }
             });
             when(mockRemoteDb.exists()).thenReturn(true);
@@ -333,6 +353,193 @@ public class PullStrategyMockTest extends ReplicationTestBase {
         }
     }
 
+    @Test
+    public void pipelined_replicatesAllPagesAndCheckpointsLastSeq() throws Exception {
+        CouchDB mockRemoteDb = mockPagedRemoteDb(5, -1);
+
+        StrategyListener mockListener = mock(StrategyListener.class);
+        PullStrategy pullStrategy = super.getPullStrategy();
+        pullStrategy.sourceDb = mockRemoteDb;
+        pullStrategy.changeLimitPerBatch = 2;
+        pullStrategy.pipelined = true;
+        pullStrategy.getEventBus().register(mockListener);
+        pullStrategy.run();
+
+        Assert.assertEquals(5, this.datastore.getDocumentCount());
+        Assert.assertEquals(5, pullStrategy.getDocumentCounter());
+        Assert.assertEquals(3, pullStrategy.getBatchCounter());
+        Assert.assertEquals("5", pullStrategy.targetDb.getCheckpoint(pullStrategy
+                .getReplicationId()));
+        verify(mockListener).complete(any(ReplicationStrategyCompleted.class));
+        verify(mockListener, never()).error(any(ReplicationStrategyErrored.class));
+    }
+
+    @Test
+    public void pipelined_errorFetchingChangesCheckpointsInsertedPagesOnly() throws Exception {
+        // the third page of changes fails
+        CouchDB mockRemoteDb = mockPagedRemoteDb(6, 4);
+
+        StrategyListener mockListener = mock(StrategyListener.class);
+        PullStrategy pullStrategy = super.getPullStrategy();
+        pullStrategy.sourceDb = mockRemoteDb;
+        pullStrategy.changeLimitPerBatch = 2;
+        pullStrategy.pipelined = true;
+        pullStrategy.getEventBus().register(mockListener);
+        pullStrategy.run();
+
+        Assert.assertEquals(4, this.datastore.getDocumentCount());
+        Assert.assertEquals("4", pullStrategy.targetDb.getCheckpoint(pullStrategy
+                .getReplicationId()));
+        verify(mockListener).error(any(ReplicationStrategyErrored.class));
+        verify(mockListener, never()).complete(any(ReplicationStrategyCompleted.class));
+    }
+
+    @Test
+    public void bulkGet_insertsStreamedDocumentsOnce() throws Exception {
+        CouchDB mockRemoteDb = mockPagedRemoteDb(5, -1);
+        when(mockRemoteDb.isBulkSupported()).thenReturn(true);
+        when(mockRemoteDb.bulkGetRevisions(anyListOf(BulkGetRequest.class), anyBoolean(), any
+                (BulkGetResponse.DocumentHandler.class))).then(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                @SuppressWarnings("unchecked")
+                List<BulkGetRequest> requests = (List<BulkGetRequest>) invocation.getArguments()
+                        [0];
+                List<DocumentRevsList> documents = new ArrayList<DocumentRevsList>();
+                for (BulkGetRequest request : requests) {
+                    documents.add(new DocumentRevsList(Collections.singletonList(mockRevs
+                            (request.id))));
+                }
+                // deliver the documents twice, as if reading the response failed at the end and
+                // the request was retried
+                streamDocuments(documents, invocation);
+                return streamDocuments(documents, invocation);
+            }
+        });
+
+        StrategyListener mockListener = mock(StrategyListener.class);
+        PullStrategy pullStrategy = super.getPullStrategy();
+        pullStrategy.sourceDb = mockRemoteDb;
+        pullStrategy.changeLimitPerBatch = 2;
+        pullStrategy.getEventBus().register(mockListener);
+        pullStrategy.run();
+
+        Assert.assertEquals(5, this.datastore.getDocumentCount());
+        Assert.assertEquals(5, pullStrategy.getDocumentCounter());
+        verify(mockListener).complete(any(ReplicationStrategyCompleted.class));
+        verify(mockListener, never()).error(any(ReplicationStrategyErrored.class));
+    }
+
+    @Test
+    public void attachmentDownloadSlots_downloadsAttachmentsConcurrently() throws Exception {
+        Assert.assertTrue("Attachments should be downloaded concurrently",
+                pullWithAttachments(3, 1024) > 1);
+    }
+
+    @Test
+    public void attachmentDownloadSlots_limitsBytesInFlight() throws Exception {
+        // each attachment is 5 bytes, so only one fits within the limit at a time
+        Assert.assertEquals(1, pullWithAttachments(3, 5));
+    }
+
+    @Test
+    public void attachmentDownloadSlots_failedDownloadLeavesNoTempFiles() throws Exception {
+        CouchDB mockRemoteDb = mockRemoteDbWithAttachments();
+        when(mockRemoteDb.pullAttachmentWithRetry(anyString(), anyString(), eq("att.txt"), any
+                (CouchClient.InputStreamProcessor.class))).then(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                if (invocation.getArguments()[0].equals("doc2")) {
+                    // fail after the downloads for the later documents have finished
+                    Thread.sleep(200);
+                    throw new RuntimeException("Mocked error.");
+                }
+                return ((CouchClient.InputStreamProcessor) invocation.getArguments()[3])
+                        .processStream(new ByteArrayInputStream("hello".getBytes("UTF-8")));
+            }
+        });
+
+        StrategyListener mockListener = mock(StrategyListener.class);
+        PullStrategy pullStrategy = super.getPullStrategy();
+        pullStrategy.sourceDb = mockRemoteDb;
+        pullStrategy.attachmentDownloadSlots = 5;
+        pullStrategy.getEventBus().register(mockListener);
+        pullStrategy.run();
+
+        verify(mockListener).complete(any(ReplicationStrategyCompleted.class));
+        // only the documents before the failed download are inserted
+        Assert.assertTrue(this.datastore.getDocumentCount() < 5);
+        Assert.assertFalse(this.datastore.contains("doc2"));
+        File attachmentsDir = new File(this.datastore.getPath(),
+                "extensions/com.cloudant.attachments");
+        File[] files = attachmentsDir.listFiles();
+        Assert.assertNotNull(files);
+        for (File file : files) {
+            Assert.assertFalse("Temporary attachment file should be deleted: " + file,
+                    file.getName().startsWith("temp"));
+        }
+    }
+
+    // Pulls 5 documents each with an attachment, returning the most attachment downloads which
+    // were in flight at the same time
+    private int pullWithAttachments(int downloadSlots, long maxBytes) throws Exception {
+        CouchDB mockRemoteDb = mockRemoteDbWithAttachments();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        when(mockRemoteDb.pullAttachmentWithRetry(anyString(), anyString(), eq("att.txt"), any
+                (CouchClient.InputStreamProcessor.class))).then(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                int n = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), n));
+                }
+                try {
+                    Thread.sleep(50);
+                    return ((CouchClient.InputStreamProcessor) invocation.getArguments()[3])
+                            .processStream(new ByteArrayInputStream("hello".getBytes("UTF-8")));
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        });
+
+        StrategyListener mockListener = mock(StrategyListener.class);
+        PullStrategy pullStrategy = super.getPullStrategy();
+        pullStrategy.sourceDb = mockRemoteDb;
+        pullStrategy.attachmentDownloadSlots = downloadSlots;
+        pullStrategy.maxAttachmentDownloadBytes = maxBytes;
+        pullStrategy.getEventBus().register(mockListener);
+        pullStrategy.run();
+
+        verify(mockListener).complete(any(ReplicationStrategyCompleted.class));
+        Assert.assertEquals(5, this.datastore.getDocumentCount());
+        for (int i = 0; i < 5; i++) {
+            Attachment att = this.datastore.read("doc" + i).getAttachments().get("att.txt");
+            Assert.assertEquals("hello", IOUtils.toString(att.getInputStream(), "UTF-8"));
+        }
+        return maxInFlight.get();
+    }
+
+    // Mocks a remote database with 5 documents, each with an attachment which isn't inline
+    private CouchDB mockRemoteDbWithAttachments() {
+        CouchDB mockRemoteDb = mockPagedRemoteDb(5, -1);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                String id = (String) invocation.getArguments()[0];
+                String revId = id.substring("doc".length());
+                String json = String.format("{\"_id\": \"%s\", \"_rev\": \"1-%s\", " +
+                        "\"_revisions\": {\"start\": 1, \"ids\": [\"%s\"]}, " +
+                        "\"_attachments\": {\"att.txt\": {\"content_type\": \"text/plain\", " +
+                        "\"revpos\": 1, \"length\": 5}}}", id, revId, revId);
+                return Collections.singletonList(JSONUtils.fromJson(new StringReader(json),
+                        DocumentRevs.class));
+            }
+        }).when(mockRemoteDb).getRevisions(anyString(), anyCollectionOf(String.class),
+                anyCollectionOf(String.class), anyBoolean());
+        return mockRemoteDb;
+    }
 
     public class StrategyListener {
 
@@ -345,6 +552,54 @@ public class PullStrategyMockTest extends ReplicationTestBase {
         }
     }
 
+    // Mocks a remote database with docCount documents, whose _changes feed returns one document
+    // per sequence number. If failSince is not -1, the _changes request since that sequence fails.
+    private CouchDB mockPagedRemoteDb(final int docCount, final int failSince) {
+        CouchDB mockRemoteDb = mock(CouchDB.class);
+        when(mockRemoteDb.exists()).thenReturn(true);
+        when(mockRemoteDb.changes(any(PullFilter.class), any(), anyInt(), any(ChangesResult
+                .RowHandler.class))).then(
+                new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Object since = invocation.getArguments()[1];
+                int limit = (Integer) invocation.getArguments()[2];
+                int start = since == null ? 0 : Integer.parseInt((String) since);
+                if (start == failSince) {
+                    throw new RuntimeException("Mocked error.");
+                }
+                int end = Math.min(start + limit, docCount);
+                StringBuilder json = new StringBuilder("{\"last_seq\": \"" + end + "\", " +
+                        "\"pending\": 0, \"results\": [");
+                for (int i = start; i < end; i++) {
+                    json.append(i > start ? "," : "").append(String.format("{\"seq\": \"%s\", " +
+                            "\"id\": \"doc%s\", \"changes\": [{\"rev\": \"1-%s\"}]}", i +
+                            1, i, i));
+                }
+                json.append("]}");
+                return streamRows(JSONUtils.fromJson(new StringReader(json.toString()),
+                        ChangesResult.class), invocation);
+            }
+        });
+        when(mockRemoteDb.getRevisions(anyString(), anyCollectionOf(String.class),
+                anyCollectionOf(String.class), anyBoolean())).then(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return Collections.singletonList(mockRevs((String) invocation.getArguments()
+                        [0]));
+            }
+        });
+        return mockRemoteDb;
+    }
+
+    // The revision of a document from mockPagedRemoteDb
+    private static DocumentRevs mockRevs(String id) {
+        String revId = id.substring("doc".length());
+        String json = String.format("{\"_id\": \"%s\", \"_rev\": \"1-%s\", " +
+                "\"_revisions\": {\"start\": 1, \"ids\": [\"%s\"]}}", id, revId, revId);
+        return JSONUtils.fromJson(new StringReader(json), DocumentRevs.class);
+    }
+
     private Iterable<DocumentRevsList> loadBulkRevsResponseFromFixture(String fixturePath) throws Exception {
         // adapt response from loadOpenRevsResponseFromFixture to look like it came from a bulk response:
         // one revslist presented inside a list of length 1
@@ -370,4 +625,28 @@ public class PullStrategyMockTest extends ReplicationTestBase {
         return documentRevs;
     }
 
+    // Passes the rows of a changes feed to the handler given to a mocked streaming changes call
+    private static ChangesResult streamRows(ChangesResult changes, InvocationOnMock invocation) {
+        ChangesResult.RowHandler handler = (ChangesResult.RowHandler) invocation.getArguments()[3];
+        if (changes.getResults() != null) {
+            for (ChangesResult.Row row : changes.getResults()) {
+                handler.handleRow(row);
+            }
+        }
+        return changes;
+    }
+
+    // Passes documents to the handler given to a mocked streaming bulkGetRevisions call
+    private static int streamDocuments(Iterable<DocumentRevsList> documents, InvocationOnMock
+            invocation) {
+        BulkGetResponse.DocumentHandler handler = (BulkGetResponse.DocumentHandler) invocation
+                .getArguments()[2];
+        int count = 0;
+        for (DocumentRevsList document : documents) {
+            handler.handleDocument(document);
+            count++;
+        }
+        return count;
+    }
+
 }
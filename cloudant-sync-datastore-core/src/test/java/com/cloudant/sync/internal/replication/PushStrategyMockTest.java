@@ -17,8 +17,10 @@
 package com.cloudant.sync.internal.replication;
 
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyListOf;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.argThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -28,15 +30,23 @@ import static org.mockito.Mockito.when;
 import com.cloudant.common.RequireRunningCouchDB;
 import com.cloudant.sync.internal.mazha.CouchClient;
 import com.cloudant.sync.event.Subscribe;
+import com.cloudant.sync.internal.util.JSONUtils;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.mockito.ArgumentMatcher;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Category(RequireRunningCouchDB.class)
 public class PushStrategyMockTest extends ReplicationTestBase {
@@ -157,7 +167,58 @@ public class PushStrategyMockTest extends ReplicationTestBase {
         Assert.assertEquals(0, pushStrategy.getDocumentCounter());
         Assert.assertEquals(0, pushStrategy.getBatchCounter());
     }
-    
+
+    @Test
+    public void push_uploadSlots_allBatchesPushedAndCheckpointsMonotonic() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            BarUtils.createBar(datastore, "Tom" + i, i);
+        }
+        final List<String> checkpoints = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger docsUploaded = new AtomicInteger();
+        CouchDB mockRemoteDb = mockRemoteDbMissingEverything(checkpoints, docsUploaded, -1);
+
+        StrategyListener mockListener = mock(StrategyListener.class);
+        PushStrategy pushStrategy = super.getPushStrategy();
+        pushStrategy.targetDb = mockRemoteDb;
+        pushStrategy.changeLimitPerBatch = 10;
+        pushStrategy.bulkInsertSize = 2;
+        pushStrategy.uploadSlots = 3;
+        pushStrategy.eventBus.register(mockListener);
+
+        pushStrategy.run();
+
+        verify(mockListener, never()).error(any(ReplicationStrategyErrored.class));
+        verify(mockListener).complete(any(ReplicationStrategyCompleted.class));
+        Assert.assertEquals(25, docsUploaded.get());
+        Assert.assertEquals(25, pushStrategy.getDocumentCounter());
+        Assert.assertEquals(Arrays.asList("10", "20", "25"), checkpoints);
+    }
+
+    @Test
+    public void push_uploadSlots_failedUploadNotCheckpointed() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            BarUtils.createBar(datastore, "Tom" + i, i);
+        }
+        final List<String> checkpoints = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger docsUploaded = new AtomicInteger();
+        // the upload of the document at sequence 14 fails
+        CouchDB mockRemoteDb = mockRemoteDbMissingEverything(checkpoints, docsUploaded, 14);
+
+        StrategyListener mockListener = mock(StrategyListener.class);
+        PushStrategy pushStrategy = super.getPushStrategy();
+        pushStrategy.targetDb = mockRemoteDb;
+        pushStrategy.changeLimitPerBatch = 10;
+        pushStrategy.bulkInsertSize = 2;
+        pushStrategy.uploadSlots = 3;
+        pushStrategy.eventBus.register(mockListener);
+
+        pushStrategy.run();
+
+        verify(mockListener).error(any(ReplicationStrategyErrored.class));
+        verify(mockListener, never()).complete(any(ReplicationStrategyCompleted.class));
+        Assert.assertEquals(Collections.singletonList("10"), checkpoints);
+    }
+
     public class StrategyListener {
 
         @Subscribe
@@ -169,5 +230,53 @@ public class PushStrategyMockTest extends ReplicationTestBase {
         }
     }
 
+    // Mocks a remote database which is missing every revision pushed to it and which records the
+    // checkpoints set on it. If failSequence is not -1, the upload of the document created at that
+    // sequence fails.
+    private CouchDB mockRemoteDbMissingEverything(final List<String> checkpoints,
+                                                  final AtomicInteger docsUploaded,
+                                                  final int failSequence) {
+        CouchDB mockRemoteDb = mock(CouchDB.class);
+        when(mockRemoteDb.exists()).thenReturn(true);
+        when(mockRemoteDb.revsDiff(any(Map.class))).then(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Map<String, Set<String>> revs = (Map<String, Set<String>>) invocation
+                        .getArguments()[0];
+                Map<String, CouchClient.MissingRevisions> missing = new HashMap<String,
+                        CouchClient.MissingRevisions>();
+                for (Map.Entry<String, Set<String>> e : revs.entrySet()) {
+                    CouchClient.MissingRevisions m = new CouchClient.MissingRevisions();
+                    m.missing = e.getValue();
+                    missing.put(e.getKey(), m);
+                }
+                return missing;
+            }
+        });
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                List<String> docs = (List<String>) invocation.getArguments()[0];
+                // give the other uploads a chance to overlap with this one
+                Thread.sleep(20);
+                for (String doc : docs) {
+                    String name = (String) JSONUtils.deserialize(doc.getBytes("UTF-8")).get("name");
+                    if (name.equals("Tom" + (failSequence - 1))) {
+                        throw new RuntimeException("Mocked error.");
+                    }
+                }
+                docsUploaded.addAndGet(docs.size());
+                return null;
+            }
+        }).when(mockRemoteDb).bulkCreateSerializedDocs(anyListOf(String.class));
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                checkpoints.add((String) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(mockRemoteDb).putCheckpoint(anyString(), anyString());
+        return mockRemoteDb;
+    }
 
 }
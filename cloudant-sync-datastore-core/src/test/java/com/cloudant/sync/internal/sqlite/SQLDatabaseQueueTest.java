@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.sqlite;
+
+import com.cloudant.sync.documentstore.encryption.NullKeyProvider;
+import com.cloudant.sync.internal.android.ContentValues;
+import com.cloudant.sync.internal.documentstore.migrations.SchemaOnlyMigration;
+import com.cloudant.sync.util.TestUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class SQLDatabaseQueueTest {
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE person ( id INTEGER PRIMARY KEY, name TEXT NOT NULL ); "
+    };
+
+    private String databaseDir;
+    private SQLDatabaseQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        databaseDir = TestUtils.createTempTestingDir(SQLDatabaseQueueTest.class.getName());
+        queue = new SQLDatabaseQueue(new File(databaseDir, "db.sync"), new NullKeyProvider(), 2);
+        queue.updateSchema(new SchemaOnlyMigration(SCHEMA), 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.shutdown();
+        TestUtils.deleteTempTestingDir(databaseDir);
+    }
+
+    @Test
+    public void readOnlyTasksSeeSchemaUpdates() throws Exception {
+        // submitted straight after the fire-and-forget schema update
+        Assert.assertEquals(0, queue.submitReadOnly(new CountCallable()).get().intValue());
+    }
+
+    @Test
+    public void readOnlyTasksSeeCommittedWrites() throws Exception {
+        // make sure the readers are in use before we start writing
+        queue.getVersion();
+        for (int i = 0; i < 10; i++) {
+            queue.submitTransaction(new InsertCallable("person" + i)).get();
+            Assert.assertEquals(i + 1, queue.submitReadOnly(new CountCallable()).get().intValue());
+        }
+    }
+
+    @Test
+    public void readOnlyTasksRunConcurrently() throws Exception {
+        queue.getVersion();
+        final CountDownLatch bothRunning = new CountDownLatch(2);
+        final CountDownLatch writerBlocked = new CountDownLatch(1);
+
+        // hold the writer connection so that reads can only complete on the readers
+        Future<Void> writer = queue.submitTransaction(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                new InsertCallable("uncommitted").call(db);
+                writerBlocked.await(10, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+
+        SQLCallable<Integer> reader = new SQLCallable<Integer>() {
+            @Override
+            public Integer call(SQLDatabase db) throws Exception {
+                bothRunning.countDown();
+                Assert.assertTrue("Readers did not run concurrently",
+                        bothRunning.await(10, TimeUnit.SECONDS));
+                return new CountCallable().call(db);
+            }
+        };
+        Future<Integer> first = queue.submitReadOnly(reader);
+        Future<Integer> second = queue.submitReadOnly(reader);
+
+        // neither reader sees the writer's uncommitted row
+        Assert.assertEquals(0, first.get(10, TimeUnit.SECONDS).intValue());
+        Assert.assertEquals(0, second.get(10, TimeUnit.SECONDS).intValue());
+
+        writerBlocked.countDown();
+        writer.get();
+        Assert.assertEquals(1, queue.submitReadOnly(new CountCallable()).get().intValue());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void readOnlyTasksCannotWrite() throws Exception {
+        queue.getVersion();
+        queue.submitReadOnly(new SQLCallable<Void>() {
+            @Override
+            public Void call(SQLDatabase db) throws Exception {
+                db.execSQL("INSERT INTO person (name) VALUES ('readonly')");
+                return null;
+            }
+        }).get();
+    }
+
+    @Test
+    public void readOnlyTasksRunOnWriterWithoutReaders() throws Exception {
+        SQLDatabaseQueue writerOnly = new SQLDatabaseQueue(new File(databaseDir, "writer.sync"),
+                new NullKeyProvider(), 0);
+        try {
+            writerOnly.updateSchema(new SchemaOnlyMigration(SCHEMA), 1);
+            writerOnly.submitReadOnly(new InsertCallable("writer")).get();
+            Assert.assertEquals(1, writerOnly.submitReadOnly(new CountCallable()).get().intValue());
+        } finally {
+            writerOnly.shutdown();
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void readOnlyTasksRejectedAfterShutdown() throws Exception {
+        queue.getVersion();
+        queue.shutdown();
+        queue.submitReadOnly(new CountCallable());
+    }
+
+    private static class CountCallable implements SQLCallable<Integer> {
+        @Override
+        public Integer call(SQLDatabase db) throws Exception {
+            Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM person", null);
+            try {
+                cursor.moveToFirst();
+                return cursor.getInt(0);
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private static class InsertCallable implements SQLCallable<Long> {
+        private final String name;
+
+        InsertCallable(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Long call(SQLDatabase db) throws Exception {
+            ContentValues values = new ContentValues();
+            values.put("name", name);
+            return db.insert("person", values);
+        }
+    }
+}
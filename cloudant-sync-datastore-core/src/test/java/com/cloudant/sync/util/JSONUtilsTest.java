@@ -61,6 +61,19 @@ public class JSONUtilsTest {
         Assert.assertFalse(JSONUtils.isValidJSON("101"));
     }
 
+    @Test
+    public void isValidJSON_bytes() {
+        Assert.assertTrue(JSONUtils.isValidJSON("{\"a\": [1, {\"b\": null}], \"c\": \"d\"}"
+                .getBytes()));
+        Assert.assertTrue(JSONUtils.isValidJSON("{}".getBytes()));
+        Assert.assertFalse(JSONUtils.isValidJSON("[]".getBytes()));
+        Assert.assertFalse(JSONUtils.isValidJSON("101".getBytes()));
+        Assert.assertFalse(JSONUtils.isValidJSON("{\"a\": [1, 2}".getBytes()));
+        Assert.assertFalse(JSONUtils.isValidJSON("{\"a\": 1".getBytes()));
+        Assert.assertFalse(JSONUtils.isValidJSON("{a: 1}".getBytes()));
+        Assert.assertFalse(JSONUtils.isValidJSON("".getBytes()));
+    }
+
     @Test
     public void serializeAsBytes() {
         Map obj = new HashMap<String, String>();
@@ -0,0 +1,247 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.sqlite.sqlite4java;
+
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+import com.cloudant.sync.internal.sqlite.Cursor;
+
+import java.util.List;
+
+/**
+ * <p>
+ * A {@link Cursor} which reads rows directly from a prepared {@link SQLiteStatement}, stepping
+ * the statement as the cursor is moved rather than copying the whole result set onto the heap
+ * up front as {@link SQLiteCursor} does.
+ * </p>
+ * <p>
+ * The statement is disposed when the cursor is closed, so callers must always close the
+ * cursor. Like the connection it came from, the cursor must only be used on the thread which
+ * created it.
+ * </p>
+ * <p>
+ * {@link #moveToFirst()} and {@link #getCount()} are supported by re-running the statement, so
+ * are more expensive than on a {@link SQLiteCursor}.
+ * </p>
+ */
+public class SQLiteStatementCursor implements Cursor {
+
+    private final SQLiteStatement stmt;
+    private final List<String> names;
+
+    private int position = -1;
+    // -1 until the statement has been stepped to completion
+    private int count = -1;
+    // true once the statement has returned its last row and been reset
+    private boolean exhausted = false;
+    // true if the statement has already been stepped onto the row after the current position
+    private boolean pendingRow = false;
+    private boolean closed = false;
+
+    /**
+     * @param stmt prepared statement with its arguments bound, which the cursor takes
+     *             ownership of
+     * @throws SQLiteException if the statement could not be executed
+     */
+    public SQLiteStatementCursor(SQLiteStatement stmt) throws SQLiteException {
+        this.stmt = stmt;
+        this.names = SQLiteWrapperUtils.getColumnNames(stmt);
+        // step to the first row straight away so that errors executing the query are reported
+        // when the cursor is created rather than by the first call to moveToNext
+        this.pendingRow = step();
+        if (!pendingRow) {
+            count = 0;
+        }
+    }
+
+    @Override
+    public int getCount() {
+        if (count < 0) {
+            // run the query to the end to find out how many rows there are, then run it
+            // again to get back to where we were
+            int target = position;
+            rewind();
+            while (moveToNext()) {
+            }
+            rewind();
+            while (position < target && moveToNext()) {
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return names.size();
+    }
+
+    @Override
+    public int columnType(int index) {
+        try {
+            return SQLiteWrapperUtils.mapColumnType(stmt.columnType(index));
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String columnName(int index) {
+        return names.get(index);
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        if (position == 0 && !exhausted) {
+            return true;
+        }
+        if (position != -1 || !pendingRow) {
+            rewind();
+        }
+        return moveToNext();
+    }
+
+    @Override
+    public String getString(int index) {
+        try {
+            return stmt.columnString(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int getInt(int index) {
+        try {
+            return stmt.columnInt(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public long getLong(int index) {
+        try {
+            return stmt.columnLong(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public float getFloat(int index) {
+        try {
+            return (float) stmt.columnDouble(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public byte[] getBlob(int index) {
+        try {
+            return stmt.columnBlob(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return exhausted && position >= count;
+    }
+
+    @Override
+    public boolean moveToNext() {
+        if (closed || exhausted) {
+            position = count;
+            return false;
+        }
+        boolean hasRow;
+        if (pendingRow) {
+            pendingRow = false;
+            hasRow = true;
+        } else {
+            try {
+                hasRow = step();
+            } catch (SQLiteException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        if (!hasRow) {
+            count = position + 1;
+        }
+        position++;
+        return hasRow;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        SQLiteWrapperUtils.disposeQuietly(stmt);
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        return names.indexOf(columnName);
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) throws IllegalArgumentException {
+        int i = getColumnIndex(columnName);
+        if (i < 0) {
+            throw new IllegalArgumentException("Can not find column: " + columnName);
+        } else {
+            return i;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SQLiteStatementCursor: ");
+        sb.append("position ").append(position);
+        sb.append(", columnCount ").append(this.getColumnCount());
+        sb.append(", names ").append(this.names);
+        return sb.toString();
+    }
+
+    /**
+     * Steps the statement, resetting it as soon as there are no more rows so that it doesn't
+     * hold a read transaction open for longer than needed.
+     */
+    private boolean step() throws SQLiteException {
+        if (stmt.step()) {
+            return true;
+        }
+        exhausted = true;
+        stmt.reset(false);
+        return false;
+    }
+
+    /**
+     * Resets the statement, keeping its bindings, so the next call to {@link #moveToNext()}
+     * returns the first row.
+     */
+    private void rewind() {
+        try {
+            stmt.reset(false);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+        position = -1;
+        exhausted = false;
+        pendingRow = false;
+    }
+
+}
@@ -18,6 +18,7 @@ import com.almworks.sqlite4java.SQLiteConnection;
 import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteStatement;
 import com.cloudant.sync.internal.android.ContentValues;
+import com.cloudant.sync.internal.sqlite.Cursor;
 import com.cloudant.sync.internal.sqlite.SQLDatabase;
 import com.cloudant.sync.internal.util.Misc;
 
@@ -42,8 +43,15 @@ public class SQLiteWrapper extends SQLDatabase {
 
     private final File databaseFile;
 
+    private final boolean readOnly;
+
     private SQLiteConnection localConnection;
 
+    /**
+     * Compiled insert, update and delete statements for {@link #localConnection}.
+     */
+    private StatementCache statementCache;
+
     /**
      * Tracks whether the current nested set of transactions has had any
      * failed transactions so far.
@@ -59,7 +67,17 @@ public class SQLiteWrapper extends SQLDatabase {
     private Stack<Boolean> transactionStack = new Stack<Boolean>();
 
     public SQLiteWrapper(File databaseFile) {
+        this(databaseFile, false);
+    }
+
+    /**
+     * @param databaseFile the database file, or null for an in-memory database
+     * @param readOnly true if connections should be opened read-only, in which case the
+     *                 database file must already exist
+     */
+    public SQLiteWrapper(File databaseFile, boolean readOnly) {
         this.databaseFile = databaseFile;
+        this.readOnly = readOnly;
     }
 
     public static SQLiteWrapper open(File databaseFile) {
@@ -68,9 +86,16 @@ public class SQLiteWrapper extends SQLDatabase {
         return db;
     }
 
+    public static SQLiteWrapper openReadOnly(File databaseFile) {
+        SQLiteWrapper db = new SQLiteWrapper(databaseFile, true);
+        db.open();
+        return db;
+    }
+
     public SQLiteConnection getConnection() {
         if (localConnection == null) {
             localConnection = createNewConnection();
+            statementCache = new StatementCache(localConnection, StatementCache.DEFAULT_CAPACITY);
         }
 
         return localConnection;
@@ -84,8 +109,12 @@ public class SQLiteWrapper extends SQLDatabase {
             } else {
                 conn = new SQLiteConnection();
             }
-            // open with "open or create" flag
-            conn.open(true);
+            if (this.readOnly) {
+                conn.openReadonly();
+            } else {
+                // open with "open or create" flag
+                conn.open(true);
+            }
             conn.setBusyTimeout(30*1000);
             return conn;
         } catch (SQLiteException ex) {
@@ -202,6 +231,9 @@ public class SQLiteWrapper extends SQLDatabase {
         // for the same thread as us
         SQLiteConnection conn = localConnection;
         if (conn != null && !conn.isDisposed()) {
+            logger.fine(String.format("Closing %s, statement cache hits: %d, misses: %d",
+                    databaseFile, statementCache.getHits(), statementCache.getMisses()));
+            statementCache.clear();
             conn.dispose();
         }
     }
@@ -251,9 +283,9 @@ public class SQLiteWrapper extends SQLDatabase {
     }
 
     @Override
-    public SQLiteCursor rawQuery(String sql, String[] bindArgs) throws SQLException {
+    public Cursor rawQuery(String sql, String[] bindArgs) throws SQLException {
         try {
-            return SQLiteWrapperUtils.buildSQLiteCursor(getConnection(), sql, bindArgs);
+            return SQLiteWrapperUtils.buildSQLiteStatementCursor(getConnection(), sql, bindArgs);
         } catch (SQLiteException e) {
             throw new SQLException(e);
         }
@@ -322,10 +354,24 @@ public class SQLiteWrapper extends SQLDatabase {
         return insertWithOnConflict(table, initialValues, CONFLICT_NONE);
     }
 
+    /**
+     * @return the cache of compiled statements used for inserts, updates and deletes on this
+     * thread's connection
+     */
+    StatementCache getStatementCache() {
+        getConnection();
+        return statementCache;
+    }
+
     private void executeSQLStatement(String sql, Object[] values) throws SQLiteException{
-        SQLiteStatement stmt = getConnection().prepare(sql);
-        stmt = SQLiteWrapperUtils.bindArguments(stmt, values);
-        while (stmt.step()) {
+        StatementCache cache = getStatementCache();
+        SQLiteStatement stmt = cache.acquire(sql);
+        try {
+            SQLiteWrapperUtils.bindArguments(stmt, values);
+            while (stmt.step()) {
+            }
+        } finally {
+            cache.release(sql, stmt);
         }
     }
 }
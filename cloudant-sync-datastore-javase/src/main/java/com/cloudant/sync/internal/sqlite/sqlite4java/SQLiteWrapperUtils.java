@@ -132,6 +132,30 @@ public class SQLiteWrapperUtils {
         }
     }
 
+    /**
+     * Prepares {@code sql} and returns a {@link SQLiteStatementCursor} which steps through the
+     * results as it is moved. The cursor owns the statement and must be closed by the caller.
+     *
+     * Use {@link #buildSQLiteCursor(SQLiteConnection, String, Object[])} instead if the whole
+     * result set needs to be held in memory, for example to be used after the statement has
+     * been disposed.
+     */
+    public static SQLiteStatementCursor buildSQLiteStatementCursor(SQLiteConnection conn, String
+            sql, Object[] bindArgs) throws SQLiteException {
+        SQLiteStatement stmt = null;
+        boolean success = false;
+        try {
+            stmt = bindArguments(conn.prepare(sql), bindArgs);
+            SQLiteStatementCursor cursor = new SQLiteStatementCursor(stmt);
+            success = true;
+            return cursor;
+        } finally {
+            if (!success) {
+                SQLiteWrapperUtils.disposeQuietly(stmt);
+            }
+        }
+    }
+
     public static SQLiteCursor buildSQLiteCursor(SQLiteConnection conn, String sql, Object[] bindArgs)
             throws SQLiteException {
         SQLiteStatement stmt = null;
@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2018 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.internal.sqlite.sqlite4java;
+
+import com.almworks.sqlite4java.SQLiteConnection;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Least-recently-used cache of compiled statements for a single {@link SQLiteConnection},
+ * keyed by SQL text.
+ * </p>
+ * <p>
+ * Statements are borrowed with {@link #acquire(String)} and must be handed back with
+ * {@link #release(String, SQLiteStatement)} once they have been stepped, which resets them and
+ * clears their bindings ready for the next caller. Statements are disposed when they are
+ * evicted from the cache or when the cache is cleared.
+ * </p>
+ * <p>
+ * Like the connection it belongs to, the cache must only be used from a single thread.
+ * </p>
+ */
+class StatementCache {
+
+    static final int DEFAULT_CAPACITY = 25;
+
+    private final SQLiteConnection conn;
+    private final LinkedHashMap<String, SQLiteStatement> statements;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    StatementCache(SQLiteConnection conn, final int capacity) {
+        this.conn = conn;
+        // access order, so the eldest entry is the least recently used
+        this.statements = new LinkedHashMap<String, SQLiteStatement>(capacity, 0.75f, true) {
+            private static final long serialVersionUID = 1872626903627640280L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                if (size() > capacity) {
+                    SQLiteWrapperUtils.disposeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a compiled statement for {@code sql}, taking it out of the cache if there is one
+     * so that re-entrant use of the same SQL gets its own statement.
+     */
+    SQLiteStatement acquire(String sql) throws SQLiteException {
+        SQLiteStatement stmt = statements.remove(sql);
+        if (stmt != null && !stmt.isDisposed()) {
+            hits++;
+            return stmt;
+        }
+        misses++;
+        // we do our own caching, so skip sqlite4java's
+        return conn.prepare(sql, false);
+    }
+
+    /**
+     * Resets {@code stmt}, which must have been acquired for {@code sql}, and returns it to the
+     * cache. If the statement can't be reset it is disposed instead.
+     */
+    void release(String sql, SQLiteStatement stmt) {
+        if (stmt == null || stmt.isDisposed()) {
+            return;
+        }
+        try {
+            stmt.reset(true);
+        } catch (SQLiteException e) {
+            SQLiteWrapperUtils.disposeQuietly(stmt);
+            return;
+        }
+        if (conn.isDisposed()) {
+            SQLiteWrapperUtils.disposeQuietly(stmt);
+            return;
+        }
+        SQLiteStatement previous = statements.put(sql, stmt);
+        if (previous != null && previous != stmt) {
+            SQLiteWrapperUtils.disposeQuietly(previous);
+        }
+    }
+
+    /**
+     * Disposes all of the cached statements.
+     */
+    void clear() {
+        List<SQLiteStatement> toDispose = new ArrayList<SQLiteStatement>(statements.values());
+        statements.clear();
+        for (SQLiteStatement stmt : toDispose) {
+            SQLiteWrapperUtils.disposeQuietly(stmt);
+        }
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+}
@@ -18,6 +18,7 @@ package com.cloudant.sync.internal.sqlite.sqlite4java;
 
 import com.almworks.sqlite4java.SQLiteConnection;
 import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
 import com.cloudant.sync.internal.android.ContentValues;
 import com.cloudant.sync.internal.sqlite.Cursor;
 import com.cloudant.sync.internal.sqlite.SQLDatabase;
@@ -473,7 +474,7 @@ public class SQLiteWrapperTest {
     public void rawQuery() throws Exception {
         prepareDatabaseForTesting();
 
-        SQLiteCursor cursor = database.rawQuery("SELECT * FROM docs WHERE doc_name = ?",
+        Cursor cursor = database.rawQuery("SELECT * FROM docs WHERE doc_name = ?",
                 new String[]{"haha"});
 
         Assert.assertTrue(cursor.getCount() == 2);
@@ -503,12 +504,84 @@ public class SQLiteWrapperTest {
     public void rawQuery_inClause() throws Exception {
         prepareDatabaseForTesting();
 
-        SQLiteCursor cursor = database.rawQuery("SELECT * FROM docs WHERE doc_name IN ( ?, ?, ?)",
+        Cursor cursor = database.rawQuery("SELECT * FROM docs WHERE doc_name IN ( ?, ?, ?)",
                 new String[]{"haha", "hihi", "hehe"});
 
         Assert.assertEquals(4, cursor.getCount());
     }
 
+    @Test
+    public void rawQuery_getCountKeepsPosition() throws Exception {
+        prepareDatabaseForTesting();
+
+        Cursor cursor = database.rawQuery("SELECT doc_id FROM docs ORDER BY doc_id", null);
+        try {
+            Assert.assertTrue(cursor.moveToNext());
+            Assert.assertTrue(cursor.moveToNext());
+            Assert.assertEquals(2, cursor.getInt(0));
+            Assert.assertEquals(4, cursor.getCount());
+            Assert.assertEquals(2, cursor.getInt(0));
+            Assert.assertTrue(cursor.moveToNext());
+            Assert.assertEquals(3, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void rawQuery_moveToFirstAfterLast() throws Exception {
+        prepareDatabaseForTesting();
+
+        Cursor cursor = database.rawQuery("SELECT doc_id FROM docs ORDER BY doc_id", null);
+        try {
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                rows++;
+            }
+            Assert.assertEquals(4, rows);
+            Assert.assertTrue(cursor.isAfterLast());
+            Assert.assertFalse(cursor.moveToNext());
+
+            Assert.assertTrue(cursor.moveToFirst());
+            Assert.assertFalse(cursor.isAfterLast());
+            Assert.assertEquals(1, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void rawQuery_noRows() throws Exception {
+        prepareDatabaseForTesting();
+
+        Cursor cursor = database.rawQuery("SELECT doc_id FROM docs WHERE doc_name = ?",
+                new String[]{"nothing"});
+        try {
+            Assert.assertEquals(0, cursor.getCount());
+            Assert.assertFalse(cursor.moveToFirst());
+            Assert.assertFalse(cursor.moveToNext());
+            Assert.assertTrue(cursor.isAfterLast());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test(expected = SQLException.class)
+    public void rawQuery_invalidSqlThrows() throws Exception {
+        database.rawQuery("SELECT * FROM no_such_table", null);
+    }
+
+    @Test
+    public void buildSQLiteCursor_materialisesRows() throws Exception {
+        prepareDatabaseForTesting();
+
+        SQLiteCursor cursor = SQLiteWrapperUtils.buildSQLiteCursor(conn, "SELECT doc_id FROM " +
+                "docs ORDER BY doc_id", null);
+        Assert.assertEquals(4, cursor.getCount());
+        Assert.assertTrue(cursor.moveToFirst());
+        Assert.assertEquals(1, cursor.getInt(0));
+    }
+
     @Test
     public void delete() {
         prepareDatabaseForTesting();
@@ -564,6 +637,91 @@ public class SQLiteWrapperTest {
         }
     }
 
+    @Test
+    public void insert_reusesCachedStatement() throws Exception {
+        prepareDatabaseForTesting();
+        StatementCache cache = database.getStatementCache();
+        long misses = cache.getMisses();
+
+        for (int i = 0; i < 10; i++) {
+            ContentValues cv = new ContentValues();
+            cv.put("doc_id", 100 + i);
+            cv.put("doc_name", "kaka" + i);
+            cv.put("balance", "1.0");
+            Assert.assertEquals(100 + i, database.insert(doc_table_name, cv));
+        }
+
+        Assert.assertEquals(misses + 1, cache.getMisses());
+        Assert.assertEquals(9, cache.getHits());
+        Cursor cursor = database.rawQuery("SELECT * FROM docs", null);
+        try {
+            Assert.assertEquals(14, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void update_cachedStatementBindingsCleared() {
+        prepareDatabaseForTesting();
+        StatementCache cache = database.getStatementCache();
+
+        ContentValues cv = new ContentValues();
+        cv.put("balance", "1.5");
+        Assert.assertEquals(2, database.update("docs", cv, "doc_name = ?", new String[]{"haha"}));
+        Assert.assertEquals(1, database.update("docs", cv, "doc_name = ?", new String[]{"hihi"}));
+        Assert.assertEquals(0, database.update("docs", cv, "doc_name = ?", new String[]{"none"}));
+
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void delete_usesStatementCache() {
+        prepareDatabaseForTesting();
+        StatementCache cache = database.getStatementCache();
+
+        Assert.assertEquals(2, database.delete("docs", "doc_name = ?", new String[]{"haha"}));
+        Assert.assertEquals(0, database.delete("docs", "doc_name = ?", new String[]{"haha"}));
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void statementCache_evictsLeastRecentlyUsed() throws Exception {
+        prepareDatabaseForTesting();
+        StatementCache cache = new StatementCache(conn, 2);
+
+        String[] sql = new String[]{"SELECT 1", "SELECT 2", "SELECT 3"};
+        SQLiteStatement first = cache.acquire(sql[0]);
+        cache.release(sql[0], first);
+        for (int i = 1; i < sql.length; i++) {
+            cache.release(sql[i], cache.acquire(sql[i]));
+        }
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertTrue(first.isDisposed());
+        Assert.assertEquals(0, cache.getHits());
+
+        SQLiteStatement last = cache.acquire(sql[2]);
+        Assert.assertEquals(1, cache.getHits());
+        cache.release(sql[2], last);
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertTrue(last.isDisposed());
+    }
+
+    @Test
+    public void close_disposesCachedStatements() {
+        prepareDatabaseForTesting();
+        StatementCache cache = database.getStatementCache();
+        database.delete("docs", "doc_name = ?", new String[]{"haha"});
+        Assert.assertEquals(1, cache.size());
+
+        database.close();
+        Assert.assertEquals(0, cache.size());
+    }
+
     @Test(expected = SQLException.class)
     public void close_queryAfterClose() throws SQLException {
         this.database.close();